@@ -0,0 +1,122 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import bank.Bank;
+import bank.KontoNichtExistiertException;
+import bank.ShardAusfuehrung;
+import fabriken.GirokontoFabrik;
+import verarbeitung.Kunde;
+
+/**
+ * Testprogramm zum Vergleich des Durchsatzes verschiedener Ausfuehrungsarten der Bank.
+ * Die Ausgaben der Beobachter werden waehrend der Messungen unterdrueckt.
+ */
+public class Leistungstest {
+
+	private static final int ANZAHL_KONTEN = 10_000;
+	private static final int ANZAHL_UEBERWEISUNGEN = 1_000_000;
+
+	/**
+	 * Testprogramm fuer den Durchsatzvergleich
+	 * @param args wird nicht benutzt
+	 * @throws Exception wenn eine Messung fehlschlaegt
+	 */
+	public static void main(String[] args) throws Exception {
+		PrintStream ausgabe = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		try {
+			long dauer = synchronMessen(threads);
+			ausgabe.println(ergebnis("Bank synchron, " + threads + " Threads", dauer));
+
+			dauer = shardsMessen(threads);
+			ausgabe.println(ergebnis("ShardAusfuehrung, " + threads + " Shards", dauer));
+		} finally {
+			System.setOut(ausgabe);
+		}
+	}
+
+	/**
+	 * erstellt eine Bank mit ANZAHL_KONTEN Girokonten mit je 1000 Euro Guthaben
+	 * @param nummern Liste, in die die Kontonummern eingetragen werden
+	 * @return die Bank
+	 * @throws KontoNichtExistiertException sollte nicht auftreten
+	 */
+	private static Bank bankErstellen(List<Long> nummern) throws KontoNichtExistiertException {
+		Bank bank = new Bank(12345678);
+		Kunde kunde = new Kunde();
+		for (int i = 0; i < ANZAHL_KONTEN; i++) {
+			long nummer = bank.kontoErstellen(new GirokontoFabrik(), kunde);
+			bank.geldEinzahlen(nummer, 1000);
+			nummern.add(nummer);
+		}
+		return bank;
+	}
+
+	/**
+	 * misst die Ueberweisungen ueber die synchronen Methoden der Bank, verteilt auf mehrere Threads
+	 * @param threads Anzahl der Threads
+	 * @return Dauer in Nanosekunden
+	 */
+	private static long synchronMessen(int threads) throws Exception {
+		List<Long> nummern = new ArrayList<>();
+		Bank bank = bankErstellen(nummern);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			long seed = t;
+			executor.submit(() -> {
+				Random zufall = new Random(seed);
+				for (int i = 0; i < ANZAHL_UEBERWEISUNGEN / threads; i++) {
+					bank.geldUeberweisen(nummern.get(zufall.nextInt(ANZAHL_KONTEN)), nummern.get(zufall.nextInt(ANZAHL_KONTEN)), 1, "Leistungstest");
+				}
+				return null;
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.MINUTES);
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * misst die Ueberweisungen ueber die ShardAusfuehrung
+	 * @param shards Anzahl der Shards
+	 * @return Dauer in Nanosekunden
+	 */
+	private static long shardsMessen(int shards) throws Exception {
+		List<Long> nummern = new ArrayList<>();
+		Bank bank = bankErstellen(nummern);
+		ShardAusfuehrung ausfuehrung = bank.shardAusfuehrungStarten(shards);
+		Random zufall = new Random(0);
+
+		long start = System.nanoTime();
+		CompletableFuture<Boolean> letzte = null;
+		for (int i = 0; i < ANZAHL_UEBERWEISUNGEN; i++) {
+			letzte = ausfuehrung.geldUeberweisen(nummern.get(zufall.nextInt(ANZAHL_KONTEN)), nummern.get(zufall.nextInt(ANZAHL_KONTEN)), 1, "Leistungstest");
+		}
+		ausfuehrung.beenden(); // wartet, bis alle Auftraege abgearbeitet sind
+		long dauer = System.nanoTime() - start;
+		letzte.join();
+		return dauer;
+	}
+
+	/**
+	 * formatiert das Ergebnis einer Messung
+	 * @param name Name der Messung
+	 * @param dauer Dauer in Nanosekunden
+	 * @return formatierte Ausgabe
+	 */
+	private static String ergebnis(String name, long dauer) {
+		double sekunden = dauer / 1e9;
+		return String.format("%-40s %8.3f s %,14.0f Ueberweisungen/s", name, sekunden, ANZAHL_UEBERWEISUNGEN / sekunden);
+	}
+}
@@ -3,10 +3,16 @@ package bank;
 import fabriken.Kontofabrik;
 import util.Logger;
 import verarbeitung.*;
+import verarbeitung.beobachter.Ereignisbus;
 
 import java.io.*;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
@@ -14,15 +20,96 @@ public class Bank implements Serializable, Cloneable {
 
     private static final long serialVersionUID = 1L; // Aus Musterloesung.
 
+    /**
+     * Anzahl der Locks, auf die die Konten verteilt werden. Muss eine Zweierpotenz sein.
+     */
+    private static final int ANZAHL_LOCKS = 64;
+
+    /**
+     * so viele Konten traegt {@link #kontenEinfuegen(long, Konto[], ForkJoinPool)} auf einmal in jeden Index ein
+     */
+    private static final int EINFUEGEBLOCK = 4096;
+
     private final long bankleitzahl;
-    private long letztVergebeneNummer;
+    private final KontonummernVergabe nummernVergabe;
+
+    /**
+     * true, wenn kontoErstellen die Nummern geloeschter Konten wieder vergibt
+     */
+    private volatile boolean nummernWiederverwenden;
+
+    /**
+     * die Konten der Bank nach Kontonummer
+     */
+    private final KontoTabelle kontoliste;
+
+    /**
+     * Kontostand, Sperre usw. aller Konten in Spalten, fuer Auswertungen ueber die ganze Bank
+     */
+    private transient Kontospalten spalten;
+
+    /**
+     * Konten und Summe der Kontostaende je Kunde; null bis zur ersten Abfrage, siehe {@link #kundenindex()}
+     */
+    private transient volatile Kundenindex kundenindex;
+
+    /**
+     * alle Konten nach Kontostand sortiert; null bis zur ersten Abfrage, siehe {@link #kontostandindex()}
+     */
+    private transient volatile Kontostandindex kontostandindex;
+
+    /**
+     * die nicht gesperrten Konten im Minus
+     */
+    private transient Minuskonten minuskonten;
+
+    /**
+     * true, wenn Konten gesperrt werden, sobald ihr Kontostand negativ wird, statt erst bei pleitegeierSperren
+     */
+    private volatile boolean sofortSperren;
 
-    private Map<Long, Konto> kontoliste;
+    /**
+     * alle Indizes, die beim Erstellen und Loeschen von Konten nachgefuehrt werden (Spalten, Minuskonten und, sobald
+     * sie gebraucht werden, Kunden- und Kontostandindex sowie ein {@link Journal}). Aenderungen der Konten erfahren sie synchron ueber die
+     * {@link #nachfuehrung}, auch wenn ein Ereignisbus verwendet wird. Wird beim Hinzufuegen eines Index ersetzt.
+     * In einer Kopie der Bank null, bis sie zum ersten Mal gebraucht werden, siehe {@link #indizesAufbauen()}.
+     */
+    private transient volatile Kontoindex[] indizes;
+
+    /**
+     * gibt die Aenderungen der Konten an die Indizes weiter; ist bei jedem Konto der Bank angemeldet, statt jedes
+     * Index einzeln als Beobachter
+     */
+    private transient Kontonachfuehrung nachfuehrung;
+
+    /**
+     * Anzahl der Konten, die nicht kopiert werden koennen (weder Girokonto noch Sparbuch); solange es welche gibt,
+     * kann die Bank nicht geklont werden
+     */
+    private final AtomicInteger nichtKopierbar = new AtomicInteger();
+
+    /**
+     * Locks fuer die Konten. Ein Konto wird immer mit dem Lock kontoLocks[kontonummer % ANZAHL_LOCKS] geschuetzt.
+     * Werden mehrere Konten gleichzeitig gesperrt, werden die Locks immer in aufsteigender Reihenfolge erworben,
+     * damit sich gegenlaeufige Ueberweisungen nicht gegenseitig blockieren (kein Deadlock). Gebuchte Konten werden
+     * erst unter ihrem Lock nachgeschlagen, damit {@link #clone()} kein Konto teilt, das gerade gebucht wird.
+     */
+    private final ReentrantLock[] kontoLocks;
+
+    /**
+     * Ereignisbus, der die Beobachter der Konten asynchron benachrichtigt, oder null fuer synchrone Benachrichtigung
+     */
+    private transient volatile Ereignisbus ereignisbus;
 
     private final String msgAbsenderNichtExist = "Das Konto des Absenders existiert nicht";
     private final String msgEmpfaengerNichtExist = "Das Konto des Empfängers existiert nicht";
     private final String msgKontoNichtExist = "Das Konto existiert nicht";
 
+    /**
+     * Verwendungszweck der Gegenbuchungen, siehe {@link #zurueckbuchen(Konto, long, RuntimeException)}
+     */
+    private static final String STORNO = "Storno";
+
     /**
      * erstellt eine Bank mit der angegebenen Bankleitzahl
      *
@@ -36,8 +123,243 @@ public class Bank implements Serializable, Cloneable {
         }
 
         this.bankleitzahl = bankleitzahl;
-        this.kontoliste = new TreeMap<>();
-        this.letztVergebeneNummer = 0;
+        this.kontoliste = new KontoTabelle();
+        this.spalten = new Kontospalten();
+        this.minuskonten = new Minuskonten();
+        this.indizes = new Kontoindex[]{spalten, minuskonten};
+        this.nachfuehrung = new Indexnachfuehrung();
+        this.nummernVergabe = new KontonummernVergabe();
+        this.kontoLocks = neueLocks();
+        kontoliste.setErsetzung(this::kontoErsetzt);
+    }
+
+    /**
+     * erstellt eine Kopie, die sich alle Konten mit der Vorlage teilt, bis eine der beiden Banken sie aendert, siehe
+     * {@link #clone()}. Die Indizes der Kopie entstehen erst bei Bedarf.
+     *
+     * @param vorlage die Vorlage; der Aufrufer haelt alle Locks ihrer Konten
+     */
+    private Bank(Bank vorlage) {
+        this.bankleitzahl = vorlage.bankleitzahl;
+        this.kontoliste = vorlage.kontoliste.abzweigen(this::kontoErsetzt);
+        this.nummernVergabe = vorlage.nummernVergabe.kopie();
+        this.nummernWiederverwenden = vorlage.nummernWiederverwenden;
+        this.sofortSperren = vorlage.sofortSperren;
+        this.kontoLocks = neueLocks();
+        this.nachfuehrung = new Indexnachfuehrung();
+    }
+
+    private static ReentrantLock[] neueLocks() {
+        ReentrantLock[] locks = new ReentrantLock[ANZAHL_LOCKS];
+        for (int i = 0; i < ANZAHL_LOCKS; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    /**
+     * baut die Indizes auf, wenn es sie noch nicht gibt (in einer Kopie der Bank oder nach dem Deserialisieren).
+     * Dabei werden alle noch mit einer anderen Bank geteilten Konten kopiert.
+     */
+    private void indizesAufbauen() {
+        if (indizes != null) {
+            return;
+        }
+        synchronized (kontoliste) {
+            if (indizes != null) {
+                return;
+            }
+            spalten = new Kontospalten();
+            minuskonten = new Minuskonten();
+            minuskonten.setSofortSperren(sofortSperren);
+            Kontoindex[] neu = {spalten, minuskonten};
+            kontoliste.forEachMitNummer((k, nummer) -> {
+                k.nachfuehrungAnmelden(nachfuehrung);
+                for (Kontoindex index : neu) {
+                    index.eintragen(nummer, k);
+                }
+            });
+            indizes = neu;
+        }
+    }
+
+    /**
+     * nimmt einen weiteren Index auf und traegt alle vorhandenen Konten ein
+     *
+     * @param index der Index
+     */
+    private void indexHinzufuegen(Kontoindex index) {
+        indizesAufbauen();
+        synchronized (kontoliste) {
+            Kontoindex[] alt = indizes;
+            if (Arrays.asList(alt).contains(index)) {
+                return;
+            }
+            Kontoindex[] neu = Arrays.copyOf(alt, alt.length + 1);
+            neu[alt.length] = index;
+            indizes = neu;
+        }
+        kontoliste.forEachMitNummer((k, nummer) -> index.eintragen(nummer, k));
+    }
+
+    /**
+     * liefert den Kundenindex und legt ihn beim ersten Aufruf an. Bis dahin kostet er die Buchungen nichts.
+     *
+     * @return der Kundenindex mit allen Konten
+     */
+    private Kundenindex kundenindex() {
+        Kundenindex k = kundenindex;
+        if (k == null) {
+            synchronized (kontoliste) { // haelt auch put und remove auf, bis alle Konten eingetragen sind
+                k = kundenindex;
+                if (k == null) {
+                    k = new Kundenindex();
+                    indexHinzufuegen(k);
+                    kundenindex = k;
+                }
+            }
+        }
+        return k;
+    }
+
+    /**
+     * liefert den Kontostandindex und legt ihn beim ersten Aufruf an. Bis dahin kostet er die Buchungen nichts.
+     *
+     * @return der Kontostandindex mit allen Konten
+     */
+    private Kontostandindex kontostandindex() {
+        Kontostandindex k = kontostandindex;
+        if (k == null) {
+            synchronized (kontoliste) {
+                k = kontostandindex;
+                if (k == null) {
+                    k = new Kontostandindex();
+                    indexHinzufuegen(k);
+                    kontostandindex = k;
+                }
+            }
+        }
+        return k;
+    }
+
+    /**
+     * gibt die Aenderungen der Konten an alle Indizes weiter, ohne Ereignis und ohne Observer-Support am Konto
+     */
+    private final class Indexnachfuehrung implements Kontonachfuehrung {
+
+        /**
+         * gibt Kopien der Bank, die sich das Konto noch mit dieser teilen, Gelegenheit, es vorher zu kopieren
+         */
+        @Override
+        public void vorAenderung(Konto konto) {
+            kontoliste.vorAenderung(konto);
+        }
+
+        /**
+         * @throws RuntimeException die erste Ausnahme eines Index (z.B. eines geschlossenen {@link Journal}), erst
+         *                          nachdem alle Indizes nachgefuehrt sind
+         */
+        @Override
+        public void kontostandGeaendert(Konto konto, long alt, long neu) {
+            Kontoindex[] aktuell = indizes;
+            if (aktuell != null) {
+                RuntimeException fehler = null;
+                for (Kontoindex index : aktuell) {
+                    try {
+                        index.kontostandGeaendert(konto, alt, neu);
+                    } catch (RuntimeException e) {
+                        fehler = sammeln(fehler, e);
+                    }
+                }
+                if (fehler != null) {
+                    throw fehler;
+                }
+            }
+        }
+
+        /**
+         * @throws RuntimeException die erste Ausnahme eines Index, erst nachdem alle Indizes nachgefuehrt sind
+         */
+        @Override
+        public void eigenschaftGeaendert(Konto konto, String name, Object alt, Object neu) {
+            Kontoindex[] aktuell = indizes;
+            if (aktuell != null) {
+                RuntimeException fehler = null;
+                for (Kontoindex index : aktuell) {
+                    try {
+                        index.eigenschaftGeaendert(konto, name, alt, neu);
+                    } catch (RuntimeException e) {
+                        fehler = sammeln(fehler, e);
+                    }
+                }
+                if (fehler != null) {
+                    throw fehler;
+                }
+            }
+        }
+    }
+
+    /**
+     * merkt sich die erste Ausnahme und haengt weitere an sie an
+     */
+    private static RuntimeException sammeln(RuntimeException bisher, RuntimeException neu) {
+        if (bisher == null) {
+            return neu;
+        }
+        bisher.addSuppressed(neu);
+        return bisher;
+    }
+
+    /**
+     * haengt Ereignisbus und Indizes um, wenn die Kontoliste ein mit einer anderen Bank geteiltes Konto durch ihre
+     * eigene Kopie ersetzt
+     */
+    private void kontoErsetzt(long nummer, Konto alt, Konto neu) {
+        Ereignisbus bus = ereignisbus;
+        if (bus != null) {
+            bus.beobachterUebernehmen(neu);
+        }
+        alt.nachfuehrungAbmelden(nachfuehrung);
+        neu.nachfuehrungAnmelden(nachfuehrung);
+        Kontoindex[] aktuell = indizes;
+        if (aktuell != null) {
+            for (Kontoindex index : aktuell) {
+                index.ersetzen(nummer, alt, neu);
+            }
+        }
+    }
+
+    /**
+     * Erwirbt die Locks aller angegebenen Konten. Die Locks werden in aufsteigender Reihenfolge erworben und jedes Lock
+     * nur einmal, auch wenn mehrere Konten auf dasselbe Lock fallen.
+     *
+     * @param kontonummern Nummern der zu sperrenden Konten
+     * @return die erworbenen Locks, die mit {@link #locksFreigeben(ReentrantLock[])} wieder freigegeben werden muessen
+     */
+    private ReentrantLock[] locksErwerben(long... kontonummern) {
+        int[] indizes = LongStream.of(kontonummern)
+                .mapToInt(kontonummer -> (int) (kontonummer & (ANZAHL_LOCKS - 1)))
+                .distinct()
+                .sorted()
+                .toArray();
+
+        ReentrantLock[] erworben = new ReentrantLock[indizes.length];
+        for (int i = 0; i < indizes.length; i++) {
+            erworben[i] = kontoLocks[indizes[i]];
+            erworben[i].lock();
+        }
+        return erworben;
+    }
+
+    /**
+     * Gibt die mit {@link #locksErwerben(long...)} erworbenen Locks in umgekehrter Reihenfolge wieder frei.
+     *
+     * @param locks erworbene Locks
+     */
+    private static void locksFreigeben(ReentrantLock[] locks) {
+        for (int i = locks.length - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
     }
 
     /**
@@ -50,19 +372,189 @@ public class Bank implements Serializable, Cloneable {
         if (inhaber == null || fabrik == null) {
             throw new IllegalArgumentException();
         }
+        indizesAufbauen();
 
-        letztVergebeneNummer += 1; // Markiert die letzt vergebene Numemr -> ist die Kontonummer
-        long kontoNummer = letztVergebeneNummer;
+        // eine freigegebene Nummer oder die naechste aus dem Nummernblock des aufrufenden Threads
+        long kontoNummer = nummernVergabe.naechsteNummer(nummernWiederverwenden);
 
         Konto k = fabrik.erstellen(inhaber, kontoNummer); // Ein Konto aus der Fabrik erstellen
+        if (!Kontocodec.kopierbar(k)) {
+            nichtKopierbar.incrementAndGet();
+        }
+
+        Ereignisbus bus = ereignisbus;
+        if (bus != null) {
+            bus.beobachterUebernehmen(k); // Beobachter laufen dann nicht mehr im Thread der Buchung
+        }
 
         kontoliste.put(kontoNummer, k); // Dann setze das Konto in die Kontoliste
+        if (bus != null && ereignisbus != bus) {
+            bus.beobachterZurueckgeben(k); // der Bus wurde inzwischen entfernt
+        }
+        k.nachfuehrungAnmelden(nachfuehrung);
+        for (Kontoindex index : indizes) {
+            index.eintragen(kontoNummer, k); // nach dem Bus, damit die Indizes synchron nachgefuehrt werden
+        }
 
         // Wenn ein Konto von der Bank erstellt wird, wird dann automatisch die Observern angemeldet.
 
         return kontoNummer;
     }
 
+    /**
+     * laesst die Beobachter aller vorhandenen und kuenftig erstellten Konten ueber den angegebenen Ereignisbus
+     * benachrichtigen. Die Buchungen warten dann nicht mehr auf die Beobachter.
+     *
+     * @param bus der Ereignisbus
+     * @throws IllegalArgumentException wenn bus null ist
+     */
+    public void ereignisbusVerwenden(Ereignisbus bus) {
+        if (bus == null) {
+            throw new IllegalArgumentException();
+        }
+        indizesAufbauen();
+        this.ereignisbus = bus;
+        kontoliste.forEach(bus::beobachterUebernehmen); // die Indizes bleiben ueber die Nachfuehrung synchron
+    }
+
+    /**
+     * laesst die Beobachter aller Konten wieder synchron benachrichtigen und meldet den Ereignisbus bei allen Konten
+     * ab, z.B. bevor er geschlossen wird. Bereits angenommene Ereignisse stellt der Bus vorher noch zu; solange
+     * werden keine Buchungen ausgefuehrt.
+     *
+     * @return der bisherige Ereignisbus oder null, wenn keiner verwendet wurde
+     */
+    public Ereignisbus ereignisbusEntfernen() {
+        ReentrantLock[] locks = locksErwerben(LongStream.range(0, ANZAHL_LOCKS).toArray());
+        try {
+            Ereignisbus bus = ereignisbus;
+            if (bus != null) {
+                ereignisbus = null;
+                kontoliste.forEach(bus::beobachterZurueckgeben);
+            }
+            return bus;
+        } finally {
+            locksFreigeben(locks);
+        }
+    }
+
+    /**
+     * schreibt alle vorhandenen Konten mit ihrem vollstaendigen Zustand in das angegebene Journal und danach jede
+     * Aenderung eines Kontos, siehe {@link Journal}
+     *
+     * @param journal das Journal
+     * @throws IllegalArgumentException wenn journal null ist
+     * @throws java.io.UncheckedIOException wenn das Journal nicht geschrieben werden kann
+     */
+    public void journalVerwenden(Journal journal) {
+        if (journal == null) {
+            throw new IllegalArgumentException();
+        }
+        indexHinzufuegen(journal.getIndex());
+    }
+
+    /**
+     * uebernimmt wiederhergestellte Konten in diese neue, noch leere Bank, z.B. aus einem {@link Journal}
+     *
+     * @param nummern        die Kontonummern, aufsteigend sortiert
+     * @param konten         das Konto zu jeder Kontonummer
+     * @param hoechsteNummer hoechste jemals vergebene Kontonummer; die Nummern ohne Konto darunter gelten als frei
+     */
+    void kontenWiederherstellen(long[] nummern, Konto[] konten, long hoechsteNummer) {
+        for (int i = 0; i < nummern.length; i++) {
+            if (!Kontocodec.kopierbar(konten[i])) {
+                nichtKopierbar.incrementAndGet();
+            }
+            kontoliste.put(nummern[i], konten[i]);
+            konten[i].nachfuehrungAnmelden(nachfuehrung);
+            for (Kontoindex index : indizes) {
+                index.eintragen(nummern[i], konten[i]);
+            }
+        }
+        nummernVergabe.wiederherstellen(hoechsteNummer, nummern);
+    }
+
+    /**
+     * reserviert aufeinanderfolgende neue Kontonummern fuer {@link #kontenEinfuegen(long, Konto[], ForkJoinPool)}
+     *
+     * @param anzahl Anzahl der Nummern, positiv
+     * @return erste Nummer des Bereichs
+     */
+    long nummernReservieren(int anzahl) {
+        return nummernVergabe.bereichReservieren(anzahl);
+    }
+
+    /**
+     * traegt viele neue Konten auf einmal ein, z.B. aus einem {@link Massenimport}. Die Kontoliste wird dafuer einmal
+     * vergroessert, die Nachfuehrung der Bank bei allen Konten auf einmal angemeldet, dann werden alle Konten
+     * eingesetzt und danach blockweise im angegebenen Pool in die Indizes eingetragen.
+     *
+     * @param erste  Nummer des ersten Kontos; die Konten haben die mit {@link #nummernReservieren(int)} reservierten
+     *               Nummern erste, erste + 1, ...
+     * @param konten die Konten
+     * @param pool   der Pool fuer das Eintragen in die Indizes, z.B. der des Imports
+     */
+    void kontenEinfuegen(long erste, Konto[] konten, ForkJoinPool pool) {
+        indizesAufbauen();
+        Ereignisbus bus = ereignisbus;
+        kontoliste.kapazitaetSichern(konten.length);
+        Konto.nachfuehrungAnmelden(nachfuehrung, konten);
+        for (int i = 0; i < konten.length; i++) {
+            if (bus != null) {
+                bus.beobachterUebernehmen(konten[i]);
+            }
+            if (!Kontocodec.kopierbar(konten[i])) {
+                nichtKopierbar.incrementAndGet();
+            }
+            kontoliste.put(erste + i, konten[i]);
+        }
+        Kontoindex[] aktuell = indizes;
+        int bloecke = (konten.length + EINFUEGEBLOCK - 1) / EINFUEGEBLOCK;
+        pool.submit(() -> IntStream.range(0, bloecke).parallel().forEach(b -> {
+            int von = b * EINFUEGEBLOCK;
+            int bis = Math.min(konten.length, von + EINFUEGEBLOCK);
+            for (Kontoindex index : aktuell) {
+                index.alleEintragen(erste, konten, von, bis);
+            }
+        })).join();
+    }
+
+    /**
+     * liefert alle Kunden mit mindestens einem Konto, z.B. fuer einen {@link Massenimport}. Der Kundenindex wird dafuer
+     * nicht angelegt; gibt es ihn schon, kommen die Kunden aus ihm.
+     *
+     * @return die Kunden, jeder nur einmal, in keiner bestimmten Reihenfolge
+     */
+    Stream<Kunde> kunden() {
+        Kundenindex k = kundenindex;
+        if (k != null) {
+            return k.kundenNachName();
+        }
+        return kontoliste.stream().map(Konto::getInhaber).filter(Objects::nonNull).distinct();
+    }
+
+    /**
+     * @return alle Kontonummern aufsteigend, z.B. fuer eine Momentaufnahme durch den {@link Bankcodec}
+     */
+    long[] kontonummernSortiert() {
+        return kontoliste.kontonummernSortiert();
+    }
+
+    /**
+     * @param nummer die Kontonummer
+     * @return das Konto mit der Nummer oder null
+     */
+    Konto konto(long nummer) {
+        return kontoliste.get(nummer);
+    }
+
+    /**
+     * @return hoechste bisher vergebene Kontonummer, 0 wenn noch keine vergeben wurde
+     */
+    long hoechsteKontonummer() {
+        return nummernVergabe.getHoechsteVergebeneNummer();
+    }
+
     /**
      * liefert eine Auflistung von Kontoinformationen aller Konten (mindestens Kontonummer und Kontostand)
      *
@@ -71,7 +563,11 @@ public class Bank implements Serializable, Cloneable {
     public String getAlleKonten() {
         String alleKonten = "";
 
-        for (Konto k : kontoliste.values()) {
+        for (long nummer : kontoliste.kontonummernSortiert()) {
+            Konto k = kontoliste.get(nummer);
+            if (k == null) {
+                continue;
+            }
             alleKonten = "Kontonummer: " + k.getKontonummer() + ". Kontostand: " + k.getKontostandFormatiert() + "\n";
         }
 
@@ -84,7 +580,7 @@ public class Bank implements Serializable, Cloneable {
      * @return List<Long>
      */
     public List<Long> getAlleKontonummern() {
-        return new ArrayList<>(kontoliste.keySet());
+        return Arrays.stream(kontoliste.kontonummernSortiert()).boxed().collect(Collectors.toList());
     }
 
     /**
@@ -96,17 +592,19 @@ public class Bank implements Serializable, Cloneable {
      * @throws KontoNichtExistiertException wenn die angegebene Kontonummer in der Kontoliste nicht enthalten ist.
      */
     public boolean geldAbheben(long von, double betrag) throws KontoNichtExistiertException {
-        if (!kontoliste.containsKey(von)) {
-            throw new KontoNichtExistiertException(msgKontoNichtExist);
-        }
-
-        Konto k = kontoliste.get(von);
+        ReentrantLock[] locks = locksErwerben(von);
         try {
+            Konto k = kontoliste.get(von);
+            if (k == null) {
+                throw new KontoNichtExistiertException(msgKontoNichtExist);
+            }
             return k.abheben(betrag);
         } catch (GesperrtException | IllegalArgumentException e) {
             // wie kann man mit diesem Fehler umgehen?
             Logger.logFehler("Konto " + von + " ist gesperrt und möchte eine Abhebung durchfüren");
             return false;
+        } finally {
+            locksFreigeben(locks);
         }
     }
 
@@ -118,12 +616,16 @@ public class Bank implements Serializable, Cloneable {
      * @throws KontoNichtExistiertException wenn die angegebene Kontonummer in der Kontoliste nicht enthalten ist.
      */
     public void geldEinzahlen(long auf, double betrag) throws KontoNichtExistiertException, IllegalArgumentException {
-        if (!kontoliste.containsKey(auf)) {
-            throw new KontoNichtExistiertException(msgKontoNichtExist);
+        ReentrantLock[] locks = locksErwerben(auf);
+        try {
+            Konto k = kontoliste.get(auf);
+            if (k == null) {
+                throw new KontoNichtExistiertException(msgKontoNichtExist);
+            }
+            k.einzahlen(betrag);
+        } finally {
+            locksFreigeben(locks);
         }
-
-        Konto k = kontoliste.get(auf);
-        k.einzahlen(betrag);
     }
 
     /**
@@ -133,12 +635,25 @@ public class Bank implements Serializable, Cloneable {
      * @return true, wenn das Loeschen geklappt hat.
      */
     public boolean kontoLoeschen(long nummer) {
-        if (!kontoliste.containsKey(nummer)) {
-            return false;
+        indizesAufbauen();
+        ReentrantLock[] locks = locksErwerben(nummer);
+        try {
+            Konto k = kontoliste.remove(nummer);
+            if (k == null) {
+                return false;
+            }
+            if (!Kontocodec.kopierbar(k)) {
+                nichtKopierbar.decrementAndGet();
+            }
+            for (Kontoindex index : indizes) {
+                index.austragen(nummer, k);
+            }
+            k.nachfuehrungAbmelden(nachfuehrung);
+            nummernVergabe.freigeben(nummer);
+            return true;
+        } finally {
+            locksFreigeben(locks);
         }
-
-        kontoliste.remove(nummer);
-        return true;
     }
 
     /**
@@ -149,12 +664,29 @@ public class Bank implements Serializable, Cloneable {
      * @throws KontoNichtExistiertException wenn die angegebene Kontonummer in der Kontoliste nicht enthalten ist.
      */
     public double getKontostand(long nummer) throws KontoNichtExistiertException {
-        if (!kontoliste.containsKey(nummer)) {
+        Konto k = kontoliste.get(nummer);
+        if (k == null) {
             throw new KontoNichtExistiertException(msgKontoNichtExist);
         }
 
+        return k.getKontostand(); // atomar gelesen, kein Lock noetig
+    }
+
+    /**
+     * liefert Kontostand, Sperre und Waehrung des Kontos mit der angegebenen nummer als zusammenpassenden Zustand.
+     * Es wird kein Lock genommen, schreibende Threads werden nicht aufgehalten.
+     *
+     * @param nummer Nummer des Kontos
+     * @return der aktuelle Zustand des Kontos
+     * @throws KontoNichtExistiertException wenn die angegebene Kontonummer in der Kontoliste nicht enthalten ist.
+     */
+    public Kontozustand getKontozustand(long nummer) throws KontoNichtExistiertException {
         Konto k = kontoliste.get(nummer);
-        return k.getKontostand();
+        if (k == null) {
+            throw new KontoNichtExistiertException(msgKontoNichtExist);
+        }
+
+        return k.getZustand();
     }
 
     /**
@@ -172,17 +704,40 @@ public class Bank implements Serializable, Cloneable {
      */
     public boolean geldUeberweisen(long vonKontonr, long nachKontonr, double betrag, String verwendungszweck) throws KontoNichtExistiertException {
 
-        if (!kontoliste.containsKey(vonKontonr)) {
-            throw new KontoNichtExistiertException(msgAbsenderNichtExist);
-        }
+        // Die beiden Konten werden fuer die ganze Ueberweisung gesperrt, die Locks in fester Reihenfolge erworben.
+        ReentrantLock[] locks = locksErwerben(vonKontonr, nachKontonr);
+        try {
+            // Überweisung zum überweisungsfähigen Konto!
+            Konto absender = kontoliste.get(vonKontonr);
+            Konto empfaenger = kontoliste.get(nachKontonr);
 
-        if (!kontoliste.containsKey(nachKontonr)) {
-            throw new KontoNichtExistiertException(msgEmpfaengerNichtExist);
+            if (absender == null) {
+                throw new KontoNichtExistiertException(msgAbsenderNichtExist);
+            }
+
+            if (empfaenger == null) {
+                throw new KontoNichtExistiertException(msgEmpfaengerNichtExist);
+            }
+
+            return ueberweisungDurchfuehren(vonKontonr, nachKontonr, absender, empfaenger, betrag, verwendungszweck);
+        } finally {
+            locksFreigeben(locks);
         }
+    }
 
-        // Überweisung zum überweisungsfähigen Konto!
-        Konto absender = kontoliste.get(vonKontonr);
-        Konto empfaenger = kontoliste.get(nachKontonr);
+    /**
+     * fuehrt die Ueberweisung zwischen den beiden Konten durch. Die Locks der beiden Konten muessen bereits gehalten werden.
+     *
+     * @param vonKontonr       Nummer des Kontos, das die Überweisung absendet
+     * @param nachKontonr      Nummer des Kontos, das die Überweisung empfängt
+     * @param absender         das Konto, das die Ueberweisung absendet
+     * @param empfaenger       das Konto, das die Ueberweisung empfaengt
+     * @param betrag           der zu überweisende Betrag
+     * @param verwendungszweck Verwendungszweck der Überweisung
+     * @return true, wenn die Überweisung geklappt hat
+     * @throws KontoNichtExistiertException wenn das Konto des Absenders beim Zurueckbuchen nicht mehr existiert
+     */
+    private boolean ueberweisungDurchfuehren(long vonKontonr, long nachKontonr, Konto absender, Konto empfaenger, double betrag, String verwendungszweck) throws KontoNichtExistiertException {
         boolean abgesendet;
 
         // Die beiden Konten müssen überweisungsfähig sein.
@@ -196,11 +751,17 @@ public class Bank implements Serializable, Cloneable {
         }
 
         // erstmal versuchen, die Überweisung abzusenden
+        long vorherAbsender = absender.getKontostandBetrag();
+        long vorherEmpfaenger = empfaenger.getKontostandBetrag();
         try {
             abgesendet = ((Ueberweisungsfaehig) absender).ueberweisungAbsenden(betrag, empfaenger.getInhaber().getName(), empfaenger.getKontonummer(), this.bankleitzahl, verwendungszweck);
         } catch (GesperrtException | IllegalArgumentException e) {
             Logger.logFehler("Konto " + vonKontonr + " ist gesperrt + ueberweisung ");
             return false;
+        } catch (RuntimeException e) {
+            // eine Nachfuehrung (z.B. ein geschlossenes Journal) ist nach der Belastung gescheitert
+            zurueckbuchen(absender, vorherAbsender, e);
+            throw e;
         }
 
         // Empfaenger sollte hier die Ueberweisung empfangen.
@@ -213,6 +774,11 @@ public class Bank implements Serializable, Cloneable {
                 geldEinzahlen(absender.getKontonummer(), betrag);
                 Logger.logFehler("Absender " + nachKontonr + " ist gesperrt. Geld in Hoehe von " + betrag + " ist zurueck zu " + vonKontonr);
                 return false;
+            } catch (RuntimeException e) {
+                // die Gutschrift ist geschehen, aber nicht nachgefuehrt: die ganze Ueberweisung zuruecknehmen
+                zurueckbuchen(empfaenger, vorherEmpfaenger, e);
+                zurueckbuchen(absender, vorherAbsender, e);
+                throw e;
             }
         } else {
             // wenn die Ueberweisung nicht geklappt hat, return false.
@@ -220,6 +786,274 @@ public class Bank implements Serializable, Cloneable {
         }
     }
 
+    /**
+     * bucht eine bereits geschehene Aenderung des Kontostands zurueck, nachdem eine {@link Kontonachfuehrung} danach
+     * gescheitert ist. Der Aufrufer haelt das Lock des Kontos, der Kontostand hat sich also nur durch die
+     * zurueckzubuchende Aenderung bewegt. Scheitert die Nachfuehrung auch beim Zurueckbuchen, wird das an fehler
+     * angehaengt; die Gegenbuchung ist dann trotzdem geschehen.
+     *
+     * @param konto  das ueberweisungsfaehige Konto
+     * @param vorher Kontostand vor der Aenderung in der kleinsten Einheit der Waehrung
+     * @param fehler die Ausnahme der Nachfuehrung
+     */
+    private void zurueckbuchen(Konto konto, long vorher, RuntimeException fehler) {
+        long differenz = konto.getKontostandBetrag() - vorher;
+        if (differenz == 0) {
+            return;
+        }
+        Ueberweisungsfaehig k = (Ueberweisungsfaehig) konto;
+        try {
+            if (differenz < 0) {
+                k.ueberweisungEmpfangenBetrag(-differenz, STORNO, 0, bankleitzahl, STORNO);
+            } else if (!k.ueberweisungAbsendenBetrag(differenz, STORNO, 0, bankleitzahl, STORNO)) {
+                Logger.logFehler("Gutschrift auf Konto " + konto.getKontonummer() + " konnte nicht zurueckgebucht werden");
+            }
+        } catch (GesperrtException e) {
+            Logger.logFehler("Konto " + konto.getKontonummer() + " ist gesperrt, Gutschrift wird nicht zurueckgebucht");
+        } catch (RuntimeException e) {
+            fehler.addSuppressed(e);
+        }
+    }
+
+    /**
+     * fuehrt viele bankinterne Ueberweisungen als Sammelueberweisung aus. Alle beteiligten Konten werden einmal
+     * nachgeschlagen und fuer die ganze Sammelueberweisung gesperrt. Die Auftraege werden der Reihe nach gegen den
+     * laufenden Kontostand geprueft, gegenlaeufige Betraege werden verrechnet und auf jedes Konto wird nur die
+     * Nettoaenderung einmal gebucht. Die Beobachter eines Kontos werden deshalb hoechstens einmal benachrichtigt.
+     *
+     * Jeder Betrag wird vorher in die kleinste Einheit der Waehrung von Absender und Empfaenger umgerechnet (siehe
+     * {@link Betrag}); verrechnet und gebucht wird nur noch exakt in dieser Einheit.
+     *
+     * Ein Auftrag schlaegt fehl (false im Ergebnis), wenn er null ist, eines der Konten nicht existiert, nicht
+     * ueberweisungsfaehig oder gesperrt ist, die Parameter ungueltig sind oder der laufende Kontostand des Absenders die Ueberweisung
+     * nicht erlaubt.
+     *
+     * @param auftraege die Ueberweisungsauftraege
+     * @return fuer jeden Auftrag (in derselben Reihenfolge) true, wenn er ausgefuehrt wurde
+     * @throws IllegalArgumentException wenn auftraege null ist
+     */
+    public boolean[] geldUeberweisenBatch(List<Ueberweisungsauftrag> auftraege) {
+        if (auftraege == null) {
+            throw new IllegalArgumentException();
+        }
+
+        // Jedes beteiligte Konto nur einmal nachschlagen
+        Map<Long, Sammelbuchung> buchungen = new HashMap<>();
+        for (Ueberweisungsauftrag auftrag : auftraege) {
+            if (auftrag == null) {
+                continue;
+            }
+            buchungen.computeIfAbsent(auftrag.getVonKontonr(), nummer -> new Sammelbuchung());
+            buchungen.computeIfAbsent(auftrag.getNachKontonr(), nummer -> new Sammelbuchung());
+        }
+
+        boolean[] ergebnis = new boolean[auftraege.size()];
+        ReentrantLock[] locks = locksErwerben(buchungen.keySet().stream().mapToLong(Long::longValue).toArray());
+        try {
+            for (Map.Entry<Long, Sammelbuchung> buchung : buchungen.entrySet()) {
+                buchung.getValue().pruefen(kontoliste.get(buchung.getKey()));
+            }
+
+            // Auftraege der Reihe nach gegen die laufenden Kontostaende pruefen und verrechnen
+            for (int i = 0; i < ergebnis.length; i++) {
+                Ueberweisungsauftrag auftrag = auftraege.get(i);
+                if (auftrag == null) {
+                    continue;
+                }
+                Sammelbuchung absender = buchungen.get(auftrag.getVonKontonr());
+                Sammelbuchung empfaenger = buchungen.get(auftrag.getNachKontonr());
+                double betrag = auftrag.getBetrag();
+
+                if (!absender.nutzbar || !empfaenger.nutzbar || betrag < 0 || Double.isNaN(betrag) || auftrag.getVerwendungszweck() == null) {
+                    continue;
+                }
+                long nettoAbsender;
+                long nettoEmpfaenger;
+                try {
+                    long belastung = Betrag.ausDouble(betrag, absender.konto.getAktuelleWaehrung());
+                    long gutschrift = Betrag.ausDouble(betrag, empfaenger.konto.getAktuelleWaehrung());
+                    if (!((Ueberweisungsfaehig) absender.konto).istUeberweisungErlaubtBetrag(Betrag.addieren(absender.stand, absender.netto), belastung)) {
+                        continue;
+                    }
+                    nettoAbsender = Betrag.subtrahieren(absender.netto, belastung);
+                    // bei einer Ueberweisung auf dasselbe Konto ist die Belastung schon abgezogen
+                    nettoEmpfaenger = Betrag.addieren(absender == empfaenger ? nettoAbsender : empfaenger.netto, gutschrift);
+                } catch (IllegalArgumentException | ArithmeticException e) {
+                    continue; // Betrag zu gross
+                }
+
+                absender.netto = nettoAbsender;
+                empfaenger.netto = nettoEmpfaenger;
+                ergebnis[i] = true;
+            }
+
+            if (!nettoBuchen(buchungen.values(), "Sammelueberweisung")) {
+                // sollte nicht vorkommen, z.B. Rundung genau an der Dispogrenze: Auftraege einzeln ausfuehren
+                Logger.logFehler("Sammelueberweisung konnte nicht netto gebucht werden, Auftraege werden einzeln ausgefuehrt");
+                for (int i = 0; i < ergebnis.length; i++) {
+                    Ueberweisungsauftrag auftrag = auftraege.get(i);
+                    ergebnis[i] = ergebnis[i] && ueberweisungDurchfuehren(auftrag.getVonKontonr(), auftrag.getNachKontonr(),
+                            buchungen.get(auftrag.getVonKontonr()).konto, buchungen.get(auftrag.getNachKontonr()).konto,
+                            auftrag.getBetrag(), auftrag.getVerwendungszweck());
+                }
+            }
+        } catch (KontoNichtExistiertException e) {
+            // kann nicht auftreten, die Konten sind gesperrt und wurden vorher nachgeschlagen
+            throw new IllegalStateException(e);
+        } finally {
+            locksFreigeben(locks);
+        }
+        return ergebnis;
+    }
+
+    /**
+     * fuehrt eine Transaktion mit beliebig vielen Belastungen und Gutschriften ganz oder gar nicht aus.
+     * Alle beteiligten Konten werden in fester Reihenfolge gesperrt, geprueft und in einem einzigen kritischen
+     * Abschnitt gebucht. Die Transaktion schlaegt fehl (false), wenn ein Konto nicht ueberweisungsfaehig oder
+     * gesperrt ist, nicht in der Waehrung der Transaktion gefuehrt wird oder ein belastetes Konto die Belastung nach
+     * seinen Regeln nicht erlaubt; dann wird nichts gebucht. Gebucht wird exakt in der kleinsten Einheit der Waehrung.
+     *
+     * @param transaktion die Transaktion
+     * @return true, wenn alle Buchungen der Transaktion ausgefuehrt wurden
+     * @throws KontoNichtExistiertException wenn eines der beteiligten Konten nicht existiert
+     * @throws IllegalArgumentException     wenn transaktion null oder nicht ausgeglichen ist
+     */
+    public boolean transaktionAusfuehren(Transaktion transaktion) throws KontoNichtExistiertException {
+        if (transaktion == null || !transaktion.istAusgeglichen()) {
+            throw new IllegalArgumentException("Die Summe der Belastungen muss der Summe der Gutschriften entsprechen!");
+        }
+
+        Map<Long, Sammelbuchung> buchungen = new HashMap<>();
+        for (Map.Entry<Long, Long> posten : transaktion.getPosten().entrySet()) {
+            if (!kontoliste.enthaelt(posten.getKey())) {
+                throw new KontoNichtExistiertException(msgKontoNichtExist + ": " + posten.getKey());
+            }
+            Sammelbuchung buchung = new Sammelbuchung();
+            buchung.netto = posten.getValue();
+            buchungen.put(posten.getKey(), buchung);
+        }
+
+        ReentrantLock[] locks = locksErwerben(buchungen.keySet().stream().mapToLong(Long::longValue).toArray());
+        try {
+            for (Map.Entry<Long, Sammelbuchung> posten : buchungen.entrySet()) {
+                Sammelbuchung buchung = posten.getValue();
+                buchung.pruefen(kontoliste.get(posten.getKey())); // inzwischen geloescht: nicht nutzbar
+                if (!buchung.nutzbar || buchung.konto.getAktuelleWaehrung() != transaktion.getWaehrung()) {
+                    return false;
+                }
+                if (buchung.netto < 0 && !((Ueberweisungsfaehig) buchung.konto).istUeberweisungErlaubtBetrag(buchung.stand, -buchung.netto)) {
+                    return false;
+                }
+            }
+
+            // alles geprueft: eine fehlschlagende Belastung wird in nettoBuchen zurueckgebucht
+            return nettoBuchen(buchungen.values(), transaktion.getVerwendungszweck());
+        } finally {
+            locksFreigeben(locks);
+        }
+    }
+
+    /**
+     * bucht die Nettoaenderungen einer Sammelueberweisung exakt als Festkommabetraege: zuerst alle Belastungen, dann
+     * alle Gutschriften.
+     * Schlaegt eine Belastung fehl, werden die bereits gebuchten Belastungen zurueckgebucht. Scheitert eine
+     * {@link Kontonachfuehrung} (z.B. ein geschlossenes {@link Journal}), werden alle schon gebuchten Aenderungen
+     * zurueckgebucht und die Ausnahme weitergegeben.
+     *
+     * @param buchungen die Nettoaenderungen der beteiligten Konten
+     * @param zweck     Verwendungszweck der Buchungen
+     * @return true, wenn alle Nettoaenderungen gebucht wurden
+     */
+    private boolean nettoBuchen(Collection<Sammelbuchung> buchungen, String zweck) {
+        List<Sammelbuchung> beteiligt = new ArrayList<>();
+        for (Sammelbuchung buchung : buchungen) {
+            if (buchung.netto != 0) {
+                beteiligt.add(buchung);
+            }
+        }
+        long[] vorher = new long[beteiligt.size()];
+        for (int i = 0; i < vorher.length; i++) {
+            vorher[i] = beteiligt.get(i).konto.getKontostandBetrag();
+        }
+        try {
+            return nettoBuchenOhneStorno(buchungen, zweck);
+        } catch (RuntimeException e) {
+            for (int i = 0; i < vorher.length; i++) {
+                zurueckbuchen(beteiligt.get(i).konto, vorher[i], e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * bucht die Nettoaenderungen wie {@link #nettoBuchen(Collection, String)}, ohne Schutz gegen scheiternde
+     * Nachfuehrungen
+     */
+    private boolean nettoBuchenOhneStorno(Collection<Sammelbuchung> buchungen, String zweck) {
+        List<Sammelbuchung> belastet = new ArrayList<>();
+
+        for (Sammelbuchung buchung : buchungen) {
+            if (buchung.netto >= 0) {
+                continue;
+            }
+            boolean abgesendet;
+            try {
+                abgesendet = ((Ueberweisungsfaehig) buchung.konto).ueberweisungAbsendenBetrag(-buchung.netto, zweck, 0, this.bankleitzahl, zweck);
+            } catch (GesperrtException | IllegalArgumentException e) {
+                abgesendet = false;
+            }
+            if (!abgesendet) {
+                belastet.forEach(b -> ((Ueberweisungsfaehig) b.konto).ueberweisungEmpfangenBetrag(-b.netto, zweck, 0, this.bankleitzahl, zweck));
+                return false;
+            }
+            belastet.add(buchung);
+        }
+
+        for (Sammelbuchung buchung : buchungen) {
+            if (buchung.netto > 0) {
+                ((Ueberweisungsfaehig) buchung.konto).ueberweisungEmpfangenBetrag(buchung.netto, zweck, 0, this.bankleitzahl, zweck);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Zwischenstand eines Kontos waehrend einer Sammelueberweisung; Kontostand und Nettoaenderung in der kleinsten
+     * Einheit der Waehrung des Kontos
+     */
+    private static class Sammelbuchung {
+        private Konto konto;
+        private boolean nutzbar;
+        private long stand;
+        private long netto;
+
+        /**
+         * merkt sich das Konto, prueft einmal, ob es existiert, ueberweisungsfaehig und nicht gesperrt ist, und merkt
+         * sich den Kontostand. Muss unter dem Lock des Kontos aufgerufen werden.
+         *
+         * @param konto das unter dem Lock nachgeschlagene Konto oder null
+         */
+        void pruefen(Konto konto) {
+            this.konto = konto;
+            nutzbar = konto instanceof Ueberweisungsfaehig && !konto.isGesperrt();
+            stand = nutzbar ? konto.getKontostandBetrag() : 0;
+        }
+    }
+
+    /**
+     * startet eine Ausfuehrung, in der die Konten dieser Bank nach Kontonummer auf anzahlShards Threads verteilt
+     * werden. Jeder Thread veraendert als einziger die Konten seines Shards, es werden keine Locks genommen.
+     * Waehrend die Ausfuehrung laeuft, sollten die Konten nicht ueber die synchronen Methoden dieser Bank veraendert
+     * werden.
+     *
+     * @param anzahlShards Anzahl der Shards, z.B. die Anzahl der Prozessorkerne
+     * @return die gestartete Ausfuehrung, die mit {@link ShardAusfuehrung#beenden()} beendet werden muss
+     * @throws IllegalArgumentException wenn anzahlShards nicht positiv ist
+     */
+    public ShardAusfuehrung shardAusfuehrungStarten(int anzahlShards) {
+        return new ShardAusfuehrung(bankleitzahl, kontoliste, anzahlShards, ShardAusfuehrung.STANDARD_KAPAZITAET);
+    }
+
     /**
      * liefert die Bankleitzahl zurück
      *
@@ -230,16 +1064,23 @@ public class Bank implements Serializable, Cloneable {
     }
 
     /**
-     * die Methode sperrt alle Konten, deren Kontostand im Minus ist.
+     * die Methode sperrt alle Konten, deren Kontostand im Minus ist. Angesehen werden nur die Konten, die gerade
+     * ungesperrt im Minus sind, nicht alle Konten der Bank.
      */
     public void pleitegeierSperren() {
-        Stream<Konto> kontenStream = kontoliste.values().stream();
-        kontenStream.forEach(konto -> {
-            // prueft ob der aktuelle Kontostand negativ ist
-            if (konto.getKontostand() < 0) {
-                konto.sperren(); // sperrt das Konto wenn der Kontostand negativ ist.
+        indizesAufbauen();
+        for (long nummer : minuskonten.ungesperrteImMinus()) {
+            ReentrantLock[] locks = locksErwerben(nummer);
+            try {
+                Konto konto = kontoliste.get(nummer);
+                // prueft ob der aktuelle Kontostand negativ ist
+                if (konto != null && konto.getKontostand() < 0) {
+                    konto.sperren(); // sperrt das Konto wenn der Kontostand negativ ist.
+                }
+            } finally {
+                locksFreigeben(locks);
             }
-        });
+        }
     }
 
     /**
@@ -249,38 +1090,173 @@ public class Bank implements Serializable, Cloneable {
      * @return Liste aller Kunden, den Kontostand hoeher als Minimum hat.
      */
     public List<Kunde> getKundenMitVollemKonto(double minimum) {
-        Stream<Konto> kontenStream = kontoliste.values().stream();
-        return kontenStream
-                .filter(konto -> konto.getKontostand() >= minimum) // den Stream filtern, dass nur Konten mit Kontostand gleicher gleich den minimum Betrag in den Stream beinhaltet wird
+        return getKontenMitKontostandAb(minimum).stream() // nur Konten mit Kontostand groesser gleich dem minimum Betrag
+                .sorted() // wie bisher nach Kontonummer, nicht nach Kontostand
+                .map(kontoliste::get)
+                .filter(Objects::nonNull) // inzwischen geloeschte Konten
                 .map(konto -> konto.getInhaber()) // nimmt den Ihaber aller Konten im Stream heraus
                 .collect(Collectors.toList()); // den Strem in Liste umwandeln
     }
 
     /**
-     * liefert die Namen und Geburtstage aller Kunden der Bank. Doppelte Namen sollen dabei aussortiert werden. Sortieren Sie die Liste nach dem Geburtsdatum.
+     * liefert die Nummern aller Konten mit einem Kontostand von mindestens minimum (verglichen wird der Kontostand in
+     * der Kontowaehrung). Die Abfrage kostet O(log n + Anzahl der Treffer), es werden nicht alle Konten durchsucht.
      *
-     * @return Namen und geburtstage aller Kunden.
+     * @param minimum Mindestkontostand
+     * @return Kontonummern, aufsteigend nach Kontostand
      */
-    public String getKundengeburtstage() {
+    public List<Long> getKontenMitKontostandAb(double minimum) {
+        if (Double.isNaN(minimum)) {
+            return new ArrayList<>();
+        }
+        // kleinster Schluessel, der nicht unter minimum liegt; der Index rechnet jeden Kontostand mit dem Faktor seiner
+        // eigenen Waehrung auf dieselbe Einheit um (long-Cast begrenzt nach oben und unten)
+        long untergrenze = (long) Math.ceil(minimum * Kontostandindex.EINHEIT);
+        indizesAufbauen();
+        return LongStream.of(kontostandindex().mitKontostandAb(untergrenze)).boxed().collect(Collectors.toList());
+    }
 
-        Stream<Kunde> kontenStream = kontoliste
-                .values()
-                .stream()
-                .map(konto -> konto.getInhaber()) // nimmt Ihaber aller Konten heraus
-                .distinct() // doppelte namen aussortieren
-                .sorted((kunde1, kunde2) -> kunde1.getName().compareTo(kunde2.getName())); // sortiert die inhaltee des streams
+    /**
+     * liefert die Nummern der Konten mit den hoechsten Kontostaenden (verglichen wird der Kontostand in der
+     * Kontowaehrung). Die Abfrage kostet O(log n + anzahl), es werden nicht alle Konten durchsucht.
+     *
+     * @param anzahl hoechstens so viele Konten
+     * @return Kontonummern, absteigend nach Kontostand
+     * @throws IllegalArgumentException wenn anzahl negativ ist
+     */
+    public List<Long> getKontenMitHoechstemKontostand(int anzahl) {
+        if (anzahl < 0) {
+            throw new IllegalArgumentException();
+        }
+        indizesAufbauen();
+        return LongStream.of(kontostandindex().hoechste(anzahl)).boxed().collect(Collectors.toList());
+    }
 
-        StringBuilder builder = new StringBuilder();
+    /**
+     * liefert die Nummern der Konten mit den niedrigsten Kontostaenden (verglichen wird der Kontostand in der
+     * Kontowaehrung). Die Abfrage kostet O(log n + anzahl), es werden nicht alle Konten durchsucht.
+     *
+     * @param anzahl hoechstens so viele Konten
+     * @return Kontonummern, aufsteigend nach Kontostand
+     * @throws IllegalArgumentException wenn anzahl negativ ist
+     */
+    public List<Long> getKontenMitNiedrigstemKontostand(int anzahl) {
+        if (anzahl < 0) {
+            throw new IllegalArgumentException();
+        }
+        indizesAufbauen();
+        return LongStream.of(kontostandindex().niedrigste(anzahl)).boxed().collect(Collectors.toList());
+    }
 
-        kontenStream.forEach(kunde -> {
-            String str = "Name: " + kunde.getName() + " " + kunde.getNachname() + ". Geburtstag: " + kunde.getGeburtstag().toString() + System.lineSeparator();
+    /**
+     * liefert die Summe der Kontostaende aller Konten, die in der angegebenen Waehrung gefuehrt werden
+     *
+     * @param waehrung die Waehrung
+     * @return Summe der Kontostaende in waehrung
+     * @throws IllegalArgumentException wenn waehrung null ist
+     * @throws ArithmeticException wenn die Summe nicht in einen long passt
+     */
+    public double getSummeKontostaende(Waehrung waehrung) {
+        return Betrag.inDouble(getSummeKontostaendeBetrag(waehrung), waehrung);
+    }
+
+    /**
+     * liefert die Summe der Kontostaende aller Konten, die in der angegebenen Waehrung gefuehrt werden, exakt
+     * als Festkommabetrag
+     *
+     * @param waehrung die Waehrung
+     * @return Summe der Kontostaende in der kleinsten Einheit von waehrung, siehe {@link Betrag}
+     * @throws IllegalArgumentException wenn waehrung null ist
+     * @throws ArithmeticException wenn die Summe nicht in einen long passt
+     */
+    public long getSummeKontostaendeBetrag(Waehrung waehrung) {
+        if (waehrung == null) {
+            throw new IllegalArgumentException();
+        }
+        indizesAufbauen();
+        return spalten.summeKontostaende(waehrung);
+    }
+
+    /**
+     * liefert die Anzahl der Konten der angegebenen Kontoart
+     *
+     * @param art die Kontoart
+     * @return Anzahl der Konten
+     * @throws IllegalArgumentException wenn art null ist
+     */
+    public int getAnzahlKonten(Kontoart art) {
+        if (art == null) {
+            throw new IllegalArgumentException();
+        }
+        indizesAufbauen();
+        return spalten.anzahlKonten(art);
+    }
+
+    /**
+     * liefert die Nummern aller Konten des Kunden, ohne alle Konten der Bank zu durchsuchen
+     *
+     * @param kunde der Kunde
+     * @return Kontonummern aufsteigend sortiert, leer wenn der Kunde kein Konto hat
+     * @throws IllegalArgumentException wenn kunde null ist
+     */
+    public List<Long> getKontonummern(Kunde kunde) {
+        if (kunde == null) {
+            throw new IllegalArgumentException();
+        }
+        indizesAufbauen();
+        return LongStream.of(kundenindex().kontonummern(kunde))
+                .boxed()
+                .collect(Collectors.toList());
+    }
 
-            builder.append(str);
-        });
+    /**
+     * liefert die Summe der Kontostaende aller Konten des Kunden in Euro. Die Summe wird bei jeder Buchung
+     * nachgefuehrt; nur die Umrechnung in Euro geschieht beim Aufruf, mit den aktuellen Wechselkursen.
+     *
+     * @param kunde der Kunde
+     * @return Summe der Kontostaende in Euro, 0 wenn der Kunde kein Konto hat
+     * @throws IllegalArgumentException wenn kunde null ist
+     */
+    public double getGesamtkontostand(Kunde kunde) {
+        if (kunde == null) {
+            throw new IllegalArgumentException();
+        }
+        indizesAufbauen();
+        return Betrag.inDouble(kundenindex().gesamtkontostand(kunde, Waehrung.EUR), Waehrung.EUR);
+    }
 
+    /**
+     * liefert die Namen und Geburtstage aller Kunden der Bank. Jeder Kunde steht nur einmal in der Liste, nach Namen sortiert.
+     * Die Kunden kommen schon sortiert aus dem Kundenindex.
+     *
+     * @return Namen und geburtstage aller Kunden.
+     */
+    public String getKundengeburtstage() {
+        StringBuilder builder = new StringBuilder();
+        indizesAufbauen();
+        kundenindex().kundenNachName().forEach(kunde -> builder.append("Name: ").append(kunde.getName()).append(' ')
+                .append(kunde.getNachname()).append(". Geburtstag: ").append(kunde.getGeburtstag())
+                .append(System.lineSeparator()));
         return builder.toString();
     }
 
+    /**
+     * liefert alle Kunden, die in den naechsten Tagen Geburtstag haben (das Jahr zaehlt nicht), z.B. fuer die
+     * Geburtstage dieser Woche getKundenMitGeburtstag(LocalDate.now(), 7)
+     *
+     * @param von  erster Tag
+     * @param tage Anzahl der Tage ab von (einschliesslich von)
+     * @return Kunden in der Reihenfolge ihrer Geburtstage ab von
+     * @throws IllegalArgumentException wenn von null oder tage nicht positiv ist
+     */
+    public List<Kunde> getKundenMitGeburtstag(LocalDate von, int tage) {
+        if (von == null || tage < 1) {
+            throw new IllegalArgumentException();
+        }
+        indizesAufbauen();
+        return kundenindex().kundenMitGeburtstag(von, tage).collect(Collectors.toList());
+    }
+
     /**
      * liefert eine Liste aller freien Kontonummern, die im von Ihnen vergebenen Bereich
      * liegen (sicher gibt es in Ihrem Programm eine Untergrenze für Kontonummern
@@ -294,39 +1270,95 @@ public class Bank implements Serializable, Cloneable {
             return new ArrayList<>();
         }
 
-        return LongStream
-                .rangeClosed(1, letztVergebeneNummer) // Erstmal eine Longstream im Intervall 1 bis letzt vergebener Nummer erzeugen
-                .boxed() // Dann diesen Longstream in einen Stream<Long> umwandeln
-                .filter(kontonummer -> !kontoliste.containsKey(kontonummer)) // den Stream filtern, dass nur kontonummern, die keinem Konto zugeordnet ist, beeihaltet werden
-                .collect(Collectors.toList()); // den Stream in eine Liste umwandeln
+        // die Nummernvergabe fuehrt die Luecken selbst, es muessen nicht alle Nummern durchsucht werden
+        return LongStream.of(nummernVergabe.getLuecken())
+                .boxed()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * legt fest, ob kontoErstellen die Nummern geloeschter Konten wieder vergibt. Dann wird immer die kleinste
+     * freie Nummer zuerst vergeben. Standardmaessig werden Nummern nicht wiederverwendet.
+     *
+     * @param wiederverwenden true, wenn freigewordene Nummern wieder vergeben werden sollen
+     */
+    public void setNummernWiederverwenden(boolean wiederverwenden) {
+        this.nummernWiederverwenden = wiederverwenden;
+    }
+
+    /**
+     * @return true, wenn kontoErstellen die Nummern geloeschter Konten wieder vergibt
+     */
+    public boolean isNummernWiederverwenden() {
+        return nummernWiederverwenden;
+    }
+
+    /**
+     * legt fest, ob Konten sofort gesperrt werden, wenn ihr Kontostand negativ wird, noch waehrend der Buchung.
+     * Beim Einschalten werden alle Konten gesperrt, die schon im Minus sind. Standardmaessig sperrt erst
+     * {@link #pleitegeierSperren()}.
+     *
+     * @param sofort true fuer sofortiges Sperren
+     */
+    public void setSofortSperren(boolean sofort) {
+        indizesAufbauen();
+        this.sofortSperren = sofort;
+        minuskonten.setSofortSperren(sofort);
+        if (sofort) {
+            pleitegeierSperren();
+        }
+    }
+
+    /**
+     * @return true, wenn Konten gesperrt werden, sobald ihr Kontostand negativ wird
+     */
+    public boolean isSofortSperren() {
+        return sofortSperren;
+    }
+
+    /**
+     * liefert die Anzahl der Konten, die im Minus, aber noch nicht gesperrt sind
+     *
+     * @return Anzahl der Konten
+     */
+    public int getAnzahlUngesperrteImMinus() {
+        indizesAufbauen();
+        return minuskonten.anzahl();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        nachfuehrung = new Indexnachfuehrung();
+        // die Indizes werden nicht serialisiert, sondern aus den Konten neu aufgebaut; ein Journal gehoert nicht
+        // zur Kopie
+        kontoliste.setErsetzung(this::kontoErsetzt);
+        indizesAufbauen();
     }
 
     /**
-     * Liefert eine vollstaendige Kopie von this zurueck.
+     * Liefert eine vollstaendige Kopie von this zurueck, in O(1): Kopie und Original teilen sich alle Konten, bis die
+     * Kopie ein Konto anfasst oder das Original eines aendert; erst dann bekommt die Kopie ihre eigene Kopie davon
+     * (siehe {@link KontoTabelle}). Das Original behaelt seine Konten samt Beobachtern und Bindungen, auch Referenzen
+     * auf seine Konten bleiben gueltig. Aenderungen der einen Bank sieht die andere nicht. Das gilt auch fuer die Kunden: die Konten der Kopie gehoeren
+     * eigenen Kopien der Kunden (je Kunde eine), das Original behaelt seine Kunden. Die Indizes der Kopie entstehen
+     * beim ersten Erstellen oder
+     * Loeschen eines Kontos oder bei der ersten Auswertung. Ein Journal oder ein Ereignisbus gehoeren nicht
+     * zur Kopie. Buchungen ueber eine {@link ShardAusfuehrung} und Aenderungen, die direkt an Konten vorgenommen
+     * werden, muessen vor dem Klonen abgeschlossen sein.
      *
      * @return vollstaendige Kopie von this
+     * @throws CloneNotSupportedException wenn ein Konto weder Girokonto noch Sparbuch ist
      */
     public Bank clone() throws CloneNotSupportedException {
-        byte[] arr;
-        try (
-                ByteArrayOutputStream baout = new ByteArrayOutputStream();
-                ObjectOutputStream oo = new ObjectOutputStream(baout);
-                ) {
-            oo.writeObject(this);
-            arr = baout.toByteArray();
-        } catch (NotSerializableException e) {
-            throw new CloneNotSupportedException();
-        } catch (IOException e) {
-            return null;
-        }
-
-        try (
-                ByteArrayInputStream bain = new ByteArrayInputStream(arr);
-                ObjectInputStream oi = new ObjectInputStream(bain);
-        ) {
-            return (Bank) oi.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            return null;
+        if (nichtKopierbar.get() > 0) {
+            throw new CloneNotSupportedException("Die Bank enthaelt Konten, die nicht kopiert werden koennen");
+        }
+        // keine Buchung darf gerade ein Konto in der Hand haben, das danach geteilt ist
+        ReentrantLock[] locks = locksErwerben(LongStream.range(0, ANZAHL_LOCKS).toArray());
+        try {
+            return new Bank(this);
+        } finally {
+            locksFreigeben(locks);
         }
     }
 }
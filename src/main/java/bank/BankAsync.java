@@ -0,0 +1,190 @@
+package bank;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchrone Fassade fuer die Operationen einer {@link Bank}. Jeder Aufruf wird auf dem angegebenen Executor
+ * ausgefuehrt und liefert sofort ein {@link CompletableFuture}. Fehler wie {@link KontoNichtExistiertException}
+ * werden nicht geworfen, sondern lassen das Future fehlschlagen.
+ *
+ * Einen selbst erzeugten Executor (siehe {@link #mitVirtuellenThreads(Bank)}) faehrt {@link #close()} herunter;
+ * einen uebergebenen Executor verwaltet weiterhin der Aufrufer.
+ */
+public class BankAsync implements AutoCloseable {
+
+    private final Bank bank;
+    private final Executor executor;
+
+    /**
+     * der von der Fassade selbst erzeugte Executor, null bei einem uebergebenen
+     */
+    private final ExecutorService eigenerExecutor;
+
+    /**
+     * Ein Aufruf der Bank, der eine Exception werfen darf
+     *
+     * @param <T> Ergebnistyp
+     */
+    @FunctionalInterface
+    private interface BankAufruf<T> {
+        T ausfuehren() throws Exception;
+    }
+
+    /**
+     * erstellt eine asynchrone Fassade
+     *
+     * @param bank     die Bank, deren Operationen ausgefuehrt werden
+     * @param executor der Executor, auf dem die Operationen laufen
+     * @throws IllegalArgumentException wenn bank oder executor null ist
+     */
+    public BankAsync(Bank bank, Executor executor) {
+        this(bank, executor, null);
+    }
+
+    private BankAsync(Bank bank, Executor executor, ExecutorService eigenerExecutor) {
+        if (bank == null || executor == null) {
+            throw new IllegalArgumentException("Bank und Executor duerfen nicht null sein!");
+        }
+        this.bank = bank;
+        this.executor = executor;
+        this.eigenerExecutor = eigenerExecutor;
+    }
+
+    /**
+     * erstellt eine asynchrone Fassade, die jede Operation in einem eigenen virtuellen Thread ausfuehrt. Auf JDKs
+     * ohne virtuelle Threads wird ein Thread-Pool mit wachsender Groesse benutzt. Die Fassade gehoert dann dem
+     * Aufrufer und muss mit {@link #close()} geschlossen werden.
+     *
+     * @param bank die Bank, deren Operationen ausgefuehrt werden
+     * @return die asynchrone Fassade
+     * @throws IllegalArgumentException wenn bank null ist
+     */
+    public static BankAsync mitVirtuellenThreads(Bank bank) {
+        if (bank == null) {
+            throw new IllegalArgumentException("Bank darf nicht null sein!");
+        }
+        ExecutorService executor = virtuellerExecutor();
+        return new BankAsync(bank, executor, executor);
+    }
+
+    /**
+     * nimmt keine neuen Operationen mehr an und wartet, bis die schon angenommenen ausgefuehrt sind. Faehrt nur
+     * einen von der Fassade selbst erzeugten Executor herunter; bei einem uebergebenen Executor passiert nichts.
+     * Wird der Thread beim Warten unterbrochen, werden die laufenden Operationen abgebrochen.
+     */
+    @Override
+    public void close() {
+        if (eigenerExecutor == null) {
+            return;
+        }
+        eigenerExecutor.shutdown();
+        try {
+            while (!eigenerExecutor.awaitTermination(1, TimeUnit.DAYS)) {
+                // weiter warten
+            }
+        } catch (InterruptedException e) {
+            eigenerExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * liefert Executors.newVirtualThreadPerTaskExecutor(), wenn das JDK es anbietet, sonst einen Cached-Thread-Pool.
+     * Die Methode wird ueber Reflection gesucht, damit das Projekt weiterhin mit aelteren JDKs uebersetzt werden kann.
+     *
+     * @return Executor
+     */
+    static ExecutorService virtuellerExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * fuehrt den Aufruf auf dem Executor aus
+     *
+     * @param aufruf der Aufruf
+     * @param <T>    Ergebnistyp
+     * @return Future mit dem Ergebnis bzw. der geworfenen Exception
+     */
+    private <T> CompletableFuture<T> asynchron(BankAufruf<T> aufruf) {
+        CompletableFuture<T> ergebnis = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    ergebnis.complete(aufruf.ausfuehren());
+                } catch (Exception e) {
+                    ergebnis.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ergebnis.completeExceptionally(e);
+        }
+        return ergebnis;
+    }
+
+    /**
+     * zahlt den angegebenen Betrag auf das Konto mit der Nummer auf ein
+     *
+     * @param auf    Nummer des Kontos, worauf der Betrag eingezahlt wird.
+     * @param betrag der zu einzahlende Betrag
+     * @return Future, das nach der Einzahlung erfuellt wird
+     * @see Bank#geldEinzahlen(long, double)
+     */
+    public CompletableFuture<Void> geldEinzahlen(long auf, double betrag) {
+        return asynchron(() -> {
+            bank.geldEinzahlen(auf, betrag);
+            return null;
+        });
+    }
+
+    /**
+     * hebt den Betrag vom Konto mit der Nummer von ab
+     *
+     * @param von    Nummer des Kontos, wovon der Betrag abgehoben wird
+     * @param betrag der zu abhebende Betrag
+     * @return Future mit true, wenn die Abhebung geklappt hat
+     * @see Bank#geldAbheben(long, double)
+     */
+    public CompletableFuture<Boolean> geldAbheben(long von, double betrag) {
+        return asynchron(() -> bank.geldAbheben(von, betrag));
+    }
+
+    /**
+     * überweist den Betrag vom Konto vonKontonr zum Konto nachKontonr
+     *
+     * @param vonKontonr       Nummer des Kontos, das die Überweisung absendet
+     * @param nachKontonr      Nummer des Kontos, das die Überweisung empfängt
+     * @param betrag           der zu überweisende Betrag
+     * @param verwendungszweck Verwendungszweck der Überweisung
+     * @return Future mit true, wenn die Überweisung geklappt hat
+     * @see Bank#geldUeberweisen(long, long, double, String)
+     */
+    public CompletableFuture<Boolean> geldUeberweisen(long vonKontonr, long nachKontonr, double betrag, String verwendungszweck) {
+        return asynchron(() -> bank.geldUeberweisen(vonKontonr, nachKontonr, betrag, verwendungszweck));
+    }
+
+    /**
+     * liefert den Kontostand des Kontos mit der angegebenen nummer
+     *
+     * @param nummer Nummer des Kontos
+     * @return Future mit dem Kontostand
+     * @see Bank#getKontostand(long)
+     */
+    public CompletableFuture<Double> getKontostand(long nummer) {
+        return asynchron(() -> bank.getKontostand(nummer));
+    }
+}
@@ -0,0 +1,224 @@
+package bank;
+
+import verarbeitung.Konto;
+import verarbeitung.Kontocodec;
+import verarbeitung.Kunde;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binaere Momentaufnahme einer ganzen Bank, als schnellerer und kleinerer Ersatz fuer die Java-Serialisierung
+ * (z.B. fuer {@link Bank#clone()}). Geschrieben werden Bankleitzahl, Einstellungen, hoechste vergebene Kontonummer,
+ * jeder Inhaber genau einmal und dann die Konten aufsteigend nach Kontonummer; von einer Kontonummer steht nur der
+ * Abstand zur vorigen als Varint in der Aufnahme. Kunden und Konten schreibt der {@link Kontocodec}.
+ *
+ * Gelesen und geschrieben wird ueber NIO-Puffer, in eine Datei ueber einen {@link FileChannel}. Beim Lesen entstehen
+ * die Konten ueber ihre Konstruktoren mit ihren Standardbeobachtern und werden in alle Indizes der neuen Bank
+ * eingetragen, wie bei neu erstellten Konten.
+ */
+public final class Bankcodec {
+
+    private static final int KENNUNG = 0x42414E4B; // "BANK"
+    private static final byte FORMAT = 1;
+
+    private static final int FLAG_NUMMERN_WIEDERVERWENDEN = 1;
+    private static final int FLAG_SOFORT_SPERREN = 2;
+
+    private static final int PUFFER = 1 << 16;
+
+    private Bankcodec() {
+    }
+
+    /**
+     * Ziel einer Aufnahme: ein Puffer, der in eine Datei geleert wird oder ohne Datei waechst
+     */
+    private static final class Ausgabe {
+        private final FileChannel kanal;
+        private ByteBuffer puffer = ByteBuffer.allocate(PUFFER);
+
+        Ausgabe(FileChannel kanal) {
+            this.kanal = kanal;
+        }
+
+        /**
+         * sorgt fuer mindestens n freie Byte im Puffer
+         */
+        ByteBuffer platz(int n) throws IOException {
+            if (puffer.remaining() >= n) {
+                return puffer;
+            }
+            if (kanal != null) {
+                leeren();
+                if (puffer.remaining() >= n) {
+                    return puffer;
+                }
+            }
+            ByteBuffer groesser = ByteBuffer.allocate(Math.max(puffer.capacity() * 2, puffer.position() + n));
+            puffer.flip();
+            groesser.put(puffer);
+            puffer = groesser;
+            return puffer;
+        }
+
+        void leeren() throws IOException {
+            puffer.flip();
+            while (puffer.hasRemaining()) {
+                kanal.write(puffer);
+            }
+            puffer.clear();
+        }
+    }
+
+    /**
+     * schreibt die Momentaufnahme der Bank in einen Puffer
+     *
+     * @param bank die Bank
+     * @return Puffer mit der Aufnahme zwischen position und limit
+     * @throws IllegalArgumentException wenn bank null ist oder ein Konto weder Girokonto noch Sparbuch ist oder
+     *                                  keinen Inhaber hat
+     */
+    public static ByteBuffer schreiben(Bank bank) {
+        Ausgabe aus = new Ausgabe(null);
+        try {
+            schreiben(bank, aus);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // ohne Datei nicht moeglich
+        }
+        return aus.puffer.flip();
+    }
+
+    /**
+     * schreibt die Momentaufnahme der Bank in die angegebene Datei; eine vorhandene Datei wird ueberschrieben
+     *
+     * @param bank  die Bank
+     * @param datei die Datei
+     * @throws IOException              wenn die Datei nicht geschrieben werden kann
+     * @throws IllegalArgumentException wie bei {@link #schreiben(Bank)}
+     */
+    public static void speichern(Bank bank, Path datei) throws IOException {
+        try (FileChannel kanal = FileChannel.open(datei, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Ausgabe aus = new Ausgabe(kanal);
+            schreiben(bank, aus);
+            aus.leeren();
+        }
+    }
+
+    private static void schreiben(Bank bank, Ausgabe aus) throws IOException {
+        if (bank == null) {
+            throw new IllegalArgumentException();
+        }
+        long[] nummern = bank.kontonummernSortiert();
+        Konto[] konten = new Konto[nummern.length];
+        int anzahl = 0;
+
+        // jeden Inhaber einmal (Kunde ueberschreibt equals nicht, es zaehlt die Identitaet)
+        Map<Kunde, Integer> stellen = new HashMap<>();
+        List<Kunde> kunden = new ArrayList<>();
+        for (long nummer : nummern) {
+            Konto k = bank.konto(nummer);
+            if (k == null) {
+                continue; // inzwischen geloescht
+            }
+            if (k.getInhaber() == null) {
+                throw new IllegalArgumentException("Konto " + nummer + " hat keinen Inhaber");
+            }
+            stellen.computeIfAbsent(k.getInhaber(), kunde -> {
+                kunden.add(kunde);
+                return kunden.size() - 1;
+            });
+            nummern[anzahl] = nummer;
+            konten[anzahl++] = k;
+        }
+
+        ByteBuffer b = aus.platz(4 + 1 + 8 + 1 + 10 + 5);
+        b.putInt(KENNUNG).put(FORMAT).putLong(bank.getBankleitzahl());
+        b.put((byte) ((bank.isNummernWiederverwenden() ? FLAG_NUMMERN_WIEDERVERWENDEN : 0)
+                | (bank.isSofortSperren() ? FLAG_SOFORT_SPERREN : 0)));
+        Kontocodec.varintSchreiben(b, bank.hoechsteKontonummer());
+        Kontocodec.varintSchreiben(b, kunden.size());
+        for (Kunde kunde : kunden) {
+            Kontocodec.kundeSchreiben(aus.platz(Kontocodec.maxLaenge(kunde)), kunde);
+        }
+
+        Kontocodec.varintSchreiben(aus.platz(5), anzahl);
+        long vorige = 0;
+        for (int i = 0; i < anzahl; i++) {
+            b = aus.platz(10 + Kontocodec.MAX_KONTOLAENGE);
+            Kontocodec.varintSchreiben(b, nummern[i] - vorige);
+            Kontocodec.kontoSchreiben(b, konten[i], stellen.get(konten[i].getInhaber()));
+            vorige = nummern[i];
+        }
+    }
+
+    /**
+     * liest eine Momentaufnahme und baut daraus eine neue Bank
+     *
+     * @param b Puffer mit der Aufnahme ab position
+     * @return die neue Bank
+     * @throws IllegalArgumentException wenn der Puffer keine vollstaendige Momentaufnahme enthaelt
+     */
+    public static Bank lesen(ByteBuffer b) {
+        try {
+            if (b.getInt() != KENNUNG || b.get() != FORMAT) {
+                throw new IllegalArgumentException("Keine Momentaufnahme einer Bank");
+            }
+            long bankleitzahl = b.getLong();
+            byte flags = b.get();
+            long hoechste = Kontocodec.varintLesen(b);
+
+            Kunde[] kunden = new Kunde[(int) Kontocodec.varintLesen(b)];
+            for (int i = 0; i < kunden.length; i++) {
+                kunden[i] = Kontocodec.kundeLesen(b);
+            }
+
+            int anzahl = (int) Kontocodec.varintLesen(b);
+            long[] nummern = new long[anzahl];
+            Konto[] konten = new Konto[anzahl];
+            long nummer = 0;
+            for (int i = 0; i < anzahl; i++) {
+                nummer += Kontocodec.varintLesen(b);
+                nummern[i] = nummer;
+                konten[i] = Kontocodec.kontoLesen(b, nummer, kunden);
+            }
+
+            Bank bank = new Bank(bankleitzahl);
+            bank.setNummernWiederverwenden((flags & FLAG_NUMMERN_WIEDERVERWENDEN) != 0);
+            bank.kontenWiederherstellen(nummern, konten, hoechste);
+            if ((flags & FLAG_SOFORT_SPERREN) != 0) {
+                bank.setSofortSperren(true);
+            }
+            return bank;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Momentaufnahme unvollstaendig", e);
+        }
+    }
+
+    /**
+     * liest die Momentaufnahme aus der angegebenen Datei
+     *
+     * @param datei die Datei
+     * @return die neue Bank
+     * @throws IOException wenn die Datei nicht gelesen werden kann oder keine vollstaendige Momentaufnahme enthaelt
+     */
+    public static Bank laden(Path datei) throws IOException {
+        try (FileChannel kanal = FileChannel.open(datei, StandardOpenOption.READ)) {
+            if (kanal.size() > Integer.MAX_VALUE) {
+                throw new IOException(datei + " ist zu gross");
+            }
+            return lesen(kanal.map(FileChannel.MapMode.READ_ONLY, 0, kanal.size()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(datei + ": " + e.getMessage(), e);
+        }
+    }
+}
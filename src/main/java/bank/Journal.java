@@ -0,0 +1,892 @@
+package bank;
+
+import verarbeitung.Girokonto;
+import verarbeitung.Konto;
+import verarbeitung.Kontocodec;
+import verarbeitung.Kontozustand;
+import verarbeitung.Kunde;
+import verarbeitung.Sparbuch;
+import verarbeitung.Waehrung;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal aller Aenderungen an den Konten einer Bank in einer Datei, die nur am Ende wachsen kann. Nach einem Absturz
+ * baut {@link #wiederherstellen(Path, long)} die Bank aus dem Journal wieder auf.
+ *
+ * Das Journal ist wie die {@link Kontospalten} ein {@link Kontoindex} der Bank
+ * ({@link Bank#journalVerwenden(Journal)}): es sieht das Erstellen und Loeschen von Konten und jede Aenderung eines
+ * Kontos. Aufgezeichnet wird nicht die Buchung selbst, sondern der Stand danach (Kontostand, Waehrung, Sperre mit dem
+ * Versionsstempel des {@link Kontozustand}s, Dispo, Inhaber, beim Sparbuch der im Monat bereits abgehobene Betrag
+ * mit dem Zeitpunkt der letzten Abhebung). So deckt das Journal alle Wege ab, auf denen ein Konto
+ * geaendert werden kann (Ein- und Auszahlung, Ueberweisung, Sammelueberweisung, Sperren, Waehrungswechsel, Shards),
+ * und beim Wiederherstellen gewinnt immer der neueste Stand, auch wenn gleichzeitige Buchungen ihre Saetze in
+ * anderer Reihenfolge angehaengt haben. Kunden werden einmal mit einer Nummer geschrieben und danach nur noch
+ * ueber diese Nummer angesprochen.
+ *
+ * Jeder Satz ist ein Rahmen aus Laenge, CRC32C und Inhalt. Die Saetze werden im Thread der Buchung in einem eigenen
+ * Puffer des Threads zusammengesetzt und nur zum Anhaengen kurz unter einem Lock in einen gemeinsamen Puffer kopiert.
+ * Ein einziger Schreibthread schreibt den gemeinsamen Puffer ueber einen {@link FileChannel} und sichert ihn je nach
+ * {@link Dauerhaftigkeit} mit fsync; alle Saetze, die waehrenddessen anfallen, gehen mit dem naechsten Schreiben
+ * gemeinsam hinaus (Group Commit). Ein unvollstaendiger oder beschaedigter Satz am Ende der Datei (Absturz beim
+ * Schreiben) wird beim Wiederherstellen ignoriert und beim Oeffnen abgeschnitten.
+ *
+ * Kann ein Satz nicht geschrieben werden oder ist das Journal schon geschlossen, bekommt die Buchung eine
+ * UncheckedIOException bzw. IllegalStateException, nachdem sie geschehen ist (siehe
+ * {@link verarbeitung.Kontonachfuehrung}). Ueberweisungen und Sammelueberweisungen der Bank buchen dann alles zurueck,
+ * was sie schon gebucht haben.
+ */
+public class Journal implements Closeable {
+
+    /**
+     * wie lange eine Aenderung hoechstens auf die Platte warten darf
+     */
+    public enum Dauerhaftigkeit {
+        /**
+         * jede Aenderung wartet, bis sie mit fsync gesichert ist; gleichzeitige Aenderungen teilen sich ein fsync
+         */
+        JEDE_AENDERUNG,
+        /**
+         * fsync im festen Abstand, die Aenderungen warten nicht; ein Absturz kann die Aenderungen des letzten
+         * Abstands kosten
+         */
+        PERIODISCH,
+        /**
+         * kein fsync, geschrieben wird im festen Abstand in den Cache des Betriebssystems; uebersteht den Absturz
+         * des Programms, aber nicht den des Rechners
+         */
+        BETRIEBSSYSTEM
+    }
+
+    /**
+     * Standardabstand fuer PERIODISCH und BETRIEBSSYSTEM in Millisekunden
+     */
+    public static final long STANDARD_INTERVALL = 10;
+
+    /**
+     * Dateikopf: Kennung und Formatversion
+     */
+    private static final int KOPF = 8;
+    private static final int KENNUNG = 0x4A524E4C; // "JRNL"
+    private static final int FORMAT = 1;
+
+    /**
+     * Rahmen eines Satzes: Laenge des Inhalts (int), CRC32C des Inhalts (int)
+     */
+    private static final int RAHMEN = 8;
+
+    /**
+     * Groesse des gemeinsamen Puffers und damit auch die groesste moegliche Satzlaenge
+     */
+    private static final int PUFFER = 1 << 20;
+
+    private static final byte KUNDE = 1;
+    private static final byte ANLEGEN = 2;
+    private static final byte ZUSTAND = 3;
+    private static final byte WAEHRUNG = 4;
+    private static final byte DISPO = 5;
+    private static final byte INHABER = 6;
+    private static final byte LOESCHEN = 7;
+    private static final byte ZUSATZ = 8;
+
+    private static final byte ART_GIROKONTO = 0;
+    private static final byte ART_SPARBUCH = 1;
+    private static final byte ART_UNBEKANNT = -1;
+
+    private static final Waehrung[] WAEHRUNGEN = Waehrung.values();
+
+    /**
+     * Puffer, in dem ein Thread seine Saetze zusammensetzt
+     */
+    private static final ThreadLocal<ByteBuffer> SATZPUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+    private static final ThreadLocal<CRC32C> PRUEFSUMME = ThreadLocal.withInitial(CRC32C::new);
+
+    private final FileChannel kanal;
+    private final Dauerhaftigkeit modus;
+    private final long intervall;
+
+    /**
+     * schuetzt die Puffer und alle Positionen
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * weckt den Schreibthread
+     */
+    private final Condition arbeit = lock.newCondition();
+
+    /**
+     * meldet den Fortschritt des Schreibthreads
+     */
+    private final Condition fortschritt = lock.newCondition();
+
+    /**
+     * hier werden Saetze angehaengt; der andere Puffer wird gerade geschrieben
+     */
+    private ByteBuffer aktiv = ByteBuffer.allocateDirect(PUFFER);
+    private ByteBuffer reserve = ByteBuffer.allocateDirect(PUFFER);
+
+    /**
+     * Positionen im Journal (ohne Kopf): bis hierher angehaengt, mit fsync gesichert, Sicherung angefordert
+     */
+    private long angehaengt;
+    private long gesichert;
+    private long angefordert;
+
+    private boolean geschlossen;
+    private IOException fehler;
+
+    private final Thread schreiber;
+
+    /**
+     * die Nummern der bereits geschriebenen Kunden (Kunde ueberschreibt equals nicht, es zaehlt die Identitaet)
+     */
+    private final ConcurrentHashMap<Kunde, Long> kundennummern = new ConcurrentHashMap<>();
+    private final AtomicLong naechsteKundennummer;
+
+    private final Nachfuehrung index = new Nachfuehrung();
+
+    private Journal(FileChannel kanal, Dauerhaftigkeit modus, long intervallMillis, long kundennummern) {
+        this.kanal = kanal;
+        this.modus = modus;
+        this.intervall = TimeUnit.MILLISECONDS.toNanos(intervallMillis);
+        this.naechsteKundennummer = new AtomicLong(kundennummern);
+        this.schreiber = new Thread(this::schreiben, "Journal");
+        this.schreiber.setDaemon(true);
+        this.schreiber.start();
+    }
+
+    /**
+     * oeffnet das Journal in der angegebenen Datei mit dem Standardintervall, siehe
+     * {@link #oeffnen(Path, Dauerhaftigkeit, long)}
+     *
+     * @param datei die Datei
+     * @param modus wann geschriebene Saetze gesichert werden
+     * @return das Journal
+     * @throws IOException wenn die Datei nicht geoeffnet werden kann oder kein Journal enthaelt
+     */
+    public static Journal oeffnen(Path datei, Dauerhaftigkeit modus) throws IOException {
+        return oeffnen(datei, modus, STANDARD_INTERVALL);
+    }
+
+    /**
+     * oeffnet das Journal in der angegebenen Datei. Gibt es die Datei noch nicht, wird sie angelegt; sonst wird
+     * hinter dem letzten vollstaendigen Satz weitergeschrieben.
+     *
+     * @param datei           die Datei
+     * @param modus           wann geschriebene Saetze gesichert werden
+     * @param intervallMillis Abstand fuer PERIODISCH und BETRIEBSSYSTEM in Millisekunden
+     * @return das Journal
+     * @throws IOException              wenn die Datei nicht geoeffnet werden kann oder kein Journal enthaelt
+     * @throws IllegalArgumentException wenn modus null oder intervallMillis nicht positiv ist
+     */
+    public static Journal oeffnen(Path datei, Dauerhaftigkeit modus, long intervallMillis) throws IOException {
+        if (modus == null || intervallMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        FileChannel kanal = FileChannel.open(datei, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long kunden = 0;
+            if (kanal.size() == 0) {
+                ByteBuffer kopf = ByteBuffer.allocate(KOPF).putInt(KENNUNG).putInt(FORMAT);
+                kopf.flip();
+                while (kopf.hasRemaining()) {
+                    kanal.write(kopf, kopf.position());
+                }
+                kanal.force(true);
+            } else {
+                Leser leser = new Leser(kanal, datei);
+                while (leser.naechster() != null) {
+                    ByteBuffer satz = leser.satz;
+                    if (satz.get(0) == KUNDE) {
+                        kunden = Math.max(kunden, satz.getLong(1) + 1);
+                    }
+                }
+                if (leser.ende < kanal.size()) {
+                    kanal.truncate(leser.ende); // unvollstaendiger Satz vom letzten Absturz
+                    kanal.force(true);
+                }
+            }
+            kanal.position(kanal.size());
+            return new Journal(kanal, modus, intervallMillis, kunden);
+        } catch (IOException | RuntimeException e) {
+            kanal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * liefert den Index, ueber den eine Bank ihre Aenderungen in das Journal schreibt
+     *
+     * @return der Index
+     */
+    Kontoindex getIndex() {
+        return index;
+    }
+
+    /**
+     * liefert den Puffer des aufrufenden Threads, mindestens so gross wie angegeben, mit dem Satztyp hinter dem Rahmen
+     */
+    private static ByteBuffer satzBeginnen(byte typ, int laenge) {
+        ByteBuffer b = SATZPUFFER.get();
+        if (b.capacity() < RAHMEN + laenge) {
+            if (RAHMEN + laenge > PUFFER) {
+                throw new IllegalArgumentException("Satz zu lang fuer das Journal");
+            }
+            b = ByteBuffer.allocate(Integer.highestOneBit(RAHMEN + laenge) << 1);
+            SATZPUFFER.set(b);
+        }
+        b.clear();
+        b.position(RAHMEN);
+        b.put(typ);
+        return b;
+    }
+
+    /**
+     * schliesst den Rahmen des Satzes im Puffer des Threads und haengt ihn an
+     *
+     * @return Position hinter dem Satz, siehe {@link #warten(long)}
+     */
+    private long satzAnhaengen(ByteBuffer b) {
+        int laenge = b.position() - RAHMEN;
+        CRC32C crc = PRUEFSUMME.get();
+        crc.reset();
+        crc.update(b.array(), RAHMEN, laenge);
+        b.putInt(0, laenge);
+        b.putInt(4, (int) crc.getValue());
+        b.flip();
+
+        lock.lock();
+        try {
+            while (true) {
+                pruefen();
+                if (aktiv.remaining() >= b.remaining()) {
+                    break;
+                }
+                arbeit.signal(); // Puffer voll: warten, bis der Schreibthread die Puffer getauscht hat
+                fortschritt.awaitUninterruptibly();
+            }
+            angehaengt += b.remaining();
+            aktiv.put(b);
+            if (modus == Dauerhaftigkeit.JEDE_AENDERUNG) {
+                arbeit.signal();
+            }
+            return angehaengt;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * wartet im Modus JEDE_AENDERUNG, bis das Journal bis zur angegebenen Position gesichert ist
+     */
+    private void warten(long position) {
+        if (modus != Dauerhaftigkeit.JEDE_AENDERUNG) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (gesichert < position) {
+                pruefen();
+                fortschritt.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Der Aufrufer haelt das Lock.
+     */
+    private void pruefen() {
+        if (fehler != null) {
+            throw new UncheckedIOException(fehler);
+        }
+        if (geschlossen) {
+            throw new IllegalStateException("Das Journal ist geschlossen");
+        }
+    }
+
+    /**
+     * schreibt alle bisher angehaengten Saetze und sichert sie mit fsync, unabhaengig von der Dauerhaftigkeit
+     *
+     * @throws UncheckedIOException wenn das Journal nicht geschrieben werden kann
+     */
+    public void sichern() {
+        lock.lock();
+        try {
+            pruefen();
+            angefordert = angehaengt;
+            arbeit.signal();
+            while (gesichert < angefordert) {
+                pruefen();
+                fortschritt.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Schleife des Schreibthreads: Puffer tauschen, ausserhalb des Locks schreiben, bei Bedarf sichern
+     */
+    private void schreiben() {
+        long letzteSicherung = System.nanoTime();
+        while (true) {
+            ByteBuffer daten;
+            long bis;
+            boolean ende;
+            boolean sichern;
+            lock.lock();
+            try {
+                if (aktiv.position() == 0 && !geschlossen && angefordert <= gesichert) {
+                    long warten = modus == Dauerhaftigkeit.JEDE_AENDERUNG ? TimeUnit.SECONDS.toNanos(1) : intervall;
+                    arbeit.awaitNanos(warten);
+                }
+                daten = aktiv;
+                aktiv = reserve;
+                reserve = daten;
+                bis = angehaengt;
+                ende = geschlossen;
+                sichern = bis > gesichert && (modus == Dauerhaftigkeit.JEDE_AENDERUNG || angefordert > gesichert || ende
+                        || modus == Dauerhaftigkeit.PERIODISCH && System.nanoTime() - letzteSicherung >= intervall);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                daten.flip();
+                while (daten.hasRemaining()) {
+                    kanal.write(daten);
+                }
+                daten.clear();
+                if (sichern) {
+                    kanal.force(false);
+                    letzteSicherung = System.nanoTime();
+                }
+            } catch (IOException e) {
+                lock.lock();
+                try {
+                    fehler = e;
+                    fortschritt.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                if (sichern) {
+                    gesichert = bis;
+                }
+                fortschritt.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (ende) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * schreibt und sichert alle angehaengten Saetze und schliesst die Datei. Die Bank, die das Journal verwendet,
+     * darf danach keine Konten mehr aendern; sie muss vorher verworfen werden.
+     *
+     * @throws IOException wenn das Journal nicht vollstaendig geschrieben werden konnte
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            geschlossen = true;
+            arbeit.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            schreiber.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            kanal.close();
+        }
+        if (fehler != null) {
+            throw fehler;
+        }
+    }
+
+    /**
+     * liefert die Nummer des Kunden im Journal; ein neuer Kunde wird dabei geschrieben
+     */
+    private long kundennummer(Kunde kunde) {
+        Long nummer = kundennummern.get(kunde);
+        if (nummer != null) {
+            return nummer;
+        }
+        // computeIfAbsent: wer den Kunden zuerst braucht, schreibt ihn, bevor ein anderer Thread seine Nummer benutzt
+        return kundennummern.computeIfAbsent(kunde, k -> {
+            long neu = naechsteKundennummer.getAndIncrement();
+            kundeSchreiben(neu, k);
+            k.anmelden(index); // Namensaenderungen
+            return neu;
+        });
+    }
+
+    private long kundeSchreiben(long nummer, Kunde kunde) {
+        byte[] vorname = kunde.getVorname().getBytes(StandardCharsets.UTF_8);
+        byte[] nachname = kunde.getNachname().getBytes(StandardCharsets.UTF_8);
+        byte[] adresse = kunde.getAdresse().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer b = satzBeginnen(KUNDE, 1 + 8 + 8 + 12 + vorname.length + nachname.length + adresse.length);
+        b.putLong(nummer).putLong(kunde.getGeburtstag().toEpochDay());
+        b.putInt(vorname.length).put(vorname);
+        b.putInt(nachname.length).put(nachname);
+        b.putInt(adresse.length).put(adresse);
+        return satzAnhaengen(b);
+    }
+
+    /**
+     * schreibt das Konto mit seinem ganzen Zustand; ein Konto unbekannter Art wird trotzdem vermerkt, damit seine
+     * Nummer beim Wiederherstellen nicht neu vergeben wird
+     */
+    private long anlegenSchreiben(long nummer, Konto konto) {
+        long kunde = konto.getInhaber() == null ? -1 : kundennummer(konto.getInhaber());
+        byte art = konto instanceof Girokonto ? ART_GIROKONTO : konto instanceof Sparbuch ? ART_SPARBUCH : ART_UNBEKANNT;
+        long dispo = konto instanceof Girokonto ? ((Girokonto) konto).getDispoBetrag() : 0;
+        ByteBuffer b = satzBeginnen(ANLEGEN, 1 + 8 + 1 + 8 + 8 + 8 + 26);
+        b.putLong(nummer).put(art).putLong(kunde).putLong(dispo);
+        zustandSchreiben(b, konto);
+        return satzAnhaengen(b);
+    }
+
+    /**
+     * schreibt Version, Kontostand, Waehrung und Sperre des Kontos
+     */
+    private static void zustandSchreiben(ByteBuffer b, Konto konto) {
+        Kontozustand zustand = konto.getZustand();
+        if (zustand == null) {
+            // Konto ohne Versionsstempel (z.B. eine Attrappe): die Einzelwerte lesen
+            Waehrung w = konto.getAktuelleWaehrung() == null ? Waehrung.EUR : konto.getAktuelleWaehrung();
+            b.putLong(0).putLong(Math.round(konto.getKontostand() * w.getFaktor()));
+            b.put((byte) w.ordinal()).put((byte) (konto.isGesperrt() ? 1 : 0));
+        } else {
+            b.putLong(zustand.getVersion()).putLong(zustand.getKontostandBetrag());
+            b.put((byte) zustand.getWaehrung().ordinal()).put((byte) (zustand.isGesperrt() ? 1 : 0));
+        }
+    }
+
+    /**
+     * schreibt die Werte der Kontoart (beim Sparbuch u.a. bereitsAbgehoben und den Zeitpunkt der letzten Abhebung).
+     * Gelesen und angehaengt wird unter dem Monitor des Kontos, unter dem das Sparbuch auch abbucht: der zuletzt
+     * angehaengte Satz ist so immer der neueste.
+     */
+    private long zusatzSchreiben(long nummer, Konto konto) {
+        synchronized (konto) {
+            ByteBuffer b = satzBeginnen(ZUSATZ, 1 + 8 + Kontocodec.MAX_KONTOLAENGE);
+            b.putLong(nummer);
+            Kontocodec.zusatzSchreiben(b, konto);
+            return satzAnhaengen(b);
+        }
+    }
+
+    /**
+     * schreibt Version, Kontostand, Waehrung und Sperre des Kontos als eigenen Satz
+     */
+    private long zustandAnhaengen(long nummer, Konto konto) {
+        ByteBuffer b = satzBeginnen(ZUSTAND, 1 + 8 + 18);
+        b.putLong(nummer);
+        zustandSchreiben(b, konto);
+        return satzAnhaengen(b);
+    }
+
+    /**
+     * schreibt einen Satz aus Kontonummer und einem long
+     */
+    private long satzSchreiben(byte typ, long nummer, long wert) {
+        ByteBuffer b = satzBeginnen(typ, 1 + 16);
+        b.putLong(nummer).putLong(wert);
+        return satzAnhaengen(b);
+    }
+
+    /**
+     * schreibt Erstellen, Aendern und Loeschen der Konten sowie Namensaenderungen der Kunden in das Journal
+     */
+    private class Nachfuehrung implements Kontoindex, PropertyChangeListener {
+
+        /**
+         * schreibt das Konto mit seinem Zustand
+         *
+         * @param nummer Kontonummer, unter der das Konto in der Bank steht
+         * @param konto  das Konto
+         * @throws UncheckedIOException wenn das Journal nicht geschrieben werden kann
+         */
+        @Override
+        public void eintragen(long nummer, Konto konto) {
+            // die Nachfuehrung ist schon angemeldet; ein aelterer Stand verliert beim Wiederherstellen
+            long position = anlegenSchreiben(nummer, konto);
+            if (konto instanceof Sparbuch) {
+                position = zusatzSchreiben(nummer, konto);
+            }
+            warten(position);
+        }
+
+        /**
+         * schreibt alle Konten und wartet nur einmal, auf den letzten Satz
+         *
+         * @throws UncheckedIOException wenn das Journal nicht geschrieben werden kann
+         */
+        @Override
+        public void alleEintragen(long erste, Konto[] konten, int von, int bis) {
+            long position = 0;
+            for (int i = von; i < bis; i++) {
+                position = Math.max(position, anlegenSchreiben(erste + i, konten[i]));
+                if (konten[i] instanceof Sparbuch) {
+                    position = Math.max(position, zusatzSchreiben(erste + i, konten[i]));
+                }
+            }
+            warten(position);
+        }
+
+        /**
+         * vermerkt das Loeschen des Kontos
+         *
+         * @param nummer Kontonummer, unter der das Konto in der Bank stand
+         * @param konto  das Konto
+         */
+        @Override
+        public void austragen(long nummer, Konto konto) {
+            warten(satzSchreiben(LOESCHEN, nummer, 0));
+        }
+
+        /**
+         * zu schreiben gibt es nichts, die Kopie hat denselben Zustand
+         *
+         * @param nummer Kontonummer
+         * @param alt    das bisherige Konto
+         * @param neu    die Kopie
+         */
+        @Override
+        public void ersetzen(long nummer, Konto alt, Konto neu) {
+            // nichts zu tun
+        }
+
+        /**
+         * schreibt Namensaenderungen der Kunden
+         *
+         * @param evt das Ereignis des Kunden
+         */
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            if (evt.getSource() instanceof Kunde) {
+                Kunde kunde = (Kunde) evt.getSource();
+                Long nummer = kundennummern.get(kunde);
+                lock.lock();
+                try {
+                    if (geschlossen) {
+                        return; // ein Kunde kann nach dem Schliessen noch umbenannt werden
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (nummer != null) {
+                    warten(kundeSchreiben(nummer, kunde));
+                }
+            }
+        }
+
+        /**
+         * schreibt nach jeder Buchung den neuen Stand des Kontos
+         */
+        @Override
+        public void kontostandGeaendert(Konto konto, long alt, long neu) {
+            warten(zustandAnhaengen(konto.getKontonummer(), konto));
+        }
+
+        /**
+         * schreibt nach jeder anderen Aenderung eines Kontos dessen neuen Stand
+         */
+        @Override
+        public void eigenschaftGeaendert(Konto konto, String name, Object alt, Object neu) {
+            long nummer = konto.getKontonummer();
+            long position;
+            switch (name) {
+                case "Inhaber":
+                    position = satzSchreiben(INHABER, nummer, kundennummer((Kunde) neu));
+                    break;
+                case "Dispo":
+                    position = satzSchreiben(DISPO, nummer, ((Girokonto) konto).getDispoBetrag());
+                    break;
+                case "Waehrung":
+                    // setWaehrung meldet ohne Umrechnung; ein Waehrungswechsel meldet danach zusaetzlich den
+                    // umgerechneten Kontostand
+                    position = satzSchreiben(WAEHRUNG, nummer, ((Waehrung) neu).ordinal());
+                    if (konto instanceof Sparbuch) {
+                        position = zusatzSchreiben(nummer, konto); // beim Wechsel umgerechnet
+                    }
+                    break;
+                case Sparbuch.ABGEHOBEN:
+                    position = zusatzSchreiben(nummer, konto);
+                    break;
+                default:
+                    position = zustandAnhaengen(nummer, konto);
+            }
+            warten(position);
+        }
+    }
+
+    /**
+     * liest die Saetze eines Journals der Reihe nach, bis zum Dateiende oder zum ersten unvollstaendigen oder
+     * beschaedigten Satz
+     */
+    private static final class Leser {
+        private final FileChannel kanal;
+        private final ByteBuffer puffer = ByteBuffer.allocateDirect(4 * PUFFER);
+        private final CRC32C crc = new CRC32C();
+        private final byte[] inhalt = new byte[PUFFER];
+
+        /**
+         * Position in der Datei hinter dem letzten gueltigen Satz
+         */
+        private long ende = KOPF;
+        private long gelesen;
+
+        /**
+         * der Inhalt des aktuellen Satzes (Typ und Daten)
+         */
+        private ByteBuffer satz;
+
+        Leser(FileChannel kanal, Path datei) throws IOException {
+            this.kanal = kanal;
+            ByteBuffer kopf = ByteBuffer.allocate(KOPF);
+            while (kopf.hasRemaining() && kanal.read(kopf, kopf.position()) > 0) {
+                // weiterlesen
+            }
+            if (kopf.hasRemaining() || kopf.getInt(0) != KENNUNG || kopf.getInt(4) != FORMAT) {
+                throw new IOException(datei + " enthaelt kein Journal");
+            }
+            gelesen = KOPF;
+            puffer.limit(0);
+        }
+
+        /**
+         * liest den naechsten Satz nach {@link #satz}
+         *
+         * @return der Satz oder null am Ende des gueltigen Teils
+         */
+        ByteBuffer naechster() throws IOException {
+            if (!auffuellen(RAHMEN)) {
+                return null;
+            }
+            int laenge = puffer.getInt(puffer.position());
+            int pruefsumme = puffer.getInt(puffer.position() + 4);
+            if (laenge <= 0 || laenge > PUFFER || !auffuellen(RAHMEN + laenge)) {
+                return null;
+            }
+            puffer.position(puffer.position() + RAHMEN);
+            puffer.get(inhalt, 0, laenge);
+            crc.reset();
+            crc.update(inhalt, 0, laenge);
+            if ((int) crc.getValue() != pruefsumme) {
+                return null;
+            }
+            ende += RAHMEN + laenge;
+            satz = ByteBuffer.wrap(inhalt, 0, laenge).slice();
+            return satz;
+        }
+
+        /**
+         * sorgt dafuer, dass mindestens n Byte im Puffer stehen
+         *
+         * @return false, wenn die Datei vorher zu Ende ist
+         */
+        private boolean auffuellen(int n) throws IOException {
+            if (puffer.remaining() >= n) {
+                return true;
+            }
+            puffer.compact();
+            while (puffer.position() < n) {
+                int r = kanal.read(puffer, gelesen);
+                if (r <= 0) {
+                    puffer.flip();
+                    return false;
+                }
+                gelesen += r;
+            }
+            puffer.flip();
+            return true;
+        }
+    }
+
+    /**
+     * Stand eines Kontos beim Wiederherstellen
+     */
+    private static final class Abbild {
+        private byte art;
+        private long kunde;
+        private long dispo;
+        private long version;
+        private long kontostand;
+        private byte waehrung;
+        private boolean gesperrt;
+        /**
+         * Inhalt des letzten ZUSATZ-Satzes oder null
+         */
+        private byte[] zusatz;
+    }
+
+    /**
+     * baut eine Bank aus dem Journal in der angegebenen Datei wieder auf. Alle Saetze werden einmal der Reihe nach
+     * gelesen und nur in einfache Abbilder der Konten uebernommen; erst am Ende wird jedes Konto einmal erstellt und
+     * in die Bank eingetragen. Konten unbekannter Art werden nicht wiederhergestellt, ihre Nummern bleiben frei.
+     *
+     * Um danach weiterzuschreiben, wird das Journal mit {@link #oeffnen(Path, Dauerhaftigkeit)} geoeffnet und der
+     * wiederhergestellten Bank mit {@link Bank#journalVerwenden(Journal)} uebergeben.
+     *
+     * @param datei        die Datei des Journals
+     * @param bankleitzahl Bankleitzahl der wiederhergestellten Bank
+     * @return die wiederhergestellte Bank
+     * @throws IOException wenn die Datei nicht gelesen werden kann oder kein Journal enthaelt
+     */
+    public static Bank wiederherstellen(Path datei, long bankleitzahl) throws IOException {
+        Map<Long, Kunde> kunden = new HashMap<>();
+        Map<Long, Abbild> konten = new HashMap<>();
+        long hoechste = 0;
+
+        try (FileChannel kanal = FileChannel.open(datei, StandardOpenOption.READ)) {
+            Leser leser = new Leser(kanal, datei);
+            ByteBuffer s;
+            while ((s = leser.naechster()) != null) {
+                byte typ = s.get();
+                if (typ == KUNDE) {
+                    long nummer = s.getLong();
+                    LocalDate geburtstag = LocalDate.ofEpochDay(s.getLong());
+                    String vorname = text(s);
+                    String nachname = text(s);
+                    String adresse = text(s);
+                    Kunde k = kunden.get(nummer);
+                    if (k == null) {
+                        kunden.put(nummer, new Kunde(vorname, nachname, adresse, geburtstag));
+                    } else {
+                        k.setVorname(vorname);
+                        k.setNachname(nachname);
+                        k.setAdresse(adresse);
+                    }
+                    continue;
+                }
+                long nummer = s.getLong();
+                hoechste = Math.max(hoechste, nummer);
+                if (typ == ANLEGEN) {
+                    Abbild a = new Abbild();
+                    a.art = s.get();
+                    a.kunde = s.getLong();
+                    a.dispo = s.getLong();
+                    a.version = s.getLong();
+                    a.kontostand = s.getLong();
+                    a.waehrung = s.get();
+                    a.gesperrt = s.get() != 0;
+                    konten.put(nummer, a);
+                    continue;
+                }
+                if (typ == LOESCHEN) {
+                    konten.remove(nummer);
+                    continue;
+                }
+                Abbild a = konten.get(nummer);
+                if (a == null) {
+                    continue; // Satz eines geloeschten Kontos, das noch eine Buchung gemeldet hat
+                }
+                switch (typ) {
+                    case ZUSTAND:
+                        long version = s.getLong();
+                        if (version >= a.version) {
+                            a.version = version;
+                            a.kontostand = s.getLong();
+                            a.waehrung = s.get();
+                            a.gesperrt = s.get() != 0;
+                        }
+                        break;
+                    case WAEHRUNG:
+                        a.waehrung = (byte) s.getLong();
+                        break;
+                    case DISPO:
+                        a.dispo = s.getLong();
+                        break;
+                    case INHABER:
+                        a.kunde = s.getLong();
+                        break;
+                    case ZUSATZ:
+                        a.zusatz = new byte[s.remaining()];
+                        s.get(a.zusatz);
+                        break;
+                    default:
+                        throw new IOException(datei + ": unbekannter Satztyp " + typ);
+                }
+            }
+        }
+
+        long[] nummern = konten.entrySet().stream()
+                .filter(e -> e.getValue().art != ART_UNBEKANNT && kunden.containsKey(e.getValue().kunde))
+                .mapToLong(Map.Entry::getKey)
+                .sorted()
+                .toArray();
+        Konto[] wiederhergestellt = new Konto[nummern.length];
+        for (int i = 0; i < nummern.length; i++) {
+            Abbild a = konten.get(nummern[i]);
+            Kunde inhaber = kunden.get(a.kunde);
+            Waehrung w = WAEHRUNGEN[a.waehrung];
+            Konto k = a.art == ART_GIROKONTO ? new Girokonto(inhaber, nummern[i], 0, w) : new Sparbuch(inhaber, nummern[i], w);
+            List<PropertyChangeListener> beobachter = k.alleAbmelden(); // keine Meldungen fuer wiederhergestellte Staende
+            if (k instanceof Girokonto) {
+                ((Girokonto) k).setDispoBetrag(a.dispo);
+            }
+            k.zustandWiederherstellen(a.kontostand, w, a.gesperrt);
+            if (a.zusatz != null && a.art == ART_SPARBUCH) {
+                Kontocodec.zusatzLesen(ByteBuffer.wrap(a.zusatz), k);
+            }
+            k.anmelden(beobachter);
+            wiederhergestellt[i] = k;
+        }
+
+        Bank bank = new Bank(bankleitzahl);
+        bank.kontenWiederherstellen(nummern, wiederhergestellt, hoechste);
+        return bank;
+    }
+
+    private static String text(ByteBuffer s) {
+        byte[] b = new byte[s.getInt()];
+        s.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * liefert die Groesse der Datei, z.B. um zu entscheiden, wann ein neues Journal begonnen wird
+     *
+     * @return Groesse in Byte
+     * @throws IOException wenn die Groesse nicht gelesen werden kann
+     */
+    public long getGroesse() throws IOException {
+        return kanal.size();
+    }
+}
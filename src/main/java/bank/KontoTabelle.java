@@ -0,0 +1,652 @@
+package bank;
+
+import verarbeitung.Konto;
+import verarbeitung.Kontocodec;
+import verarbeitung.Kunde;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Abbildung Kontonummer -&gt; Konto mit offener Adressierung und linearer Sondierung. Die Kontonummern werden als
+ * primitive long gespeichert, es wird also nicht geboxt und es gibt keine Eintragsobjekte. Bei einem Fuellgrad von
+ * hoechstens der Haelfte findet ein Zugriff das Konto meist beim ersten Versuch.
+ *
+ * Lesende Zugriffe kommen ohne Lock aus, schreibende Zugriffe sind synchronisiert. Die Kontonummer 0 ist als
+ * Markierung fuer freie Plaetze reserviert und kann nicht eingetragen werden.
+ *
+ * Die Plaetze liegen in Seiten. Mit {@link #abzweigen(Ersetzung)} entsteht in O(1) eine zweite Tabelle, die sich alle
+ * Seiten und Konten mit dieser teilt. Jede Tabelle, jede Seite und jeder Platz traegt dazu eine Epoche: einer Tabelle
+ * gehoert nur, was ihre eigene Epoche traegt. Seiten kopiert jede Tabelle beim ersten Schreiben. Konten kopiert nur
+ * die abgezweigte Tabelle, beim ersten {@link #get(long)}, denn der Aufrufer kann es veraendern; die Vorlage behaelt
+ * ihre Konten, damit Beobachter, Bindungen und gehaltene Referenzen gueltig bleiben. Bevor ein noch geteiltes Konto
+ * geaendert wird, meldet die Bank das mit {@link #vorAenderung(Konto)}, und jede abgezweigte Tabelle, die es noch
+ * teilt, kopiert es sich vorher.
+ *
+ * Auch die Kunden sind veraenderlich (Name, Adresse). Die abgezweigte Tabelle gibt ihren Kontokopien deshalb eigene
+ * Kopien der Kunden, jeden Kunden genau einmal; die Vorlage behaelt ihre Kunden.
+ */
+class KontoTabelle implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long LEER = 0;
+    private static final int ANFANGSKAPAZITAET = 16;
+
+    /**
+     * Zweierlogarithmus der groessten Seite
+     */
+    private static final int SEITENBITS = 8;
+
+    /**
+     * vergibt die Epochen; jede Tabelle bekommt bei ihrer Entstehung und bei jedem Abzweigen eine neue
+     */
+    private static final AtomicLong EPOCHEN = new AtomicLong();
+
+    /**
+     * wird benachrichtigt, wenn die Tabelle ein geteiltes Konto durch ihre eigene Kopie ersetzt
+     */
+    interface Ersetzung {
+
+        /**
+         * wird unter dem Lock der Tabelle aufgerufen, bevor die Kopie fuer andere Threads sichtbar wird
+         *
+         * @param nummer Kontonummer
+         * @param alt    das bisher geteilte Konto
+         * @param neu    die Kopie, die ab jetzt in der Tabelle steht
+         */
+        void ersetzt(long nummer, Konto alt, Konto neu);
+    }
+
+    /**
+     * die eigentliche Tabelle; wird beim Vergroessern komplett ersetzt
+     */
+    private transient volatile Tabelle tabelle;
+
+    /**
+     * Anzahl der eingetragenen Konten
+     */
+    private transient volatile int anzahl;
+
+    /**
+     * Anzahl der Plaetze, deren Konto entfernt wurde (die Kontonummer bleibt als Grabstein stehen)
+     */
+    private transient int grabsteine;
+
+    /**
+     * Epoche der Tabelle und ihrer Seiten; wechselt beim Abzweigen, danach sind alle Seiten geteilt
+     */
+    private transient volatile long epoche;
+
+    /**
+     * Epoche der Konten dieser Tabelle; wechselt nur in der abgezweigten Tabelle, die Vorlage behaelt ihre Konten
+     */
+    private transient volatile long kontoepoche;
+
+    /**
+     * alle Tabellen, die durch Abzweigen auseinander hervorgegangen sind und sich Konten teilen koennen, oder null,
+     * solange nicht abgezweigt wurde
+     */
+    private transient volatile Familie familie;
+
+    private transient volatile Ersetzung ersetzung;
+
+    /**
+     * nur in einer abgezweigten Tabelle: Kunde der Vorlage -&gt; eigene Kopie; wird unter dem Lock der Tabelle benutzt
+     */
+    private transient Map<Kunde, Kunde> kundenkopien;
+
+    /**
+     * die Tabellen einer Familie; nicht mehr erreichbare Tabellen fallen heraus
+     */
+    private static final class Familie {
+        private final List<WeakReference<KontoTabelle>> tabellen = new CopyOnWriteArrayList<>();
+
+        void aufnehmen(KontoTabelle tabelle) {
+            tabellen.add(new WeakReference<>(tabelle));
+        }
+
+        void vorAenderung(Konto konto) {
+            long nummer = konto.getKontonummer();
+            for (WeakReference<KontoTabelle> r : tabellen) {
+                KontoTabelle t = r.get();
+                if (t == null) {
+                    tabellen.remove(r);
+                } else if (t.teilt(nummer, konto)) {
+                    t.uebernehmen(nummer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Schluessel-, Werte- und Epochenfeld gleicher Laenge (Zweierpotenz)
+     */
+    private static final class Seite {
+        private final long epoche;
+        private final AtomicLongArray nummern;
+        private final AtomicReferenceArray<Konto> konten;
+        private final AtomicLongArray epochen;
+
+        Seite(long epoche, int laenge) {
+            this.epoche = epoche;
+            nummern = new AtomicLongArray(laenge);
+            konten = new AtomicReferenceArray<>(laenge);
+            epochen = new AtomicLongArray(laenge);
+        }
+
+        /**
+         * Kopie der Seite fuer die angegebene Epoche; die Konten bleiben geteilt
+         */
+        Seite(long epoche, Seite vorlage) {
+            this(epoche, vorlage.nummern.length());
+            for (int i = 0; i < vorlage.nummern.length(); i++) {
+                nummern.set(i, vorlage.nummern.get(i));
+                konten.set(i, vorlage.konten.get(i));
+                epochen.set(i, vorlage.epochen.get(i));
+            }
+        }
+    }
+
+    /**
+     * die Seiten der Tabelle; Platz i liegt auf Seite i &gt;&gt;&gt; bits
+     */
+    private static final class Tabelle {
+        private final long epoche;
+        private final AtomicReferenceArray<Seite> seiten;
+        private final int maske;
+        private final int bits;
+
+        Tabelle(long epoche, int kapazitaet) {
+            this.epoche = epoche;
+            maske = kapazitaet - 1;
+            bits = Math.min(SEITENBITS, Integer.numberOfTrailingZeros(kapazitaet));
+            seiten = new AtomicReferenceArray<>(kapazitaet >>> bits);
+            for (int i = 0; i < seiten.length(); i++) {
+                seiten.set(i, new Seite(epoche, 1 << bits));
+            }
+        }
+
+        /**
+         * Kopie der Tabelle fuer die angegebene Epoche; die Seiten bleiben geteilt
+         */
+        Tabelle(long epoche, Tabelle vorlage) {
+            this.epoche = epoche;
+            maske = vorlage.maske;
+            bits = vorlage.bits;
+            seiten = new AtomicReferenceArray<>(vorlage.seiten.length());
+            for (int i = 0; i < seiten.length(); i++) {
+                seiten.set(i, vorlage.seiten.get(i));
+            }
+        }
+
+        int laenge() {
+            return maske + 1;
+        }
+
+        Seite seite(int platz) {
+            return seiten.get(platz >>> bits);
+        }
+
+        int stelle(int platz) {
+            return platz & ((1 << bits) - 1);
+        }
+    }
+
+    /**
+     * erstellt eine leere Tabelle
+     */
+    KontoTabelle() {
+        epoche = EPOCHEN.incrementAndGet();
+        kontoepoche = epoche;
+        tabelle = new Tabelle(epoche, ANFANGSKAPAZITAET);
+    }
+
+    /**
+     * erstellt eine Tabelle, die sich alles mit der Vorlage teilt. Der Aufrufer haelt das Lock der Vorlage.
+     */
+    private KontoTabelle(KontoTabelle vorlage, Ersetzung ersetzung) {
+        epoche = EPOCHEN.incrementAndGet();
+        kontoepoche = epoche;
+        tabelle = vorlage.tabelle;
+        anzahl = vorlage.anzahl;
+        grabsteine = vorlage.grabsteine;
+        this.ersetzung = ersetzung;
+        this.kundenkopien = new IdentityHashMap<>();
+        this.familie = vorlage.familie;
+    }
+
+    /**
+     * legt fest, wer erfaehrt, dass die Tabelle ein geteiltes Konto durch eine Kopie ersetzt
+     *
+     * @param ersetzung der Empfaenger oder null
+     */
+    void setErsetzung(Ersetzung ersetzung) {
+        this.ersetzung = ersetzung;
+    }
+
+    /**
+     * erstellt in O(1) eine zweite Tabelle mit denselben Konten. Beide Tabellen kopieren Seiten erst, wenn sie sie
+     * anfassen; Konten kopiert nur die neue Tabelle. Danach sieht keine mehr etwas von den Aenderungen der anderen,
+     * solange jedes Aendern eines Kontos vorher mit {@link #vorAenderung(Konto)} gemeldet wird. Konten, die ein
+     * Aufrufer vor dem Abzweigen geholt hat, gehoeren weiter dieser Tabelle.
+     *
+     * @param ersetzung Empfaenger fuer die neue Tabelle, siehe {@link #setErsetzung(Ersetzung)}
+     * @return die neue Tabelle
+     */
+    synchronized KontoTabelle abzweigen(Ersetzung ersetzung) {
+        if (familie == null) {
+            Familie f = new Familie();
+            f.aufnehmen(this);
+            familie = f;
+        }
+        KontoTabelle zweig = new KontoTabelle(this, ersetzung);
+        familie.aufnehmen(zweig);
+        epoche = EPOCHEN.incrementAndGet(); // die Seiten gehoeren jetzt auch dieser Tabelle nicht mehr allein
+        return zweig;
+    }
+
+    /**
+     * muss aufgerufen werden, bevor ein Konto dieser Tabelle geaendert wird, und zwar ausserhalb seiner Monitore:
+     * jede andere Tabelle der Familie, die sich das Konto noch mit dieser teilt, ersetzt es vorher durch eine Kopie.
+     * Ohne Abzweigen geschieht nichts.
+     *
+     * @param konto das Konto, das gleich geaendert wird
+     */
+    void vorAenderung(Konto konto) {
+        Familie f = familie;
+        if (f != null) {
+            f.vorAenderung(konto);
+        }
+    }
+
+    /**
+     * liefert zurueck, ob das Konto unter der Nummer steht, dieser Tabelle aber nicht gehoert
+     */
+    private boolean teilt(long nummer, Konto konto) {
+        Tabelle t = tabelle;
+        int i = platz(nummer, t.maske);
+        while (true) {
+            Seite s = t.seite(i);
+            int j = t.stelle(i);
+            long n = s.nummern.get(j);
+            if (n == nummer) {
+                return s.epochen.get(j) != kontoepoche && s.konten.get(j) == konto;
+            }
+            if (n == LEER) {
+                return false;
+            }
+            i = (i + 1) & t.maske;
+        }
+    }
+
+    /**
+     * verteilt auch aufeinanderfolgende Kontonummern gleichmaessig (Fibonacci-Hashing)
+     */
+    private static int platz(long nummer, int maske) {
+        return (int) ((nummer * 0x9E3779B97F4A7C15L) >>> 40) & maske;
+    }
+
+    /**
+     * liefert das Konto mit der angegebenen Nummer. Ein noch geteiltes Konto wird dabei durch eine eigene Kopie
+     * ersetzt.
+     *
+     * @param nummer Kontonummer
+     * @return das Konto oder null, wenn es nicht eingetragen ist
+     */
+    Konto get(long nummer) {
+        Tabelle t = tabelle;
+        long e = kontoepoche;
+        int i = platz(nummer, t.maske);
+        while (true) {
+            Seite s = t.seite(i);
+            int j = t.stelle(i);
+            long n = s.nummern.get(j);
+            if (n == nummer) {
+                // erst die Epoche, dann das Konto lesen: uebernehmen schreibt in umgekehrter Reihenfolge
+                if (s.epochen.get(j) == e) {
+                    return s.konten.get(j);
+                }
+                return s.konten.get(j) == null ? null : uebernehmen(nummer);
+            }
+            if (n == LEER) {
+                return null;
+            }
+            i = (i + 1) & t.maske;
+        }
+    }
+
+    /**
+     * liefert zurueck, ob ein Konto mit der Nummer eingetragen ist
+     *
+     * @param nummer Kontonummer
+     * @return true, wenn das Konto eingetragen ist
+     */
+    boolean enthaelt(long nummer) {
+        Tabelle t = tabelle;
+        int i = platz(nummer, t.maske);
+        while (true) {
+            Seite s = t.seite(i);
+            long n = s.nummern.get(t.stelle(i));
+            if (n == nummer) {
+                return s.konten.get(t.stelle(i)) != null;
+            }
+            if (n == LEER) {
+                return false;
+            }
+            i = (i + 1) & t.maske;
+        }
+    }
+
+    /**
+     * liefert die Tabelle, bei Bedarf als eigene Kopie. Der Aufrufer haelt das Lock.
+     */
+    private Tabelle eigeneTabelle() {
+        Tabelle t = tabelle;
+        if (t.epoche != epoche) {
+            t = new Tabelle(epoche, t);
+            tabelle = t;
+        }
+        return t;
+    }
+
+    /**
+     * liefert die Seite des Platzes i, bei Bedarf als eigene Kopie. Der Aufrufer haelt das Lock.
+     */
+    private Seite eigeneSeite(Tabelle t, int i) {
+        Seite s = t.seite(i);
+        if (s.epoche != epoche) {
+            s = new Seite(epoche, s);
+            t.seiten.set(i >>> t.bits, s);
+        }
+        return s;
+    }
+
+    /**
+     * liefert den Inhaber fuer die Kopie eines geteilten Kontos: in einer abgezweigten Tabelle die eigene Kopie des
+     * Kunden, sonst den Kunden selbst. Der Aufrufer haelt das Lock.
+     */
+    private Kunde inhaber(Kunde kunde) {
+        if (kundenkopien == null || kunde == null) {
+            return kunde;
+        }
+        return kundenkopien.computeIfAbsent(kunde,
+                k -> new Kunde(k.getVorname(), k.getNachname(), k.getAdresse(), k.getGeburtstag()));
+    }
+
+    /**
+     * ersetzt das geteilte Konto mit der Nummer durch eine eigene Kopie
+     *
+     * @return die Kopie, das Konto, wenn es inzwischen schon dieser Tabelle gehoert, oder null, wenn es nicht
+     * eingetragen ist
+     */
+    private synchronized Konto uebernehmen(long nummer) {
+        Tabelle t = eigeneTabelle();
+        int i = platz(nummer, t.maske);
+        while (true) {
+            long n = t.seite(i).nummern.get(t.stelle(i));
+            if (n == nummer) {
+                Seite s = eigeneSeite(t, i);
+                int j = t.stelle(i);
+                Konto k = s.konten.get(j);
+                if (k == null || s.epochen.get(j) == kontoepoche) {
+                    return k;
+                }
+                Konto kopie = Kontocodec.kopie(k, inhaber(k.getInhaber()));
+                Ersetzung e = ersetzung;
+                if (e != null) {
+                    e.ersetzt(nummer, k, kopie); // bevor ein anderer Thread die Kopie veraendern kann
+                }
+                s.konten.set(j, kopie);
+                s.epochen.set(j, kontoepoche);
+                return kopie;
+            }
+            if (n == LEER) {
+                return null;
+            }
+            i = (i + 1) & t.maske;
+        }
+    }
+
+    /**
+     * traegt das Konto unter der Nummer ein bzw. ersetzt das dort eingetragene Konto
+     *
+     * @param nummer Kontonummer, nicht 0
+     * @param konto  das Konto, nicht null
+     * @return das vorher eingetragene Konto oder null
+     * @throws IllegalArgumentException wenn nummer 0 oder konto null ist
+     */
+    synchronized Konto put(long nummer, Konto konto) {
+        if (nummer == LEER || konto == null) {
+            throw new IllegalArgumentException("Kontonummer 0 und null-Konten koennen nicht eingetragen werden");
+        }
+        if (2 * (anzahl + grabsteine + 1) > tabelle.laenge()) {
+            vergroessern(1);
+        }
+
+        Tabelle t = eigeneTabelle();
+        int i = platz(nummer, t.maske);
+        while (true) {
+            long n = t.seite(i).nummern.get(t.stelle(i));
+            if (n == nummer) {
+                Seite s = eigeneSeite(t, i);
+                int j = t.stelle(i);
+                Konto vorher = s.konten.getAndSet(j, konto);
+                s.epochen.set(j, kontoepoche);
+                if (vorher == null) {
+                    grabsteine--;
+                    anzahl++;
+                }
+                return vorher;
+            }
+            if (n == LEER) {
+                // erst die Nummer, dann das Konto: ein Leser sieht hoechstens die Nummer ohne Konto (= nicht eingetragen)
+                Seite s = eigeneSeite(t, i);
+                int j = t.stelle(i);
+                s.nummern.set(j, nummer);
+                s.epochen.set(j, kontoepoche);
+                s.konten.set(j, konto);
+                anzahl++;
+                return null;
+            }
+            i = (i + 1) & t.maske;
+        }
+    }
+
+    /**
+     * entfernt das Konto mit der Nummer. Die Nummer bleibt als Grabstein stehen, damit Leser weiter sondieren.
+     *
+     * @param nummer Kontonummer
+     * @return das entfernte Konto oder null, wenn keins eingetragen war; ggf. das noch geteilte Konto
+     */
+    synchronized Konto remove(long nummer) {
+        Tabelle t = eigeneTabelle();
+        int i = platz(nummer, t.maske);
+        while (true) {
+            long n = t.seite(i).nummern.get(t.stelle(i));
+            if (n == nummer) {
+                Konto vorher = eigeneSeite(t, i).konten.getAndSet(t.stelle(i), null);
+                if (vorher != null) {
+                    anzahl--;
+                    grabsteine++;
+                }
+                return vorher;
+            }
+            if (n == LEER) {
+                return null;
+            }
+            i = (i + 1) & t.maske;
+        }
+    }
+
+    /**
+     * vergroessert die Tabelle bei Bedarf einmal so, dass noch zusaetzlich Konten ohne weiteres Vergroessern Platz
+     * haben, z.B. vor einem {@link Massenimport}
+     *
+     * @param zusaetzlich Anzahl der Konten, die noch eingetragen werden
+     */
+    synchronized void kapazitaetSichern(int zusaetzlich) {
+        if (2 * ((long) anzahl + grabsteine + zusaetzlich) > tabelle.laenge()) {
+            vergroessern(zusaetzlich);
+        }
+    }
+
+    /**
+     * baut die Tabelle neu auf, bei Bedarf groesser; Grabsteine entfallen dabei. Die Konten behalten ihre
+     * Epochen, geteilte Konten bleiben also geteilt.
+     *
+     * @param zusaetzlich so viele Konten muessen danach noch Platz haben
+     */
+    private void vergroessern(int zusaetzlich) {
+        Tabelle alt = tabelle;
+        int kapazitaet = alt.laenge();
+        while (2 * ((long) anzahl + zusaetzlich) > kapazitaet / 2) {
+            kapazitaet *= 2;
+        }
+
+        Tabelle neu = new Tabelle(epoche, kapazitaet);
+        for (int j = 0; j < alt.laenge(); j++) {
+            Seite quelle = alt.seite(j);
+            Konto k = quelle.konten.get(alt.stelle(j));
+            if (k != null) {
+                long nummer = quelle.nummern.get(alt.stelle(j));
+                int i = platz(nummer, neu.maske);
+                while (neu.seite(i).nummern.get(neu.stelle(i)) != LEER) {
+                    i = (i + 1) & neu.maske;
+                }
+                Seite ziel = neu.seite(i);
+                ziel.nummern.set(neu.stelle(i), nummer);
+                ziel.epochen.set(neu.stelle(i), quelle.epochen.get(alt.stelle(j)));
+                ziel.konten.set(neu.stelle(i), k);
+            }
+        }
+        grabsteine = 0;
+        tabelle = neu;
+    }
+
+    /**
+     * liefert die Anzahl der eingetragenen Konten
+     *
+     * @return Anzahl
+     */
+    int size() {
+        return anzahl;
+    }
+
+    /**
+     * liefert das Konto auf Platz i, bei Bedarf als eigene Kopie
+     */
+    private Konto konto(Tabelle t, int i, long e) {
+        Seite s = t.seite(i);
+        int j = t.stelle(i);
+        if (s.epochen.get(j) == e) {
+            return s.konten.get(j);
+        }
+        return s.konten.get(j) == null ? null : uebernehmen(s.nummern.get(j));
+    }
+
+    /**
+     * liefert alle Konten in keiner bestimmten Reihenfolge
+     *
+     * @return Stream der Konten
+     */
+    Stream<Konto> stream() {
+        Tabelle t = tabelle;
+        long e = kontoepoche;
+        return IntStream.range(0, t.laenge()).mapToObj(i -> konto(t, i, e)).filter(Objects::nonNull);
+    }
+
+    /**
+     * ruft aktion fuer alle Konten in keiner bestimmten Reihenfolge auf
+     *
+     * @param aktion die Aktion
+     */
+    void forEach(Consumer<Konto> aktion) {
+        Tabelle t = tabelle;
+        long e = kontoepoche;
+        for (int i = 0; i < t.laenge(); i++) {
+            Konto k = konto(t, i, e);
+            if (k != null) {
+                aktion.accept(k);
+            }
+        }
+    }
+
+    /**
+     * ruft aktion fuer alle Konten mit ihrer Kontonummer in keiner bestimmten Reihenfolge auf
+     *
+     * @param aktion die Aktion
+     */
+    void forEachMitNummer(ObjLongConsumer<Konto> aktion) {
+        Tabelle t = tabelle;
+        long e = kontoepoche;
+        for (int i = 0; i < t.laenge(); i++) {
+            Konto k = konto(t, i, e);
+            if (k != null) {
+                aktion.accept(k, t.seite(i).nummern.get(t.stelle(i)));
+            }
+        }
+    }
+
+    /**
+     * liefert alle eingetragenen Kontonummern aufsteigend sortiert
+     *
+     * @return sortierte Kontonummern
+     */
+    long[] kontonummernSortiert() {
+        Tabelle t = tabelle;
+        long[] nummern = new long[t.laenge()];
+        int n = 0;
+        for (int i = 0; i < t.laenge(); i++) {
+            Seite s = t.seite(i);
+            if (s.konten.get(t.stelle(i)) != null) {
+                nummern[n++] = s.nummern.get(t.stelle(i));
+            }
+        }
+        nummern = Arrays.copyOf(nummern, n);
+        Arrays.sort(nummern);
+        return nummern;
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(anzahl);
+        Tabelle t = tabelle;
+        for (int i = 0; i < t.laenge(); i++) {
+            Seite s = t.seite(i);
+            Konto k = s.konten.get(t.stelle(i));
+            if (k != null) {
+                out.writeLong(s.nummern.get(t.stelle(i)));
+                out.writeObject(k);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int n = in.readInt();
+        epoche = EPOCHEN.incrementAndGet();
+        kontoepoche = epoche;
+        tabelle = new Tabelle(epoche, ANFANGSKAPAZITAET);
+        for (int i = 0; i < n; i++) {
+            long nummer = in.readLong();
+            put(nummer, (Konto) in.readObject());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package bank;
+
+import verarbeitung.Konto;
+import verarbeitung.Kontonachfuehrung;
+
+/**
+ * Eine Abbildung der Konten einer Bank, die die Bank beim Erstellen und Loeschen von Konten nachfuehrt.
+ * Aenderungen an einem Konto gibt die Bank ueber ihre {@link Kontonachfuehrung}, die bei jedem ihrer Konten
+ * angemeldet ist, an alle Indizes weiter; ein Index meldet sich dafuer nicht selbst beim Konto an.
+ */
+interface Kontoindex extends Kontonachfuehrung {
+
+    /**
+     * nimmt das Konto mit seinem aktuellen Zustand auf. Die Nachfuehrung der Bank ist beim Konto schon angemeldet;
+     * Aenderungen, die vor dem Eintragen gemeldet werden, kann der Index ignorieren.
+     *
+     * @param nummer Kontonummer, unter der das Konto in der Bank steht
+     * @param konto  das Konto
+     */
+    void eintragen(long nummer, Konto konto);
+
+    /**
+     * nimmt viele neue Konten auf einmal auf, z.B. bei einem {@link Massenimport}. Wird fuer verschiedene Bereiche
+     * gleichzeitig aufgerufen. Standardmaessig wird jedes Konto einzeln eingetragen.
+     *
+     * @param erste  Nummer von konten[0]; konten[i] steht unter erste + i in der Bank
+     * @param konten die Konten
+     * @param von    erster einzutragender Index in konten
+     * @param bis    Index hinter dem letzten einzutragenden
+     */
+    default void alleEintragen(long erste, Konto[] konten, int von, int bis) {
+        for (int i = von; i < bis; i++) {
+            eintragen(erste + i, konten[i]);
+        }
+    }
+
+    /**
+     * entfernt das Konto
+     *
+     * @param nummer Kontonummer, unter der das Konto in der Bank stand
+     * @param konto  das Konto
+     */
+    void austragen(long nummer, Konto konto);
+
+    /**
+     * ersetzt das Konto unter der Nummer durch eine Kopie mit demselben Zustand, siehe {@link KontoTabelle}.
+     * Standardmaessig wird das alte Konto aus- und die Kopie eingetragen.
+     *
+     * @param nummer Kontonummer
+     * @param alt    das bisherige Konto
+     * @param neu    die Kopie
+     */
+    default void ersetzen(long nummer, Konto alt, Konto neu) {
+        austragen(nummer, alt);
+        eintragen(nummer, neu);
+    }
+}
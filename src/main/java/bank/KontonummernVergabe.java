@@ -0,0 +1,359 @@
+package bank;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Vergibt Kontonummern ab 1. Jeder Thread reserviert sich einen Block von Nummern und vergibt daraus ohne
+ * Synchronisation, nur fuer einen neuen Block wird ein gemeinsamer Zaehler erhoeht. Ein einzelner Thread
+ * bekommt so weiterhin die Nummern 1, 2, 3, ... ohne Luecken.
+ *
+ * Endet ein Thread, bevor sein Block aufgebraucht ist, wird der Rest des Blocks beim naechsten neuen Block
+ * eingesammelt und an den naechsten Thread weitergegeben, der einen Block braucht. So hinterlassen auch viele
+ * kurzlebige Threads (z.B. ein virtueller Thread je Auftrag) keine Luecken, und es gibt nie mehr aktive Bloecke
+ * als lebende Threads, die Nummern vergeben haben.
+ *
+ * Freigegebene Nummern (geloeschte Konten) werden in einer {@link Nummernbitmap} gefuehrt; auf Wunsch werden sie
+ * wieder vergeben, bevor neue Nummern aus dem Block kommen.
+ */
+class KontonummernVergabe implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Standardgroesse der Nummernbloecke
+     */
+    static final int STANDARD_BLOCKGROESSE = 64;
+
+    private final int blockgroesse;
+
+    /**
+     * erste Nummer, die noch in keinem Block reserviert ist
+     */
+    private final AtomicLong naechsterBlockAnfang = new AtomicLong(1);
+
+    /**
+     * hoechste Nummer aus bereits verbrauchten Bloecken
+     */
+    private final AtomicLong hoechsteAusVerbrauchten = new AtomicLong(0);
+
+    /**
+     * die Bloecke, aus denen gerade vergeben wird, und die eingesammelten Reste, die noch keinem Thread gehoeren
+     */
+    private transient Set<Nummernblock> aktiveBloecke;
+    private transient ThreadLocal<Nummernblock> threadBlock;
+
+    /**
+     * eingesammelte Reste von Bloecken beendeter Threads; sie stehen auch in aktiveBloecke
+     */
+    private transient Queue<Nummernblock> reste;
+
+    /**
+     * freigegebene, noch nicht wieder vergebene Nummern; geschuetzt durch this
+     */
+    private transient Nummernbitmap freigegeben;
+
+    /**
+     * erstellt eine Vergabe mit der Standardblockgroesse
+     */
+    KontonummernVergabe() {
+        this(STANDARD_BLOCKGROESSE);
+    }
+
+    /**
+     * erstellt eine Vergabe
+     *
+     * @param blockgroesse Anzahl der Nummern, die ein Thread auf einmal reserviert
+     * @throws IllegalArgumentException wenn blockgroesse nicht positiv ist
+     */
+    KontonummernVergabe(int blockgroesse) {
+        if (blockgroesse <= 0) {
+            throw new IllegalArgumentException("Blockgroesse muss positiv sein!");
+        }
+        this.blockgroesse = blockgroesse;
+        this.freigegeben = new Nummernbitmap();
+        initialisieren();
+    }
+
+    private void initialisieren() {
+        aktiveBloecke = ConcurrentHashMap.newKeySet();
+        threadBlock = new ThreadLocal<>();
+        reste = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * liefert die naechste Kontonummer aus dem Block des aufrufenden Threads
+     *
+     * @return neue, noch nie vergebene Kontonummer
+     */
+    long naechsteNummer() {
+        Nummernblock block = threadBlock.get();
+        if (block == null || block.naechste == block.ende) {
+            block = neuerBlock(block);
+        }
+        long nummer = block.naechste;
+        block.naechste = nummer + 1;
+        return nummer;
+    }
+
+    /**
+     * liefert die kleinste freigegebene Nummer, wenn es eine gibt und wiederverwenden gewuenscht ist,
+     * sonst die naechste Kontonummer aus dem Block des aufrufenden Threads
+     *
+     * @param wiederverwenden true, wenn freigegebene Nummern wieder vergeben werden sollen
+     * @return Kontonummer, die gerade keinem Konto gehoert
+     */
+    long naechsteNummer(boolean wiederverwenden) {
+        if (wiederverwenden) {
+            synchronized (this) {
+                long nummer = freigegeben.kleinsteEntnehmen();
+                if (nummer > 0) {
+                    return nummer;
+                }
+            }
+        }
+        return naechsteNummer();
+    }
+
+    /**
+     * gibt die Nummer eines geloeschten Kontos frei
+     *
+     * @param nummer die Kontonummer
+     */
+    synchronized void freigeben(long nummer) {
+        freigegeben.hinzufuegen(nummer);
+    }
+
+    /**
+     * liefert alle Nummern bis zur hoechsten vergebenen, die frei sind: die freigegebenen und die eingesammelten
+     * Reste der Bloecke beendeter Threads. Nummern, die ein lebender Thread in seinem Block reserviert hat, zaehlen
+     * nicht, sie werden noch vergeben. Die Laufzeit haengt nur von der Anzahl der Luecken und der Bloecke ab, nicht
+     * von der Anzahl der Konten.
+     *
+     * @return Luecken, aufsteigend sortiert
+     */
+    long[] getLuecken() {
+        return luecken(false);
+    }
+
+    /**
+     * sammelt die Luecken bis zur hoechsten vergebenen Nummer in einen wachsenden Puffer
+     *
+     * @param mitReservierten true, wenn auch die reservierten, noch nicht vergebenen Nummern der Bloecke lebender
+     *                        Threads dazugehoeren (fuer eine Kopie, in der es diese Bloecke nicht mehr gibt)
+     * @return Luecken, aufsteigend sortiert
+     */
+    private long[] luecken(boolean mitReservierten) {
+        resteEinsammeln();
+        long hoechste = getHoechsteVergebeneNummer();
+        long[][] puffer = {new long[16]};
+        int[] n = {0};
+        synchronized (this) {
+            freigegeben.fuerAlle(nummer -> anhaengen(puffer, n, nummer));
+        }
+        boolean sortiert = true;
+        for (Nummernblock block : aktiveBloecke) {
+            if (!mitReservierten && block.besitzer != null) {
+                continue; // gehoert einem lebenden Thread oder wird beim naechsten Einsammeln zum Rest
+            }
+            long bis = Math.min(block.ende - 1, hoechste);
+            for (long nummer = block.naechste; nummer <= bis; nummer++) {
+                anhaengen(puffer, n, nummer);
+                sortiert = false;
+            }
+        }
+        long[] luecken = Arrays.copyOf(puffer[0], n[0]);
+        if (!sortiert) {
+            Arrays.sort(luecken);
+        }
+        return luecken;
+    }
+
+    private static void anhaengen(long[][] puffer, int[] n, long nummer) {
+        if (n[0] == puffer[0].length) {
+            puffer[0] = Arrays.copyOf(puffer[0], puffer[0].length * 2);
+        }
+        puffer[0][n[0]++] = nummer;
+    }
+
+    /**
+     * reserviert einen neuen Block fuer den aufrufenden Thread und schliesst den alten ab
+     *
+     * @param verbraucht der verbrauchte Block oder null
+     * @return der neue Block
+     */
+    private Nummernblock neuerBlock(Nummernblock verbraucht) {
+        if (verbraucht != null) {
+            // erst das Maximum uebernehmen, dann austragen, damit getHoechsteVergebeneNummer es nie verpasst
+            hoechsteAusVerbrauchten.accumulateAndGet(verbraucht.ende - 1, Math::max);
+            aktiveBloecke.remove(verbraucht);
+        }
+        resteEinsammeln();
+
+        Thread besitzer = Thread.currentThread();
+        Nummernblock block;
+        Nummernblock rest = reste.poll();
+        if (rest != null) {
+            aktiveBloecke.remove(rest);
+            block = new Nummernblock(rest.anfang, rest.ende, besitzer);
+        } else {
+            long anfang = naechsterBlockAnfang.getAndAdd(blockgroesse);
+            block = new Nummernblock(anfang, anfang + blockgroesse, besitzer);
+        }
+        aktiveBloecke.add(block);
+        threadBlock.set(block);
+        return block;
+    }
+
+    /**
+     * sammelt die noch nicht vergebenen Nummern aus den Bloecken beendeter Threads als Reste ein. Laeuft in
+     * O(aktive Bloecke) und damit in O(lebende Threads), weil die Bloecke beendeter Threads dabei verschwinden.
+     */
+    private void resteEinsammeln() {
+        for (Nummernblock block : aktiveBloecke) {
+            if (!block.istVerwaist()) {
+                continue;
+            }
+            // wie bei einem verbrauchten Block erst das Maximum uebernehmen, dann austragen
+            if (block.naechste > block.anfang) {
+                hoechsteAusVerbrauchten.accumulateAndGet(block.naechste - 1, Math::max);
+            }
+            if (aktiveBloecke.remove(block) && block.naechste < block.ende) { // nur einer sammelt ihn ein
+                Nummernblock rest = new Nummernblock(block.naechste, block.ende, null);
+                aktiveBloecke.add(rest);
+                reste.add(rest);
+            }
+        }
+    }
+
+    /**
+     * liefert die hoechste bisher vergebene Kontonummer. Nummern darunter koennen noch in Bloecken anderer Threads
+     * reserviert sein, siehe {@link #getLuecken()}.
+     *
+     * @return hoechste vergebene Kontonummer, 0 wenn noch keine vergeben wurde
+     */
+    long getHoechsteVergebeneNummer() {
+        long hoechste = hoechsteAusVerbrauchten.get();
+        for (Nummernblock block : aktiveBloecke) {
+            if (block.naechste > block.anfang) {
+                hoechste = Math.max(hoechste, block.naechste - 1);
+            }
+        }
+        return hoechste;
+    }
+
+    /**
+     * setzt eine neue Vergabe auf einen wiederhergestellten Stand: vergeben wird ab hoechste + 1, die Nummern
+     * darunter ohne Konto gelten als freigegeben. Darf nur aufgerufen werden, bevor Nummern vergeben wurden.
+     *
+     * @param hoechste hoechste jemals vergebene Kontonummer
+     * @param belegt   die Nummern der vorhandenen Konten, aufsteigend sortiert
+     */
+    synchronized void wiederherstellen(long hoechste, long[] belegt) {
+        int i = 0;
+        for (long nummer = 1; nummer <= hoechste; nummer++) {
+            if (i < belegt.length && belegt[i] == nummer) {
+                i++;
+            } else {
+                freigegeben.hinzufuegen(nummer);
+            }
+        }
+        hoechsteAusVerbrauchten.accumulateAndGet(hoechste, Math::max);
+        naechsterBlockAnfang.accumulateAndGet(hoechste + 1, Math::max);
+    }
+
+    /**
+     * reserviert einen zusammenhaengenden Bereich neuer Nummern, z.B. fuer einen {@link Massenimport}. Die Nummern
+     * gelten sofort als vergeben; freigegebene Nummern werden dafuer nicht verwendet.
+     *
+     * @param anzahl Anzahl der Nummern
+     * @return erste Nummer des Bereichs
+     * @throws IllegalArgumentException wenn anzahl nicht positiv ist
+     */
+    long bereichReservieren(int anzahl) {
+        if (anzahl <= 0) {
+            throw new IllegalArgumentException("Anzahl muss positiv sein!");
+        }
+        long anfang = naechsterBlockAnfang.getAndAdd(anzahl);
+        hoechsteAusVerbrauchten.accumulateAndGet(anfang + anzahl - 1, Math::max);
+        return anfang;
+    }
+
+    /**
+     * liefert eine unabhaengige Vergabe mit demselben Stand, z.B. fuer eine Kopie der Bank. Wie bei der
+     * Serialisierung gelten die noch nicht vergebenen Nummern der Bloecke in der Kopie als freigegeben.
+     *
+     * @return die Kopie
+     */
+    KontonummernVergabe kopie() {
+        KontonummernVergabe kopie = new KontonummernVergabe(blockgroesse);
+        long hoechste = getHoechsteVergebeneNummer();
+        for (long nummer : luecken(true)) {
+            kopie.freigegeben.hinzufuegen(nummer);
+            hoechste = Math.max(hoechste, nummer);
+        }
+        kopie.hoechsteAusVerbrauchten.set(hoechste);
+        kopie.naechsterBlockAnfang.set(hoechste + 1);
+        return kopie;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        hoechsteAusVerbrauchten.accumulateAndGet(getHoechsteVergebeneNummer(), Math::max);
+        out.defaultWriteObject();
+        // die noch nicht vergebenen Nummern der Bloecke bleiben in der Kopie als freigegebene Nummern erhalten
+        Nummernbitmap luecken = new Nummernbitmap();
+        for (long nummer : luecken(true)) {
+            luecken.hinzufuegen(nummer);
+        }
+        out.writeObject(luecken);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        freigegeben = (Nummernbitmap) in.readObject();
+        // die Bloecke der Threads gehoeren nicht zur Kopie: direkt nach der hoechsten vergebenen Nummer weitermachen
+        naechsterBlockAnfang.set(hoechsteAusVerbrauchten.get() + 1);
+        initialisieren();
+    }
+
+    /**
+     * Ein reservierter Nummernblock [anfang, ende). Nur der besitzende Thread schreibt naechste. Der Besitzer wird
+     * nur schwach referenziert, damit ein Block einen beendeten Thread nicht am Leben haelt.
+     */
+    private static class Nummernblock {
+        private final long anfang;
+        private final long ende;
+        private volatile long naechste;
+        private final WeakReference<Thread> besitzer;
+
+        /**
+         * @param besitzer der vergebende Thread, null fuer einen eingesammelten Rest
+         */
+        Nummernblock(long anfang, long ende, Thread besitzer) {
+            this.anfang = anfang;
+            this.ende = ende;
+            this.naechste = anfang;
+            this.besitzer = besitzer == null ? null : new WeakReference<>(besitzer);
+        }
+
+        /**
+         * liefert, ob der besitzende Thread beendet ist; er schreibt naechste dann nie wieder
+         */
+        boolean istVerwaist() {
+            if (besitzer == null) {
+                return false; // ein Rest wartet schon auf einen neuen Besitzer
+            }
+            Thread t = besitzer.get();
+            return t == null || !t.isAlive();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package bank;
+
+import verarbeitung.Betrag;
+import verarbeitung.Girokonto;
+import verarbeitung.Konto;
+import verarbeitung.Kontoart;
+import verarbeitung.Sparbuch;
+import verarbeitung.Waehrung;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Spaltenweise Abbildung der Konten einer Bank fuer Auswertungen ueber alle Konten. Kontostand, Waehrung und
+ * Kontoart liegen in parallelen primitiven Feldern; das Konto mit der Nummer n steht im Platz n - 1.
+ * Ein Durchlauf ueber alle Konten liest so nur dicht gepackte Felder, statt jedes Konto-Objekt anzufassen.
+ *
+ * Die Felder sind in Seiten fester Groesse aufgeteilt, die beim Vergroessern nie verschoben werden. Die Konten
+ * bleiben die Eigentuemer ihres Zustands: nach jeder gemeldeten Aenderung wird der aktuelle Kontostand in den Platz
+ * geschrieben und danach am Konto nachgeprueft; hat er sich inzwischen wieder geaendert, wird erneut geschrieben.
+ * So steht nach der letzten Aenderung immer ihr Stand im Platz, ohne Lock, ohne Versionsstempel und ohne dass bei
+ * einer Buchung ein Objekt erzeugt wird. Auswertungen lesen ohne Lock und sehen hoechstens die gerade laufenden
+ * Buchungen noch nicht. Wer auf ein Ergebnis hin handelt, prueft am Konto selbst nach.
+ */
+class Kontospalten implements Kontoindex {
+
+    /**
+     * Kennung in der Spalte Kontoart fuer Konten, die weder Girokonto noch Sparbuch sind
+     */
+    private static final byte KONTOART_UNBEKANNT = -1;
+
+    /**
+     * Anzahl der Plaetze je Seite: 2 hoch SEITENBITS
+     */
+    private static final int SEITENBITS = 12;
+    private static final int SEITE = 1 << SEITENBITS;
+
+    /**
+     * die parallelen Felder fuer SEITE Plaetze
+     */
+    private static final class Seite {
+        private final AtomicReferenceArray<Konto> konten = new AtomicReferenceArray<>(SEITE);
+        /**
+         * Kontostaende in der kleinsten Einheit der Waehrung, siehe {@link Betrag}
+         */
+        private final AtomicLongArray kontostaende = new AtomicLongArray(SEITE);
+        private final AtomicIntegerArray waehrungen = new AtomicIntegerArray(SEITE);
+        /**
+         * wird nur beim Eintragen geschrieben, vor dem Konto
+         */
+        private final byte[] kontoarten = new byte[SEITE];
+    }
+
+    /**
+     * die Seiten; wird beim Vergroessern unter dem Lock von this ersetzt, die Seiten selbst bleiben
+     */
+    private volatile Seite[] seiten = new Seite[0];
+
+    /**
+     * Anzahl der Plaetze, die ein Durchlauf ansehen muss (hoechster je belegter Platz + 1)
+     */
+    private volatile int belegt;
+
+    /**
+     * liefert den Platz fuer die Kontonummer
+     *
+     * @param nummer Kontonummer
+     * @return Platz oder -1, wenn die Nummer nicht abgebildet werden kann
+     */
+    private static int platz(long nummer) {
+        return nummer >= 1 && nummer <= Integer.MAX_VALUE ? (int) (nummer - 1) : -1;
+    }
+
+    /**
+     * liefert die Seite mit dem Platz
+     *
+     * @return die Seite oder null, wenn es sie noch nicht gibt
+     */
+    private Seite seite(int platz) {
+        Seite[] s = seiten;
+        int i = platz >>> SEITENBITS;
+        return i < s.length ? s[i] : null;
+    }
+
+    /**
+     * legt die Seite mit dem Platz an, falls es sie noch nicht gibt, und vermerkt den Platz als belegt
+     */
+    private Seite seiteAnlegen(int platz) {
+        return seitenAnlegen(platz, platz)[platz >>> SEITENBITS];
+    }
+
+    /**
+     * legt alle Seiten mit den Plaetzen von bis bis an, soweit es sie noch nicht gibt, und vermerkt die Plaetze als
+     * belegt
+     *
+     * @return die Seiten
+     */
+    private synchronized Seite[] seitenAnlegen(int von, int bis) {
+        Seite[] s = seiten;
+        int letzte = bis >>> SEITENBITS;
+        if (letzte >= s.length) {
+            s = Arrays.copyOf(s, Math.max(letzte + 1, s.length * 2));
+        }
+        for (int i = von >>> SEITENBITS; i <= letzte; i++) {
+            if (s[i] == null) {
+                s[i] = new Seite();
+            }
+        }
+        seiten = s;
+        belegt = Math.max(belegt, bis + 1);
+        return s;
+    }
+
+    /**
+     * nimmt das Konto mit seinem aktuellen Zustand auf
+     *
+     * @param nummer Kontonummer, unter der das Konto in der Bank steht
+     * @param konto  das Konto
+     * @throws IllegalArgumentException wenn die Kontonummer nicht zwischen 1 und Integer.MAX_VALUE liegt
+     */
+    @Override
+    public void eintragen(long nummer, Konto konto) {
+        int platz = platz(nummer);
+        if (platz < 0) {
+            throw new IllegalArgumentException("Kontonummer " + nummer + " kann nicht abgebildet werden");
+        }
+        Seite s = seiteAnlegen(platz);
+        int i = platz & (SEITE - 1);
+        s.kontoarten[i] = kontoart(konto);
+        s.konten.set(i, konto);
+        abgleichen(s, i);
+    }
+
+    /**
+     * nimmt die Konten auf und legt die Seiten dafuer nur einmal an
+     *
+     * @throws IllegalArgumentException wenn eine der Kontonummern nicht zwischen 1 und Integer.MAX_VALUE liegt
+     */
+    @Override
+    public void alleEintragen(long erste, Konto[] konten, int von, int bis) {
+        if (von >= bis) {
+            return;
+        }
+        int anfang = platz(erste + von);
+        int ende = platz(erste + bis - 1);
+        if (anfang < 0 || ende < 0) {
+            throw new IllegalArgumentException("Kontonummern ab " + (erste + von) + " koennen nicht abgebildet werden");
+        }
+        Seite[] alle = seitenAnlegen(anfang, ende);
+        for (int i = von; i < bis; i++) {
+            int platz = anfang + (i - von);
+            Seite s = alle[platz >>> SEITENBITS];
+            int j = platz & (SEITE - 1);
+            s.kontoarten[j] = kontoart(konten[i]);
+            s.konten.set(j, konten[i]);
+            abgleichen(s, j);
+        }
+    }
+
+    /**
+     * entfernt das Konto
+     *
+     * @param nummer Kontonummer, unter der das Konto in der Bank stand
+     * @param konto  das Konto
+     */
+    @Override
+    public void austragen(long nummer, Konto konto) {
+        int platz = platz(nummer);
+        Seite s = platz < 0 ? null : seite(platz);
+        if (s == null) {
+            return;
+        }
+        int i = platz & (SEITE - 1);
+        if (s.konten.compareAndSet(i, konto, null)) {
+            abgleichen(s, i);
+        }
+    }
+
+    /**
+     * schreibt Kontostand und Waehrung des Kontos im Platz, bis sie nach dem Schreiben noch mit dem Konto
+     * uebereinstimmen. Der letzte Schreiber hat so immer den neuesten Stand geschrieben.
+     */
+    private static void abgleichen(Seite s, int i) {
+        Konto konto;
+        long stand;
+        int waehrung;
+        do {
+            konto = s.konten.get(i);
+            stand = konto == null ? 0 : konto.getKontostandBetrag();
+            waehrung = konto == null ? Waehrung.EUR.ordinal() : waehrung(konto.getAktuelleWaehrung());
+            s.kontostaende.set(i, stand);
+            s.waehrungen.set(i, waehrung);
+        } while (s.konten.get(i) != konto || konto != null
+                && (konto.getKontostandBetrag() != stand || waehrung(konto.getAktuelleWaehrung()) != waehrung));
+    }
+
+    private static int waehrung(Waehrung w) {
+        return w == null ? Waehrung.EUR.ordinal() : w.ordinal();
+    }
+
+    private static byte kontoart(Konto konto) {
+        if (konto instanceof Girokonto) {
+            return (byte) Kontoart.GIROKONTO.ordinal();
+        }
+        if (konto instanceof Sparbuch) {
+            return (byte) Kontoart.SPARBUCH.ordinal();
+        }
+        return KONTOART_UNBEKANNT;
+    }
+
+    /**
+     * uebernimmt den neuen Kontostand eines eingetragenen Kontos
+     */
+    @Override
+    public void kontostandGeaendert(Konto konto, long alt, long neu) {
+        nachfuehren(konto);
+    }
+
+    /**
+     * uebernimmt nach einem Waehrungswechsel die neue Waehrung; die uebrigen Eigenschaften stehen nicht in den Spalten
+     */
+    @Override
+    public void eigenschaftGeaendert(Konto konto, String name, Object alt, Object neu) {
+        if ("Waehrung".equals(name)) {
+            nachfuehren(konto);
+        }
+    }
+
+    private void nachfuehren(Konto konto) {
+        int platz = platz(konto.getKontonummer());
+        Seite s = platz < 0 ? null : seite(platz);
+        if (s == null) {
+            return;
+        }
+        int i = platz & (SEITE - 1);
+        if (s.konten.get(i) == konto) {
+            abgleichen(s, i);
+        }
+    }
+
+    /**
+     * liefert die Summe der Kontostaende aller Konten, die in der Waehrung w gefuehrt werden
+     *
+     * @param w die Waehrung
+     * @return Summe der Kontostaende in der kleinsten Einheit von w, siehe {@link Betrag}
+     * @throws ArithmeticException wenn die Summe nicht in einen long passt
+     */
+    long summeKontostaende(Waehrung w) {
+        Seite[] alle = seiten;
+        int n = belegt;
+        int ordinal = waehrung(w);
+        long summe = 0;
+        for (int platz = 0; platz < n; platz++) {
+            Seite s = alle[platz >>> SEITENBITS];
+            int i = platz & (SEITE - 1);
+            if (s != null && s.waehrungen.get(i) == ordinal && s.konten.get(i) != null) {
+                summe = Betrag.addieren(summe, s.kontostaende.get(i));
+            }
+        }
+        return summe;
+    }
+
+    /**
+     * liefert die Anzahl der Konten der angegebenen Kontoart
+     *
+     * @param art die Kontoart
+     * @return Anzahl
+     */
+    int anzahlKonten(Kontoart art) {
+        Seite[] alle = seiten;
+        int n = belegt;
+        byte ordinal = (byte) art.ordinal();
+        int anzahl = 0;
+        for (int platz = 0; platz < n; platz++) {
+            Seite s = alle[platz >>> SEITENBITS];
+            int i = platz & (SEITE - 1);
+            if (s != null && s.konten.get(i) != null && s.kontoarten[i] == ordinal) {
+                anzahl++;
+            }
+        }
+        return anzahl;
+    }
+}
@@ -0,0 +1,215 @@
+package bank;
+
+import verarbeitung.Betrag;
+import verarbeitung.Konto;
+import verarbeitung.Waehrung;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Alle Konten nach Kontostand sortiert, in einer nebenlaeufigen Skipliste mit dem Schluessel (Kontostand,
+ * Kontonummer). Bereichsabfragen wie "alle Konten ab einem Kontostand" oder "die hoechsten n Kontostaende" kosten
+ * so O(log n + k) statt eines Durchlaufs ueber alle Konten.
+ *
+ * Verglichen wird der Kontostand in der Kontowaehrung, ohne Umrechnung. Damit Waehrungen mit verschiedenen
+ * Nachkommastellen vergleichbar bleiben, steht er im Schluessel in Vielfachen von 1 / {@link #EINHEIT}. Nach jeder
+ * Aenderung des Kontostands oder der Waehrung wird unter dem Lock des Eintrags der aktuelle Kontostand gelesen und
+ * der Schluessel versetzt; wer das Lock zuletzt bekommt, liest also auch den neuesten Stand. Waehrend ein Konto
+ * versetzt wird, fehlt es kurz in der Liste; Abfragen sehen hoechstens die gerade laufenden Buchungen noch nicht.
+ *
+ * Die Bank legt den Index erst bei der ersten Abfrage an, siehe {@link Bank#getKontenMitKontostandAb(double)}.
+ */
+class Kontostandindex implements Kontoindex {
+
+    /**
+     * Schluessel eines Kontos in der Skipliste
+     */
+    private static final class Schluessel {
+        private final long kontostand;
+        private final long nummer;
+
+        Schluessel(long kontostand, long nummer) {
+            this.kontostand = kontostand;
+            this.nummer = nummer;
+        }
+    }
+
+    private static final Comparator<Schluessel> ORDNUNG = Comparator
+            .comparingLong((Schluessel s) -> s.kontostand)
+            .thenComparingLong(s -> s.nummer);
+
+    /**
+     * was der Index zuletzt von einem Konto gesehen hat; geschuetzt durch sich selbst
+     */
+    private static final class Stand {
+        private final Konto konto;
+        /**
+         * true fuer Konten ohne Versionsstempel (z.B. eine Attrappe), deren Kontostand nur als double zu lesen ist
+         */
+        private final boolean attrappe;
+        private Schluessel schluessel;
+
+        Stand(Konto konto) {
+            this.konto = konto;
+            this.attrappe = konto.getZustand() == null;
+        }
+    }
+
+    /**
+     * Nenner der Schluessel: der groesste {@link Waehrung#getFaktor()} aller Waehrungen
+     */
+    static final long EINHEIT = Arrays.stream(Waehrung.values()).mapToLong(Waehrung::getFaktor).max().orElse(1);
+
+    private final ConcurrentSkipListSet<Schluessel> sortiert = new ConcurrentSkipListSet<>(ORDNUNG);
+    private final ConcurrentHashMap<Long, Stand> konten = new ConcurrentHashMap<>();
+
+    /**
+     * nimmt das Konto mit seinem aktuellen Kontostand auf
+     *
+     * @param nummer Kontonummer, unter der das Konto in der Bank steht
+     * @param konto  das Konto
+     */
+    @Override
+    public void eintragen(long nummer, Konto konto) {
+        Stand alt = konten.get(nummer);
+        if (alt != null && alt.konto == konto) {
+            return; // schon eingetragen, z.B. von der Bank und beim Anlegen des Index zugleich
+        }
+        Stand s = new Stand(konto);
+        synchronized (s) {
+            konten.put(nummer, s); // erst eintragen, dann lesen; Aenderungen warten auf das Lock des Stands
+            versetzen(nummer, s);
+        }
+    }
+
+    /**
+     * nimmt das Konto aus der Liste
+     *
+     * @param nummer Kontonummer, unter der das Konto in der Bank stand
+     * @param konto  das Konto
+     */
+    @Override
+    public void austragen(long nummer, Konto konto) {
+        Stand s = konten.get(nummer);
+        if (s == null || s.konto != konto) {
+            return;
+        }
+        synchronized (s) {
+            konten.remove(nummer, s);
+            if (s.schluessel != null) {
+                sortiert.remove(s.schluessel);
+                s.schluessel = null;
+            }
+        }
+    }
+
+    /**
+     * versetzt das Konto an die Stelle seines aktuellen Kontostands. Der Aufrufer haelt das Lock des Stands.
+     */
+    private void versetzen(long nummer, Stand s) {
+        Waehrung w = s.konto.getAktuelleWaehrung() == null ? Waehrung.EUR : s.konto.getAktuelleWaehrung();
+        long betrag = s.attrappe ? Betrag.ausDouble(s.konto.getKontostand(), w) : s.konto.getKontostandBetrag();
+        long kontostand = vergleichswert(betrag, w);
+        if (s.schluessel != null) {
+            if (s.schluessel.kontostand == kontostand) {
+                return;
+            }
+            sortiert.remove(s.schluessel);
+        }
+        s.schluessel = new Schluessel(kontostand, nummer);
+        sortiert.add(s.schluessel);
+    }
+
+    /**
+     * rechnet einen Betrag in der kleinsten Einheit seiner Waehrung in Vielfache von 1 / {@link #EINHEIT} um; was
+     * nicht in einen long passt, wird auf {@link Long#MIN_VALUE} bzw. {@link Long#MAX_VALUE} begrenzt
+     */
+    private static long vergleichswert(long betrag, Waehrung waehrung) {
+        long schritt = EINHEIT / waehrung.getFaktor();
+        long hoch = Math.multiplyHigh(betrag, schritt);
+        long wert = betrag * schritt;
+        if (hoch != (wert >> 63)) {
+            return betrag < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return wert;
+    }
+
+    @Override
+    public void kontostandGeaendert(Konto konto, long alt, long neu) {
+        nachfuehren(konto);
+    }
+
+    /**
+     * versetzt das Konto nach einem Waehrungswechsel; die uebrigen Eigenschaften aendern den Schluessel nicht
+     */
+    @Override
+    public void eigenschaftGeaendert(Konto konto, String name, Object alt, Object neu) {
+        if ("Waehrung".equals(name)) {
+            nachfuehren(konto);
+        }
+    }
+
+    /**
+     * versetzt das Konto nach einer Aenderung
+     *
+     * @param konto das geaenderte Konto
+     */
+    private void nachfuehren(Konto konto) {
+        long nummer = konto.getKontonummer();
+        Stand s = konten.get(nummer);
+        if (s == null || s.konto != konto) {
+            return;
+        }
+        synchronized (s) {
+            if (konten.get(nummer) == s) {
+                versetzen(nummer, s);
+            }
+        }
+    }
+
+    /**
+     * liefert die Nummern aller Konten mit einem Kontostand von mindestens minimum, aufsteigend nach Kontostand
+     *
+     * @param minimum Mindestkontostand in Vielfachen von 1 / {@link #EINHEIT}
+     * @return Kontonummern
+     */
+    long[] mitKontostandAb(long minimum) {
+        return nummern(sortiert.tailSet(new Schluessel(minimum, Long.MIN_VALUE)).iterator(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * liefert die Nummern der Konten mit den hoechsten Kontostaenden, absteigend nach Kontostand
+     *
+     * @param anzahl hoechstens so viele Konten
+     * @return Kontonummern
+     */
+    long[] hoechste(int anzahl) {
+        return nummern(sortiert.descendingIterator(), anzahl);
+    }
+
+    /**
+     * liefert die Nummern der Konten mit den niedrigsten Kontostaenden, aufsteigend nach Kontostand
+     *
+     * @param anzahl hoechstens so viele Konten
+     * @return Kontonummern
+     */
+    long[] niedrigste(int anzahl) {
+        return nummern(sortiert.iterator(), anzahl);
+    }
+
+    private static long[] nummern(Iterator<Schluessel> it, int anzahl) {
+        long[] ergebnis = new long[16];
+        int n = 0;
+        while (n < anzahl && it.hasNext()) {
+            if (n == ergebnis.length) {
+                ergebnis = Arrays.copyOf(ergebnis, n * 2);
+            }
+            ergebnis[n++] = it.next().nummer;
+        }
+        return Arrays.copyOf(ergebnis, n);
+    }
+}
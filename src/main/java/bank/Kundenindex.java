@@ -0,0 +1,398 @@
+package bank;
+
+import verarbeitung.Betrag;
+import verarbeitung.Konto;
+import verarbeitung.Kunde;
+import verarbeitung.Kurstabelle;
+import verarbeitung.Waehrung;
+import verarbeitung.Wechselkurse;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Index Kunde -&gt; Kontonummern mit der Summe der Kontostaende je Kunde. Die Summen werden getrennt nach Waehrung
+ * als Festkommabetraege gefuehrt und bei jeder Buchung um die Differenz nachgefuehrt; erst eine Abfrage rechnet sie
+ * mit den aktuellen Wechselkursen in eine Waehrung um. Eine Abfrage kostet so nur so viel wie der Kunde Konten bzw.
+ * es Waehrungen gibt, nicht so viel wie die Bank Konten hat.
+ *
+ * Inhaberwechsel kommen als Aenderung der Eigenschaft "Inhaber" des Kontos, Buchungen als Aenderung des Kontostands
+ * oder der Waehrung. Unter dem Lock des Eintrags werden dann Inhaber bzw. Kontostand frisch am Konto gelesen; wer das
+ * Lock zuletzt bekommt, liest also auch den neuesten Stand, und ein aelterer ersetzt nie einen neueren.
+ *
+ * Dazu stehen alle Kunden mit Konto zweimal in nebenlaeufigen Skiplisten: nach Namen sortiert, mit dem einmal
+ * berechneten Sortierschluessel "Nachname, Vorname", und nach dem Tag ihres Geburtstags im Jahr. Die vollstaendige
+ * Liste kommt so ohne Sortieren schon geordnet heraus, und "wer hat in den naechsten Tagen Geburtstag" kostet
+ * O(log n + k). Namensaenderungen meldet der Kunde selbst mit dem Ereignis "Name".
+ *
+ * Die Bank legt den Index erst bei der ersten Abfrage an, siehe {@link Bank#getGesamtkontostand(Kunde)}.
+ */
+class Kundenindex implements Kontoindex, PropertyChangeListener {
+
+    private static final Waehrung[] WAEHRUNGEN = Waehrung.values();
+
+    /**
+     * Eintrag eines Kunden in den sortierten Listen; unveraenderlich, bei einer Namensaenderung wird er ersetzt
+     */
+    private static final class Kundenschluessel {
+        private final String name;
+        private final int tag;
+        private final long folge;
+        private final Kunde kunde;
+
+        Kundenschluessel(String name, int tag, long folge, Kunde kunde) {
+            this.name = name;
+            this.tag = tag;
+            this.folge = folge;
+            this.kunde = kunde;
+        }
+    }
+
+    /**
+     * Kunden mit gleichem Namen bzw. Geburtstag unterscheidet die laufende Nummer folge
+     */
+    private static final Comparator<Kundenschluessel> NACH_NAME = Comparator
+            .comparing((Kundenschluessel k) -> k.name)
+            .thenComparingLong(k -> k.folge);
+    private static final Comparator<Kundenschluessel> NACH_GEBURTSTAG = Comparator
+            .comparingInt((Kundenschluessel k) -> k.tag)
+            .thenComparingLong(k -> k.folge);
+
+    /**
+     * Tag des Geburtstags im Jahr, immer in einem Schaltjahr gezaehlt: der 29. Februar ist Tag 60, der 1. Maerz
+     * immer Tag 61
+     */
+    private static int tagImJahr(LocalDate datum) {
+        return datum.withYear(2000).getDayOfYear();
+    }
+
+    /**
+     * Konten und Summen eines Kunden; geschuetzt durch sich selbst
+     */
+    private static final class Kundenkonten {
+        private long[] nummern = new long[4];
+        private int anzahl;
+
+        /**
+         * Summe der Kontostaende je Waehrung (nach ordinal) in der kleinsten Einheit
+         */
+        private final long[] summen = new long[WAEHRUNGEN.length];
+
+        /**
+         * der Eintrag des Kunden in den sortierten Listen; nur unter dem Lock von kunden.compute geaendert
+         */
+        private volatile Kundenschluessel schluessel;
+
+        synchronized void hinzufuegen(long nummer, long betrag, int waehrung) {
+            if (anzahl == nummern.length) {
+                nummern = Arrays.copyOf(nummern, anzahl * 2);
+            }
+            nummern[anzahl++] = nummer;
+            summen[waehrung] += betrag;
+        }
+
+        synchronized void entfernen(long nummer, long betrag, int waehrung) {
+            for (int i = 0; i < anzahl; i++) {
+                if (nummern[i] == nummer) {
+                    nummern[i] = nummern[--anzahl];
+                    summen[waehrung] -= betrag;
+                    return;
+                }
+            }
+        }
+
+        synchronized void buchen(long alt, int waehrungAlt, long neu, int waehrungNeu) {
+            summen[waehrungAlt] -= alt;
+            summen[waehrungNeu] += neu;
+        }
+
+        synchronized int anzahl() {
+            return anzahl;
+        }
+
+        synchronized long[] nummern() {
+            long[] kopie = Arrays.copyOf(nummern, anzahl);
+            Arrays.sort(kopie);
+            return kopie;
+        }
+
+        synchronized long[] summen() {
+            return summen.clone();
+        }
+    }
+
+    /**
+     * was der Index zuletzt von einem Konto gesehen hat; geschuetzt durch sich selbst
+     */
+    private static final class Kontoeintrag {
+        private final Konto konto;
+        /**
+         * true fuer Konten ohne Versionsstempel (z.B. eine Attrappe), deren Kontostand nur als double zu lesen ist
+         */
+        private final boolean attrappe;
+        private Kunde inhaber;
+        private long betrag;
+        private int waehrung;
+
+        Kontoeintrag(Konto konto) {
+            this.konto = konto;
+            this.attrappe = konto.getZustand() == null;
+        }
+    }
+
+    private final ConcurrentHashMap<Long, Kontoeintrag> konten = new ConcurrentHashMap<>();
+
+    /**
+     * Kunden mit mindestens einem Konto (Kunde ueberschreibt equals nicht, es zaehlt also die Identitaet)
+     */
+    private final ConcurrentHashMap<Kunde, Kundenkonten> kunden = new ConcurrentHashMap<>();
+
+    private final ConcurrentSkipListSet<Kundenschluessel> nachName = new ConcurrentSkipListSet<>(NACH_NAME);
+    private final ConcurrentSkipListSet<Kundenschluessel> nachGeburtstag = new ConcurrentSkipListSet<>(NACH_GEBURTSTAG);
+    private final AtomicLong folge = new AtomicLong();
+
+    /**
+     * nimmt das Konto mit seinem Inhaber und Kontostand auf
+     *
+     * @param nummer Kontonummer, unter der das Konto in der Bank steht
+     * @param konto  das Konto
+     */
+    @Override
+    public void eintragen(long nummer, Konto konto) {
+        Kontoeintrag alt = konten.get(nummer);
+        if (alt != null && alt.konto == konto) {
+            return; // schon eingetragen, z.B. von der Bank und beim Anlegen des Index zugleich
+        }
+        Kontoeintrag e = new Kontoeintrag(konto);
+        synchronized (e) {
+            konten.put(nummer, e); // erst eintragen, dann lesen; Aenderungen warten auf das Lock des Eintrags
+            e.inhaber = konto.getInhaber();
+            zustandLesen(e);
+            kundeBetreten(nummer, e);
+        }
+    }
+
+    /**
+     * entfernt das Konto mit seinem Kontostand bei seinem Inhaber
+     *
+     * @param nummer Kontonummer, unter der das Konto in der Bank stand
+     * @param konto  das Konto
+     */
+    @Override
+    public void austragen(long nummer, Konto konto) {
+        Kontoeintrag e = konten.get(nummer);
+        if (e == null || e.konto != konto) {
+            return;
+        }
+        synchronized (e) {
+            konten.remove(nummer, e);
+            kundeVerlassen(nummer, e);
+        }
+    }
+
+    /**
+     * nimmt Konto und Betrag beim Inhaber des Eintrags auf; ein neuer Kunde kommt in die sortierten Listen.
+     * Der Aufrufer haelt das Lock des Eintrags.
+     */
+    private void kundeBetreten(long nummer, Kontoeintrag e) {
+        if (e.inhaber == null) {
+            return;
+        }
+        kunden.compute(e.inhaber, (k, kk) -> {
+            if (kk == null) {
+                kk = new Kundenkonten();
+                kk.schluessel = new Kundenschluessel(k.getName(), tagImJahr(k.getGeburtstag()), folge.incrementAndGet(), k);
+                nachName.add(kk.schluessel);
+                nachGeburtstag.add(kk.schluessel);
+                k.anmelden(this);
+            }
+            kk.hinzufuegen(nummer, e.betrag, e.waehrung);
+            return kk;
+        });
+    }
+
+    /**
+     * nimmt Konto und Betrag beim bisherigen Inhaber heraus; Kunden ohne Konten fallen aus dem Index.
+     * Der Aufrufer haelt das Lock des Eintrags.
+     */
+    private void kundeVerlassen(long nummer, Kontoeintrag e) {
+        if (e.inhaber == null) {
+            return;
+        }
+        kunden.computeIfPresent(e.inhaber, (k, kk) -> {
+            kk.entfernen(nummer, e.betrag, e.waehrung);
+            if (kk.anzahl() > 0) {
+                return kk;
+            }
+            k.abmelden(this);
+            nachName.remove(kk.schluessel);
+            nachGeburtstag.remove(kk.schluessel);
+            return null;
+        });
+        e.inhaber = null;
+    }
+
+    /**
+     * ersetzt den Sortierschluessel eines Kunden, dessen Name sich geaendert hat
+     */
+    private void umbenennen(Kunde kunde) {
+        kunden.computeIfPresent(kunde, (k, kk) -> {
+            String name = k.getName(); // immer den aktuellen Namen, auch wenn Ereignisse sich ueberholen
+            if (!name.equals(kk.schluessel.name)) {
+                nachName.remove(kk.schluessel);
+                kk.schluessel = new Kundenschluessel(name, kk.schluessel.tag, kk.schluessel.folge, k);
+                nachName.add(kk.schluessel);
+                // in nachGeburtstag zaehlen nur Tag und Folge, der alte Eintrag bleibt gleichwertig
+            }
+            return kk;
+        });
+    }
+
+    /**
+     * uebernimmt den aktuellen Kontostand und die Waehrung des Kontos in den Eintrag. Der Aufrufer haelt das Lock
+     * des Eintrags.
+     */
+    private static void zustandLesen(Kontoeintrag e) {
+        Waehrung w = e.konto.getAktuelleWaehrung() == null ? Waehrung.EUR : e.konto.getAktuelleWaehrung();
+        e.betrag = e.attrappe ? Betrag.ausDouble(e.konto.getKontostand(), w) : e.konto.getKontostandBetrag();
+        e.waehrung = w.ordinal();
+    }
+
+    /**
+     * fuehrt Namensaenderungen der Kunden nach
+     *
+     * @param evt das Ereignis des Kunden
+     */
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+        if (evt.getSource() instanceof Kunde) {
+            umbenennen((Kunde) evt.getSource());
+        }
+    }
+
+    @Override
+    public void kontostandGeaendert(Konto konto, long alt, long neu) {
+        nachfuehren(konto, false);
+    }
+
+    /**
+     * fuehrt Inhaberwechsel und Waehrungswechsel nach; die uebrigen Eigenschaften stehen nicht im Index
+     */
+    @Override
+    public void eigenschaftGeaendert(Konto konto, String name, Object alt, Object neu) {
+        if ("Inhaber".equals(name)) {
+            nachfuehren(konto, true);
+        } else if ("Waehrung".equals(name)) {
+            nachfuehren(konto, false);
+        }
+    }
+
+    /**
+     * fuehrt Inhaberwechsel und Buchungen eines eingetragenen Kontos nach
+     *
+     * @param konto   das geaenderte Konto
+     * @param inhaber true fuer einen Inhaberwechsel, false fuer Kontostand oder Waehrung
+     */
+    private void nachfuehren(Konto konto, boolean inhaber) {
+        long nummer = konto.getKontonummer();
+        Kontoeintrag e = konten.get(nummer);
+        if (e == null || e.konto != konto) {
+            return;
+        }
+        synchronized (e) {
+            if (konten.get(nummer) != e) {
+                return; // inzwischen ausgetragen
+            }
+            if (inhaber) {
+                Kunde neu = konto.getInhaber();
+                if (neu != e.inhaber) {
+                    kundeVerlassen(nummer, e);
+                    e.inhaber = neu;
+                    kundeBetreten(nummer, e);
+                }
+                return;
+            }
+            long altBetrag = e.betrag;
+            int altWaehrung = e.waehrung;
+            zustandLesen(e);
+            if (e.inhaber != null) {
+                // solange der Eintrag beim Kunden steht, faellt der Kunde nicht aus dem Index
+                kunden.get(e.inhaber).buchen(altBetrag, altWaehrung, e.betrag, e.waehrung);
+            }
+        }
+    }
+
+    /**
+     * liefert die Nummern aller Konten des Kunden
+     *
+     * @param kunde der Kunde
+     * @return Kontonummern aufsteigend sortiert, leer wenn der Kunde kein Konto hat
+     */
+    long[] kontonummern(Kunde kunde) {
+        Kundenkonten kk = kunden.get(kunde);
+        return kk == null ? new long[0] : kk.nummern();
+    }
+
+    /**
+     * liefert die Summe der Kontostaende aller Konten des Kunden, mit den aktuellen Wechselkursen umgerechnet
+     *
+     * @param kunde der Kunde
+     * @param ziel  Waehrung des Ergebnisses
+     * @return Summe in der kleinsten Einheit von ziel
+     */
+    long gesamtkontostand(Kunde kunde, Waehrung ziel) {
+        Kundenkonten kk = kunden.get(kunde);
+        if (kk == null) {
+            return 0;
+        }
+        long[] summen = kk.summen();
+        Kurstabelle kurse = Wechselkurse.getKurstabelle();
+        long gesamt = 0;
+        for (int i = 0; i < summen.length; i++) {
+            if (summen[i] != 0) {
+                gesamt = Betrag.addieren(gesamt, kurse.umrechnen(summen[i], WAEHRUNGEN[i], ziel, Betrag.STANDARDRUNDUNG));
+            }
+        }
+        return gesamt;
+    }
+
+    /**
+     * liefert alle Kunden mit mindestens einem Konto, nach Namen sortiert
+     *
+     * @return Kunden in der Reihenfolge von "Nachname, Vorname"
+     */
+    Stream<Kunde> kundenNachName() {
+        return nachName.stream().map(k -> k.kunde);
+    }
+
+    /**
+     * liefert die Kunden, deren Geburtstag in die angegebenen Tage faellt, in der Reihenfolge der Geburtstage ab von
+     *
+     * @param von  erster Tag
+     * @param tage Anzahl der Tage ab von, mindestens 1
+     * @return Kunden nach Geburtstag
+     */
+    Stream<Kunde> kundenMitGeburtstag(LocalDate von, int tage) {
+        int anfang = tagImJahr(von);
+        Kundenschluessel start = new Kundenschluessel(null, anfang, Long.MIN_VALUE, null);
+        NavigableSet<Kundenschluessel> ab = nachGeburtstag.tailSet(start, true);
+        if (tage >= 366) {
+            return Stream.concat(ab.stream(), nachGeburtstag.headSet(start, false).stream()).map(k -> k.kunde);
+        }
+        int ende = tagImJahr(von.plusDays(tage - 1L));
+        Kundenschluessel bis = new Kundenschluessel(null, ende, Long.MAX_VALUE, null);
+        if (ende >= anfang) {
+            return ab.headSet(bis, true).stream().map(k -> k.kunde);
+        }
+        // ueber den Jahreswechsel
+        return Stream.concat(ab.stream(), nachGeburtstag.headSet(bis, true).stream()).map(k -> k.kunde);
+    }
+}
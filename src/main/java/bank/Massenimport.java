@@ -0,0 +1,482 @@
+package bank;
+
+import verarbeitung.Konto;
+import verarbeitung.Kontoart;
+import verarbeitung.Kontocodec;
+import verarbeitung.Kunde;
+import verarbeitung.Waehrung;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Liest viele Konten auf einmal aus einer CSV-Datei in eine Bank, z.B. beim Uebernehmen der Konten einer anderen
+ * Bank. Jede Zeile beschreibt ein Konto:
+ *
+ * <pre>Kontoart;Vorname;Nachname;Adresse;Geburtstag;Kontostand;Waehrung;Dispo</pre>
+ *
+ * Kontoart ist GIROKONTO oder SPARBUCH, der Geburtstag steht als JJJJ-MM-TT, Kontostand und Dispo als Dezimalzahl mit
+ * Punkt oder Komma, die Waehrung mit ihrem Namen (z.B. EUR). Der Dispo gilt nur fuer Girokonten und darf fehlen.
+ * Felder werden nicht in Anfuehrungszeichen gesetzt und enthalten kein Semikolon. Leere Zeilen und Zeilen, die mit #
+ * beginnen (z.B. eine Kopfzeile), werden uebersprungen.
+ *
+ * Die Datei wird in Stuecken in den Speicher abgebildet und parallel gelesen. Kunden mit gleichem Namen, gleicher
+ * Adresse und gleichem Geburtstag werden nur einmal angelegt, auch wenn sie schon ein Konto in der Bank haben. Erst
+ * wenn die ganze Datei fehlerfrei gelesen ist, bekommen die Konten aufeinanderfolgende neue Nummern (in der
+ * Reihenfolge der Datei) und werden auf einmal eingefuegt; beim Anlegen loest kein Konto ein Ereignis aus.
+ */
+public final class Massenimport {
+
+    private static final byte TRENNER = ';';
+
+    /**
+     * Groesse der Stuecke, in denen die Datei abgebildet und gelesen wird
+     */
+    static final int STUECK = 8 << 20;
+
+    /**
+     * laengste erlaubte Zeile in Byte
+     */
+    private static final int MAX_ZEILE = 1 << 16;
+
+    private static final int FELDER = 8;
+
+    private static final Kontoart[] KONTOARTEN = Kontoart.values();
+    private static final Waehrung[] WAEHRUNGEN = Waehrung.values();
+
+    private Massenimport() {
+    }
+
+    /**
+     * Stand eines Imports, fuer Fortschrittsmeldungen und als Ergebnis
+     */
+    public static final class Importstand {
+        private final long gelesen;
+        private final long gesamt;
+        private final long konten;
+        private final int neueKunden;
+        private final long nanos;
+        private final boolean fertig;
+
+        Importstand(long gelesen, long gesamt, long konten, int neueKunden, long nanos, boolean fertig) {
+            this.gelesen = gelesen;
+            this.gesamt = gesamt;
+            this.konten = konten;
+            this.neueKunden = neueKunden;
+            this.nanos = nanos;
+            this.fertig = fertig;
+        }
+
+        /**
+         * @return Anzahl der bisher gelesenen Byte der Datei
+         */
+        public long getGelesen() {
+            return gelesen;
+        }
+
+        /**
+         * @return Groesse der Datei in Byte
+         */
+        public long getGesamt() {
+            return gesamt;
+        }
+
+        /**
+         * @return Anzahl der bisher gelesenen Konten, nach dem Ende die Anzahl der eingefuegten Konten
+         */
+        public long getKonten() {
+            return konten;
+        }
+
+        /**
+         * @return Anzahl der bisher neu angelegten Kunden
+         */
+        public int getNeueKunden() {
+            return neueKunden;
+        }
+
+        /**
+         * @return Zeit seit dem Beginn des Imports
+         */
+        public Duration getDauer() {
+            return Duration.ofNanos(nanos);
+        }
+
+        /**
+         * @return bisheriger Durchsatz in Konten pro Sekunde
+         */
+        public double getKontenProSekunde() {
+            return nanos == 0 ? 0 : konten * 1e9 / nanos;
+        }
+
+        /**
+         * @return true, wenn alle Konten eingefuegt sind
+         */
+        public boolean isFertig() {
+            return fertig;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d von %d Byte, %d Konten, %d neue Kunden, %.1f s, %.0f Konten/s%s", gelesen, gesamt,
+                    konten, neueKunden, nanos / 1e9, getKontenProSekunde(), fertig ? " (fertig)" : "");
+        }
+    }
+
+    /**
+     * Schluessel fuer die Suche nach einem schon angelegten Kunden
+     */
+    private static final class Kundendaten {
+        private final String vorname;
+        private final String nachname;
+        private final String adresse;
+        private final LocalDate geburtstag;
+
+        Kundendaten(String vorname, String nachname, String adresse, LocalDate geburtstag) {
+            this.vorname = vorname;
+            this.nachname = nachname;
+            this.adresse = adresse;
+            this.geburtstag = geburtstag;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Kundendaten)) {
+                return false;
+            }
+            Kundendaten d = (Kundendaten) o;
+            return vorname.equals(d.vorname) && nachname.equals(d.nachname) && adresse.equals(d.adresse)
+                    && geburtstag.equals(d.geburtstag);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(vorname, nachname, adresse, geburtstag);
+        }
+    }
+
+    /**
+     * die gelesenen Konten eines Stuecks, spaltenweise bis zur Vergabe der Kontonummern
+     */
+    private static final class Teil {
+        private int anzahl;
+        private Kunde[] inhaber = new Kunde[1024];
+        private byte[] arten = new byte[1024];
+        private byte[] waehrungen = new byte[1024];
+        private long[] kontostaende = new long[1024];
+        private long[] dispos = new long[1024];
+
+        void hinzufuegen(Kunde kunde, Kontoart art, Waehrung w, long kontostand, long dispo) {
+            if (anzahl == inhaber.length) {
+                int laenge = anzahl * 2;
+                inhaber = Arrays.copyOf(inhaber, laenge);
+                arten = Arrays.copyOf(arten, laenge);
+                waehrungen = Arrays.copyOf(waehrungen, laenge);
+                kontostaende = Arrays.copyOf(kontostaende, laenge);
+                dispos = Arrays.copyOf(dispos, laenge);
+            }
+            inhaber[anzahl] = kunde;
+            arten[anzahl] = (byte) art.ordinal();
+            waehrungen[anzahl] = (byte) w.ordinal();
+            kontostaende[anzahl] = kontostand;
+            dispos[anzahl++] = dispo;
+        }
+
+        Konto konto(int i, long nummer) {
+            return Kontocodec.kontoErzeugen(KONTOARTEN[arten[i]], inhaber[i], nummer, WAEHRUNGEN[waehrungen[i]],
+                    kontostaende[i], dispos[i]);
+        }
+    }
+
+    /**
+     * Zustand eines laufenden Imports
+     */
+    private static final class Lauf {
+        private final FileChannel kanal;
+        private final long groesse;
+        private final int stueck;
+        private final long beginn = System.nanoTime();
+        private final ConcurrentHashMap<Kundendaten, Kunde> kunden = new ConcurrentHashMap<>();
+        private final AtomicInteger neueKunden = new AtomicInteger();
+        private final AtomicLong gelesen = new AtomicLong();
+        private final AtomicLong konten = new AtomicLong();
+        private final Consumer<Importstand> fortschritt;
+
+        Lauf(FileChannel kanal, long groesse, int stueck, Consumer<Importstand> fortschritt) {
+            this.kanal = kanal;
+            this.groesse = groesse;
+            this.stueck = stueck;
+            this.fortschritt = fortschritt;
+        }
+
+        Importstand stand(boolean fertig) {
+            return new Importstand(gelesen.get(), groesse, konten.get(), neueKunden.get(), System.nanoTime() - beginn,
+                    fertig);
+        }
+
+        void melden(boolean fertig) {
+            if (fortschritt != null) {
+                synchronized (this) {
+                    fortschritt.accept(stand(fertig));
+                }
+            }
+        }
+    }
+
+    /**
+     * liest alle Konten der Datei mit so vielen Threads, wie Prozessoren verfuegbar sind, und fuegt sie in die Bank
+     * ein
+     *
+     * @param bank  die Bank
+     * @param datei die CSV-Datei
+     * @return der Stand am Ende
+     * @throws IOException              wenn die Datei nicht gelesen werden kann
+     * @throws IllegalArgumentException wenn bank oder datei null ist oder eine Zeile nicht dem Format entspricht; dann
+     *                                  wird kein Konto eingefuegt
+     */
+    public static Importstand importieren(Bank bank, Path datei) throws IOException {
+        return importieren(bank, datei, Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    /**
+     * liest alle Konten der Datei und fuegt sie in die Bank ein
+     *
+     * @param bank        die Bank
+     * @param datei       die CSV-Datei
+     * @param threads     Anzahl der Threads zum Lesen und Einfuegen
+     * @param fortschritt erhaelt nach jedem gelesenen Stueck und am Ende den Stand, nacheinander aus wechselnden
+     *                    Threads; darf null sein
+     * @return der Stand am Ende
+     * @throws IOException              wenn die Datei nicht gelesen werden kann
+     * @throws IllegalArgumentException wenn bank oder datei null, threads nicht positiv ist oder eine Zeile nicht dem
+     *                                  Format entspricht; dann wird kein Konto eingefuegt
+     */
+    public static Importstand importieren(Bank bank, Path datei, int threads, Consumer<Importstand> fortschritt)
+            throws IOException {
+        return importieren(bank, datei, threads, STUECK, fortschritt);
+    }
+
+    static Importstand importieren(Bank bank, Path datei, int threads, int stueck, Consumer<Importstand> fortschritt)
+            throws IOException {
+        if (bank == null || datei == null || threads <= 0) {
+            throw new IllegalArgumentException();
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (FileChannel kanal = FileChannel.open(datei, StandardOpenOption.READ)) {
+            Lauf lauf = new Lauf(kanal, kanal.size(), stueck, fortschritt);
+            bank.kunden().forEach(kunde -> lauf.kunden.putIfAbsent(new Kundendaten(kunde.getVorname(),
+                    kunde.getNachname(), kunde.getAdresse(), kunde.getGeburtstag()), kunde));
+            // alle Stufen im eigenen Pool, auch die parallelen Streams der Bank
+            pool.submit(() -> ausfuehren(bank, lauf, pool)).get();
+            lauf.melden(true);
+            return lauf.stand(true);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import unterbrochen", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void ausfuehren(Bank bank, Lauf lauf, ForkJoinPool pool) {
+        int anzahlStuecke = (int) ((lauf.groesse + lauf.stueck - 1) / lauf.stueck);
+        Teil[] teile = IntStream.range(0, anzahlStuecke).parallel()
+                .mapToObj(i -> {
+                    Teil teil = lesen(lauf, (long) i * lauf.stueck);
+                    lauf.melden(false);
+                    return teil;
+                })
+                .toArray(Teil[]::new);
+
+        // Nummern in der Reihenfolge der Datei
+        int[] anfang = new int[teile.length + 1];
+        for (int i = 0; i < teile.length; i++) {
+            anfang[i + 1] = Math.addExact(anfang[i], teile[i].anzahl);
+        }
+        int anzahl = anfang[teile.length];
+        if (anzahl == 0) {
+            return;
+        }
+        long erste = bank.nummernReservieren(anzahl);
+
+        Konto[] konten = new Konto[anzahl];
+        IntStream.range(0, teile.length).parallel().forEach(i -> {
+            for (int j = 0; j < teile[i].anzahl; j++) {
+                konten[anfang[i] + j] = teile[i].konto(j, erste + anfang[i] + j);
+            }
+            teile[i] = null;
+        });
+        bank.kontenEinfuegen(erste, konten, pool);
+    }
+
+    /**
+     * liest die Zeilen, die im Stueck ab anfang beginnen
+     */
+    private static Teil lesen(Lauf lauf, long anfang) {
+        long ende = Math.min(lauf.groesse, anfang + lauf.stueck);
+        // ein Byte davor mit abbilden: steht dort ein Zeilenende, beginnt die erste Zeile genau bei anfang
+        long von = Math.max(0, anfang - 1);
+        long bis = Math.min(lauf.groesse, ende + MAX_ZEILE);
+        MappedByteBuffer b;
+        try {
+            b = lauf.kanal.map(FileChannel.MapMode.READ_ONLY, von, bis - von);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int pos = 0;
+        if (anfang > 0) {
+            while (pos < b.limit() && b.get(pos) != '\n') {
+                pos++;
+            }
+            pos++; // die Zeile gehoert zum vorigen Stueck
+        }
+        int grenze = (int) (ende - von);
+        Teil teil = new Teil();
+        int[] felder = new int[FELDER + 1];
+        while (pos < grenze) {
+            int zeilenende = pos;
+            while (zeilenende < b.limit() && b.get(zeilenende) != '\n') {
+                zeilenende++;
+            }
+            if (zeilenende == b.limit() && bis < lauf.groesse) {
+                throw new IllegalArgumentException("Zeile bei Byte " + (von + pos) + " ist zu lang");
+            }
+            int zeilenbis = zeilenende > pos && b.get(zeilenende - 1) == '\r' ? zeilenende - 1 : zeilenende;
+            if (zeilenbis > pos && b.get(pos) != '#') {
+                zeileLesen(lauf, teil, b, pos, zeilenbis, felder, von + pos);
+            }
+            pos = zeilenende + 1;
+        }
+        lauf.gelesen.addAndGet(ende - anfang);
+        lauf.konten.addAndGet(teil.anzahl);
+        return teil;
+    }
+
+    private static void zeileLesen(Lauf lauf, Teil teil, ByteBuffer b, int von, int bis, int[] felder, long position) {
+        // felder[i] ist der Anfang von Feld i, das Feld endet vor felder[i + 1] - 1
+        int n = 1;
+        felder[0] = von;
+        for (int i = von; i < bis; i++) {
+            if (b.get(i) == TRENNER) {
+                if (n == FELDER) {
+                    throw new IllegalArgumentException("Zeile bei Byte " + position + " hat mehr als " + FELDER
+                            + " Felder");
+                }
+                felder[n++] = i + 1;
+            }
+        }
+        if (n < FELDER - 1) {
+            throw new IllegalArgumentException("Zeile bei Byte " + position + " hat zu wenige Felder");
+        }
+        felder[n] = bis + 1;
+        felder[FELDER] = bis + 1; // ohne Dispo ist das Feld leer
+        try {
+            Kontoart art = Kontoart.valueOf(text(b, felder, 0));
+            if (art != Kontoart.GIROKONTO && art != Kontoart.SPARBUCH) {
+                throw new IllegalArgumentException("Kontoart " + art + " kann nicht importiert werden");
+            }
+            Waehrung w = Waehrung.valueOf(text(b, felder, 6));
+            long kontostand = betrag(b, felder[5], felder[6] - 1, w);
+            long dispo = felder[7] < felder[8] - 1 ? betrag(b, felder[7], felder[8] - 1, w) : 0;
+            if (dispo < 0) {
+                throw new IllegalArgumentException("negativer Dispo");
+            }
+            Kundendaten daten = new Kundendaten(text(b, felder, 1), text(b, felder, 2), text(b, felder, 3),
+                    datum(b, felder[4], felder[5] - 1));
+            Kunde kunde = lauf.kunden.computeIfAbsent(daten, d -> {
+                lauf.neueKunden.incrementAndGet();
+                return new Kunde(d.vorname, d.nachname, d.adresse, d.geburtstag);
+            });
+            teil.hinzufuegen(kunde, art, w, kontostand, dispo);
+        } catch (IllegalArgumentException | DateTimeException | ArithmeticException e) {
+            throw new IllegalArgumentException("Zeile bei Byte " + position + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String text(ByteBuffer b, int[] felder, int feld) {
+        byte[] text = new byte[felder[feld + 1] - 1 - felder[feld]];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = b.get(felder[feld] + i);
+        }
+        return new String(text, StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * liest einen Betrag wie -1234,5 in der kleinsten Einheit der Waehrung
+     */
+    private static long betrag(ByteBuffer b, int von, int bis, Waehrung w) {
+        boolean negativ = von < bis && b.get(von) == '-';
+        int i = negativ ? von + 1 : von;
+        long wert = 0;
+        int stellen = -1; // Nachkommastellen, -1 vor dem Komma
+        if (i == bis) {
+            throw new IllegalArgumentException("leerer Betrag");
+        }
+        for (; i < bis; i++) {
+            byte z = b.get(i);
+            if ((z == '.' || z == ',') && stellen < 0) {
+                stellen = 0;
+            } else if (z >= '0' && z <= '9' && stellen < w.getNachkommastellen()) {
+                wert = Math.addExact(Math.multiplyExact(wert, 10), z - '0');
+                if (stellen >= 0) {
+                    stellen++;
+                }
+            } else {
+                throw new IllegalArgumentException("ungueltiger Betrag");
+            }
+        }
+        for (int s = Math.max(stellen, 0); s < w.getNachkommastellen(); s++) {
+            wert = Math.multiplyExact(wert, 10);
+        }
+        return negativ ? -wert : wert;
+    }
+
+    /**
+     * liest ein Datum JJJJ-MM-TT
+     */
+    private static LocalDate datum(ByteBuffer b, int von, int bis) {
+        if (bis - von != 10 || b.get(von + 4) != '-' || b.get(von + 7) != '-') {
+            throw new IllegalArgumentException("ungueltiger Geburtstag");
+        }
+        return LocalDate.of(zahl(b, von, von + 4), zahl(b, von + 5, von + 7), zahl(b, von + 8, von + 10));
+    }
+
+    private static int zahl(ByteBuffer b, int von, int bis) {
+        int wert = 0;
+        for (int i = von; i < bis; i++) {
+            byte z = b.get(i);
+            if (z < '0' || z > '9') {
+                throw new IllegalArgumentException("ungueltiger Geburtstag");
+            }
+            wert = wert * 10 + z - '0';
+        }
+        return wert;
+    }
+}
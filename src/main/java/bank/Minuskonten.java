@@ -0,0 +1,136 @@
+package bank;
+
+import verarbeitung.Konto;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Die Nummern aller nicht gesperrten Konten mit negativem Kontostand. Die Menge wird nachgefuehrt, wenn ein Konto ins
+ * Minus rutscht, wieder ins Plus kommt oder gesperrt bzw. entsperrt wird, so dass {@link Bank#pleitegeierSperren()}
+ * nur noch diese Konten ansehen muss statt aller Konten der Bank. Buchungen, die das Vorzeichen des Kontostands nicht
+ * aendern, kosten nur einen Vergleich. Wie bei den {@link Kontospalten} wird nach dem Nachfuehren am Konto
+ * nachgeprueft und bei einer zwischenzeitlichen Aenderung erneut nachgefuehrt, ohne Lock.
+ *
+ * Auf Wunsch werden Konten sofort gesperrt, wenn sie ins Minus rutschen, im Thread der Buchung.
+ */
+class Minuskonten implements Kontoindex {
+
+    private final Set<Long> imMinus = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Long, Konto> konten = new ConcurrentHashMap<>();
+
+    private volatile boolean sofortSperren;
+
+    /**
+     * legt fest, ob Konten sofort gesperrt werden, wenn ihr Kontostand negativ wird
+     *
+     * @param sofortSperren true fuer sofortiges Sperren
+     */
+    void setSofortSperren(boolean sofortSperren) {
+        this.sofortSperren = sofortSperren;
+    }
+
+    /**
+     * nimmt das Konto auf
+     *
+     * @param nummer Kontonummer, unter der das Konto in der Bank steht
+     * @param konto  das Konto
+     */
+    @Override
+    public void eintragen(long nummer, Konto konto) {
+        konten.put(nummer, konto);
+        sperrenFallsNoetig(abgleichen(nummer));
+    }
+
+    /**
+     * nimmt das Konto heraus
+     *
+     * @param nummer Kontonummer, unter der das Konto in der Bank stand
+     * @param konto  das Konto
+     */
+    @Override
+    public void austragen(long nummer, Konto konto) {
+        if (konten.remove(nummer, konto)) {
+            abgleichen(nummer);
+        }
+    }
+
+    /**
+     * nimmt das Konto unter der Nummer in die Menge auf oder heraus, bis das Ergebnis nach dem Nachfuehren noch zum
+     * Konto passt
+     *
+     * @return das Konto, wenn es gerade ins Minus gerutscht ist und sofort gesperrt werden soll, sonst null
+     */
+    private Konto abgleichen(long nummer) {
+        Konto konto;
+        boolean minus;
+        Konto sperren = null;
+        do {
+            konto = konten.get(nummer);
+            minus = konto != null && imMinus(konto);
+            if (minus) {
+                if (imMinus.add(nummer) && sofortSperren) {
+                    sperren = konto;
+                }
+            } else {
+                imMinus.remove(nummer);
+            }
+        } while (konten.get(nummer) != konto || konto != null && imMinus(konto) != minus);
+        return minus && sperren == konto ? sperren : null;
+    }
+
+    private static boolean imMinus(Konto konto) {
+        return konto.getKontostand() < 0 && !konto.isGesperrt();
+    }
+
+    private static void sperrenFallsNoetig(Konto konto) {
+        if (konto != null) {
+            konto.sperren(); // erst nach dem Nachfuehren: das Sperren meldet sich selbst wieder
+        }
+    }
+
+    /**
+     * fuehrt die Menge nach, wenn der Kontostand das Vorzeichen wechselt
+     */
+    @Override
+    public void kontostandGeaendert(Konto konto, long alt, long neu) {
+        if ((alt < 0) != (neu < 0)) {
+            nachfuehren(konto);
+        }
+    }
+
+    /**
+     * fuehrt die Menge nach, wenn das Konto gesperrt oder entsperrt wird
+     */
+    @Override
+    public void eigenschaftGeaendert(Konto konto, String name, Object alt, Object neu) {
+        if ("isGesperrt".equals(name)) {
+            nachfuehren(konto);
+        }
+    }
+
+    private void nachfuehren(Konto konto) {
+        long nummer = konto.getKontonummer();
+        if (konten.get(nummer) == konto) {
+            sperrenFallsNoetig(abgleichen(nummer));
+        }
+    }
+
+    /**
+     * liefert die Nummern aller nicht gesperrten Konten im Minus
+     *
+     * @return Kontonummern in keiner bestimmten Reihenfolge
+     */
+    long[] ungesperrteImMinus() {
+        return imMinus.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * liefert die Anzahl der nicht gesperrten Konten im Minus
+     *
+     * @return Anzahl
+     */
+    int anzahl() {
+        return imMinus.size();
+    }
+}
@@ -0,0 +1,328 @@
+package bank;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Komprimierte Menge von Kontonummern nach dem Vorbild von Roaring-Bitmaps. Die Nummern werden nach ihren oberen
+ * Bits in Abschnitte von je 65536 Nummern aufgeteilt. Ein duenn besetzter Abschnitt speichert seine Nummern als
+ * sortiertes char-Feld, ein dicht besetzter als Bitfeld mit 1024 long-Werten. Leere Abschnitte belegen keinen Platz.
+ *
+ * Die Klasse ist nicht threadsicher.
+ */
+class Nummernbitmap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * ab so vielen Nummern ist ein Bitfeld (8 KB) kleiner als ein sortiertes Feld
+     */
+    private static final int GRENZE = 4096;
+
+    /**
+     * Schluessel (obere Bits der Nummern) der vorhandenen Abschnitte, aufsteigend sortiert
+     */
+    private long[] schluessel = new long[4];
+    private Abschnitt[] abschnitte = new Abschnitt[4];
+    private int anzahlAbschnitte;
+    private long anzahl;
+
+    /**
+     * die Nummern eines Abschnitts; nur die unteren 16 Bit werden gespeichert
+     */
+    private abstract static class Abschnitt implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        int anzahl;
+
+        abstract boolean enthaelt(char wert);
+
+        /**
+         * @return der Abschnitt, der den Wert danach enthaelt (evtl. umgewandelt)
+         */
+        abstract Abschnitt hinzufuegen(char wert);
+
+        /**
+         * @return der Abschnitt, der den Wert danach nicht mehr enthaelt (evtl. umgewandelt)
+         */
+        abstract Abschnitt entfernen(char wert);
+
+        abstract char kleinster();
+
+        abstract void fuerAlle(long basis, LongConsumer aktion);
+
+        abstract Abschnitt kopie();
+    }
+
+    /**
+     * duenn besetzter Abschnitt: sortiertes Feld der Werte
+     */
+    private static final class Feldabschnitt extends Abschnitt {
+        private static final long serialVersionUID = 1L;
+
+        private char[] werte = new char[4];
+
+        @Override
+        boolean enthaelt(char wert) {
+            return Arrays.binarySearch(werte, 0, anzahl, wert) >= 0;
+        }
+
+        @Override
+        Abschnitt hinzufuegen(char wert) {
+            int i = Arrays.binarySearch(werte, 0, anzahl, wert);
+            if (i >= 0) {
+                return this;
+            }
+            if (anzahl == GRENZE) {
+                Abschnitt bits = new Bitabschnitt(this);
+                return bits.hinzufuegen(wert);
+            }
+            i = -i - 1;
+            if (anzahl == werte.length) {
+                werte = Arrays.copyOf(werte, Math.min(GRENZE, anzahl * 2));
+            }
+            System.arraycopy(werte, i, werte, i + 1, anzahl - i);
+            werte[i] = wert;
+            anzahl++;
+            return this;
+        }
+
+        @Override
+        Abschnitt entfernen(char wert) {
+            int i = Arrays.binarySearch(werte, 0, anzahl, wert);
+            if (i >= 0) {
+                System.arraycopy(werte, i + 1, werte, i, anzahl - i - 1);
+                anzahl--;
+            }
+            return this;
+        }
+
+        @Override
+        char kleinster() {
+            return werte[0];
+        }
+
+        @Override
+        void fuerAlle(long basis, LongConsumer aktion) {
+            for (int i = 0; i < anzahl; i++) {
+                aktion.accept(basis | werte[i]);
+            }
+        }
+
+        @Override
+        Abschnitt kopie() {
+            Feldabschnitt k = new Feldabschnitt();
+            k.werte = Arrays.copyOf(werte, Math.max(anzahl, 4));
+            k.anzahl = anzahl;
+            return k;
+        }
+    }
+
+    /**
+     * dicht besetzter Abschnitt: ein Bit pro moeglichem Wert
+     */
+    private static final class Bitabschnitt extends Abschnitt {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] bits;
+
+        Bitabschnitt(Feldabschnitt feld) {
+            bits = new long[1024];
+            for (int i = 0; i < feld.anzahl; i++) {
+                char w = feld.werte[i];
+                bits[w >>> 6] |= 1L << w;
+            }
+            anzahl = feld.anzahl;
+        }
+
+        private Bitabschnitt(long[] bits, int anzahl) {
+            this.bits = bits;
+            this.anzahl = anzahl;
+        }
+
+        @Override
+        boolean enthaelt(char wert) {
+            return (bits[wert >>> 6] & (1L << wert)) != 0;
+        }
+
+        @Override
+        Abschnitt hinzufuegen(char wert) {
+            long alt = bits[wert >>> 6];
+            long neu = alt | (1L << wert);
+            if (neu != alt) {
+                bits[wert >>> 6] = neu;
+                anzahl++;
+            }
+            return this;
+        }
+
+        @Override
+        Abschnitt entfernen(char wert) {
+            long alt = bits[wert >>> 6];
+            long neu = alt & ~(1L << wert);
+            if (neu != alt) {
+                bits[wert >>> 6] = neu;
+                anzahl--;
+            }
+            if (anzahl > GRENZE / 2) {
+                return this;
+            }
+            // wieder duenn besetzt: zurueck in ein sortiertes Feld
+            Feldabschnitt feld = new Feldabschnitt();
+            fuerAlle(0, w -> feld.hinzufuegen((char) w));
+            return feld;
+        }
+
+        @Override
+        char kleinster() {
+            for (int i = 0; i < bits.length; i++) {
+                if (bits[i] != 0) {
+                    return (char) ((i << 6) + Long.numberOfTrailingZeros(bits[i]));
+                }
+            }
+            throw new IllegalStateException("leerer Abschnitt");
+        }
+
+        @Override
+        void fuerAlle(long basis, LongConsumer aktion) {
+            for (int i = 0; i < bits.length; i++) {
+                long wort = bits[i];
+                while (wort != 0) {
+                    aktion.accept(basis | ((long) i << 6) + Long.numberOfTrailingZeros(wort));
+                    wort &= wort - 1;
+                }
+            }
+        }
+
+        @Override
+        Abschnitt kopie() {
+            return new Bitabschnitt(bits.clone(), anzahl);
+        }
+    }
+
+    /**
+     * sucht den Abschnitt mit dem Schluessel
+     *
+     * @return Index oder (-(Einfuegepunkt) - 1) wie bei Arrays.binarySearch
+     */
+    private int suchen(long s) {
+        return Arrays.binarySearch(schluessel, 0, anzahlAbschnitte, s);
+    }
+
+    /**
+     * fuegt die Nummer hinzu
+     *
+     * @param nummer Nummer, nicht negativ
+     * @return true, wenn die Nummer noch nicht enthalten war
+     */
+    boolean hinzufuegen(long nummer) {
+        long s = nummer >>> 16;
+        int i = suchen(s);
+        if (i < 0) {
+            i = -i - 1;
+            if (anzahlAbschnitte == schluessel.length) {
+                schluessel = Arrays.copyOf(schluessel, anzahlAbschnitte * 2);
+                abschnitte = Arrays.copyOf(abschnitte, anzahlAbschnitte * 2);
+            }
+            System.arraycopy(schluessel, i, schluessel, i + 1, anzahlAbschnitte - i);
+            System.arraycopy(abschnitte, i, abschnitte, i + 1, anzahlAbschnitte - i);
+            schluessel[i] = s;
+            abschnitte[i] = new Feldabschnitt();
+            anzahlAbschnitte++;
+        }
+        Abschnitt a = abschnitte[i];
+        int vorher = a.anzahl;
+        abschnitte[i] = a.hinzufuegen((char) nummer);
+        boolean neu = abschnitte[i].anzahl != vorher;
+        if (neu) {
+            anzahl++;
+        }
+        return neu;
+    }
+
+    /**
+     * entfernt die Nummer
+     *
+     * @param nummer Nummer
+     * @return true, wenn die Nummer enthalten war
+     */
+    boolean entfernen(long nummer) {
+        int i = suchen(nummer >>> 16);
+        if (i < 0) {
+            return false;
+        }
+        Abschnitt a = abschnitte[i];
+        int vorher = a.anzahl;
+        a = a.entfernen((char) nummer);
+        if (a.anzahl == vorher) {
+            return false;
+        }
+        anzahl--;
+        if (a.anzahl == 0) {
+            System.arraycopy(schluessel, i + 1, schluessel, i, anzahlAbschnitte - i - 1);
+            System.arraycopy(abschnitte, i + 1, abschnitte, i, anzahlAbschnitte - i - 1);
+            abschnitte[--anzahlAbschnitte] = null;
+        } else {
+            abschnitte[i] = a;
+        }
+        return true;
+    }
+
+    /**
+     * @param nummer Nummer
+     * @return true, wenn die Nummer enthalten ist
+     */
+    boolean enthaelt(long nummer) {
+        int i = suchen(nummer >>> 16);
+        return i >= 0 && abschnitte[i].enthaelt((char) nummer);
+    }
+
+    /**
+     * entfernt die kleinste Nummer und liefert sie zurueck
+     *
+     * @return die kleinste Nummer oder -1, wenn die Menge leer ist
+     */
+    long kleinsteEntnehmen() {
+        if (anzahlAbschnitte == 0) {
+            return -1;
+        }
+        long nummer = (schluessel[0] << 16) | abschnitte[0].kleinster();
+        entfernen(nummer);
+        return nummer;
+    }
+
+    /**
+     * @return Anzahl der enthaltenen Nummern
+     */
+    long anzahl() {
+        return anzahl;
+    }
+
+    /**
+     * ruft aktion fuer alle Nummern in aufsteigender Reihenfolge auf; die Laufzeit haengt von der Anzahl der
+     * Nummern ab, nicht von ihrer Groesse
+     *
+     * @param aktion die Aktion
+     */
+    void fuerAlle(LongConsumer aktion) {
+        for (int i = 0; i < anzahlAbschnitte; i++) {
+            abschnitte[i].fuerAlle(schluessel[i] << 16, aktion);
+        }
+    }
+
+    /**
+     * @return eine unabhaengige Kopie
+     */
+    Nummernbitmap kopie() {
+        Nummernbitmap k = new Nummernbitmap();
+        k.schluessel = Arrays.copyOf(schluessel, schluessel.length);
+        k.abschnitte = new Abschnitt[abschnitte.length];
+        for (int i = 0; i < anzahlAbschnitte; i++) {
+            k.abschnitte[i] = abschnitte[i].kopie();
+        }
+        k.anzahlAbschnitte = anzahlAbschnitte;
+        k.anzahl = anzahl;
+        return k;
+    }
+}
@@ -0,0 +1,443 @@
+package bank;
+
+import util.Logger;
+import verarbeitung.GesperrtException;
+import verarbeitung.Konto;
+import verarbeitung.Ueberweisungsfaehig;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ausfuehrungsmodus, in dem die Konten einer Bank nach Kontonummer auf mehrere Shards verteilt werden.
+ * Jeder Shard gehoert genau einem Thread, der als einziger die Konten des Shards veraendert (Single-Writer).
+ * Auftraege werden ueber einen beschraenkten Ringpuffer ohne Locks an den Thread des Shards uebergeben, auf den
+ * Konten selbst werden keine Locks genommen. Schlaegt ein Auftrag unerwartet fehl, schlaegt nur sein Future fehl,
+ * der Thread des Shards arbeitet weiter.
+ *
+ * Eine Ueberweisung zwischen zwei Shards laeuft in zwei Schritten: der Shard des Absenders belastet das Konto
+ * und schickt dem Shard des Empfaengers eine Gutschrift. Kann diese nicht gebucht werden, schickt der Shard des
+ * Empfaengers eine Rueckbuchung an den Shard des Absenders.
+ *
+ * Waehrend die Ausfuehrung laeuft, sollten die Konten nicht zusaetzlich ueber die synchronen Methoden der Bank
+ * veraendert werden.
+ */
+public class ShardAusfuehrung {
+
+    /**
+     * Standardkapazitaet der Auftragswarteschlange eines Shards
+     */
+    public static final int STANDARD_KAPAZITAET = 1 << 14;
+
+    private final long bankleitzahl;
+    private final KontoTabelle kontoliste;
+    private final Shard[] shards;
+
+    /**
+     * Anzahl der angenommenen, aber noch nicht fertig abgearbeiteten Auftraege und Nachrichten aller Shards.
+     * Die Threads werden erst beendet, wenn nichts mehr offen ist, damit keine Gutschrift oder Rueckbuchung verloren geht.
+     */
+    private final AtomicLong offen = new AtomicLong();
+
+    private volatile boolean laeuft = true;
+
+    private final String msgKontoNichtExist = "Das Konto existiert nicht";
+    private final String msgAbsenderNichtExist = "Das Konto des Absenders existiert nicht";
+    private final String msgEmpfaengerNichtExist = "Das Konto des Empfängers existiert nicht";
+
+    /**
+     * erstellt die Shards und startet deren Threads.
+     *
+     * @param bankleitzahl   Bankleitzahl der Bank
+     * @param kontoliste     die Konten der Bank
+     * @param anzahlShards   Anzahl der Shards (und Threads)
+     * @param kapazitaet     Kapazitaet der Auftragswarteschlange pro Shard, wird auf eine Zweierpotenz aufgerundet
+     * @throws IllegalArgumentException wenn anzahlShards oder kapazitaet nicht positiv ist
+     */
+    ShardAusfuehrung(long bankleitzahl, KontoTabelle kontoliste, int anzahlShards, int kapazitaet) {
+        if (anzahlShards <= 0 || kapazitaet <= 0) {
+            throw new IllegalArgumentException("Anzahl der Shards und Kapazitaet muessen positiv sein!");
+        }
+
+        this.bankleitzahl = bankleitzahl;
+        this.kontoliste = kontoliste;
+        this.shards = new Shard[anzahlShards];
+
+        for (int i = 0; i < anzahlShards; i++) {
+            shards[i] = new Shard(i, kapazitaet);
+        }
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * liefert den Shard, dem das Konto mit der angegebenen Nummer gehoert.
+     *
+     * @param kontonummer Kontonummer
+     * @return der zustaendige Shard
+     */
+    private Shard shardFuer(long kontonummer) {
+        return shards[(int) Math.floorMod(kontonummer, (long) shards.length)];
+    }
+
+    /**
+     * liefert die Anzahl der Shards
+     *
+     * @return Anzahl der Shards
+     */
+    public int getAnzahlShards() {
+        return shards.length;
+    }
+
+    /**
+     * zahlt den angegebenen Betrag auf das Konto mit der Nummer auf ein.
+     *
+     * @param auf    Nummer des Kontos, worauf der Betrag eingezahlt wird.
+     * @param betrag der zu einzahlende Betrag
+     * @return Future, das nach der Buchung erfuellt wird. Es schlaegt mit {@link KontoNichtExistiertException} fehl,
+     * wenn das Konto nicht existiert, bzw. mit IllegalArgumentException bei einem ungueltigen Betrag.
+     */
+    public CompletableFuture<Void> geldEinzahlen(long auf, double betrag) {
+        CompletableFuture<Void> ergebnis = new CompletableFuture<>();
+        shardFuer(auf).auftragAnnehmen(ergebnis, () -> {
+            Konto k = kontoliste.get(auf);
+            if (k == null) {
+                ergebnis.completeExceptionally(new KontoNichtExistiertException(msgKontoNichtExist));
+                return;
+            }
+            try {
+                k.einzahlen(betrag);
+                ergebnis.complete(null);
+            } catch (IllegalArgumentException e) {
+                ergebnis.completeExceptionally(e);
+            }
+        });
+        return ergebnis;
+    }
+
+    /**
+     * hebt den Betrag vom Konto mit der Nummer von ab.
+     *
+     * @param von    Nummer des Kontos, wovon der Betrag abgehoben wird
+     * @param betrag der zu abhebende Betrag
+     * @return Future mit true, wenn die Abhebung geklappt hat. Es schlaegt mit {@link KontoNichtExistiertException}
+     * fehl, wenn das Konto nicht existiert.
+     */
+    public CompletableFuture<Boolean> geldAbheben(long von, double betrag) {
+        CompletableFuture<Boolean> ergebnis = new CompletableFuture<>();
+        shardFuer(von).auftragAnnehmen(ergebnis, () -> {
+            Konto k = kontoliste.get(von);
+            if (k == null) {
+                ergebnis.completeExceptionally(new KontoNichtExistiertException(msgKontoNichtExist));
+                return;
+            }
+            try {
+                ergebnis.complete(k.abheben(betrag));
+            } catch (GesperrtException | IllegalArgumentException e) {
+                Logger.logFehler("Konto " + von + " ist gesperrt und möchte eine Abhebung durchfüren");
+                ergebnis.complete(false);
+            }
+        });
+        return ergebnis;
+    }
+
+    /**
+     * ueberweist den Betrag vom Konto vonKontonr zum Konto nachKontonr. Liegen beide Konten im selben Shard, wird die
+     * Ueberweisung in einem Schritt gebucht, sonst ueber Belastung und Gutschrift in den beiden Shards.
+     *
+     * @param vonKontonr       Nummer des Kontos, das die Überweisung absendet
+     * @param nachKontonr      Nummer des Kontos, das die Überweisung empfängt
+     * @param betrag           der zu überweisende Betrag
+     * @param verwendungszweck Verwendungszweck der Überweisung
+     * @return Future mit true, wenn die Überweisung geklappt hat. Es schlaegt mit {@link KontoNichtExistiertException}
+     * fehl, wenn eines der Konten nicht existiert.
+     */
+    public CompletableFuture<Boolean> geldUeberweisen(long vonKontonr, long nachKontonr, double betrag, String verwendungszweck) {
+        CompletableFuture<Boolean> ergebnis = new CompletableFuture<>();
+        Shard absenderShard = shardFuer(vonKontonr);
+        Shard empfaengerShard = shardFuer(nachKontonr);
+
+        absenderShard.auftragAnnehmen(ergebnis, () -> {
+            Konto absender = kontoliste.get(vonKontonr);
+            Konto empfaenger = kontoliste.get(nachKontonr);
+            if (absender == null) {
+                ergebnis.completeExceptionally(new KontoNichtExistiertException(msgAbsenderNichtExist));
+                return;
+            }
+            if (empfaenger == null) {
+                ergebnis.completeExceptionally(new KontoNichtExistiertException(msgEmpfaengerNichtExist));
+                return;
+            }
+            if (!(absender instanceof Ueberweisungsfaehig) || !(empfaenger instanceof Ueberweisungsfaehig) || absender.isGesperrt()) {
+                ergebnis.complete(false);
+                return;
+            }
+
+            // Schritt 1: Belastung im Shard des Absenders
+            boolean abgesendet;
+            try {
+                abgesendet = ((Ueberweisungsfaehig) absender).ueberweisungAbsenden(betrag, empfaenger.getInhaber().getName(), nachKontonr, bankleitzahl, verwendungszweck);
+            } catch (GesperrtException | IllegalArgumentException e) {
+                Logger.logFehler("Konto " + vonKontonr + " ist gesperrt + ueberweisung ");
+                abgesendet = false;
+            }
+            if (!abgesendet) {
+                ergebnis.complete(false);
+                return;
+            }
+
+            String absenderName = absender.getInhaber().getName();
+            Runnable gutschrift = () -> {
+                // Schritt 2: Gutschrift im Shard des Empfaengers
+                if (!empfaenger.isGesperrt()) {
+                    try {
+                        ((Ueberweisungsfaehig) empfaenger).ueberweisungEmpfangen(betrag, absenderName, vonKontonr, bankleitzahl, verwendungszweck);
+                        ergebnis.complete(true);
+                        return;
+                    } catch (RuntimeException e) {
+                        // z.B. Ueberlauf des Kontostands: Rueckbuchung unten
+                    }
+                }
+
+                Logger.logFehler("Absender " + nachKontonr + " ist gesperrt. Geld in Hoehe von " + betrag + " ist zurueck zu " + vonKontonr);
+                Runnable rueckbuchung = () -> {
+                    absender.einzahlen(betrag);
+                    ergebnis.complete(false);
+                };
+                if (empfaengerShard == absenderShard) {
+                    rueckbuchung.run();
+                } else {
+                    absenderShard.nachrichtAnnehmen(ergebnis, rueckbuchung);
+                }
+            };
+
+            if (empfaengerShard == absenderShard) {
+                gutschrift.run();
+            } else {
+                empfaengerShard.nachrichtAnnehmen(ergebnis, gutschrift);
+            }
+        });
+        return ergebnis;
+    }
+
+    /**
+     * beendet die Ausfuehrung. Bereits angenommene Auftraege werden noch abgearbeitet.
+     *
+     * @throws InterruptedException wenn der aufrufende Thread beim Warten unterbrochen wird
+     */
+    public void beenden() throws InterruptedException {
+        laeuft = false;
+        alleWecken();
+        for (Shard shard : shards) {
+            shard.thread.join();
+        }
+    }
+
+    /**
+     * zaehlt einen Auftrag oder eine Nachricht als erledigt. Ist danach nichts mehr offen und die Ausfuehrung
+     * beendet, werden alle Shards geweckt, damit sich auch schlafende beenden.
+     */
+    private void erledigt() {
+        if (offen.decrementAndGet() == 0 && !laeuft) {
+            alleWecken();
+        }
+    }
+
+    private void alleWecken() {
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+    }
+
+    /**
+     * ein Auftrag oder eine Nachricht zusammen mit dem Future, das fehlschlaegt, wenn der Auftrag unerwartet
+     * eine Ausnahme wirft
+     */
+    private static final class Auftrag {
+        private final CompletableFuture<?> ergebnis;
+        private final Runnable schritt;
+
+        Auftrag(CompletableFuture<?> ergebnis, Runnable schritt) {
+            this.ergebnis = ergebnis;
+            this.schritt = schritt;
+        }
+    }
+
+    /**
+     * Beschraenkter Ringpuffer ohne Locks mit mehreren Schreibern (den Auftraggebern) und einem Leser (dem Thread
+     * des Shards). Jeder Platz traegt eine Sequenznummer: ist sie gleich der Schreibposition, ist der Platz frei,
+     * ist sie um eins groesser, ist er belegt. Schreiber reservieren ihren Platz per compareAndSet auf der
+     * Schreibposition, der Leser braucht gar kein compareAndSet.
+     */
+    static final class Ringpuffer {
+        private final AtomicReferenceArray<Auftrag> plaetze;
+        private final AtomicLongArray sequenzen;
+        private final int maske;
+        private final AtomicLong schreibposition = new AtomicLong();
+
+        /**
+         * naechste Leseposition; nur der Thread des Shards liest und schreibt sie
+         */
+        private long leseposition;
+
+        Ringpuffer(int kapazitaet) {
+            int groesse = kapazitaet <= 1 ? 1 : Integer.highestOneBit(kapazitaet - 1) << 1;
+            this.plaetze = new AtomicReferenceArray<>(groesse);
+            this.sequenzen = new AtomicLongArray(groesse);
+            this.maske = groesse - 1;
+            for (int i = 0; i < groesse; i++) {
+                sequenzen.set(i, i);
+            }
+        }
+
+        /**
+         * legt den Auftrag ab, wenn Platz ist
+         *
+         * @param auftrag der Auftrag
+         * @return false, wenn der Puffer voll ist
+         */
+        boolean anbieten(Auftrag auftrag) {
+            while (true) {
+                long position = schreibposition.get();
+                int platz = (int) position & maske;
+                long sequenz = sequenzen.get(platz);
+                if (sequenz == position) {
+                    if (schreibposition.compareAndSet(position, position + 1)) {
+                        plaetze.set(platz, auftrag);
+                        sequenzen.set(platz, position + 1); // erst jetzt sieht der Leser den Auftrag
+                        return true;
+                    }
+                } else if (sequenz < position) {
+                    return false; // der Platz ist von der vorigen Runde noch belegt
+                }
+                // sonst war ein anderer Schreiber schneller
+            }
+        }
+
+        /**
+         * entnimmt den naechsten Auftrag; darf nur vom Thread des Shards aufgerufen werden
+         *
+         * @return der Auftrag oder null, wenn der Puffer leer ist
+         */
+        Auftrag entnehmen() {
+            int platz = (int) leseposition & maske;
+            if (sequenzen.get(platz) != leseposition + 1) {
+                return null;
+            }
+            Auftrag auftrag = plaetze.get(platz);
+            plaetze.set(platz, null);
+            sequenzen.set(platz, leseposition + maske + 1); // frei fuer die naechste Runde
+            leseposition++;
+            return auftrag;
+        }
+    }
+
+    /**
+     * Ein Shard mit seinem Thread. Der Thread arbeitet zuerst die Nachrichten anderer Shards ab (Gutschriften,
+     * Rueckbuchungen), dann die Auftraege von aussen. Ist beides leer, legt er sich schlafen, bis ein Auftraggeber
+     * ihn weckt.
+     */
+    private class Shard implements Runnable {
+
+        /**
+         * Auftraege von aussen. Beschraenkt, damit ein zu schneller Auftraggeber gebremst wird.
+         */
+        private final Ringpuffer auftraege;
+
+        /**
+         * Nachrichten anderer Shards. Nicht beschraenkt, damit sich zwei Shards nie gegenseitig blockieren.
+         */
+        private final Queue<Auftrag> nachrichten = new ConcurrentLinkedQueue<>();
+
+        private final Thread thread;
+
+        /**
+         * true, solange der Thread schlaeft oder kurz davor ist; nur dann muss ein Auftraggeber ihn wecken
+         */
+        private volatile boolean wartet;
+
+        Shard(int index, int kapazitaet) {
+            this.auftraege = new Ringpuffer(kapazitaet);
+            this.thread = new Thread(this, "Shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * nimmt einen Auftrag von aussen an. Wartet, solange die Warteschlange voll ist.
+         *
+         * @param ergebnis Future des Auftrags
+         * @param schritt  der Auftrag
+         * @throws IllegalStateException wenn die Ausfuehrung beendet ist
+         */
+        void auftragAnnehmen(CompletableFuture<?> ergebnis, Runnable schritt) {
+            // erst zaehlen, dann pruefen: so beendet sich kein Shard, solange dieser Auftrag noch kommen kann
+            offen.incrementAndGet();
+            if (!laeuft) {
+                erledigt();
+                throw new IllegalStateException("Die Ausfuehrung ist beendet");
+            }
+            Auftrag auftrag = new Auftrag(ergebnis, schritt);
+            while (!auftraege.anbieten(auftrag)) {
+                Thread.yield();
+            }
+            wecken();
+        }
+
+        /**
+         * nimmt eine Nachricht eines anderen Shards an.
+         *
+         * @param ergebnis  Future des urspruenglichen Auftrags
+         * @param nachricht die Nachricht
+         */
+        void nachrichtAnnehmen(CompletableFuture<?> ergebnis, Runnable nachricht) {
+            offen.incrementAndGet();
+            nachrichten.add(new Auftrag(ergebnis, nachricht));
+            wecken();
+        }
+
+        private void wecken() {
+            if (wartet) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private Auftrag naechster() {
+            Auftrag naechster = nachrichten.poll();
+            return naechster != null ? naechster : auftraege.entnehmen();
+        }
+
+        @Override
+        public void run() {
+            while (laeuft || offen.get() > 0) {
+                Auftrag naechster = naechster();
+                if (naechster == null) {
+                    // erst wartet setzen, dann noch einmal nachsehen: ein gleichzeitig abgelegter Auftrag
+                    // wird so entweder hier gefunden oder sein Auftraggeber sieht wartet und weckt den Thread
+                    wartet = true;
+                    naechster = naechster();
+                    if (naechster == null) {
+                        if (laeuft || offen.get() > 0) {
+                            LockSupport.park(this);
+                        }
+                        wartet = false;
+                        continue;
+                    }
+                    wartet = false;
+                }
+                try {
+                    naechster.schritt.run();
+                } catch (Throwable t) {
+                    naechster.ergebnis.completeExceptionally(t);
+                } finally {
+                    erledigt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package bank;
+
+import verarbeitung.Betrag;
+import verarbeitung.Waehrung;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Eine bankinterne Transaktion aus beliebig vielen Belastungen und Gutschriften, z.B. ein Gehaltslauf
+ * (eine Belastung, viele Gutschriften) oder eine aufgeteilte Zahlung. Die Transaktion wird mit
+ * {@link Bank#transaktionAusfuehren(Transaktion)} ganz oder gar nicht gebucht.
+ *
+ * Alle Betraege werden beim Hinzufuegen in die kleinste Einheit der Waehrung der Transaktion umgerechnet (siehe
+ * {@link Betrag}) und nur noch so summiert. Ausgeglichen ist eine Transaktion nur, wenn die Summen der Belastungen
+ * und der Gutschriften in dieser Einheit genau gleich sind; Bruchteile eines Cents koennen so kein Geld erzeugen.
+ */
+public class Transaktion {
+
+    private final String verwendungszweck;
+
+    private final Waehrung waehrung;
+
+    /**
+     * Nettobetrag pro Kontonummer in der kleinsten Einheit der Waehrung: positiv = Gutschrift, negativ = Belastung
+     */
+    private final Map<Long, Long> posten = new LinkedHashMap<>();
+
+    private long summeBelastungen;
+    private long summeGutschriften;
+
+    /**
+     * erstellt eine leere Transaktion in Euro
+     *
+     * @param verwendungszweck Verwendungszweck aller Buchungen der Transaktion
+     * @throws IllegalArgumentException wenn verwendungszweck null ist
+     */
+    public Transaktion(String verwendungszweck) {
+        this(verwendungszweck, Waehrung.EUR);
+    }
+
+    /**
+     * erstellt eine leere Transaktion, deren Betraege in der angegebenen Waehrung gelten. Alle beteiligten Konten
+     * muessen in dieser Waehrung gefuehrt werden.
+     *
+     * @param verwendungszweck Verwendungszweck aller Buchungen der Transaktion
+     * @param waehrung         Waehrung aller Betraege
+     * @throws IllegalArgumentException wenn verwendungszweck oder waehrung null ist
+     */
+    public Transaktion(String verwendungszweck, Waehrung waehrung) {
+        if (verwendungszweck == null) {
+            throw new IllegalArgumentException("Verwendungszweck darf nicht null sein!");
+        }
+        if (waehrung == null) {
+            throw new IllegalArgumentException("Waehrung darf nicht null sein!");
+        }
+        this.verwendungszweck = verwendungszweck;
+        this.waehrung = waehrung;
+    }
+
+    /**
+     * fuegt eine Belastung des Kontos hinzu
+     *
+     * @param kontonummer das zu belastende Konto
+     * @param betrag      positiver Betrag
+     * @return this
+     * @throws IllegalArgumentException wenn der Betrag NaN oder zu gross ist oder nicht mindestens die kleinste
+     *                                  Einheit der Waehrung ergibt
+     * @throws ArithmeticException      wenn die Summe der Belastungen nicht in einen long passt
+     */
+    public Transaktion belasten(long kontonummer, double betrag) {
+        long b = inBetrag(betrag);
+        summeBelastungen = Betrag.addieren(summeBelastungen, b);
+        posten.merge(kontonummer, -b, Betrag::addieren);
+        return this;
+    }
+
+    /**
+     * fuegt eine Gutschrift auf das Konto hinzu
+     *
+     * @param kontonummer das Konto, auf das gutgeschrieben wird
+     * @param betrag      positiver Betrag
+     * @return this
+     * @throws IllegalArgumentException wenn der Betrag NaN oder zu gross ist oder nicht mindestens die kleinste
+     *                                  Einheit der Waehrung ergibt
+     * @throws ArithmeticException      wenn die Summe der Gutschriften nicht in einen long passt
+     */
+    public Transaktion gutschreiben(long kontonummer, double betrag) {
+        long b = inBetrag(betrag);
+        summeGutschriften = Betrag.addieren(summeGutschriften, b);
+        posten.merge(kontonummer, b, Betrag::addieren);
+        return this;
+    }
+
+    /**
+     * rechnet einen Betrag in die kleinste Einheit der Waehrung um
+     */
+    private long inBetrag(double betrag) {
+        long b = Betrag.ausDouble(betrag, waehrung);
+        if (b <= 0) {
+            throw new IllegalArgumentException("Betrag ungültig");
+        }
+        return b;
+    }
+
+    /**
+     * liefert zurueck, ob die Summe der Belastungen der Summe der Gutschriften entspricht
+     *
+     * @return true, wenn die Summen in der kleinsten Einheit der Waehrung genau gleich sind
+     */
+    public boolean istAusgeglichen() {
+        return summeBelastungen == summeGutschriften;
+    }
+
+    /**
+     * liefert den Verwendungszweck
+     *
+     * @return Verwendungszweck
+     */
+    public String getVerwendungszweck() {
+        return verwendungszweck;
+    }
+
+    /**
+     * liefert die Waehrung aller Betraege
+     *
+     * @return Waehrung
+     */
+    public Waehrung getWaehrung() {
+        return waehrung;
+    }
+
+    /**
+     * liefert die Nettobetraege pro Konto
+     *
+     * @return nicht veraenderbare Abbildung Kontonummer auf Nettobetrag in der kleinsten Einheit der Waehrung
+     * (positiv = Gutschrift)
+     */
+    Map<Long, Long> getPosten() {
+        return Collections.unmodifiableMap(posten);
+    }
+
+    /**
+     * liefert die Nummern aller beteiligten Konten
+     *
+     * @return Kontonummern
+     */
+    public List<Long> getKontonummern() {
+        return new ArrayList<>(posten.keySet());
+    }
+}
@@ -0,0 +1,69 @@
+package bank;
+
+/**
+ * Ein Auftrag fuer eine bankinterne Ueberweisung, z.B. als Teil einer Sammelueberweisung
+ * mit {@link Bank#geldUeberweisenBatch(java.util.List)}.
+ */
+public class Ueberweisungsauftrag {
+
+    private final long vonKontonr;
+    private final long nachKontonr;
+    private final double betrag;
+    private final String verwendungszweck;
+
+    /**
+     * erstellt einen Ueberweisungsauftrag
+     *
+     * @param vonKontonr       Nummer des Kontos, das die Überweisung absendet
+     * @param nachKontonr      Nummer des Kontos, das die Überweisung empfängt
+     * @param betrag           der zu überweisende Betrag
+     * @param verwendungszweck Verwendungszweck der Überweisung
+     */
+    public Ueberweisungsauftrag(long vonKontonr, long nachKontonr, double betrag, String verwendungszweck) {
+        this.vonKontonr = vonKontonr;
+        this.nachKontonr = nachKontonr;
+        this.betrag = betrag;
+        this.verwendungszweck = verwendungszweck;
+    }
+
+    /**
+     * liefert die Nummer des absendenden Kontos
+     *
+     * @return Kontonummer des Absenders
+     */
+    public long getVonKontonr() {
+        return vonKontonr;
+    }
+
+    /**
+     * liefert die Nummer des empfangenden Kontos
+     *
+     * @return Kontonummer des Empfaengers
+     */
+    public long getNachKontonr() {
+        return nachKontonr;
+    }
+
+    /**
+     * liefert den zu ueberweisenden Betrag
+     *
+     * @return Betrag
+     */
+    public double getBetrag() {
+        return betrag;
+    }
+
+    /**
+     * liefert den Verwendungszweck
+     *
+     * @return Verwendungszweck
+     */
+    public String getVerwendungszweck() {
+        return verwendungszweck;
+    }
+
+    @Override
+    public String toString() {
+        return "Ueberweisung von " + vonKontonr + " nach " + nachKontonr + ": " + betrag + " (" + verwendungszweck + ")";
+    }
+}
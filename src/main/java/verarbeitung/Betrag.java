@@ -0,0 +1,152 @@
+package verarbeitung;
+
+import java.math.RoundingMode;
+
+/**
+ * Rechnen mit Geldbetraegen in Festkommadarstellung. Ein Betrag ist ein long in der kleinsten Einheit seiner
+ * Waehrung (bei 2 Nachkommastellen also in Cent), siehe {@link Waehrung#getNachkommastellen()}.
+ *
+ * Alle Methoden arbeiten nur mit primitiven Werten und erzeugen keine Objekte. Anders als mit double geht beim
+ * Addieren und Subtrahieren nichts verloren; gerundet wird nur beim Umrechnen, und zwar mit ausdruecklich
+ * angegebenem {@link RoundingMode}. Ein Ueberlauf fuehrt zu einer ArithmeticException statt zu einem falschen Betrag.
+ */
+public final class Betrag {
+
+	/**
+	 * Rundung, wenn keine angegeben wird (kaufmaennisch auf die gerade Ziffer, "Banker's Rounding")
+	 */
+	public static final RoundingMode STANDARDRUNDUNG = RoundingMode.HALF_EVEN;
+
+	private Betrag() {
+	}
+
+	/**
+	 * wandelt einen als double angegebenen Betrag in die kleinste Einheit der Waehrung um
+	 * @param betrag Betrag, z.B. 10.5
+	 * @param w Waehrung des Betrags
+	 * @return Betrag in der kleinsten Einheit, z.B. 1050
+	 * @throws IllegalArgumentException wenn betrag NaN oder zu gross ist
+	 */
+	public static long ausDouble(double betrag, Waehrung w) {
+		double skaliert = betrag * w.getFaktor();
+		if (Double.isNaN(skaliert) || Math.abs(skaliert) >= 0x1p63) {
+			throw new IllegalArgumentException("Falscher Betrag");
+		}
+		return Math.round(skaliert);
+	}
+
+	/**
+	 * wandelt einen Betrag in der kleinsten Einheit der Waehrung in einen double-Wert um
+	 * @param betrag Betrag in der kleinsten Einheit, z.B. 1050
+	 * @param w Waehrung des Betrags
+	 * @return Betrag als double, z.B. 10.5
+	 */
+	public static double inDouble(long betrag, Waehrung w) {
+		return betrag / (double) w.getFaktor();
+	}
+
+	/**
+	 * addiert zwei Betraege derselben Waehrung
+	 * @param a Betrag
+	 * @param b Betrag
+	 * @return a + b
+	 * @throws ArithmeticException bei Ueberlauf
+	 */
+	public static long addieren(long a, long b) {
+		return Math.addExact(a, b);
+	}
+
+	/**
+	 * subtrahiert zwei Betraege derselben Waehrung
+	 * @param a Betrag
+	 * @param b Betrag
+	 * @return a - b
+	 * @throws ArithmeticException bei Ueberlauf
+	 */
+	public static long subtrahieren(long a, long b) {
+		return Math.subtractExact(a, b);
+	}
+
+	/**
+	 * multipliziert einen Betrag mit zaehler / nenner und rundet das Ergebnis, z.B. fuer Zinsen oder Umrechnungen.
+	 * Es wird nur das Endergebnis gerundet; ein Zwischenueberlauf von betrag * zaehler wird vermieden, solange
+	 * nenner * zaehler in einen long passt.
+	 * @param betrag Betrag
+	 * @param zaehler Zaehler des Faktors
+	 * @param nenner Nenner des Faktors, groesser als 0
+	 * @param rundung Rundung, falls das Ergebnis nicht ganzzahlig ist
+	 * @return betrag * zaehler / nenner, gerundet
+	 * @throws ArithmeticException bei Ueberlauf oder wenn mit RoundingMode.UNNECESSARY gerundet werden muesste
+	 * @throws IllegalArgumentException wenn nenner nicht positiv ist
+	 */
+	public static long multiplizieren(long betrag, long zaehler, long nenner, RoundingMode rundung) {
+		if (nenner <= 0) {
+			throw new IllegalArgumentException("Nenner muss positiv sein");
+		}
+		// betrag = q * nenner + r, also betrag * zaehler / nenner = q * zaehler + r * zaehler / nenner
+		long q = betrag / nenner;
+		long r = betrag % nenner;
+		long teil = Math.multiplyExact(r, zaehler);
+		long quotient = Math.addExact(Math.multiplyExact(q, zaehler), teil / nenner);
+		return runden(quotient, teil % nenner, nenner, rundung);
+	}
+
+	/**
+	 * dividiert ganzzahlig und rundet wie {@link java.math.BigDecimal#divide(java.math.BigDecimal, RoundingMode)}
+	 * @param zaehler Zaehler
+	 * @param nenner Nenner, groesser als 0
+	 * @param rundung Rundung, falls die Division nicht aufgeht
+	 * @return gerundeter Quotient
+	 * @throws ArithmeticException wenn mit RoundingMode.UNNECESSARY gerundet werden muesste
+	 * @throws IllegalArgumentException wenn nenner nicht positiv ist
+	 */
+	public static long dividieren(long zaehler, long nenner, RoundingMode rundung) {
+		if (nenner <= 0) {
+			throw new IllegalArgumentException("Nenner muss positiv sein");
+		}
+		return runden(zaehler / nenner, zaehler % nenner, nenner, rundung);
+	}
+
+	/**
+	 * rundet den ganzzahligen Quotienten anhand des Rests
+	 * @param quotient zur Null hin abgeschnittener Quotient
+	 * @param rest Rest der Division, mit dem Vorzeichen des Zaehlers
+	 * @param nenner Nenner, groesser als 0
+	 * @param rundung Rundung
+	 * @return gerundeter Quotient
+	 */
+	private static long runden(long quotient, long rest, long nenner, RoundingMode rundung) {
+		if (rest == 0) {
+			return quotient;
+		}
+		int vorzeichen = rest < 0 ? -1 : 1;
+		boolean wegVonNull;
+		switch (rundung) {
+			case UNNECESSARY:
+				throw new ArithmeticException("Rundung notwendig");
+			case DOWN:
+				wegVonNull = false;
+				break;
+			case UP:
+				wegVonNull = true;
+				break;
+			case FLOOR:
+				wegVonNull = vorzeichen < 0;
+				break;
+			case CEILING:
+				wegVonNull = vorzeichen > 0;
+				break;
+			default:
+				// HALF_UP, HALF_DOWN, HALF_EVEN: Rest mit dem Abstand zur naechsten Zahl vergleichen
+				long betragRest = Math.abs(rest);
+				int vergleich = Long.compare(betragRest, nenner - betragRest);
+				if (vergleich != 0) {
+					wegVonNull = vergleich > 0;
+				} else {
+					wegVonNull = rundung == RoundingMode.HALF_UP
+							|| (rundung == RoundingMode.HALF_EVEN && (quotient & 1) != 0);
+				}
+		}
+		return wegVonNull ? quotient + vorzeichen : quotient;
+	}
+}
@@ -1,5 +1,7 @@
 package verarbeitung;
 
+import java.nio.ByteBuffer;
+
 /**
  * Ein Girokonto
  * @author Doro
@@ -7,9 +9,9 @@ package verarbeitung;
  */
 public class Girokonto extends Konto implements Ueberweisungsfaehig{
 	/**
-	 * Wert, bis zu dem das Konto überzogen werden darf
+	 * Wert, bis zu dem das Konto überzogen werden darf, in der kleinsten Einheit der Kontowährung
 	 */
-	private double dispo;
+	private volatile long dispo;
 
 	/**
 	 * erzeugt ein leeres, nicht gesperrtes Standard-Girokonto
@@ -18,7 +20,7 @@ public class Girokonto extends Konto implements Ueberweisungsfaehig{
 	public Girokonto()
 	{
 		super(Kunde.MUSTERMANN, 99887766);
-		this.dispo = 500;
+		this.dispo = Betrag.ausDouble(500, getWaehrung());
 	}
 	
 	/**
@@ -33,7 +35,7 @@ public class Girokonto extends Konto implements Ueberweisungsfaehig{
 		super(inhaber, nummer);
 		if(dispo < 0 || Double.isNaN(dispo))
 			throw new IllegalArgumentException("Der Dispo ist nicht gültig!");
-		this.dispo = dispo;
+		this.dispo = Betrag.ausDouble(dispo, getWaehrung());
 	}
 
 	/**
@@ -48,7 +50,7 @@ public class Girokonto extends Konto implements Ueberweisungsfaehig{
 		super(inhaber, nummer, w);
 		if(dispo < 0 || Double.isNaN(dispo))
 			throw new IllegalArgumentException("Der Dispo ist nicht gültig!");
-		this.dispo = dispo;
+		this.dispo = Betrag.ausDouble(dispo, getWaehrung());
 	}
 	
 	/**
@@ -56,6 +58,14 @@ public class Girokonto extends Konto implements Ueberweisungsfaehig{
 	 * @return Dispo von this
 	 */
 	public double getDispo() {
+		return Betrag.inDouble(dispo, getWaehrung());
+	}
+
+	/**
+	 * liefert den Dispo als Festkommabetrag
+	 * @return Dispo in der kleinsten Einheit der Kontowährung
+	 */
+	public long getDispoBetrag() {
 		return dispo;
 	}
 
@@ -67,7 +77,22 @@ public class Girokonto extends Konto implements Ueberweisungsfaehig{
 	public void setDispo(double dispo) {
 		if(dispo < 0 || Double.isNaN(dispo))
 			throw new IllegalArgumentException("Der Dispo ist nicht gültig!");
+		setDispoBetrag(Betrag.ausDouble(dispo, getWaehrung()));
+	}
+
+	/**
+	 * setzt den Dispo neu
+	 * @param dispo Dispo in der kleinsten Einheit der Kontowährung, nicht negativ
+	 * @throws IllegalArgumentException wenn dispo negativ ist
+	 */
+	public void setDispoBetrag(long dispo) {
+		if(dispo < 0)
+			throw new IllegalArgumentException("Der Dispo ist nicht gültig!");
+		vorAenderung();
+		long alt = this.dispo;
 		this.dispo = dispo;
+		Waehrung w = getWaehrung();
+		eigenschaftGeaendert("Dispo", Betrag.inDouble(alt, w), Betrag.inDouble(dispo, w));
 	}
 	
 	@Override
@@ -80,13 +105,20 @@ public class Girokonto extends Konto implements Ueberweisungsfaehig{
             throw new GesperrtException(this.getKontonummer());
         if (betrag < 0 || Double.isNaN(betrag) || empfaenger == null || verwendungszweck == null)
             throw new IllegalArgumentException("Parameter fehlerhaft");
-        if (getKontostand() - betrag >= - dispo)
-        {
-            setKontostand(getKontostand() - betrag);
-            return true;
-        }
-        else
-        	return false;
+        return ueberweisungAbsendenBetrag(Betrag.ausDouble(betrag, getWaehrung()), empfaenger, nachKontonr, nachBlz, verwendungszweck);
+    }
+
+    @Override
+    public boolean ueberweisungAbsendenBetrag(long betrag,
+    		String empfaenger, long nachKontonr,
+    		long nachBlz, String verwendungszweck)
+    				throws GesperrtException
+    {
+        if (this.isGesperrt())
+            throw new GesperrtException(this.getKontonummer());
+        if (betrag < 0 || empfaenger == null || verwendungszweck == null)
+            throw new IllegalArgumentException("Parameter fehlerhaft");
+        return kontostandVermindern(betrag);
     }
 
     @Override
@@ -94,34 +126,61 @@ public class Girokonto extends Konto implements Ueberweisungsfaehig{
     {
         if (betrag < 0 || Double.isNaN(betrag) || vonName == null || verwendungszweck == null)
             throw new IllegalArgumentException("Parameter fehlerhaft");
-        setKontostand(getKontostand() + betrag);
+        ueberweisungEmpfangenBetrag(Betrag.ausDouble(betrag, getWaehrung()), vonName, vonKontonr, vonBlz, verwendungszweck);
+    }
+
+    @Override
+    public void ueberweisungEmpfangenBetrag(long betrag, String vonName, long vonKontonr, long vonBlz, String verwendungszweck)
+    {
+        if (betrag < 0 || vonName == null || verwendungszweck == null)
+            throw new IllegalArgumentException("Parameter fehlerhaft");
+        kontostandErhoehen(betrag);
     }
     
+    @Override
+    public boolean istUeberweisungErlaubt(double kontostand, double betrag) {
+        Waehrung w = getWaehrung();
+        return istAbhebungErlaubt(Betrag.ausDouble(kontostand, w), Betrag.ausDouble(betrag, w));
+    }
+
+    @Override
+    public boolean istUeberweisungErlaubtBetrag(long kontostand, long betrag) {
+        return istAbhebungErlaubt(kontostand, betrag);
+    }
+
     @Override
     public String toString() {
 		String ausgabe = "-- GIROKONTO --" + System.lineSeparator() +
 				super.toString()
-				+ "Dispo: " + this.dispo + System.lineSeparator();
+				+ "Dispo: " + getDispo() + System.lineSeparator();
 		return ausgabe;
 	}
 
 	@Override
-	protected boolean istAbhebungErlaubt(double betrag) {
-		return getKontostand() - betrag >= - dispo;
+	protected boolean istAbhebungErlaubt(long kontostand, long betrag) {
+		return kontostand - betrag >= - dispo;
 	}
 
 	@Override
-	protected void sideEffect(double betrag) {
+	protected void sideEffect(long betrag) {
 		// kein SideEffect.
 	}
 
 	/**
-	 * Das Überschreiben der Methode waehrungswechsel => Dispo sollte auch umgerechnet.
-	 * @param neu neue Währung
+	 * Beim Waehrungswechsel wird auch der Dispo umgerechnet.
 	 */
 	@Override
-	public void waehrungswechsel(Waehrung neu) {
-		this.dispo = getWaehrung().rechneBetragAndererWaehrung(this.dispo, neu);
-		super.waehrungswechsel(neu);
+	protected void betraegeUmrechnen(Waehrung alt, Waehrung neu, Kurstabelle kurse) {
+		this.dispo = kurse.umrechnen(this.dispo, alt, neu, Betrag.STANDARDRUNDUNG);
+	}
+
+	@Override
+	void zusatzSchreiben(ByteBuffer b) {
+		Kontocodec.zickzackSchreiben(b, dispo);
+	}
+
+	@Override
+	void zusatzLesen(ByteBuffer b) {
+		this.dispo = Kontocodec.zickzackLesen(b);
 	}
 }
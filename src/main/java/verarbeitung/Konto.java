@@ -6,11 +6,18 @@ import verarbeitung.beobachter.IsGesperrtBeobachter;
 import verarbeitung.beobachter.KontostandBeobachter;
 import verarbeitung.beobachter.WaehrungBeobachter;
 
+import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * stellt ein allgemeines Konto dar
@@ -27,36 +34,90 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 	 */
 	private final long nummer;
 
-	private Waehrung waehrung = Waehrung.EUR;
+	private volatile Waehrung waehrung = Waehrung.EUR;
 
 	/**
-	 * Observer-Support dieses Objekts
+	 * Version der {@link Kurstabelle}, mit der zuletzt fuer dieses Konto umgerechnet wurde (0: noch nie)
 	 */
-	private transient PropertyChangeSupport prop = new PropertyChangeSupport(this);
+	private volatile long kursversion;
 
 	/**
-	 * der aktuelle Kontostand
+	 * Versionsstempel des Kontozustands (Kontostand, gesperrt, Waehrung): jede Aenderung zaehlt version vor dem
+	 * Schreiben hoch und fertig danach, siehe {@link #aenderungBeginnen()}. Sind beide gleich, laeuft gerade keine
+	 * Aenderung. Leser koennen so ohne Lock einen zusammenpassenden Zustand lesen, siehe {@link #getZustand()},
+	 * und Schreiber des Kontostands muessen weiterhin nicht aufeinander warten.
 	 */
-	private ReadOnlyDoubleWrapper kontostand;
+	private final AtomicLong version = new AtomicLong();
+	private final AtomicLong fertig = new AtomicLong();
 
 	/**
-	 * Wenn das Konto gesperrt ist (gesperrt = true), können keine Aktionen daran mehr vorgenommen werden,
+	 * Observer-Support dieses Objekts; wird erst beim ersten ausdruecklichen Anmelden eines Beobachters erzeugt
+	 */
+	private transient volatile PropertyChangeSupport prop;
+
+	/**
+	 * true, solange die {@link #STANDARDBEOBACHTER} angemeldet sind, ohne dass es schon einen Observer-Support gibt.
+	 * Sie werden dann von {@link #feuern} direkt benachrichtigt; erst ein weiterer Beobachter erzeugt den Support und
+	 * traegt sie dort ein.
+	 */
+	private transient volatile boolean standardbeobachter;
+
+	/**
+	 * die Standardbeobachter, siehe {@link #setupProp()}. Sie haben keinen Zustand und werden von allen Konten geteilt.
+	 */
+	private static final List<PropertyChangeListener> STANDARDBEOBACHTER = List.of(
+			new IsGesperrtBeobachter(),
+			new KontostandBeobachter(),
+			new WaehrungBeobachter(),
+			new InhaberBeobachter());
+
+	private static final Kontonachfuehrung[] KEINE_NACHFUEHRUNG = new Kontonachfuehrung[0];
+
+	/**
+	 * die internen Nachfuehrungen, siehe {@link #nachfuehrungAnmelden(Kontonachfuehrung)}; wird beim An- und
+	 * Abmelden ersetzt, so dass eine Aenderung das Feld ohne Lock und ohne Kopie durchlaufen kann
+	 */
+	private transient volatile Kontonachfuehrung[] nachfuehrungen = KEINE_NACHFUEHRUNG;
+
+	/**
+	 * der aktuelle Kontostand in der kleinsten Einheit der Waehrung, siehe {@link Betrag}. Er kann ohne Lock
+	 * per compareAndSet veraendert werden, und Buchungen summieren sich ohne Rundungsfehler.
+	 */
+	private final AtomicLong kontostandBetrag = new AtomicLong();
+
+	/**
+	 * Wenn das Konto gesperrt ist (gesperrtWert = true), können keine Aktionen daran mehr vorgenommen werden,
 	 * die zum Schaden des Kontoinhabers wären (abheben, Inhaberwechsel)
 	 */
-	private BooleanProperty gesperrt;
-	private ReadOnlyBooleanWrapper istKontostandNegativ;
+	private volatile boolean gesperrtWert;
+
+	/**
+	 * Properties fuer die Oberflaeche. Sie werden erst beim ersten Zugriff erzeugt und danach bei jeder Aenderung
+	 * nachgefuehrt; Konten, an die nie etwas gebunden wird, kommen ohne sie aus.
+	 */
+	private transient volatile ReadOnlyDoubleWrapper kontostand;
+	private transient volatile BooleanProperty gesperrt;
+	private transient volatile ReadOnlyBooleanWrapper istKontostandNegativ;
 
 	/**
 	 * Set-Methode der PropertyChangeSupport. Wird hauptsaechlich zum Testen benutzt.
 	 * @param prop PropertyChangeSupport.
 	 */
-	void setProp(PropertyChangeSupport prop) { this.prop = prop; }
+	void setProp(PropertyChangeSupport prop) {
+		synchronized (this) {
+			this.prop = prop;
+			standardbeobachter = false;
+		}
+	}
 
 	/**
 	 * Gibt den Kontostand des Kontos als eine ReadOnlyDoubleProperty zurueck
 	 * @return Nicht veraenderbare Kontostand als ein Property
 	 */
 	public ReadOnlyDoubleProperty kontostandProperty() {
+		if (istKontostandNegativ == null) {
+			propertiesErzeugen();
+		}
 		return kontostand.getReadOnlyProperty();
 	}
 
@@ -65,6 +126,9 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 	 * @return BooleanProperty
 	 */
 	public BooleanProperty gesperrtProperty() {
+		if (istKontostandNegativ == null) {
+			propertiesErzeugen();
+		}
 		return gesperrt;
 	}
 
@@ -73,31 +137,293 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 	 * @return -, wenn minus angezeigt werden soll
 	 */
 	public ReadOnlyBooleanProperty istKontostandNegativProperty() {
+		if (istKontostandNegativ == null) {
+			propertiesErzeugen();
+		}
 		return istKontostandNegativ.getReadOnlyProperty();
 	}
 
 	/**
-	 * Default Aufbau der Beobachter fuer die Klasse Konto..
+	 * erzeugt die Properties mit dem aktuellen Zustand. Die Properties werden immer gemeinsam erzeugt;
+	 * istKontostandNegativ wird zuletzt gesetzt und dient den Zugriffsmethoden als Zeichen, dass alle da sind.
 	 */
-	public void setupProp() {
-		List<PropertyChangeListener> liste = new LinkedList<>();
+	private synchronized void propertiesErzeugen() {
+		if (istKontostandNegativ != null) {
+			return;
+		}
+		double stand = getKontostand();
+		kontostand = new ReadOnlyDoubleWrapper(stand);
+		BooleanProperty g = new SimpleBooleanProperty(gesperrtWert);
+		g.addListener((beobachtet, alt, neu) -> gesperrtAendern(neu)); // auch wenn die Oberflaeche das Property aendert
+		gesperrt = g;
+		istKontostandNegativ = new ReadOnlyBooleanWrapper(stand < 0);
+
+		// Aenderungen waehrend des Erzeugens haben die Properties noch nicht gesehen
+		stand = getKontostand();
+		kontostand.set(stand);
+		istKontostandNegativ.set(stand < 0);
+		g.set(gesperrtWert);
+	}
+
+	/**
+	 * liefert den Observer-Support und erzeugt ihn beim ersten Aufruf
+	 * @return der Observer-Support
+	 */
+	private PropertyChangeSupport prop() {
+		PropertyChangeSupport p = prop;
+		if (p == null) {
+			synchronized (this) {
+				p = prop;
+				if (p == null) {
+					p = new PropertyChangeSupport(this);
+					if (standardbeobachter) {
+						STANDARDBEOBACHTER.forEach(p::addPropertyChangeListener);
+					}
+					prop = p;
+					standardbeobachter = false;
+				}
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * benachrichtigt die Beobachter, falls ueberhaupt welche angemeldet sind
+	 */
+	private void feuern(String name, Object alt, Object neu) {
+		PropertyChangeSupport p = prop;
+		if (p == null && standardbeobachter) {
+			// wie PropertyChangeSupport: gleiche Werte sind keine Aenderung
+			if (alt == null || neu == null || !alt.equals(neu)) {
+				PropertyChangeEvent evt = new PropertyChangeEvent(this, name, alt, neu);
+				for (PropertyChangeListener b : STANDARDBEOBACHTER) {
+					b.propertyChange(evt);
+				}
+			}
+		} else if (p != null || (p = prop) != null) { // der Support kann gerade erst erzeugt worden sein
+			p.firePropertyChange(name, alt, neu);
+		}
+	}
+
+	/**
+	 * benachrichtigt erst die Nachfuehrungen und dann die Beobachter ueber eine geaenderte Eigenschaft, die nicht
+	 * der Kontostand ist
+	 */
+	private void melden(String name, Object alt, Object neu) {
+		try {
+			nachfuehren(name, alt, neu);
+		} finally {
+			feuern(name, alt, neu);
+		}
+	}
 
-		liste.add(new IsGesperrtBeobachter());
-		liste.add(new KontostandBeobachter());
-		liste.add(new WaehrungBeobachter());
-		liste.add(new InhaberBeobachter());
+	/**
+	 * @return true, wenn irgendein Beobachter angemeldet sein kann
+	 */
+	private boolean hatBeobachter() {
+		return prop != null || standardbeobachter;
+	}
+
+	/**
+	 * benachrichtigt die Nachfuehrungen ueber eine geaenderte Eigenschaft, die nicht der Kontostand ist
+	 */
+	private void nachfuehren(String name, Object alt, Object neu) {
+		RuntimeException fehler = null;
+		for (Kontonachfuehrung n : nachfuehrungen) {
+			try {
+				n.eigenschaftGeaendert(this, name, alt, neu);
+			} catch (RuntimeException e) {
+				fehler = sammeln(fehler, e);
+			}
+		}
+		if (fehler != null) {
+			throw fehler;
+		}
+	}
 
-		anmelden(liste);
+	/**
+	 * merkt sich die erste Ausnahme einer Nachfuehrung und haengt weitere an sie an
+	 */
+	private static RuntimeException sammeln(RuntimeException bisher, RuntimeException neu) {
+		if (bisher == null) {
+			return neu;
+		}
+		bisher.addSuppressed(neu);
+		return bisher;
+	}
+
+	/**
+	 * Default Aufbau der Beobachter fuer die Klasse Konto.. Solange kein weiterer Beobachter angemeldet wird,
+	 * wird dafuer kein Observer-Support erzeugt.
+	 */
+	public void setupProp() {
+		if (prop == null) {
+			synchronized (this) {
+				if (prop == null) {
+					standardbeobachter = true;
+					return;
+				}
+			}
+		}
+		anmelden(STANDARDBEOBACHTER);
 	}
 
 	/**
 	 * setzt den aktuellen Kontostand
-	 * @param kontostand neuer Kontostand
+	 * @param kontostand neuer Kontostand in der kleinsten Einheit der Waehrung
+	 */
+	protected void setKontostand(long kontostand) {
+		long alt;
+		vorAenderung();
+		aenderungBeginnen();
+		try {
+			alt = kontostandBetrag.getAndSet(kontostand);
+		} finally {
+			aenderungBeenden();
+		}
+		kontostandGeaendert(alt, kontostand);
+	}
+
+	/**
+	 * beginnt eine Aenderung des Kontozustands; muss mit {@link #aenderungBeenden()} abgeschlossen werden, bevor
+	 * Beobachter benachrichtigt werden. Mehrere Aenderungen duerfen gleichzeitig laufen: erst wenn alle begonnenen
+	 * auch beendet sind, kann ein Leser wieder einen Zustand mit Versionsstempel lesen.
+	 */
+	private void aenderungBeginnen() {
+		version.incrementAndGet();
+	}
+
+	private void aenderungBeenden() {
+		fertig.incrementAndGet();
+	}
+
+	/**
+	 * meldet den Nachfuehrungen, dass das Konto gleich geaendert wird, siehe
+	 * {@link Kontonachfuehrung#vorAenderung(Konto)}. Muss vor {@link #aenderungBeginnen()} und ausserhalb jedes
+	 * Monitors des Kontos aufgerufen werden, denn eine Nachfuehrung darf das Konto dabei noch lesen. Ein weiterer
+	 * Aufruf unter dem Monitor, wie im {@link Sparbuch} aus {@link #kontostandVermindern(long)}, findet dann nichts
+	 * mehr zu tun.
+	 */
+	protected final void vorAenderung() {
+		for (Kontonachfuehrung n : nachfuehrungen) {
+			n.vorAenderung(this);
+		}
+	}
+
+	/**
+	 * Erhoeht den Kontostand atomar um betrag. Bei gleichzeitigen Aenderungen wird so lange
+	 * wiederholt, bis das compareAndSet gelingt; es geht keine Buchung verloren.
+	 * @param betrag zu addierender Betrag in der kleinsten Einheit der Waehrung
+	 * @throws ArithmeticException wenn der Kontostand ueberlaufen wuerde
 	 */
-	protected void setKontostand(double kontostand) {
-		prop.firePropertyChange("Kontostand", this.kontostand, kontostand);
-		this.kontostand.set(kontostand);
-		this.istKontostandNegativ.set(kontostand < 0);
+	protected final void kontostandErhoehen(long betrag) {
+		long alt;
+		long neu;
+		vorAenderung();
+		aenderungBeginnen();
+		try {
+			do {
+				alt = kontostandBetrag.get();
+				neu = Betrag.addieren(alt, betrag);
+			} while (!kontostandBetrag.compareAndSet(alt, neu));
+		} finally {
+			aenderungBeenden();
+		}
+
+		kontostandGeaendert(alt, neu);
+	}
+
+	/**
+	 * Vermindert den Kontostand atomar um betrag, wenn {@link #istAbhebungErlaubt(long, long)}
+	 * fuer den gelesenen Kontostand zutrifft. Die Pruefung gehoert zum atomaren Schritt: Hat sich
+	 * der Kontostand zwischen Pruefung und compareAndSet geaendert, wird mit dem neuen Stand erneut geprueft.
+	 * @param betrag abzuziehender Betrag in der kleinsten Einheit der Waehrung
+	 * @return true, wenn der Kontostand vermindert wurde
+	 */
+	protected final boolean kontostandVermindern(long betrag) {
+		long alt;
+		long neu;
+		vorAenderung();
+		aenderungBeginnen();
+		try {
+			do {
+				alt = kontostandBetrag.get();
+				if (!istAbhebungErlaubt(alt, betrag)) {
+					return false;
+				}
+				neu = Betrag.subtrahieren(alt, betrag);
+			} while (!kontostandBetrag.compareAndSet(alt, neu));
+		} finally {
+			aenderungBeenden();
+		}
+
+		kontostandGeaendert(alt, neu);
+		return true;
+	}
+
+	/**
+	 * Benachrichtigt Nachfuehrungen und Beobachter ueber einen geaenderten Kontostand und aktualisiert die Properties.
+	 * @param alt Kontostand vor der Aenderung in der kleinsten Einheit der Waehrung
+	 * @param neu Kontostand nach der Aenderung in der kleinsten Einheit der Waehrung
+	 */
+	private void kontostandGeaendert(long alt, long neu) {
+		RuntimeException fehler = null;
+		for (Kontonachfuehrung n : nachfuehrungen) {
+			try {
+				n.kontostandGeaendert(this, alt, neu);
+			} catch (RuntimeException e) {
+				fehler = sammeln(fehler, e);
+			}
+		}
+		if (hatBeobachter()) {
+			Waehrung w = waehrung;
+			feuern("Kontostand", Betrag.inDouble(alt, w), Betrag.inDouble(neu, w));
+		}
+		if (istKontostandNegativ != null) {
+			double aktuell = getKontostand(); // kann bei gleichzeitigen Aenderungen schon neuer sein als neu
+			this.kontostand.set(aktuell);
+			this.istKontostandNegativ.set(aktuell < 0);
+		}
+		if (fehler != null) {
+			throw fehler; // erst nachdem Beobachter und Properties den neuen Stand haben
+		}
+	}
+
+	/**
+	 * setzt, ob das Konto gesperrt ist, und benachrichtigt Beobachter und Property
+	 * @param neu true, wenn das Konto gesperrt ist
+	 */
+	private void gesperrtAendern(boolean neu) {
+		if (gesperrtWert == neu) {
+			return;
+		}
+		vorAenderung();
+		synchronized (version) {
+			if (gesperrtWert == neu) {
+				return;
+			}
+			aenderungBeginnen();
+			gesperrtWert = neu;
+			aenderungBeenden();
+		}
+		try {
+			melden("isGesperrt", !neu, neu);
+		} finally {
+			BooleanProperty g = gesperrt;
+			if (g != null) {
+				g.set(neu); // loest den Listener aus, der aber nichts mehr zu tun hat
+			}
+		}
+	}
+
+	/**
+	 * Benachrichtigt die Beobachter ueber eine geaenderte Eigenschaft einer Unterklasse, z.B. den Dispo.
+	 * @param name Name der Eigenschaft
+	 * @param alt Wert vor der Aenderung
+	 * @param neu Wert nach der Aenderung
+	 */
+	protected final void eigenschaftGeaendert(String name, Object alt, Object neu) {
+		melden(name, alt, neu);
 	}
 
 	/**
@@ -116,10 +442,6 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 		this.inhaber = inhaber;
 		this.nummer = kontonummer;
 
-		kontostand = new ReadOnlyDoubleWrapper(0);
-		gesperrt = new SimpleBooleanProperty(false);
-		istKontostandNegativ = new ReadOnlyBooleanWrapper(false);
-
 		setupProp();
 	}
 
@@ -144,12 +466,82 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 		this(Kunde.MUSTERMANN, 1234567);
 	}
 
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		nachfuehrungen = KEINE_NACHFUEHRUNG;
+		setupProp(); // Nachfuehrungen, Beobachter und Properties gehoeren nicht zur Kopie
+	}
+
 	/**
 	 * Meldet einen ChangeListener an
 	 * @param listener ChangeListener
 	 */
 	public void anmelden(PropertyChangeListener listener) {
-		prop.addPropertyChangeListener(listener);
+		prop().addPropertyChangeListener(listener);
+	}
+
+	/**
+	 * meldet eine interne Nachfuehrung an, z.B. die Indizes einer Bank. Sie braucht keinen Observer-Support und
+	 * bleibt angemeldet, wenn die Beobachter an einen Ereignisbus uebergeben werden, siehe {@link Kontonachfuehrung}.
+	 * Eine bereits angemeldete Nachfuehrung wird nicht noch einmal angemeldet.
+	 * @param nachfuehrung die Nachfuehrung
+	 * @throws IllegalArgumentException wenn nachfuehrung null ist
+	 */
+	public void nachfuehrungAnmelden(Kontonachfuehrung nachfuehrung) {
+		if (nachfuehrung == null)
+			throw new IllegalArgumentException("Die Nachfuehrung darf nicht null sein!");
+		synchronized (this) {
+			Kontonachfuehrung[] alt = nachfuehrungen;
+			for (Kontonachfuehrung n : alt) {
+				if (n == nachfuehrung) {
+					return;
+				}
+			}
+			Kontonachfuehrung[] neu = Arrays.copyOf(alt, alt.length + 1);
+			neu[alt.length] = nachfuehrung;
+			nachfuehrungen = neu;
+		}
+	}
+
+	/**
+	 * meldet eine interne Nachfuehrung bei vielen Konten an, z.B. beim Einfuegen vieler neuer Konten in eine Bank.
+	 * Konten ohne Nachfuehrung teilen sich dafuer ein einziges Feld, statt dass fuer jedes Konto eines kopiert wird;
+	 * es wird wie jedes Feld der Nachfuehrungen nie veraendert, sondern nur ersetzt.
+	 * @param nachfuehrung die Nachfuehrung
+	 * @param konten die Konten
+	 * @throws IllegalArgumentException wenn nachfuehrung null ist
+	 */
+	public static void nachfuehrungAnmelden(Kontonachfuehrung nachfuehrung, Konto[] konten) {
+		if (nachfuehrung == null)
+			throw new IllegalArgumentException("Die Nachfuehrung darf nicht null sein!");
+		Kontonachfuehrung[] nur = {nachfuehrung};
+		for (Konto k : konten) {
+			synchronized (k) {
+				if (k.nachfuehrungen.length == 0) {
+					k.nachfuehrungen = nur;
+					continue;
+				}
+			}
+			k.nachfuehrungAnmelden(nachfuehrung);
+		}
+	}
+
+	/**
+	 * meldet eine interne Nachfuehrung ab
+	 * @param nachfuehrung die Nachfuehrung
+	 */
+	public void nachfuehrungAbmelden(Kontonachfuehrung nachfuehrung) {
+		synchronized (this) {
+			Kontonachfuehrung[] alt = nachfuehrungen;
+			for (int i = 0; i < alt.length; i++) {
+				if (alt[i] == nachfuehrung) {
+					Kontonachfuehrung[] neu = Arrays.copyOf(alt, alt.length - 1);
+					System.arraycopy(alt, i + 1, neu, i, alt.length - i - 1);
+					nachfuehrungen = neu;
+					return;
+				}
+			}
+		}
 	}
 
 	/**
@@ -157,7 +549,8 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 	 * @param listenerList Liste von ChangeListener.
 	 */
 	public void anmelden(List<PropertyChangeListener> listenerList) {
-		listenerList.forEach(listener -> { prop.addPropertyChangeListener(listener); });
+		PropertyChangeSupport p = prop();
+		listenerList.forEach(listener -> { p.addPropertyChangeListener(listener); });
 	}
 
 	/**
@@ -165,7 +558,37 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 	 * @param listener ChangeListener.
 	 */
 	public void abmelden(PropertyChangeListener listener) {
-		prop.removePropertyChangeListener(listener);
+		PropertyChangeSupport p = prop;
+		if (p == null && standardbeobachter && STANDARDBEOBACHTER.contains(listener)) {
+			p = prop(); // die uebrigen Standardbeobachter bleiben angemeldet
+		}
+		if (p != null) {
+			p.removePropertyChangeListener(listener);
+		}
+	}
+
+	/**
+	 * Meldet alle ChangeListener ab, z.B. um sie an einen {@link verarbeitung.beobachter.Ereignisbus} zu uebergeben
+	 * @return die abgemeldeten ChangeListener
+	 */
+	public List<PropertyChangeListener> alleAbmelden() {
+		PropertyChangeSupport p = prop;
+		if (p == null) {
+			synchronized (this) {
+				p = prop;
+				if (p == null) {
+					List<PropertyChangeListener> liste = new LinkedList<>();
+					if (standardbeobachter) {
+						liste.addAll(STANDARDBEOBACHTER);
+						standardbeobachter = false;
+					}
+					return liste;
+				}
+			}
+		}
+		List<PropertyChangeListener> liste = new LinkedList<>(Arrays.asList(p.getPropertyChangeListeners()));
+		liste.forEach(p::removePropertyChangeListener);
+		return liste;
 	}
 
 	/**
@@ -191,8 +614,13 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 	 * protected => nur für Unterklasse Zugriff erlaubt.
 	 */
 	public void setWaehrung(Waehrung waehrung) {
-		prop.firePropertyChange("Waehrung", this.waehrung, waehrung);
+		vorAenderung();
+		Waehrung alt = this.waehrung;
+		feuern("Waehrung", alt, waehrung);
+		aenderungBeginnen();
 		this.waehrung = waehrung;
+		aenderungBeenden();
+		nachfuehren("Waehrung", alt, waehrung);
 	}
 	
 	/**
@@ -207,8 +635,11 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 		if(isGesperrt())
 			throw new GesperrtException(this.nummer);
 
-		prop.firePropertyChange("Inhaber", this.inhaber, kinh);
+		vorAenderung();
+		Kunde alt = this.inhaber;
+		feuern("Inhaber", alt, kinh);
 		this.inhaber = kinh;
+		nachfuehren("Inhaber", alt, kinh);
 
 	}
 
@@ -224,9 +655,165 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 	 * @param neu neue Währung
 	 */
 	public void waehrungswechsel(Waehrung neu) {
-		Waehrung temp = this.waehrung;
-		setWaehrung(neu);
-		setKontostand(this.waehrung.rechneBetragAndererWaehrung(getKontostand(), temp));
+		Waehrung alt;
+		long standAlt;
+		long standNeu;
+		vorAenderung();
+		synchronized (version) {
+			aenderungBeginnen(); // Leser warten, bis Waehrung und Kontostand zusammenpassen
+			try {
+				Kurstabelle kurse = Wechselkurse.getKurstabelle(); // alle Betraege mit denselben Kursen
+				alt = this.waehrung;
+				betraegeUmrechnen(alt, neu, kurse);
+				this.waehrung = neu;
+				do {
+					standAlt = kontostandBetrag.get();
+					standNeu = kurse.umrechnen(standAlt, alt, neu, Betrag.STANDARDRUNDUNG);
+				} while (!kontostandBetrag.compareAndSet(standAlt, standNeu));
+				kursversion = kurse.getVersion();
+			} finally {
+				aenderungBeenden();
+			}
+		}
+		// erst benachrichtigen, wenn alles wieder zusammenpasst: Beobachter duerfen getZustand() aufrufen
+		try {
+			melden("Waehrung", alt, neu);
+		} finally {
+			kontostandGeaendert(standAlt, standNeu);
+		}
+	}
+
+	/**
+	 * setzt Kontostand, Waehrung und Sperre auf einen gespeicherten Stand, ohne Umrechnung und ohne die Regeln
+	 * fuer Buchungen zu pruefen, z.B. beim Wiederherstellen aus einem Journal. Die Beobachter werden wie bei
+	 * jeder Aenderung benachrichtigt.
+	 * @param kontostand Kontostand in der kleinsten Einheit von waehrung
+	 * @param waehrung Waehrung des Kontos
+	 * @param gesperrt true, wenn das Konto gesperrt ist
+	 * @throws IllegalArgumentException wenn waehrung null ist
+	 */
+	public void zustandWiederherstellen(long kontostand, Waehrung waehrung, boolean gesperrt) {
+		if (waehrung == null)
+			throw new IllegalArgumentException("Die Waehrung darf nicht null sein!");
+		Waehrung alt;
+		long standAlt;
+		vorAenderung();
+		synchronized (version) {
+			aenderungBeginnen(); // Waehrung und Kontostand gemeinsam, wie beim Waehrungswechsel
+			try {
+				alt = this.waehrung;
+				this.waehrung = waehrung;
+				standAlt = kontostandBetrag.getAndSet(kontostand);
+			} finally {
+				aenderungBeenden();
+			}
+		}
+		try {
+			if (alt != waehrung) {
+				melden("Waehrung", alt, waehrung);
+			}
+		} finally {
+			try {
+				gesperrtAendern(gesperrt);
+			} finally {
+				kontostandGeaendert(standAlt, kontostand);
+			}
+		}
+	}
+
+	/**
+	 * setzt den Zustand eines gerade erzeugten, noch unveroeffentlichten Kontos beim Lesen einer Aufnahme,
+	 * ohne Beobachter zu benachrichtigen, siehe {@link Kontocodec}
+	 * @param kontostand Kontostand in der kleinsten Einheit der Kontowaehrung
+	 * @param gesperrt true, wenn das Konto gesperrt ist
+	 * @param kursversion Version der zuletzt verwendeten Kurse
+	 */
+	void zustandLaden(long kontostand, boolean gesperrt, long kursversion) {
+		kontostandBetrag.set(kontostand);
+		gesperrtWert = gesperrt;
+		this.kursversion = kursversion;
+	}
+
+	/**
+	 * schreibt die Werte einer Unterklasse in eine Aufnahme, siehe {@link Kontocodec}
+	 * @param b Ziel
+	 */
+	void zusatzSchreiben(ByteBuffer b) {
+		// das Konto selbst hat keine weiteren Werte
+	}
+
+	/**
+	 * liest die mit {@link #zusatzSchreiben(ByteBuffer)} geschriebenen Werte
+	 * @param b Quelle
+	 */
+	void zusatzLesen(ByteBuffer b) {
+		// das Konto selbst hat keine weiteren Werte
+	}
+
+	/**
+	 * rechnet beim Waehrungswechsel weitere Betraege einer Unterklasse um (z.B. den Dispo). Wird vor dem Wechsel
+	 * der Waehrung aufgerufen, mit denselben Kursen wie der Kontostand.
+	 * @param alt bisherige Waehrung
+	 * @param neu neue Waehrung
+	 * @param kurse die fuer den Wechsel verwendeten Kurse
+	 */
+	protected void betraegeUmrechnen(Waehrung alt, Waehrung neu, Kurstabelle kurse) {
+		// das Konto selbst hat ausser dem Kontostand keine Betraege
+	}
+
+	/**
+	 * liefert die Version der Wechselkurse, mit denen zuletzt fuer dieses Konto umgerechnet wurde
+	 * (Waehrungswechsel, Ein- und Auszahlung in anderer Waehrung)
+	 * @return Version der {@link Kurstabelle} oder 0, wenn noch nie umgerechnet wurde
+	 */
+	public long getKursversion() {
+		return kursversion;
+	}
+
+	/**
+	 * rechnet einen Betrag in die Kontowaehrung um und merkt sich die Version der verwendeten Kurse
+	 * @param betrag Betrag in der Waehrung w
+	 * @param w Waehrung des Betrags
+	 * @return Betrag in der Kontowaehrung
+	 */
+	private double umrechnen(double betrag, Waehrung w) {
+		Kurstabelle kurse = Wechselkurse.getKurstabelle();
+		kursversion = kurse.getVersion();
+		return kurse.umrechnen(betrag, w, this.waehrung);
+	}
+
+	/**
+	 * rechnet einen Festkommabetrag in die Kontowaehrung um und merkt sich die Version der verwendeten Kurse
+	 * @param betrag Betrag in der kleinsten Einheit von w
+	 * @param w Waehrung des Betrags
+	 * @param rundung Rundung des Ergebnisses
+	 * @return Betrag in der kleinsten Einheit der Kontowaehrung
+	 */
+	private long umrechnen(long betrag, Waehrung w, RoundingMode rundung) {
+		Kurstabelle kurse = Wechselkurse.getKurstabelle();
+		kursversion = kurse.getVersion();
+		return kurse.umrechnen(betrag, w, this.waehrung, rundung);
+	}
+
+	/**
+	 * liefert Kontostand, Sperre und Waehrung als zusammenpassenden Zustand, ohne Lock und ohne schreibende
+	 * Threads aufzuhalten. Laeuft gerade eine Aenderung oder beginnt waehrend des Lesens eine, wird erneut gelesen.
+	 * @return der aktuelle Kontozustand
+	 */
+	public Kontozustand getZustand() {
+		while (true) {
+			long v = version.get();
+			// alle bis v begonnenen Aenderungen sind beendet; eine spaeter begonnene zaehlt version weiter
+			if (fertig.get() == v) {
+				long stand = kontostandBetrag.get();
+				boolean istGesperrt = gesperrtWert;
+				Waehrung w = waehrung;
+				if (version.get() == v) {
+					return new Kontozustand(stand, istGesperrt, w, v);
+				}
+			}
+			Thread.onSpinWait();
+		}
 	}
 	
 	/**
@@ -234,7 +821,15 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 	 * @return   double
 	 */
 	public double getKontostand() {
-		return kontostand.getValue();
+		return Betrag.inDouble(kontostandBetrag.get(), waehrung);
+	}
+
+	/**
+	 * liefert den aktuellen Kontostand als Festkommabetrag
+	 * @return Kontostand in der kleinsten Einheit der Waehrung, siehe {@link Betrag}
+	 */
+	public long getKontostandBetrag() {
+		return kontostandBetrag.get();
 	}
 
 	/**
@@ -250,7 +845,7 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 	 * @return true, wenn das Konto gesperrt ist
 	 */
 	public boolean isGesperrt() {
-		return gesperrt.getValue();
+		return gesperrtWert;
 	}
 	
 	/**
@@ -263,7 +858,36 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 		if (betrag < 0 || Double.isNaN(betrag)) {
 			throw new IllegalArgumentException("Falscher Betrag");
 		}
-		setKontostand(getKontostand() + betrag);
+		einzahlenBetrag(Betrag.ausDouble(betrag, this.waehrung));
+	}
+
+	/**
+	 * Erhöht den Kontostand um den eingezahlten Festkommabetrag.
+	 *
+	 * @param betrag Betrag in der kleinsten Einheit der Kontowährung
+	 * @throws IllegalArgumentException wenn der betrag negativ ist
+	 */
+	public void einzahlenBetrag(long betrag) {
+		if (betrag < 0) {
+			throw new IllegalArgumentException("Falscher Betrag");
+		}
+		kontostandErhoehen(betrag);
+	}
+
+	/**
+	 * Zahlt den in der Währung w angegebenen Festkommabetrag ein. Die Umrechnung ist exakt, nur das Ergebnis
+	 * wird gerundet.
+	 *
+	 * @param betrag Betrag in der kleinsten Einheit von w
+	 * @param w Währung des eingezahlten Betrags
+	 * @param rundung Rundung bei der Umrechnung in die Kontowährung
+	 * @throws IllegalArgumentException wenn der betrag negativ ist
+	 */
+	public void einzahlenBetrag(long betrag, Waehrung w, RoundingMode rundung) {
+		if (betrag < 0) {
+			throw new IllegalArgumentException("Falscher Betrag");
+		}
+		einzahlenBetrag(w == this.waehrung ? betrag : umrechnen(betrag, w, rundung));
 	}
 
 	/**
@@ -274,7 +898,7 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 	 * @throws IllegalArgumentException wenn der betrag negativ ist 
 	 */
 	public void einzahlen(double betrag, Waehrung w) {
-		if (Double.isNaN(betrag)) {
+		if (betrag < 0 || Double.isNaN(betrag)) {
 			throw new IllegalArgumentException("Falscher Betrag");
 		}
 
@@ -283,7 +907,7 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 			return;
 		}
 
-		einzahlen(this.waehrung.rechneBetragAndererWaehrung(betrag, w));
+		einzahlen(umrechnen(betrag, w));
 	};
 	
 	/**
@@ -321,11 +945,41 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 			throw new IllegalArgumentException("Betrag ungültig");
 		}
 
-		boolean abhebungErlaubt = istAbhebungErlaubt(betrag);
+		return abhebenBetrag(Betrag.ausDouble(betrag, this.waehrung));
+	}
+
+	/**
+	 * Hebt den Festkommabetrag vom Konto ab, wenn es nicht gesperrt ist. Wie {@link #abheben(double)} final.
+	 *
+	 * @param betrag Betrag in der kleinsten Einheit der Kontowährung
+	 * @throws GesperrtException wenn das Konto gesperrt ist
+	 * @throws IllegalArgumentException wenn der betrag negativ ist
+	 * @return true, wenn die Abhebung geklappt hat,
+	 * 		   false, wenn sie abgelehnt wurde
+	 */
+	public final boolean abhebenBetrag(long betrag) throws GesperrtException {
+		if (isGesperrt()) {
+			throw new GesperrtException(nummer);
+		}
+		if (betrag < 0) {
+			throw new IllegalArgumentException("Betrag ungültig");
+		}
+
+		return abhebungBuchen(betrag);
+	}
+
+	/**
+	 * Vermindert den Kontostand um betrag, zusammen mit der Pruefung in einem atomaren Schritt, und fuehrt danach
+	 * {@link #sideEffect(long)} aus. Haengt die Pruefung von weiterem Zustand der Unterklasse ab, der erst in
+	 * sideEffect nachgefuehrt wird, muss die Unterklasse Pruefung und sideEffect gemeinsam schuetzen, siehe
+	 * {@link Sparbuch}.
+	 * @param betrag abzuhebender Betrag in der kleinsten Einheit der Waehrung
+	 * @return true, wenn die Abhebung geklappt hat
+	 */
+	protected boolean abhebungBuchen(long betrag) {
+		boolean abhebungErlaubt = kontostandVermindern(betrag);
 
-		//  Das eigentliche Vermindern des Kontostandes
 		if (abhebungErlaubt) {
-			setKontostand(getKontostand() - betrag);
 			sideEffect(betrag);
 		}
 
@@ -334,16 +988,18 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 
 	/**
 	 * Prueft ob die Abhebung des Kontostandes ueberhaupt erlaubt.
-	 * @param betrag der abzuhebender Betrag. Double.
+	 * Wird innerhalb der compareAndSet-Schleife aufgerufen und kann deshalb mehrmals pro Abhebung laufen.
+	 * @param kontostand der Kontostand, fuer den geprueft wird, in der kleinsten Einheit der Waehrung
+	 * @param betrag der abzuhebender Betrag in der kleinsten Einheit der Waehrung
 	 * @return true, wenn das Verminder des Kontostandes geklappt hat.
 	 */
-	protected abstract boolean istAbhebungErlaubt(double betrag);
+	protected abstract boolean istAbhebungErlaubt(long kontostand, long betrag);
 
 	/**
 	 * Was Uebriges, das noch bei der Abhebung des Kontostands geschehen sollte.
-	 * @param betrag abzuhebender Betrag
+	 * @param betrag abzuhebender Betrag in der kleinsten Einheit der Waehrung
 	 */
-	protected abstract void sideEffect(double betrag);
+	protected abstract void sideEffect(long betrag);
 	
 	/**
 	 * Hebt den gewünschten in der Währung w angegebenen Betrag ab.
@@ -356,23 +1012,43 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 	 * 		   false, wenn sie abgelehnt wurde
 	 */
 	public boolean abheben(double betrag, Waehrung w) throws GesperrtException {
-		return abheben(this.waehrung.rechneBetragAndererWaehrung(betrag, w));
+		if (betrag < 0 || Double.isNaN(betrag)) {
+			throw new IllegalArgumentException("Betrag ungültig");
+		}
+		return abheben(w == this.waehrung ? betrag : umrechnen(betrag, w));
+	}
+
+	/**
+	 * Hebt den in der Währung w angegebenen Festkommabetrag ab. Die Umrechnung ist exakt, nur das Ergebnis
+	 * wird gerundet.
+	 *
+	 * @param betrag Betrag in der kleinsten Einheit von w
+	 * @param w die Währung, in der der Betrag abgehoben wird.
+	 * @param rundung Rundung bei der Umrechnung in die Kontowährung
+	 * @throws GesperrtException wenn das Konto gesperrt ist
+	 * @throws IllegalArgumentException wenn der betrag negativ ist
+	 * @return true, wenn die Abhebung geklappt hat,
+	 * 		   false, wenn sie abgelehnt wurde
+	 */
+	public boolean abhebenBetrag(long betrag, Waehrung w, RoundingMode rundung) throws GesperrtException {
+		if (betrag < 0) {
+			throw new IllegalArgumentException("Betrag ungültig");
+		}
+		return abhebenBetrag(w == this.waehrung ? betrag : umrechnen(betrag, w, rundung));
 	}
 
 	/**
 	 * sperrt das Konto, Aktionen zum Schaden des Benutzers sind nicht mehr möglich.
 	 */
 	public void sperren() {
-		prop.firePropertyChange("isGesperrt", gesperrt, true);
-		gesperrt.set(true);
+		gesperrtAendern(true);
 	}
 
 	/**
 	 * entsperrt das Konto, alle Kontoaktionen sind wieder möglich.
 	 */
 	public final void entsperren() {
-		prop.firePropertyChange("isGesperrt", gesperrt, false);
-		gesperrt.set(false);
+		gesperrtAendern(false);
 	}
 	
 	
@@ -407,7 +1083,7 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 	 */
 	public String getKontostandFormatiert()
 	{
-		return String.format("%s %10.2f" , this.waehrung.name(), this.getKontostand());
+		return getZustand().getKontostandFormatiert();
 	}
 	
 	/**
@@ -461,6 +1137,6 @@ public abstract class Konto implements Comparable<Konto>, Serializable
 	 * @return true, wenn der Kontostand negativ ist
 	 */
 	public boolean getIstKontostandNegativ() {
-		return istKontostandNegativ.getValue();
+		return kontostandBetrag.get() < 0;
 	}
 }
@@ -0,0 +1,248 @@
+package verarbeitung;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Binaeres Format fuer {@link Kunde}n und {@link Konto}en, z.B. fuer eine Momentaufnahme der ganzen Bank. Anders als
+ * die Java-Serialisierung schreibt es keine Klassenbeschreibungen, sondern nur die Werte: ganze Zahlen als Varint
+ * (7 Bit je Byte, vorzeichenbehaftete im Zickzack), Texte als UTF-8. Ein Konto verweist auf seinen Inhaber nur ueber
+ * dessen Stelle in der Kundenliste, jeder Kunde steht also nur einmal in der Aufnahme.
+ *
+ * Gelesene Konten werden ueber ihre Konstruktoren erzeugt und haben danach wie jedes neue Konto ihre
+ * Standardbeobachter.
+ */
+public final class Kontocodec {
+
+	/**
+	 * Art eines Kontos in der Aufnahme
+	 */
+	private static final byte GIROKONTO = 0;
+	private static final byte SPARBUCH = 1;
+
+	/**
+	 * so viele Byte braucht ein Konto hoechstens (ohne den Verweis auf den Inhaber mehr als genug)
+	 */
+	public static final int MAX_KONTOLAENGE = 64;
+
+	private static final Waehrung[] WAEHRUNGEN = Waehrung.values();
+
+	private static final ThreadLocal<ByteBuffer> KOPIERPUFFER =
+			ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_KONTOLAENGE + 5));
+
+	private Kontocodec() {
+	}
+
+	/**
+	 * schreibt eine nicht negative Zahl als Varint
+	 * @param b Ziel
+	 * @param wert die Zahl
+	 */
+	public static void varintSchreiben(ByteBuffer b, long wert) {
+		while ((wert & ~0x7FL) != 0) {
+			b.put((byte) ((wert & 0x7F) | 0x80));
+			wert >>>= 7;
+		}
+		b.put((byte) wert);
+	}
+
+	/**
+	 * liest eine mit {@link #varintSchreiben(ByteBuffer, long)} geschriebene Zahl
+	 * @param b Quelle
+	 * @return die Zahl
+	 * @throws IllegalArgumentException wenn die Zahl laenger als 10 Byte ist
+	 */
+	public static long varintLesen(ByteBuffer b) {
+		long wert = 0;
+		for (int verschiebung = 0; verschiebung < 64; verschiebung += 7) {
+			byte teil = b.get();
+			wert |= (long) (teil & 0x7F) << verschiebung;
+			if (teil >= 0) {
+				return wert;
+			}
+		}
+		throw new IllegalArgumentException("Varint zu lang");
+	}
+
+	static void zickzackSchreiben(ByteBuffer b, long wert) {
+		varintSchreiben(b, (wert << 1) ^ (wert >> 63));
+	}
+
+	static long zickzackLesen(ByteBuffer b) {
+		long wert = varintLesen(b);
+		return (wert >>> 1) ^ -(wert & 1);
+	}
+
+	private static void textSchreiben(ByteBuffer b, byte[] text) {
+		varintSchreiben(b, text.length);
+		b.put(text);
+	}
+
+	private static String textLesen(ByteBuffer b) {
+		byte[] text = new byte[(int) varintLesen(b)];
+		b.get(text);
+		return new String(text, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * liefert, wie viele Byte der Kunde hoechstens braucht
+	 * @param k der Kunde
+	 * @return Obergrenze in Byte
+	 */
+	public static int maxLaenge(Kunde k) {
+		// je Text hoechstens 5 Byte Laenge und 3 Byte je Zeichen, dazu der Geburtstag
+		return 3 * 5 + 3 * (k.getVorname().length() + k.getNachname().length() + k.getAdresse().length()) + 10;
+	}
+
+	/**
+	 * schreibt Name, Adresse und Geburtstag des Kunden
+	 * @param b Ziel mit mindestens {@link #maxLaenge(Kunde)} freien Byte
+	 * @param k der Kunde
+	 */
+	public static void kundeSchreiben(ByteBuffer b, Kunde k) {
+		textSchreiben(b, k.getVorname().getBytes(StandardCharsets.UTF_8));
+		textSchreiben(b, k.getNachname().getBytes(StandardCharsets.UTF_8));
+		textSchreiben(b, k.getAdresse().getBytes(StandardCharsets.UTF_8));
+		zickzackSchreiben(b, k.getGeburtstag().toEpochDay());
+	}
+
+	/**
+	 * liest einen mit {@link #kundeSchreiben(ByteBuffer, Kunde)} geschriebenen Kunden
+	 * @param b Quelle
+	 * @return neuer Kunde
+	 */
+	public static Kunde kundeLesen(ByteBuffer b) {
+		String vorname = textLesen(b);
+		String nachname = textLesen(b);
+		String adresse = textLesen(b);
+		return new Kunde(vorname, nachname, adresse, LocalDate.ofEpochDay(zickzackLesen(b)));
+	}
+
+	/**
+	 * schreibt das Konto ohne seine Kontonummer; die steht beim Aufrufer
+	 * @param b Ziel mit mindestens {@link #MAX_KONTOLAENGE} freien Byte
+	 * @param k das Konto
+	 * @param inhaber Stelle des Inhabers in der Kundenliste der Aufnahme
+	 * @throws IllegalArgumentException wenn das Konto weder Girokonto noch Sparbuch ist
+	 */
+	public static void kontoSchreiben(ByteBuffer b, Konto k, int inhaber) {
+		if (k.getClass() == Girokonto.class) {
+			b.put(GIROKONTO);
+		} else if (k.getClass() == Sparbuch.class) {
+			b.put(SPARBUCH);
+		} else {
+			throw new IllegalArgumentException("Unbekannte Kontoart: " + k.getClass().getName());
+		}
+		varintSchreiben(b, inhaber);
+		Kontozustand z = k.getZustand();
+		b.put((byte) z.getWaehrung().ordinal());
+		b.put((byte) (z.isGesperrt() ? 1 : 0));
+		zickzackSchreiben(b, z.getKontostandBetrag());
+		varintSchreiben(b, k.getKursversion());
+		k.zusatzSchreiben(b);
+	}
+
+	/**
+	 * liest ein mit {@link #kontoSchreiben(ByteBuffer, Konto, int)} geschriebenes Konto
+	 * @param b Quelle
+	 * @param nummer Kontonummer des Kontos
+	 * @param kunden die Kundenliste der Aufnahme
+	 * @return neues Konto mit den Standardbeobachtern
+	 * @throws IllegalArgumentException wenn die Daten kein Konto beschreiben
+	 */
+	public static Konto kontoLesen(ByteBuffer b, long nummer, Kunde[] kunden) {
+		byte art = b.get();
+		Kunde inhaber = kunden[(int) varintLesen(b)];
+		Waehrung w = WAEHRUNGEN[b.get()];
+		boolean gesperrt = b.get() != 0;
+		long kontostand = zickzackLesen(b);
+		long kursversion = varintLesen(b);
+		Konto k;
+		if (art == GIROKONTO) {
+			k = new Girokonto(inhaber, nummer, 0, w);
+		} else if (art == SPARBUCH) {
+			k = new Sparbuch(inhaber, nummer, w);
+		} else {
+			throw new IllegalArgumentException("Unbekannte Kontoart " + art);
+		}
+		k.zustandLaden(kontostand, gesperrt, kursversion);
+		k.zusatzLesen(b);
+		return k;
+	}
+
+	/**
+	 * schreibt nur die Werte der Kontoart (z.B. beim Sparbuch Zinssatz, bereits abgehobenen Betrag und Zeitpunkt
+	 * der letzten Abhebung), wie sie auch {@link #kontoSchreiben(ByteBuffer, Konto, int)} schreibt
+	 * @param b Ziel mit mindestens {@link #MAX_KONTOLAENGE} freien Byte
+	 * @param k das Konto
+	 */
+	public static void zusatzSchreiben(ByteBuffer b, Konto k) {
+		k.zusatzSchreiben(b);
+	}
+
+	/**
+	 * liest die mit {@link #zusatzSchreiben(ByteBuffer, Konto)} geschriebenen Werte in das Konto derselben Art
+	 * @param b Quelle
+	 * @param k das Konto
+	 */
+	public static void zusatzLesen(ByteBuffer b, Konto k) {
+		k.zusatzLesen(b);
+	}
+
+	/**
+	 * liefert zurueck, ob das Konto mit {@link #kontoSchreiben(ByteBuffer, Konto, int)} geschrieben werden kann
+	 * @param k das Konto
+	 * @return true fuer Girokonten und Sparbuecher
+	 */
+	public static boolean kopierbar(Konto k) {
+		return k.getClass() == Girokonto.class || k.getClass() == Sparbuch.class;
+	}
+
+	/**
+	 * liefert ein neues Konto mit demselben Zustand und demselben Inhaber, aber nur mit den Standardbeobachtern
+	 * @param k das Konto
+	 * @return die Kopie
+	 * @throws IllegalArgumentException wenn das Konto weder Girokonto noch Sparbuch ist
+	 */
+	public static Konto kopie(Konto k) {
+		return kopie(k, k.getInhaber());
+	}
+
+	/**
+	 * liefert ein neues Konto mit demselben Zustand, das inhaber gehoert, nur mit den Standardbeobachtern
+	 * @param k das Konto
+	 * @param inhaber Inhaber der Kopie
+	 * @return die Kopie
+	 * @throws IllegalArgumentException wenn das Konto weder Girokonto noch Sparbuch ist
+	 */
+	public static Konto kopie(Konto k, Kunde inhaber) {
+		ByteBuffer b = KOPIERPUFFER.get().clear();
+		kontoSchreiben(b, k, 0);
+		return kontoLesen(b.flip(), k.getKontonummer(), new Kunde[]{inhaber});
+	}
+
+	/**
+	 * erzeugt ein Konto mit dem angegebenen Zustand, ohne dabei Ereignisse auszuloesen, z.B. fuer einen Massenimport
+	 * @param art GIROKONTO oder SPARBUCH
+	 * @param inhaber der Inhaber
+	 * @param nummer Kontonummer
+	 * @param w Kontowaehrung
+	 * @param kontostand Kontostand in der kleinsten Einheit von w
+	 * @param dispo Dispo in der kleinsten Einheit von w, nur fuer Girokonten
+	 * @return neues Konto mit den Standardbeobachtern
+	 * @throws IllegalArgumentException wenn art weder GIROKONTO noch SPARBUCH oder der Dispo negativ ist
+	 */
+	public static Konto kontoErzeugen(Kontoart art, Kunde inhaber, long nummer, Waehrung w, long kontostand, long dispo) {
+		Konto k;
+		if (art == Kontoart.GIROKONTO) {
+			k = new Girokonto(inhaber, nummer, Betrag.inDouble(dispo, w), w);
+		} else if (art == Kontoart.SPARBUCH) {
+			k = new Sparbuch(inhaber, nummer, w);
+		} else {
+			throw new IllegalArgumentException("Unbekannte Kontoart " + art);
+		}
+		k.zustandLaden(kontostand, false, k.getKursversion());
+		return k;
+	}
+}
@@ -0,0 +1,45 @@
+package verarbeitung;
+
+/**
+ * Interne Nachfuehrung eines Kontos, z.B. durch die Indizes einer Bank. Anders als ein
+ * {@link java.beans.PropertyChangeListener} braucht sie keinen Observer-Support am Konto, und Aenderungen des
+ * Kontostands erfaehrt sie als Festkommabetraege, ohne dass dafuer ein Ereignis erzeugt wird. Sie wird immer im
+ * Thread der Aenderung aufgerufen, wenn der neue Wert schon am Konto steht, und auch dann, wenn die Beobachter
+ * des Kontos ueber einen {@link verarbeitung.beobachter.Ereignisbus} benachrichtigt werden.
+ *
+ * Wirft eine Nachfuehrung eine RuntimeException, ist die Aenderung trotzdem geschehen: die uebrigen Nachfuehrungen
+ * und die Beobachter werden noch benachrichtigt, danach bekommt der Aufrufer der Aenderung die Ausnahme. Wer mehrere
+ * Konten zusammen aendert (z.B. bei einer Ueberweisung), muss die schon geschehenen Aenderungen dann selbst
+ * zurueckbuchen.
+ *
+ * @see Konto#nachfuehrungAnmelden(Kontonachfuehrung)
+ */
+public interface Kontonachfuehrung {
+
+	/**
+	 * das Konto wird gleich geaendert; der alte Zustand steht noch am Konto und kann z.B. kopiert werden. Wird
+	 * ausserhalb der Monitore des Kontos aufgerufen. Eine Ausnahme bricht die Aenderung ab, bevor etwas geschehen
+	 * ist. Standardmaessig geschieht nichts.
+	 * @param konto das Konto
+	 */
+	default void vorAenderung(Konto konto) {
+	}
+
+	/**
+	 * der Kontostand hat sich geaendert
+	 * @param konto das Konto
+	 * @param alt Kontostand vor der Aenderung in der kleinsten Einheit der Waehrung, siehe {@link Betrag}
+	 * @param neu Kontostand nach der Aenderung in der kleinsten Einheit der Waehrung
+	 */
+	void kontostandGeaendert(Konto konto, long alt, long neu);
+
+	/**
+	 * eine andere Eigenschaft hat sich geaendert, mit denselben Namen und Werten wie in den Ereignissen an die
+	 * Beobachter (z.B. "isGesperrt", "Waehrung", "Inhaber", "Dispo", {@link Sparbuch#ABGEHOBEN})
+	 * @param konto das Konto
+	 * @param name Name der Eigenschaft
+	 * @param alt Wert vor der Aenderung
+	 * @param neu Wert nach der Aenderung
+	 */
+	void eigenschaftGeaendert(Konto konto, String name, Object alt, Object neu);
+}
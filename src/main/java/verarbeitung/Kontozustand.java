@@ -0,0 +1,80 @@
+package verarbeitung;
+
+/**
+ * Ein zusammenpassender, unveraenderlicher Schnappschuss von Kontostand, Sperre und Waehrung eines Kontos,
+ * siehe {@link Konto#getZustand()}.
+ */
+public final class Kontozustand {
+
+	/**
+	 * Kontostand in der kleinsten Einheit der Waehrung, siehe {@link Betrag}
+	 */
+	private final long kontostand;
+	private final boolean gesperrt;
+	private final Waehrung waehrung;
+	private final long version;
+
+	/**
+	 * erstellt einen Kontozustand
+	 * @param kontostand der Kontostand in der kleinsten Einheit der Waehrung
+	 * @param gesperrt ob das Konto gesperrt ist
+	 * @param waehrung die Waehrung, in der der Kontostand angegeben ist
+	 * @param version Versionsstempel des Kontos zum Zeitpunkt des Lesens
+	 */
+	Kontozustand(long kontostand, boolean gesperrt, Waehrung waehrung, long version) {
+		this.kontostand = kontostand;
+		this.gesperrt = gesperrt;
+		this.waehrung = waehrung;
+		this.version = version;
+	}
+
+	/**
+	 * liefert den Kontostand
+	 * @return Kontostand in der Waehrung {@link #getWaehrung()}
+	 */
+	public double getKontostand() {
+		return Betrag.inDouble(kontostand, waehrung);
+	}
+
+	/**
+	 * liefert den Kontostand als Festkommabetrag
+	 * @return Kontostand in der kleinsten Einheit der Waehrung {@link #getWaehrung()}
+	 */
+	public long getKontostandBetrag() {
+		return kontostand;
+	}
+
+	/**
+	 * liefert zurück, ob das Konto gesperrt ist
+	 * @return true, wenn das Konto gesperrt ist
+	 */
+	public boolean isGesperrt() {
+		return gesperrt;
+	}
+
+	/**
+	 * liefert die Waehrung
+	 * @return die Waehrung, in der das Konto gefuehrt wird
+	 */
+	public Waehrung getWaehrung() {
+		return waehrung;
+	}
+
+	/**
+	 * liefert den Versionsstempel, die Anzahl der bis zum Lesen abgeschlossenen Aenderungen des Kontozustands.
+	 * Zwei Zustaende desselben Kontos mit gleicher Version sind gleich, ein Zustand mit groesserer Version ist
+	 * neuer.
+	 * @return Versionsstempel
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * liefert den ordentlich formatierten Kontostand
+	 * @return formatierter Kontostand mit 2 Nachkommastellen und Währung
+	 */
+	public String getKontostandFormatiert() {
+		return String.format("%s %10.2f", waehrung.name(), getKontostand());
+	}
+}
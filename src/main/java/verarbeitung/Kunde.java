@@ -3,6 +3,8 @@ package verarbeitung;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -56,6 +58,11 @@ public class Kunde implements Comparable<Kunde>, Serializable {
 	 */
 	SimpleStringProperty adresse;
 
+	/**
+	 * Beobachter von Namensaenderungen; wird erst beim ersten Anmelden erzeugt und nicht serialisiert
+	 */
+	private transient volatile PropertyChangeSupport prop;
+
 	/**
 	 * Gibt die Adresse des Kundens als ein Property zurueck
 	 * @return StringProperty
@@ -87,23 +94,15 @@ public class Kunde implements Comparable<Kunde>, Serializable {
 		this.nachname = nachname;
 		this.geburtstag = gebdat;
 		this.adresse = new SimpleStringProperty(adresse);
-		
-		Runnable runnableObjekt = new Zerstoerer();
-		Thread t = new Thread(runnableObjekt);
-		Runtime.getRuntime().addShutdownHook(t);
+
+		Kundenregister.anmelden(this); // ein gemeinsamer Shutdown-Hook fuer alle Kunden
 	}
 	
 	/**
-	 * Klasse f�r Aufr�umarbeiten
-	 * @author Doro
-	 *
+	 * Aufr�umarbeiten beim Beenden der JVM, siehe {@link Kundenregister}
 	 */
-	private class Zerstoerer implements Runnable
-	{
-		@Override
-		public void run() {
-			System.out.println("Kunde " + getName() + " zerst�rt");
-		}
+	void aufraeumen() {
+		System.out.println("Kunde " + getName() + " zerst�rt");
 	}
 
 
@@ -182,7 +181,9 @@ public class Kunde implements Comparable<Kunde>, Serializable {
 	public void setNachname(String nachname) {
 		if(nachname == null)
 			throw new IllegalArgumentException("Nachname darf nicht null sein");
+		String alt = getName();
 		this.nachname = nachname;
+		feuern("Name", alt, getName());
 	}
 
 	/**
@@ -203,7 +204,9 @@ public class Kunde implements Comparable<Kunde>, Serializable {
 	public void setVorname(String vorname) {
 		if(vorname == null)
 			throw new IllegalArgumentException("Vorname darf nicht null sein");
+		String alt = getName();
 		this.vorname = vorname;
+		feuern("Name", alt, getName());
 	}
 
 	/**
@@ -215,6 +218,45 @@ public class Kunde implements Comparable<Kunde>, Serializable {
 		return geburtstag;
 	}
 
+	/**
+	 * meldet einen Beobachter an, der bei jeder Aenderung des Namens (Ereignis "Name") benachrichtigt wird
+	 * @param listener der Beobachter
+	 */
+	public void anmelden(PropertyChangeListener listener) {
+		PropertyChangeSupport p = prop;
+		if (p == null) {
+			synchronized (this) {
+				p = prop;
+				if (p == null) {
+					p = new PropertyChangeSupport(this);
+					prop = p;
+				}
+			}
+		}
+		p.addPropertyChangeListener(listener);
+	}
+
+	/**
+	 * meldet einen Beobachter ab
+	 * @param listener der Beobachter
+	 */
+	public void abmelden(PropertyChangeListener listener) {
+		PropertyChangeSupport p = prop;
+		if (p != null) {
+			p.removePropertyChangeListener(listener);
+		}
+	}
+
+	/**
+	 * benachrichtigt die Beobachter, falls ueberhaupt welche angemeldet sind
+	 */
+	private void feuern(String name, Object alt, Object neu) {
+		PropertyChangeSupport p = prop;
+		if (p != null) {
+			p.firePropertyChange(name, alt, neu);
+		}
+	}
+
 	@Override
 	public int compareTo(Kunde arg0) {
 		return this.getName().compareTo(arg0.getName());
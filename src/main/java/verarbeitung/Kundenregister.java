@@ -0,0 +1,119 @@
+package verarbeitung;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Verwaltet die Aufraeumarbeiten aller Kunden beim Beenden der JVM. Statt eines eigenen Shutdown-Hooks pro Kunde
+ * gibt es einen einzigen Hook, der beim Beenden alle angemeldeten Kunden aufraeumt.
+ *
+ * Die Kunden werden nur schwach referenziert: ein Kunde, der sonst nirgends mehr gebraucht wird, faellt aus dem
+ * Register heraus, ohne dass er abgemeldet werden muss.
+ */
+public final class Kundenregister {
+
+	/**
+	 * die angemeldeten Kunden (nach Identitaet, da Kunde equals nicht ueberschreibt)
+	 */
+	private static final Set<Kunde> KUNDEN = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+	private static volatile boolean aktiv = true;
+	private static boolean hookAngemeldet;
+
+	private Kundenregister() {
+	}
+
+	/**
+	 * meldet den Kunden fuer die Aufraeumarbeiten beim Beenden an; der Shutdown-Hook wird beim ersten Kunden angemeldet
+	 * @param kunde der Kunde
+	 */
+	static void anmelden(Kunde kunde) {
+		if (!aktiv) {
+			return;
+		}
+		synchronized (Kundenregister.class) {
+			if (!hookAngemeldet) {
+				Runtime.getRuntime().addShutdownHook(new Thread(Kundenregister::aufraeumen, "Kundenregister"));
+				hookAngemeldet = true;
+			}
+		}
+		KUNDEN.add(kunde);
+	}
+
+	/**
+	 * meldet den Kunden ab; beim Beenden wird fuer ihn nichts mehr ausgefuehrt
+	 * @param kunde der Kunde
+	 */
+	public static void abmelden(Kunde kunde) {
+		KUNDEN.remove(kunde);
+	}
+
+	/**
+	 * meldet alle angegebenen Kunden auf einmal ab
+	 * @param kunden die Kunden
+	 */
+	public static void abmelden(Collection<Kunde> kunden) {
+		synchronized (KUNDEN) {
+			kunden.forEach(KUNDEN::remove);
+		}
+	}
+
+	/**
+	 * meldet alle Kunden ab
+	 */
+	public static void alleAbmelden() {
+		KUNDEN.clear();
+	}
+
+	/**
+	 * schaltet das Register ein oder aus. Ausgeschaltet werden neue Kunden nicht mehr angemeldet und beim Beenden
+	 * wird fuer niemanden aufgeraeumt, z.B. beim Laden eines grossen Kundenbestands.
+	 * @param einschalten true, um das Register (wieder) einzuschalten
+	 */
+	public static void setAktiv(boolean einschalten) {
+		aktiv = einschalten;
+	}
+
+	/**
+	 * liefert zurueck, ob das Register eingeschaltet ist
+	 * @return true, wenn neue Kunden angemeldet werden
+	 */
+	public static boolean isAktiv() {
+		return aktiv;
+	}
+
+	/**
+	 * liefert zurueck, ob der Kunde angemeldet ist
+	 * @param kunde der Kunde
+	 * @return true, wenn beim Beenden fuer den Kunden aufgeraeumt wird
+	 */
+	public static boolean istAngemeldet(Kunde kunde) {
+		return KUNDEN.contains(kunde);
+	}
+
+	/**
+	 * liefert die Anzahl der angemeldeten Kunden
+	 * @return Anzahl
+	 */
+	public static int getAnzahl() {
+		return KUNDEN.size();
+	}
+
+	/**
+	 * fuehrt die Aufraeumarbeiten aller angemeldeten Kunden aus; laeuft im Shutdown-Hook
+	 */
+	private static void aufraeumen() {
+		if (!aktiv) {
+			return;
+		}
+		List<Kunde> kunden;
+		synchronized (KUNDEN) {
+			kunden = new ArrayList<>(KUNDEN);
+		}
+		kunden.forEach(Kunde::aufraeumen);
+	}
+}
@@ -0,0 +1,145 @@
+package verarbeitung;
+
+import java.math.RoundingMode;
+
+/**
+ * Unveraenderlicher Stand der Wechselkurse, siehe {@link Wechselkurse}. Fuer jedes Waehrungspaar ist der
+ * Umrechnungsfaktor vorab berechnet, eine Umrechnung ist also ein einziger Feldzugriff statt eines Umwegs ueber
+ * den Euro. Jede Tabelle traegt eine Version; wer wissen muss, mit welchen Kursen gerechnet wurde, haelt sich die
+ * Tabelle fest und liest {@link #getVersion()}.
+ */
+public final class Kurstabelle {
+
+	/**
+	 * Nachkommastellen der Kurse in den Festkommafeldern
+	 */
+	private static final long KURSFAKTOR = 1_000_000;
+
+	private static final Waehrung[] WAEHRUNGEN = Waehrung.values();
+
+	private final long version;
+
+	/**
+	 * Kurs jeder Waehrung zum Euro, nach Waehrung.ordinal()
+	 */
+	private final double[] kurse;
+
+	/**
+	 * Umrechnungsfaktoren fuer double-Betraege; von.ordinal() * Anzahl Waehrungen + nach.ordinal()
+	 */
+	private final double[] faktoren;
+
+	/**
+	 * Umrechnung von Festkommabetraegen als gekuerzter Bruch zaehler / nenner, gleiche Anordnung wie faktoren.
+	 * Die Faktoren der kleinsten Einheiten sind eingerechnet.
+	 */
+	private final long[] zaehler;
+	private final long[] nenner;
+
+	/**
+	 * erstellt die Tabelle und berechnet alle Umrechnungsfaktoren
+	 * @param version Versionsstempel
+	 * @param kurse Kurs jeder Waehrung zum Euro, nach Waehrung.ordinal()
+	 */
+	Kurstabelle(long version, double[] kurse) {
+		int n = WAEHRUNGEN.length;
+		this.version = version;
+		this.kurse = kurse.clone();
+		this.faktoren = new double[n * n];
+		this.zaehler = new long[n * n];
+		this.nenner = new long[n * n];
+
+		long[] fest = new long[n];
+		for (int i = 0; i < n; i++) {
+			fest[i] = festkurs(kurse[i], WAEHRUNGEN[i]);
+		}
+		for (int von = 0; von < n; von++) {
+			for (int nach = 0; nach < n; nach++) {
+				int i = von * n + nach;
+				if (von == nach) {
+					faktoren[i] = 1;
+					zaehler[i] = 1;
+					nenner[i] = 1;
+					continue;
+				}
+				faktoren[i] = kurse[nach] / kurse[von];
+				long z = Math.multiplyExact(fest[nach], WAEHRUNGEN[nach].getFaktor());
+				long m = Math.multiplyExact(fest[von], WAEHRUNGEN[von].getFaktor());
+				long ggt = ggt(z, m);
+				zaehler[i] = z / ggt;
+				nenner[i] = m / ggt;
+			}
+		}
+	}
+
+	/**
+	 * rechnet einen Kurs in den Festkommawert um, mit dem die Umrechnungsbrueche gebildet werden
+	 * @param kurs Kurs der Waehrung zum Euro
+	 * @param w die Waehrung
+	 * @return Kurs mal KURSFAKTOR, gerundet
+	 * @throws IllegalArgumentException wenn der Kurs dabei 0 wuerde (kleiner als eine halbe Einheit von 1 / KURSFAKTOR)
+	 *                                  oder mit der kleinsten Einheit von w multipliziert nicht in einen long passt
+	 */
+	static long festkurs(double kurs, Waehrung w) {
+		double skaliert = kurs * KURSFAKTOR;
+		if (!(skaliert > 0) || skaliert >= 0x1p63) {
+			throw new IllegalArgumentException("Kurs " + kurs + " ist nicht darstellbar");
+		}
+		long fest = Math.round(skaliert);
+		if (fest == 0 || fest > Long.MAX_VALUE / w.getFaktor()) {
+			throw new IllegalArgumentException("Kurs " + kurs + " ist nicht darstellbar");
+		}
+		return fest;
+	}
+
+	private static long ggt(long a, long b) {
+		while (b != 0) {
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	/**
+	 * liefert die Version der Tabelle; jede neue Tabelle hat eine hoehere Version als alle vorherigen
+	 * @return Versionsstempel
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * liefert den Kurs der Waehrung zum Euro
+	 * @param w Waehrung
+	 * @return so viele Einheiten von w entsprechen einem Euro
+	 */
+	public double getKurs(Waehrung w) {
+		return kurse[w.ordinal()];
+	}
+
+	/**
+	 * rechnet einen double-Betrag um
+	 * @param betrag Betrag in der Waehrung von
+	 * @param von Waehrung des Betrags
+	 * @param nach Zielwaehrung
+	 * @return der Betrag in der Waehrung nach
+	 */
+	public double umrechnen(double betrag, Waehrung von, Waehrung nach) {
+		return betrag * faktoren[von.ordinal() * WAEHRUNGEN.length + nach.ordinal()];
+	}
+
+	/**
+	 * rechnet einen Festkommabetrag exakt um und rundet nur das Ergebnis, siehe {@link Betrag}
+	 * @param betrag Betrag in der kleinsten Einheit von von
+	 * @param von Waehrung des Betrags
+	 * @param nach Zielwaehrung
+	 * @param rundung Rundung, falls das Ergebnis nicht ganzzahlig ist
+	 * @return der Betrag in der kleinsten Einheit von nach
+	 * @throws ArithmeticException bei Ueberlauf oder wenn mit RoundingMode.UNNECESSARY gerundet werden muesste
+	 */
+	public long umrechnen(long betrag, Waehrung von, Waehrung nach, RoundingMode rundung) {
+		int i = von.ordinal() * WAEHRUNGEN.length + nach.ordinal();
+		return Betrag.multiplizieren(betrag, zaehler[i], nenner[i], rundung);
+	}
+}
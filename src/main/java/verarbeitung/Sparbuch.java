@@ -1,5 +1,6 @@
 package verarbeitung;
 
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
 
 /**
@@ -17,11 +18,27 @@ public class Sparbuch extends Konto {
 	 * Monatlich erlaubter Gesamtbetrag für Abhebungen
 	 */
 	public static final double ABHEBESUMME = 2000;
+
+	/**
+	 * {@link #ABHEBESUMME} in Cent
+	 */
+	private static final long ABHEBESUMME_BETRAG = Betrag.ausDouble(ABHEBESUMME, Waehrung.EUR);
+
+	/**
+	 * Name des Ereignisses, mit dem ein Sparbuch nach einer Abhebung den neuen bereits abgehobenen Betrag meldet
+	 * (in der kleinsten Einheit der Kontowährung), z.B. fuer ein Journal
+	 */
+	public static final String ABGEHOBEN = "bereitsAbgehoben";
+
+	/**
+	 * Kontostand, der nach einer Abhebung mindestens bleiben muss
+	 */
+	private static final double MINDESTKONTOSTAND = 0.50;
 	
 	/**
-	 * Betrag, der im aktuellen Monat bereits abgehoben wurde
+	 * Betrag, der im aktuellen Monat bereits abgehoben wurde, in der kleinsten Einheit der Kontowährung
 	 */
-	private double bereitsAbgehoben = 0;
+	private long bereitsAbgehoben = 0;
 	/**
 	 * Monat und Jahr der letzten Abhebung
 	 */
@@ -65,8 +82,21 @@ public class Sparbuch extends Konto {
     	+ "Zinssatz: " + this.zinssatz * 100 +"%" + System.lineSeparator();
     	return ausgabe;}
 
+	/**
+	 * Pruefung der Abhebesumme, Abbuchung und Hochzaehlen von bereitsAbgehoben unter dem Monitor des Sparbuchs:
+	 * sonst bestuenden zwei gleichzeitige Abhebungen beide die Pruefung gegen denselben alten Wert. Die
+	 * Nachfuehrungen erfahren vor dem Monitor von der Aenderung, siehe {@link #vorAenderung()}.
+	 */
 	@Override
-	protected boolean istAbhebungErlaubt(double betrag) {
+	protected boolean abhebungBuchen(long betrag) {
+		vorAenderung();
+		synchronized (this) {
+			return super.abhebungBuchen(betrag);
+		}
+	}
+
+	@Override
+	protected synchronized boolean istAbhebungErlaubt(long kontostand, long betrag) {
 		LocalDate heute = LocalDate.now();
 		if(heute.getMonth() != zeitpunkt.getMonth() || heute.getYear() != zeitpunkt.getYear())
 		{
@@ -75,23 +105,38 @@ public class Sparbuch extends Konto {
 
 		Waehrung waehrung = getWaehrung();
 
-		double abhebeSummeAktuell = waehrung == Waehrung.EUR ? ABHEBESUMME : waehrung.euroInWaehrungUmrechnen(ABHEBESUMME);
-		return getKontostand() - betrag >= 0.50 && bereitsAbgehoben + betrag <= abhebeSummeAktuell;
+		long abhebeSummeAktuell = Wechselkurse.getKurstabelle().umrechnen(ABHEBESUMME_BETRAG, Waehrung.EUR, waehrung, Betrag.STANDARDRUNDUNG);
+		return kontostand - betrag >= Betrag.ausDouble(MINDESTKONTOSTAND, waehrung) && bereitsAbgehoben + betrag <= abhebeSummeAktuell;
 	}
 
 	@Override
-	protected void sideEffect(double betrag) {
+	protected synchronized void sideEffect(long betrag) {
+		long alt = bereitsAbgehoben;
 		bereitsAbgehoben += betrag;
 		this.zeitpunkt = LocalDate.now();
+		// noch unter dem Monitor: die Meldungen kommen in derselben Reihenfolge an wie die Abhebungen
+		eigenschaftGeaendert(ABGEHOBEN, alt, bereitsAbgehoben);
 	}
 
 	/**
-	 * Das Überschreiben der Methode waehrungswechsel der Oberklasse => Beim Waehrungswechsel muss auch bereitsabgehoben umgerechnet werden.
-	 * @param neu neue Währung
+	 * Beim Waehrungswechsel wird auch bereitsAbgehoben umgerechnet.
 	 */
 	@Override
-	public void waehrungswechsel(Waehrung neu) {
-		this.bereitsAbgehoben = getWaehrung().rechneBetragAndererWaehrung(this.bereitsAbgehoben, neu);
-		super.waehrungswechsel(neu);
+	protected synchronized void betraegeUmrechnen(Waehrung alt, Waehrung neu, Kurstabelle kurse) {
+		this.bereitsAbgehoben = kurse.umrechnen(this.bereitsAbgehoben, alt, neu, Betrag.STANDARDRUNDUNG);
+	}
+
+	@Override
+	synchronized void zusatzSchreiben(ByteBuffer b) {
+		b.putDouble(zinssatz);
+		Kontocodec.zickzackSchreiben(b, bereitsAbgehoben);
+		Kontocodec.zickzackSchreiben(b, zeitpunkt.toEpochDay());
+	}
+
+	@Override
+	synchronized void zusatzLesen(ByteBuffer b) {
+		this.zinssatz = b.getDouble();
+		this.bereitsAbgehoben = Kontocodec.zickzackLesen(b);
+		this.zeitpunkt = LocalDate.ofEpochDay(Kontocodec.zickzackLesen(b));
 	}
 }
@@ -42,4 +42,75 @@ public interface Ueberweisungsfaehig {
      * 									vonName oder verwendungszweck null ist
      */
     public void ueberweisungEmpfangen(double betrag, String vonName, long vonKontonr, long vonBlz, String verwendungszweck);
+
+    /**
+     * prueft, ob bei dem angegebenen Kontostand eine Ueberweisung ueber betrag nach den
+     * kontospezifischen Regeln abgesendet werden duerfte. Der Kontostand von this wird dabei nicht veraendert.
+     * Ohne eigene Regeln darf der Kontostand durch die Ueberweisung nicht negativ werden; Konten, die ueberzogen
+     * werden duerfen (z.B. mit Dispo), ueberschreiben die Methode.
+     * @param kontostand der Kontostand, fuer den geprueft wird
+     * @param betrag double
+     * @return true, wenn die Ueberweisung bei diesem Kontostand erlaubt waere
+     */
+    public default boolean istUeberweisungErlaubt(double kontostand, double betrag) {
+        return kontostand - betrag >= 0;
+    }
+
+    /**
+     * wie {@link #ueberweisungAbsenden(double, String, long, long, String)}, aber mit einem Festkommabetrag.
+     * Ohne eigene Implementierung wird der Betrag in die Kontowährung umgerechnet und die double-Variante aufgerufen.
+     * @param betrag Betrag in der kleinsten Einheit der Kontowährung, siehe {@link Betrag}
+     * @param empfaenger String
+     * @param nachKontonr long
+     * @param nachBlz long
+     * @param verwendungszweck String
+     * @return boolean true, wenn die Überweisungsabbuchung ausgeführt wurde, sonst false
+     * @throws GesperrtException wenn das Konto gesperrt ist
+     * @throws IllegalArgumentException wenn der Betrag negativ ist oder
+     * 									empfaenger oder verwendungszweck null ist
+     */
+    public default boolean ueberweisungAbsendenBetrag(long betrag,
+    		String empfaenger, long nachKontonr,
+    		long nachBlz, String verwendungszweck)
+    				throws GesperrtException {
+        if (betrag < 0)
+            throw new IllegalArgumentException("Parameter fehlerhaft");
+        return ueberweisungAbsenden(Betrag.inDouble(betrag, betragsWaehrung()), empfaenger, nachKontonr, nachBlz, verwendungszweck);
+    }
+
+    /**
+     * wie {@link #ueberweisungEmpfangen(double, String, long, long, String)}, aber mit einem Festkommabetrag.
+     * Ohne eigene Implementierung wird der Betrag in die Kontowährung umgerechnet und die double-Variante aufgerufen.
+     * @param betrag Betrag in der kleinsten Einheit der Kontowährung, siehe {@link Betrag}
+     * @param vonName String
+     * @param vonKontonr long
+     * @param vonBlz long
+     * @param verwendungszweck String
+     * @throws IllegalArgumentException wenn der Betrag negativ ist oder
+     * 									vonName oder verwendungszweck null ist
+     */
+    public default void ueberweisungEmpfangenBetrag(long betrag, String vonName, long vonKontonr, long vonBlz, String verwendungszweck) {
+        if (betrag < 0)
+            throw new IllegalArgumentException("Parameter fehlerhaft");
+        ueberweisungEmpfangen(Betrag.inDouble(betrag, betragsWaehrung()), vonName, vonKontonr, vonBlz, verwendungszweck);
+    }
+
+    /**
+     * wie {@link #istUeberweisungErlaubt(double, double)}, aber mit Festkommabetraegen.
+     * Ohne eigene Implementierung werden die Betraege umgerechnet und die double-Variante gefragt.
+     * @param kontostand der Kontostand in der kleinsten Einheit der Kontowährung
+     * @param betrag Betrag in der kleinsten Einheit der Kontowährung
+     * @return true, wenn die Ueberweisung bei diesem Kontostand erlaubt waere
+     */
+    public default boolean istUeberweisungErlaubtBetrag(long kontostand, long betrag) {
+        Waehrung w = betragsWaehrung();
+        return istUeberweisungErlaubt(Betrag.inDouble(kontostand, w), Betrag.inDouble(betrag, w));
+    }
+
+    /**
+     * @return die Waehrung, in der die Festkommabetraege gemeint sind: die des Kontos, sonst Euro
+     */
+    private Waehrung betragsWaehrung() {
+        return this instanceof Konto ? ((Konto) this).getAktuelleWaehrung() : Waehrung.EUR;
+    }
 }
@@ -1,21 +1,61 @@
 package verarbeitung;
 
 import java.io.Serializable;
+import java.math.RoundingMode;
 
 /**
- * Aufzählung aller im Bankprogramm verfügbaren Währungen
+ * Aufzählung aller im Bankprogramm verfügbaren Währungen. Die Kurse in den Konstanten sind nur die Standardkurse;
+ * umgerechnet wird immer mit den aktuellen {@link Wechselkurse}n.
  */
 public enum Waehrung implements Serializable {
-    EUR(1), BGN(1.95583), LTL(3.4528), KM(1.95583);
+    EUR(1, 2), BGN(1.95583, 2), LTL(3.4528, 2), KM(1.95583, 2);
 
     private final double umrechnungKurs;
 
+    private final int nachkommastellen;
+
+    /**
+     * 10 hoch nachkommastellen
+     */
+    private final long faktor;
+
     /**
      * Konstruktor der Enum. 
-     * @param umrechnungKurs beschreibt, wie die Umrechnungkurs einer Währung, wenn in Euro umgerechnet wird.
+     * @param umrechnungKurs beschreibt, wie die Umrechnungkurs einer Währung, wenn in Euro umgerechnet wird (Standardkurs).
+     * @param nachkommastellen Anzahl der Nachkommastellen der kleinsten Einheit (2 fuer Cent)
      */
-    Waehrung(double umrechnungKurs) {
+    Waehrung(double umrechnungKurs, int nachkommastellen) {
         this.umrechnungKurs = umrechnungKurs;
+        this.nachkommastellen = nachkommastellen;
+        long f = 1;
+        for (int i = 0; i < nachkommastellen; i++) {
+            f *= 10;
+        }
+        this.faktor = f;
+    }
+
+    /**
+     * liefert den Standardkurs, mit dem die {@link Wechselkurse} beginnen
+     * @return so viele Einheiten dieser Waehrung entsprechen einem Euro
+     */
+    double getStandardkurs() {
+        return umrechnungKurs;
+    }
+
+    /**
+     * liefert die Anzahl der Nachkommastellen, mit denen Betraege in dieser Waehrung gefuehrt werden
+     * @return Nachkommastellen, z.B. 2 fuer Cent
+     */
+    public int getNachkommastellen() {
+        return nachkommastellen;
+    }
+
+    /**
+     * liefert, wie viele kleinste Einheiten eine ganze Einheit dieser Waehrung hat
+     * @return 10 hoch {@link #getNachkommastellen()}, z.B. 100
+     */
+    public long getFaktor() {
+        return faktor;
     }
 
     /**
@@ -24,7 +64,7 @@ public enum Waehrung implements Serializable {
      * @return In "this" Währung umgerechnete Betrag.
      */
     public double euroInWaehrungUmrechnen(double betrag) {
-        return this.umrechnungKurs * betrag;   
+        return Wechselkurse.getKurstabelle().umrechnen(betrag, EUR, this);
     }
 
     /**
@@ -33,7 +73,7 @@ public enum Waehrung implements Serializable {
      * @return In Euro umgerechnete Betrag
      */
     public double waehrungInEuroUmrechnen(double betrag) {
-        return betrag / this.umrechnungKurs;
+        return Wechselkurse.getKurstabelle().umrechnen(betrag, this, EUR);
     }
 
     /**
@@ -50,26 +90,21 @@ public enum Waehrung implements Serializable {
 			throw new IllegalArgumentException("Falscher Betrag");
 		}
 
-		if (w == this) {
-			return betrag;
-		}
-
-		double umgerechnet;
-
-		if (w == EUR) {
-			// einfach der Betrag in Euro umrechnen
-			umgerechnet = euroInWaehrungUmrechnen(betrag);
-		} else if (this == EUR) {
-			// der Betrag (in Euro) in eine andere Währung umrechnen
-			umgerechnet = w.waehrungInEuroUmrechnen(betrag);
-		} else {
-			// erstmal den Betrag in Euro umrechnen
-			double temp = waehrungInEuroUmrechnen(betrag); // aktueller Betrag in "this" Währung
-
-			// dann in andere Währung (w)
-			umgerechnet = w.euroInWaehrungUmrechnen(temp);
-		}
+		// direkt mit dem Faktor des Waehrungspaares, ohne Umweg ueber den Euro
+		return Wechselkurse.getKurstabelle().umrechnen(betrag, w, this);
+	}
 
-		return umgerechnet;
+	/**
+	 * rechnet einen Betrag in der kleinsten Einheit der Waehrung w exakt in die kleinste Einheit von "this" um
+	 * und rundet nur das Ergebnis, siehe {@link Betrag}.
+	 *
+	 * @param betrag Betrag in der kleinsten Einheit von w
+	 * @param w Waehrung, in der der Betrag angegeben ist
+	 * @param rundung Rundung, falls das Ergebnis nicht ganzzahlig ist
+	 * @return der Betrag in der kleinsten Einheit von "this"
+	 * @throws ArithmeticException bei Ueberlauf oder wenn mit RoundingMode.UNNECESSARY gerundet werden muesste
+	 */
+	public long umrechnen(long betrag, Waehrung w, RoundingMode rundung) {
+		return Wechselkurse.getKurstabelle().umrechnen(betrag, w, this, rundung);
 	}
 }
\ No newline at end of file
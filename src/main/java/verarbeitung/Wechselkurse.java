@@ -0,0 +1,87 @@
+package verarbeitung;
+
+import java.util.Map;
+
+/**
+ * Die aktuell gueltigen Wechselkurse. Gelesen wird ohne Lock: {@link #getKurstabelle()} liefert die aktuelle,
+ * unveraenderliche {@link Kurstabelle}. Neue Kurse (z.B. aus einem Thread, der sie regelmaessig abholt) werden in
+ * eine neue Tabelle geschrieben, die die alte mit einem einzigen Schreibzugriff ersetzt. Wer gerade mit der alten
+ * Tabelle rechnet, rechnet mit ihr zu Ende.
+ *
+ * Zu Beginn gelten die Standardkurse der {@link Waehrung}en.
+ */
+public final class Wechselkurse {
+
+	private static volatile Kurstabelle aktuell = new Kurstabelle(1, standardkurse());
+
+	private Wechselkurse() {
+	}
+
+	private static double[] standardkurse() {
+		Waehrung[] alle = Waehrung.values();
+		double[] kurse = new double[alle.length];
+		for (Waehrung w : alle) {
+			kurse[w.ordinal()] = w.getStandardkurs();
+		}
+		return kurse;
+	}
+
+	/**
+	 * liefert die aktuell gueltigen Kurse
+	 * @return die aktuelle Kurstabelle
+	 */
+	public static Kurstabelle getKurstabelle() {
+		return aktuell;
+	}
+
+	/**
+	 * setzt den Kurs einer Waehrung zum Euro
+	 * @param w Waehrung, nicht EUR
+	 * @param kurs so viele Einheiten von w entsprechen einem Euro
+	 * @return die neue Kurstabelle
+	 * @throws IllegalArgumentException wenn w EUR oder null ist oder der Kurs nicht positiv oder nicht darstellbar ist
+	 */
+	public static Kurstabelle setKurs(Waehrung w, double kurs) {
+		return setKurse(Map.of(w, kurs));
+	}
+
+	/**
+	 * setzt die Kurse mehrerer Waehrungen zum Euro auf einmal; kein Leser sieht nur einen Teil der neuen Kurse
+	 * @param kurse Kurs je Waehrung; nicht enthaltene Waehrungen behalten ihren Kurs
+	 * @return die neue Kurstabelle
+	 * @throws IllegalArgumentException wenn EUR enthalten ist oder ein Kurs nicht positiv ist oder sich nicht als
+	 *                                  Festkommawert der {@link Kurstabelle} darstellen laesst (zu klein oder zu gross);
+	 *                                  die aktuelle Tabelle bleibt dann unveraendert
+	 */
+	public static synchronized Kurstabelle setKurse(Map<Waehrung, Double> kurse) {
+		Kurstabelle alt = aktuell;
+		double[] neu = new double[Waehrung.values().length];
+		for (Waehrung w : Waehrung.values()) {
+			neu[w.ordinal()] = alt.getKurs(w);
+		}
+		kurse.forEach((w, kurs) -> {
+			if (w == null || w == Waehrung.EUR) {
+				throw new IllegalArgumentException("Der Kurs des Euro ist immer 1");
+			}
+			if (kurs == null || !(kurs > 0) || Double.isInfinite(kurs)) {
+				throw new IllegalArgumentException("Kurs ungültig");
+			}
+			Kurstabelle.festkurs(kurs, w); // vor dem Tauschen: kein Kurs darf 0 werden oder ueberlaufen
+			neu[w.ordinal()] = kurs;
+		});
+		return tauschen(new Kurstabelle(alt.getVersion() + 1, neu));
+	}
+
+	/**
+	 * setzt alle Kurse auf die Standardkurse der Waehrungen zurueck (die Version zaehlt weiter)
+	 * @return die neue Kurstabelle
+	 */
+	public static synchronized Kurstabelle zuruecksetzen() {
+		return tauschen(new Kurstabelle(aktuell.getVersion() + 1, standardkurse()));
+	}
+
+	private static Kurstabelle tauschen(Kurstabelle neu) {
+		aktuell = neu;
+		return neu;
+	}
+}
@@ -0,0 +1,319 @@
+package verarbeitung.beobachter;
+
+import util.Logger;
+import verarbeitung.Konto;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stellt die Ereignisse von Konten asynchron zu. Der Bus meldet sich bei einem Konto anstelle von dessen Beobachtern
+ * an und legt jedes Ereignis nur in eine beschraenkte Warteschlange. Eigene Dispatcher-Threads rufen dann die
+ * Beobachter auf, so dass deren Arbeit (z.B. Konsolenausgaben) nicht mehr den Buchungsthread aufhaelt.
+ *
+ * Die Ereignisse eines Kontos landen immer beim selben Dispatcher und werden in der Reihenfolge zugestellt,
+ * in der sie ausgeloest wurden. Nach {@link #schliessen()} werden neue Ereignisse im ausloesenden Thread zugestellt,
+ * sobald der Dispatcher die aelteren zugestellt hat; {@link #beobachterZurueckgeben(Konto)} meldet den Bus bei
+ * einem Konto wieder ab.
+ */
+public class Ereignisbus implements PropertyChangeListener {
+
+    /**
+     * Standardkapazitaet der Warteschlange eines Dispatchers
+     */
+    public static final int STANDARD_KAPAZITAET = 1 << 14;
+
+    /**
+     * nach so vielen zugestellten Ereignissen sieht ein Dispatcher auch bei voller Warteschlange nach, ob
+     * zusammengefasste Ereignisse zugestellt werden koennen
+     */
+    static final int UEBERLAUF_INTERVALL = 64;
+
+    private final Rueckstaustrategie strategie;
+    private final Dispatcher[] dispatcher;
+
+    /**
+     * die Beobachter pro Konto, die der Bus uebernommen hat
+     */
+    private final Map<Konto, PropertyChangeListener[]> beobachter = new ConcurrentHashMap<>();
+
+    private final LongAdder verworfen = new LongAdder();
+    private volatile boolean laeuft = true;
+
+    /**
+     * erstellt einen Ereignisbus und startet die Dispatcher-Threads
+     *
+     * @param anzahlDispatcher Anzahl der Dispatcher-Threads
+     * @param kapazitaet       Kapazitaet der Warteschlange pro Dispatcher
+     * @param strategie        was bei voller Warteschlange geschieht
+     * @throws IllegalArgumentException wenn anzahlDispatcher oder kapazitaet nicht positiv bzw. strategie null ist
+     */
+    public Ereignisbus(int anzahlDispatcher, int kapazitaet, Rueckstaustrategie strategie) {
+        if (anzahlDispatcher <= 0 || kapazitaet <= 0 || strategie == null) {
+            throw new IllegalArgumentException("Ungueltige Parameter fuer den Ereignisbus");
+        }
+        this.strategie = strategie;
+        this.dispatcher = new Dispatcher[anzahlDispatcher];
+        for (int i = 0; i < anzahlDispatcher; i++) {
+            dispatcher[i] = new Dispatcher(i, kapazitaet);
+            dispatcher[i].thread.start();
+        }
+    }
+
+    /**
+     * erstellt einen Ereignisbus mit einem Dispatcher, Standardkapazitaet und der angegebenen Strategie
+     *
+     * @param strategie was bei voller Warteschlange geschieht
+     */
+    public Ereignisbus(Rueckstaustrategie strategie) {
+        this(1, STANDARD_KAPAZITAET, strategie);
+    }
+
+    /**
+     * uebernimmt alle Beobachter des Kontos: sie werden beim Konto abgemeldet und ab jetzt asynchron vom Bus
+     * benachrichtigt. Der Bus selbst meldet sich beim Konto an.
+     *
+     * @param konto das Konto
+     */
+    public void beobachterUebernehmen(Konto konto) {
+        List<PropertyChangeListener> liste = konto.alleAbmelden();
+        if (liste == null) {
+            return;
+        }
+        liste.remove(this);
+        beobachter.merge(konto, liste.toArray(new PropertyChangeListener[0]), (alt, neu) -> {
+            PropertyChangeListener[] alle = Arrays.copyOf(alt, alt.length + neu.length);
+            System.arraycopy(neu, 0, alle, alt.length, neu.length);
+            return alle;
+        });
+        konto.anmelden(this);
+    }
+
+    /**
+     * meldet den Bus beim Konto ab und die uebernommenen Beobachter wieder an, die danach wieder synchron
+     * benachrichtigt werden. Vorher werden alle bereits angenommenen Ereignisse des Kontos noch zugestellt.
+     * Waehrenddessen sollte das Konto nicht veraendert werden (die {@link bank.Bank} haelt dafuer seinen Lock).
+     *
+     * @param konto das Konto
+     */
+    public void beobachterZurueckgeben(Konto konto) {
+        konto.abmelden(this);
+        dispatcherFuer(konto).wartenBisZugestellt(konto);
+        PropertyChangeListener[] liste = beobachter.remove(konto);
+        if (liste != null) {
+            konto.anmelden(Arrays.asList(liste));
+        }
+    }
+
+    private Dispatcher dispatcherFuer(Konto konto) {
+        return dispatcher[(int) Math.floorMod(konto.getKontonummer(), (long) dispatcher.length)];
+    }
+
+    /**
+     * nimmt ein Ereignis eines Kontos an, ohne die Beobachter aufzurufen. Ist der Bus geschlossen, werden die
+     * Beobachter im aufrufenden Thread benachrichtigt, sobald der Dispatcher alle aelteren Ereignisse zugestellt hat.
+     *
+     * @param evt das Ereignis
+     */
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+        Konto konto = (Konto) evt.getSource();
+        Dispatcher d = dispatcherFuer(konto);
+
+        // erst zaehlen, dann pruefen: solange ein Ereignis angenommen wird, beendet sich der Dispatcher nicht
+        d.annehmend.incrementAndGet();
+        try {
+            if (laeuft) {
+                einreihen(d, konto, evt);
+                return;
+            }
+        } finally {
+            d.annehmend.decrementAndGet();
+        }
+
+        if (Thread.currentThread() != d.thread) {
+            try {
+                d.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        zustellen(evt);
+    }
+
+    private void einreihen(Dispatcher d, Konto konto, PropertyChangeEvent evt) {
+        if (strategie == Rueckstaustrategie.ZUSAMMENFASSEN) {
+            // solange fuer das Konto Zusammengefasstes wartet, muessen neue Ereignisse dazu, sonst stimmt die Reihenfolge nicht
+            if (d.ueberlauf.computeIfPresent(konto, (k, u) -> u.zusammenfassen(evt)) != null) {
+                return;
+            }
+            if (!d.warteschlange.offer(evt)) {
+                // erst die Groesse, dann entnommen lesen: die Grenze ist so eher zu gross als zu klein
+                long grenze = d.warteschlange.size();
+                grenze += d.entnommen;
+                d.ueberlauf.merge(konto, new Ueberlauf(grenze).zusammenfassen(evt), (u, neu) -> u.zusammenfassen(evt));
+            }
+        } else if (strategie == Rueckstaustrategie.BLOCKIEREN) {
+            try {
+                d.warteschlange.put(evt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                verworfen.increment();
+            }
+        } else if (!d.warteschlange.offer(evt)) {
+            verworfen.increment();
+        }
+    }
+
+    /**
+     * die zusammengefassten Ereignisse eines Kontos. Sie duerfen erst zugestellt werden, wenn alle Ereignisse, die
+     * beim Ueberlauf schon in der Warteschlange standen, zugestellt sind.
+     */
+    private static final class Ueberlauf {
+        private final long grenze;
+        private final Map<String, PropertyChangeEvent> ereignisse = new LinkedHashMap<>();
+
+        /**
+         * @param grenze Anzahl der entnommenen Ereignisse, ab der die aelteren Ereignisse des Kontos zugestellt sind
+         */
+        Ueberlauf(long grenze) {
+            this.grenze = grenze;
+        }
+
+        Ueberlauf zusammenfassen(PropertyChangeEvent evt) {
+            ereignisse.merge(evt.getPropertyName(), evt, (alt, neu) ->
+                    new PropertyChangeEvent(alt.getSource(), alt.getPropertyName(), alt.getOldValue(), neu.getNewValue()));
+            return this;
+        }
+    }
+
+    /**
+     * liefert die Anzahl der wegen voller Warteschlange verworfenen Ereignisse
+     *
+     * @return Anzahl verworfener Ereignisse
+     */
+    public long getAnzahlVerworfen() {
+        return verworfen.sum();
+    }
+
+    /**
+     * beendet die Dispatcher, nachdem alle bereits angenommenen Ereignisse zugestellt wurden. Der Bus bleibt bei den
+     * Konten angemeldet und stellt danach im ausloesenden Thread zu, siehe {@link #propertyChange(PropertyChangeEvent)}.
+     *
+     * @throws InterruptedException wenn der aufrufende Thread beim Warten unterbrochen wird
+     */
+    public void schliessen() throws InterruptedException {
+        laeuft = false;
+        for (Dispatcher d : dispatcher) {
+            d.thread.join();
+        }
+    }
+
+    /**
+     * ruft die Beobachter des Kontos fuer ein Ereignis auf
+     *
+     * @param evt das Ereignis
+     */
+    private void zustellen(PropertyChangeEvent evt) {
+        PropertyChangeListener[] liste = beobachter.get((Konto) evt.getSource());
+        if (liste == null) {
+            return;
+        }
+        for (PropertyChangeListener listener : liste) {
+            try {
+                listener.propertyChange(evt);
+            } catch (RuntimeException e) {
+                Logger.logFehler("Beobachter " + listener + " ist fehlgeschlagen: " + e);
+            }
+        }
+    }
+
+    /**
+     * Ein Dispatcher-Thread mit seiner Warteschlange
+     */
+    private class Dispatcher implements Runnable {
+        private final BlockingQueue<PropertyChangeEvent> warteschlange;
+        private final Map<Konto, Ueberlauf> ueberlauf = new ConcurrentHashMap<>();
+        private final Thread thread;
+
+        /**
+         * Anzahl der Threads, die gerade ein Ereignis annehmen
+         */
+        private final AtomicInteger annehmend = new AtomicInteger();
+
+        /**
+         * Anzahl der entnommenen bzw. fertig zugestellten Ereignisse der Warteschlange; nur der Dispatcher schreibt sie
+         */
+        private volatile long entnommen;
+        private volatile long zugestellt;
+
+        Dispatcher(int index, int kapazitaet) {
+            this.warteschlange = new ArrayBlockingQueue<>(kapazitaet);
+            this.thread = new Thread(this, "Ereignisbus-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int seitUeberlauf = 0;
+            while (laeuft || annehmend.get() > 0 || !warteschlange.isEmpty() || !ueberlauf.isEmpty()) {
+                PropertyChangeEvent evt;
+                try {
+                    evt = warteschlange.poll(10, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (evt == null) {
+                    ueberlaufZustellen();
+                    continue;
+                }
+                entnommen++;
+                zustellen(evt);
+                zugestellt++;
+                // auch unter Dauerlast, wenn die Warteschlange nie leer wird
+                if (++seitUeberlauf >= UEBERLAUF_INTERVALL) {
+                    seitUeberlauf = 0;
+                    ueberlaufZustellen();
+                }
+            }
+        }
+
+        /**
+         * stellt die zusammengefassten Ereignisse der Konten zu, deren aeltere Ereignisse aus der Warteschlange
+         * bereits zugestellt sind
+         */
+        private void ueberlaufZustellen() {
+            for (Map.Entry<Konto, Ueberlauf> eintrag : ueberlauf.entrySet()) {
+                Ueberlauf u = eintrag.getValue();
+                if (u.grenze <= zugestellt && ueberlauf.remove(eintrag.getKey(), u)) {
+                    u.ereignisse.values().forEach(Ereignisbus.this::zustellen);
+                }
+            }
+        }
+
+        /**
+         * wartet, bis alle bereits angenommenen Ereignisse des Kontos zugestellt sind
+         */
+        void wartenBisZugestellt(Konto konto) {
+            if (Thread.currentThread() == thread) {
+                return; // ein Beobachter selbst; die aelteren Ereignisse sind dann schon zugestellt oder folgen gleich
+            }
+            long grenze = warteschlange.size();
+            grenze += entnommen;
+            while ((zugestellt < grenze || ueberlauf.containsKey(konto)) && thread.isAlive()) {
+                LockSupport.parkNanos(100_000);
+            }
+        }
+    }
+}
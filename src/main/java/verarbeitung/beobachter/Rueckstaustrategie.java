@@ -0,0 +1,21 @@
+package verarbeitung.beobachter;
+
+/**
+ * Legt fest, was der {@link Ereignisbus} tut, wenn die Warteschlange eines Dispatchers voll ist,
+ * weil die Beobachter nicht hinterherkommen.
+ */
+public enum Rueckstaustrategie {
+    /**
+     * das Ereignis wird verworfen und nur gezaehlt
+     */
+    VERWERFEN,
+    /**
+     * der ausloesende Thread wartet, bis wieder Platz ist
+     */
+    BLOCKIEREN,
+    /**
+     * Ereignisse desselben Kontos und derselben Eigenschaft werden zu einem zusammengefasst
+     * (alter Wert des ersten, neuer Wert des letzten Ereignisses)
+     */
+    ZUSAMMENFASSEN
+}
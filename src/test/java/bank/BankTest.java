@@ -2,14 +2,31 @@ package bank;
 
 import fabriken.GirokontoFabrik;
 import fabriken.Kontofabrik;
+import fabriken.SparbuchFabrik;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 import verarbeitung.*;
-
+import verarbeitung.beobachter.Ereignisbus;
+import verarbeitung.beobachter.Rueckstaustrategie;
+
+import java.beans.PropertyChangeEvent;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -392,6 +409,48 @@ public class BankTest {
         assertEquals("Name: " + kunde1.getName() + " " + kunde1.getNachname() + ". Geburtstag: " + kunde1.getGeburtstag().toString() + System.lineSeparator(), nameGeburtstage);
     }
 
+    /**
+     * Testen des Kundenverzeichnisses: nach Namen sortiert, auch nach einer Namensaenderung, und Geburtstage ueber
+     * den Jahreswechsel und den 29. Februar.
+     */
+    @Test
+    public void kundenverzeichnisTest() throws KontoNichtExistiertException {
+        Kunde silvester = new Kunde("Anna", "Zander", "hier", LocalDate.of(1980, 12, 30));
+        Kunde neujahr = new Kunde("Bernd", "Meier", "hier", LocalDate.of(1975, 1, 2));
+        Kunde schalttag = new Kunde("Clara", "Albers", "hier", LocalDate.of(1996, 2, 29));
+        Kunde sommer = new Kunde("Dieter", "Koch", "hier", LocalDate.of(1990, 6, 15));
+        b.kontoErstellen(new GirokontoFabrik(), silvester);
+        b.kontoErstellen(new GirokontoFabrik(), neujahr);
+        b.kontoErstellen(new SparbuchFabrik(), neujahr);
+        b.kontoErstellen(new GirokontoFabrik(), schalttag);
+        long kochsKonto = b.kontoErstellen(new GirokontoFabrik(), sommer);
+
+        String liste = b.getKundengeburtstage();
+        assertTrue(liste.indexOf("Albers") < liste.indexOf("Koch"));
+        assertTrue(liste.indexOf("Koch") < liste.indexOf("Meier"));
+        assertTrue(liste.indexOf("Meier") < liste.indexOf("Zander"));
+        assertEquals(liste.indexOf("Meier, Bernd"), liste.lastIndexOf("Meier, Bernd"));
+
+        silvester.setNachname("Ahrens");
+        liste = b.getKundengeburtstage();
+        assertTrue(liste.indexOf("Ahrens") < liste.indexOf("Albers"));
+
+        assertEquals(List.of(silvester, neujahr), b.getKundenMitGeburtstag(LocalDate.of(2021, 12, 28), 7));
+        assertEquals(List.of(schalttag), b.getKundenMitGeburtstag(LocalDate.of(2021, 2, 28), 2));
+        assertEquals(List.of(sommer, silvester, neujahr, schalttag), b.getKundenMitGeburtstag(LocalDate.of(2021, 6, 1), 366));
+        assertTrue(b.getKundenMitGeburtstag(LocalDate.of(2021, 7, 1), 30).isEmpty());
+
+        b.kontoLoeschen(kochsKonto);
+        assertTrue(b.getKundenMitGeburtstag(LocalDate.of(2021, 6, 15), 1).isEmpty());
+        assertFalse(b.getKundengeburtstage().contains("Koch"));
+        try {
+            b.getKundenMitGeburtstag(LocalDate.of(2021, 6, 15), 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // mindestens ein Tag
+        }
+    }
+
     @Test
     public void getKontonummernLuecken () {
         Konto mockKonto1 = Mockito.mock(Konto.class);
@@ -452,4 +511,909 @@ public class BankTest {
         assertNotEquals(kopie, b);
         assertFalse(bankenVergleichen(b, kopie));
     }
+
+    /**
+     * Stresstest: viele Threads ueberweisen gleichzeitig in beide Richtungen zwischen denselben Konten.
+     * Die Summe aller Kontostaende darf sich dabei nicht veraendern und es darf kein Deadlock auftreten.
+     */
+    @Test
+    public void nebenlaeufigeUeberweisungenTest() throws Exception {
+        int anzahlKonten = 16;
+        int anzahlThreads = 8;
+        int ueberweisungenProThread = 500;
+        double anfangsstand = 100;
+
+        List<Long> nummern = new ArrayList<>();
+        for (int i = 0; i < anzahlKonten; i++) {
+            long nummer = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+            b.geldEinzahlen(nummer, anfangsstand);
+            nummern.add(nummer);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(anzahlThreads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int t = 0; t < anzahlThreads; t++) {
+            long seed = t;
+            executor.submit(() -> {
+                Random zufall = new Random(seed);
+                start.await();
+                for (int i = 0; i < ueberweisungenProThread; i++) {
+                    long von = nummern.get(zufall.nextInt(anzahlKonten));
+                    long nach = nummern.get(zufall.nextInt(anzahlKonten));
+                    b.geldUeberweisen(von, nach, zufall.nextInt(30), "Stresstest");
+                    if (b.geldAbheben(nach, 1)) {
+                        b.geldEinzahlen(von, 1); // Summe bleibt gleich
+                    }
+                }
+                return null;
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS)); // sonst Deadlock
+
+        double summe = 0;
+        for (long nummer : nummern) {
+            summe += b.getKontostand(nummer);
+        }
+        assertEquals(anzahlKonten * anfangsstand, summe);
+    }
+
+    /**
+     * Testen der ShardAusfuehrung: Ueberweisungen innerhalb und zwischen Shards veraendern die Summe aller
+     * Kontostaende nicht, fehlende Konten lassen das Future fehlschlagen.
+     */
+    @Test
+    public void shardAusfuehrungTest() throws Exception {
+        List<Long> nummern = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            long nummer = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+            b.geldEinzahlen(nummer, 50);
+            nummern.add(nummer);
+        }
+
+        ShardAusfuehrung ausfuehrung = b.shardAusfuehrungStarten(3);
+        assertTrue(ausfuehrung.geldUeberweisen(nummern.get(0), nummern.get(1), 10, "Shards").get());
+        ausfuehrung.geldEinzahlen(nummern.get(2), 5).get();
+
+        Random zufall = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            ausfuehrung.geldUeberweisen(nummern.get(zufall.nextInt(10)), nummern.get(zufall.nextInt(10)), zufall.nextInt(40), "Shards");
+        }
+
+        try {
+            ausfuehrung.geldAbheben(99, 5).join();
+            fail();
+        } catch (java.util.concurrent.CompletionException e) {
+            assertTrue(e.getCause() instanceof KontoNichtExistiertException);
+        }
+
+        // ein Ueberlauf laesst nur das Future fehlschlagen, der Shard arbeitet weiter
+        long reich = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        ausfuehrung.geldEinzahlen(reich, 9e16).get();
+        try {
+            ausfuehrung.geldEinzahlen(reich, 9e16).join();
+            fail();
+        } catch (java.util.concurrent.CompletionException e) {
+            assertTrue(e.getCause() instanceof ArithmeticException);
+        }
+        ausfuehrung.geldEinzahlen(reich, 1).get();
+        ausfuehrung.beenden();
+        try {
+            ausfuehrung.geldEinzahlen(reich, 1);
+            fail();
+        } catch (IllegalStateException e) {
+            // beendet
+        }
+
+        double summe = 0;
+        for (long nummer : nummern) {
+            summe += b.getKontostand(nummer);
+        }
+        assertEquals(10 * 50 + 5, summe);
+    }
+
+    /**
+     * Testen der Sammelueberweisung: gegenlaeufige Auftraege werden verrechnet, ungueltige Auftraege schlagen
+     * einzeln fehl, ohne die anderen zu beeinflussen.
+     */
+    @Test
+    public void geldUeberweisenBatchTest() throws KontoNichtExistiertException {
+        long a = b.kontoErstellen(new GirokontoFabrik(), kunde1); // Dispo 20
+        long c = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        b.geldEinzahlen(a, 10);
+
+        List<Ueberweisungsauftrag> auftraege = Arrays.asList(
+                new Ueberweisungsauftrag(a, c, 25, "Miete"),     // 10 - 25 = -15, innerhalb des Dispos
+                new Ueberweisungsauftrag(a, c, 10, "Strom"),     // -25 waere unter dem Dispo
+                new Ueberweisungsauftrag(c, a, 15, "Erstattung"), // c hat durch den ersten Auftrag genug
+                new Ueberweisungsauftrag(a, c, 10, "Strom"),     // jetzt wieder moeglich: 0 - 10 = -10
+                new Ueberweisungsauftrag(a, 999, 1, "Unbekannt"),
+                new Ueberweisungsauftrag(a, c, -1, "Negativ"),
+                null);
+
+        boolean[] ergebnis = b.geldUeberweisenBatch(auftraege);
+
+        assertArrayEquals(new boolean[]{true, false, true, true, false, false, false}, ergebnis);
+        assertEquals(-10, b.getKontostand(a));
+        assertEquals(20, b.getKontostand(c));
+    }
+
+    /**
+     * Testen der asynchronen Fassade: Ergebnisse kommen ueber das Future, Fehler lassen das Future fehlschlagen.
+     */
+    @Test
+    public void bankAsyncTest() throws Exception {
+        long nummer = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        BankAsync async = BankAsync.mitVirtuellenThreads(b);
+        try (async) {
+            async.geldEinzahlen(nummer, 30).get();
+            assertTrue(async.geldAbheben(nummer, 10).get());
+            assertEquals(20, async.getKontostand(nummer).get());
+
+            try {
+                async.getKontostand(nummer + 1).join();
+                fail();
+            } catch (java.util.concurrent.CompletionException e) {
+                assertTrue(e.getCause() instanceof KontoNichtExistiertException);
+            }
+        }
+
+        // nach dem Schliessen werden keine Operationen mehr angenommen
+        try {
+            async.geldEinzahlen(nummer, 1).join();
+            fail();
+        } catch (java.util.concurrent.CompletionException e) {
+            assertTrue(e.getCause() instanceof java.util.concurrent.RejectedExecutionException);
+        }
+    }
+
+    /**
+     * Testen des Ereignisbusses in der Bank: nach dem Entfernen werden die Beobachter wieder synchron benachrichtigt,
+     * und der geschlossene Bus haelt keine Buchung mehr auf.
+     */
+    @Test
+    public void ereignisbusEntfernenTest() throws Exception {
+        long nummer = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        List<java.beans.PropertyChangeEvent> empfangen = java.util.Collections.synchronizedList(new ArrayList<>());
+        b.konto(nummer).alleAbmelden();
+        b.konto(nummer).anmelden(empfangen::add);
+
+        Ereignisbus bus = new Ereignisbus(1, 4, Rueckstaustrategie.BLOCKIEREN);
+        b.ereignisbusVerwenden(bus);
+        for (int i = 0; i < 10; i++) {
+            b.geldEinzahlen(nummer, 1);
+        }
+        assertSame(bus, b.ereignisbusEntfernen());
+        assertEquals(10, empfangen.size()); // die angenommenen Ereignisse sind zugestellt
+        bus.schliessen();
+
+        b.geldEinzahlen(nummer, 1);
+        assertEquals(11, empfangen.size()); // synchron
+        assertNull(b.ereignisbusEntfernen());
+    }
+
+    /**
+     * Testen der Kontonummernvergabe aus vielen kurzlebigen Threads: die Reste ihrer Nummernbloecke werden
+     * weitergegeben, es entstehen keine Luecken.
+     */
+    @Test
+    public void kurzlebigeThreadsKontoErstellenTest() throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            Thread t = new Thread(() -> b.kontoErstellen(mockFabrik, kunde1));
+            t.start();
+            t.join();
+        }
+
+        assertEquals(200, b.getAlleKontonummern().size());
+        assertEquals(200L, b.getAlleKontonummern().get(199));
+        assertTrue(b.getKontonummernLuecken().isEmpty());
+    }
+
+    /**
+     * Testen der Kontonummernvergabe aus mehreren Threads: jede Nummer wird genau einmal vergeben.
+     */
+    @Test
+    public void nebenlaeufigKontoErstellenTest() throws InterruptedException {
+        int anzahlThreads = 4;
+        int kontenProThread = 300;
+        ExecutorService executor = Executors.newFixedThreadPool(anzahlThreads);
+        for (int t = 0; t < anzahlThreads; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < kontenProThread; i++) {
+                    b.kontoErstellen(mockFabrik, kunde1);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(anzahlThreads * kontenProThread, b.getAlleKontonummern().size());
+
+        // Luecken gibt es hoechstens durch die Reste der Nummernbloecke beendeter Threads
+        long hoechste = b.getAlleKontonummern().get(anzahlThreads * kontenProThread - 1);
+        assertTrue(b.getKontonummernLuecken().size() <= hoechste - anzahlThreads * kontenProThread);
+    }
+
+    /**
+     * Testen, dass Nummern im Block eines lebenden Threads nicht als Luecke zaehlen, die Reste eines beendeten
+     * Threads aber schon.
+     */
+    @Test
+    public void reservierteNummernKeineLueckenTest() throws InterruptedException {
+        CountDownLatch erstellt = new CountDownLatch(1);
+        CountDownLatch beenden = new CountDownLatch(1);
+        long[] ersteNummer = new long[1];
+        Thread t = new Thread(() -> {
+            ersteNummer[0] = b.kontoErstellen(mockFabrik, kunde1);
+            erstellt.countDown();
+            try {
+                beenden.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        t.start();
+        assertTrue(erstellt.await(10, TimeUnit.SECONDS));
+        long zweiteNummer = b.kontoErstellen(mockFabrik, kunde1);
+        assertTrue(zweiteNummer > ersteNummer[0] + 1);
+
+        // der Block des wartenden Threads ist noch reserviert
+        assertTrue(b.getKontonummernLuecken().isEmpty());
+
+        beenden.countDown();
+        t.join();
+        List<Long> luecken = b.getKontonummernLuecken();
+        assertEquals(zweiteNummer - ersteNummer[0] - 1, luecken.size());
+        assertEquals(ersteNummer[0] + 1, luecken.get(0));
+    }
+
+    /**
+     * Testen vieler Konten, von denen ein Teil geloescht wird: die Kontonummern bleiben sortiert und die
+     * uebrigen Konten auffindbar, auch nachdem die Kontoliste mehrfach vergroessert wurde.
+     */
+    @Test
+    public void vieleKontenLoeschenTest() throws KontoNichtExistiertException {
+        List<Long> nummern = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            long nummer = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+            b.geldEinzahlen(nummer, nummer);
+            nummern.add(nummer);
+        }
+        List<Long> geloescht = new ArrayList<>();
+        for (int i = 0; i < nummern.size(); i += 3) {
+            assertTrue(b.kontoLoeschen(nummern.get(i)));
+            geloescht.add(nummern.get(i));
+        }
+        assertFalse(b.kontoLoeschen(nummern.get(0)));
+
+        List<Long> uebrig = b.getAlleKontonummern();
+        assertEquals(nummern.size() - geloescht.size(), uebrig.size());
+        for (int i = 1; i < uebrig.size(); i++) {
+            assertTrue(uebrig.get(i - 1) < uebrig.get(i));
+        }
+        for (long nummer : uebrig) {
+            assertEquals(nummer, b.getKontostand(nummer));
+        }
+        assertEquals(geloescht, b.getKontonummernLuecken());
+    }
+
+    /**
+     * Testen der Wiederverwendung freigewordener Kontonummern: die kleinste Luecke wird zuerst vergeben.
+     */
+    @Test
+    public void nummernWiederverwendenTest() {
+        long nummer1 = b.kontoErstellen(mockFabrik, kunde1);
+        long nummer2 = b.kontoErstellen(mockFabrik, kunde1);
+        long nummer3 = b.kontoErstellen(mockFabrik, kunde1);
+        b.kontoLoeschen(nummer3);
+        b.kontoLoeschen(nummer1);
+        assertEquals(List.of(nummer1, nummer3), b.getKontonummernLuecken());
+
+        // ohne Wiederverwendung kommt eine neue Nummer
+        long nummer4 = b.kontoErstellen(mockFabrik, kunde1);
+        assertTrue(nummer4 > nummer3);
+
+        b.setNummernWiederverwenden(true);
+        assertEquals(nummer1, b.kontoErstellen(mockFabrik, kunde1));
+        assertEquals(nummer3, b.kontoErstellen(mockFabrik, kunde1));
+        assertTrue(b.getKontonummernLuecken().isEmpty());
+        assertTrue(b.kontoErstellen(mockFabrik, kunde1) > nummer4);
+        assertEquals(List.of(nummer1, nummer2, nummer3, nummer4, nummer4 + 1), b.getAlleKontonummern());
+    }
+
+    /**
+     * Testen der Auswertungen ueber alle Konten: sie folgen den Buchungen und dem Loeschen von Konten.
+     */
+    @Test
+    public void auswertungenTest() throws KontoNichtExistiertException {
+        long giro1 = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        long giro2 = b.kontoErstellen(new GirokontoFabrik(), new Kunde());
+        long spar = b.kontoErstellen(new SparbuchFabrik(), kunde1);
+        assertEquals(2, b.getAnzahlKonten(Kontoart.GIROKONTO));
+        assertEquals(1, b.getAnzahlKonten(Kontoart.SPARBUCH));
+
+        b.geldEinzahlen(giro1, 100);
+        b.geldEinzahlen(spar, 50);
+        assertTrue(b.geldAbheben(giro2, 10));
+        assertEquals(140, b.getSummeKontostaende(Waehrung.EUR));
+        assertEquals(0, b.getSummeKontostaende(Waehrung.BGN));
+
+        List<Kunde> kunden = b.getKundenMitVollemKonto(60);
+        assertEquals(List.of(kunde1), kunden);
+
+        b.pleitegeierSperren();
+        assertTrue(b.getKontozustand(giro2).isGesperrt());
+        assertFalse(b.getKontozustand(giro1).isGesperrt());
+
+        b.kontoLoeschen(giro1);
+        assertEquals(1, b.getAnzahlKonten(Kontoart.GIROKONTO));
+        assertEquals(40, b.getSummeKontostaende(Waehrung.EUR));
+        assertTrue(b.getKundenMitVollemKonto(60).isEmpty());
+    }
+
+    /**
+     * Testen der Summe der Kontostaende: sie wird in Cent gebildet und ist exakt.
+     */
+    @Test
+    public void summeKontostaendeExaktTest() throws KontoNichtExistiertException {
+        for (int i = 0; i < 10; i++) {
+            b.geldEinzahlen(b.kontoErstellen(new GirokontoFabrik(), kunde1), 0.1);
+        }
+        assertEquals(100, b.getSummeKontostaendeBetrag(Waehrung.EUR));
+        assertEquals(1.0, b.getSummeKontostaende(Waehrung.EUR));
+    }
+
+    /**
+     * Testen des Kundenindex: Konten und Gesamtkontostand eines Kunden folgen Buchungen, Waehrungswechseln,
+     * Inhaberwechseln und dem Loeschen von Konten.
+     */
+    @Test
+    public void kundenindexTest() throws Exception {
+        Kunde kunde2 = new Kunde();
+        List<Konto> erstellt = new ArrayList<>();
+        Kontofabrik fabrik = new Kontofabrik() {
+            @Override
+            public Konto erstellen(Kunde inhaber, long kontoNummer) {
+                Konto konto = new GirokontoFabrik().erstellen(inhaber, kontoNummer);
+                erstellt.add(konto);
+                return konto;
+            }
+        };
+        long giro1 = b.kontoErstellen(fabrik, kunde1);
+        long giro2 = b.kontoErstellen(fabrik, kunde1);
+        long giro3 = b.kontoErstellen(fabrik, kunde2);
+        assertEquals(List.of(giro1, giro2), b.getKontonummern(kunde1));
+        assertEquals(List.of(giro3), b.getKontonummern(kunde2));
+
+        b.geldEinzahlen(giro1, 100);
+        b.geldEinzahlen(giro2, 50.5);
+        assertTrue(b.geldAbheben(giro3, 10));
+        assertEquals(150.5, b.getGesamtkontostand(kunde1));
+        assertEquals(-10, b.getGesamtkontostand(kunde2));
+
+        erstellt.get(1).waehrungswechsel(Waehrung.BGN); // wird zur Abfrage wieder in Euro umgerechnet
+        assertEquals(150.5, b.getGesamtkontostand(kunde1));
+
+        erstellt.get(0).setInhaber(kunde2);
+        assertEquals(List.of(giro2), b.getKontonummern(kunde1));
+        assertEquals(List.of(giro1, giro3), b.getKontonummern(kunde2));
+        assertEquals(50.5, b.getGesamtkontostand(kunde1));
+        assertEquals(90, b.getGesamtkontostand(kunde2));
+
+        b.kontoLoeschen(giro2);
+        assertTrue(b.getKontonummern(kunde1).isEmpty());
+        assertEquals(0, b.getGesamtkontostand(kunde1));
+    }
+
+    /**
+     * Testen der Abfragen nach Kontostand: Bereich ab einem Mindeststand sowie hoechste und niedrigste Kontostaende
+     */
+    @Test
+    public void kontostandAbfragenTest() throws KontoNichtExistiertException {
+        List<Long> nummern = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            long nummer = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+            b.geldEinzahlen(nummer, 10 * i);
+            nummern.add(nummer);
+        }
+        assertTrue(b.geldAbheben(nummern.get(0), 5)); // -5
+
+        assertEquals(List.of(nummern.get(7), nummern.get(8), nummern.get(9)), b.getKontenMitKontostandAb(69.99));
+        assertEquals(List.of(nummern.get(9), nummern.get(8)), b.getKontenMitHoechstemKontostand(2));
+        assertEquals(List.of(nummern.get(0), nummern.get(1)), b.getKontenMitNiedrigstemKontostand(2));
+
+        b.geldEinzahlen(nummern.get(0), 1000); // vom Ende an die Spitze
+        assertEquals(List.of(nummern.get(0)), b.getKontenMitHoechstemKontostand(1));
+        assertEquals(List.of(nummern.get(1)), b.getKontenMitNiedrigstemKontostand(1));
+
+        b.kontoLoeschen(nummern.get(0));
+        assertEquals(List.of(nummern.get(9)), b.getKontenMitHoechstemKontostand(1));
+        assertEquals(9, b.getKontenMitNiedrigstemKontostand(100).size());
+    }
+
+    /**
+     * Testen, dass getKundenMitVollemKonto die Kunden nach Kontonummer liefert, nicht nach Kontostand
+     */
+    @Test
+    public void kundenMitVollemKontoReihenfolgeTest() throws KontoNichtExistiertException {
+        Kunde kunde2 = new Kunde();
+        Kunde kunde3 = new Kunde();
+        long nummer1 = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        long nummer2 = b.kontoErstellen(new GirokontoFabrik(), kunde2);
+        long nummer3 = b.kontoErstellen(new GirokontoFabrik(), kunde3);
+        b.geldEinzahlen(nummer1, 30);
+        b.geldEinzahlen(nummer2, 10);
+        b.geldEinzahlen(nummer3, 20);
+
+        assertEquals(List.of(kunde1, kunde2, kunde3), b.getKundenMitVollemKonto(5));
+        assertEquals(List.of(kunde1, kunde3), b.getKundenMitVollemKonto(15));
+    }
+
+    /**
+     * Testen, dass die Indizes der Bank den Buchungen folgen, ohne dass ein Konto dafuer einen Observer-Support
+     * bekommt
+     */
+    @Test
+    public void indizesOhneObserverSupportTest() throws Exception {
+        Field prop = Konto.class.getDeclaredField("prop");
+        prop.setAccessible(true);
+        long giro = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        long spar = b.kontoErstellen(new SparbuchFabrik(), kunde1);
+        b.geldEinzahlen(spar, 30);
+        assertTrue(b.geldAbheben(giro, 10));
+        b.kontoLoeschen(b.kontoErstellen(new GirokontoFabrik(), kunde1));
+
+        assertEquals(20, b.getSummeKontostaende(Waehrung.EUR));
+        assertEquals(List.of(spar, giro), b.getKontenMitHoechstemKontostand(2));
+        assertEquals(1, b.getAnzahlUngesperrteImMinus());
+        assertNull(prop.get(b.konto(giro)));
+        assertNull(prop.get(b.konto(spar)));
+    }
+
+    /**
+     * Testen der Indizes bei gleichzeitigen Buchungen: Summe und Konten im Minus passen danach zu den Konten, und
+     * der Kontostandindex entsteht erst bei der ersten Abfrage.
+     */
+    @Test
+    public void indizesNebenlaeufigeBuchungenTest() throws Exception {
+        Field kontostandindex = Bank.class.getDeclaredField("kontostandindex");
+        kontostandindex.setAccessible(true);
+        long[] konten = new long[4];
+        for (int i = 0; i < konten.length; i++) {
+            konten[i] = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    long nummer = konten[i % konten.length];
+                    try {
+                        assertTrue(b.geldAbheben(nummer, 3)); // pendelt um 0
+                        b.geldEinzahlen(nummer, 3);
+                    } catch (KontoNichtExistiertException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertNull(kontostandindex.get(b));
+        double summe = 0;
+        int imMinus = 0;
+        for (long nummer : konten) {
+            summe += b.getKontostand(nummer);
+            imMinus += b.getKontostand(nummer) < 0 ? 1 : 0;
+        }
+        assertEquals(0, summe);
+        assertEquals(summe, b.getSummeKontostaende(Waehrung.EUR));
+        assertEquals(imMinus, b.getAnzahlUngesperrteImMinus());
+        assertEquals(konten.length, b.getKontenMitNiedrigstemKontostand(10).size());
+        assertNotNull(kontostandindex.get(b));
+    }
+
+    /**
+     * Testen der Konten im Minus: sie folgen jeder Buchung, und im sofortigen Modus wird schon bei der Buchung gesperrt.
+     */
+    @Test
+    public void minuskontenTest() throws KontoNichtExistiertException {
+        long giro = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        long spar = b.kontoErstellen(new SparbuchFabrik(), kunde1);
+        b.geldEinzahlen(spar, 50);
+        assertEquals(0, b.getAnzahlUngesperrteImMinus());
+
+        assertTrue(b.geldAbheben(giro, 10));
+        assertEquals(1, b.getAnzahlUngesperrteImMinus());
+        b.geldEinzahlen(giro, 20);
+        assertEquals(0, b.getAnzahlUngesperrteImMinus());
+        assertTrue(b.geldAbheben(giro, 15));
+        assertEquals(1, b.getAnzahlUngesperrteImMinus());
+
+        b.pleitegeierSperren();
+        assertEquals(0, b.getAnzahlUngesperrteImMinus());
+        assertFalse(b.geldAbheben(giro, 1));
+        assertTrue(b.geldAbheben(spar, 10));
+
+        long zweites = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        b.setSofortSperren(true);
+        assertTrue(b.isSofortSperren());
+        assertTrue(b.geldAbheben(zweites, 5));
+        assertEquals(0, b.getAnzahlUngesperrteImMinus());
+        assertFalse(b.geldAbheben(zweites, 1));
+        assertEquals(-5, b.getKontostand(zweites));
+
+        b.kontoLoeschen(giro);
+        assertEquals(0, b.getAnzahlUngesperrteImMinus());
+    }
+
+    /**
+     * Testen des Journals: die Bank wird nach dem Schliessen mit allen Aenderungen wiederhergestellt, ein
+     * abgeschnittener letzter Satz wird ignoriert und beim erneuten Oeffnen entfernt.
+     */
+    @Test
+    public void journalTest(@TempDir Path verzeichnis) throws Exception {
+        Path datei = verzeichnis.resolve("bank.journal");
+        Kunde anna = new Kunde("Anna", "Zander", "hier", LocalDate.of(1980, 12, 30));
+        long vorher = b.kontoErstellen(new GirokontoFabrik(), anna);
+        b.geldEinzahlen(vorher, 10);
+
+        long giro;
+        long spar;
+        long geloescht;
+        try (Journal journal = Journal.oeffnen(datei, Journal.Dauerhaftigkeit.JEDE_AENDERUNG)) {
+            b.journalVerwenden(journal);
+            giro = b.kontoErstellen(new GirokontoFabrik(), anna);
+            spar = b.kontoErstellen(new SparbuchFabrik(), kunde1);
+            geloescht = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+            b.geldEinzahlen(giro, 100);
+            assertTrue(b.geldAbheben(giro, 110.25));
+            assertTrue(b.geldUeberweisen(vorher, giro, 5, "Miete"));
+            b.geldEinzahlen(spar, 200);
+            b.kontoLoeschen(geloescht);
+            b.pleitegeierSperren();
+            anna.setVorname("Annika");
+        }
+
+        Bank wieder = Journal.wiederherstellen(datei, b.getBankleitzahl());
+        assertEquals(List.of(vorher, giro, spar), wieder.getAlleKontonummern());
+        assertEquals(5, wieder.getKontostand(vorher));
+        assertEquals(-5.25, wieder.getKontostand(giro));
+        assertTrue(wieder.getKontozustand(giro).isGesperrt());
+        assertEquals(200, wieder.getKontostand(spar));
+        assertEquals(List.of(geloescht), wieder.getKontonummernLuecken());
+        assertTrue(wieder.getKundengeburtstage().contains("Zander, Annika"));
+        assertEquals(2, wieder.getKundengeburtstage().split(System.lineSeparator()).length); // Kunden nur einmal geschrieben
+
+        // Absturz mitten im Schreiben eines Satzes
+        long laenge = Files.size(datei);
+        Files.write(datei, new byte[]{12, 0, 0, 0, 1, 2}, StandardOpenOption.APPEND);
+        assertEquals(-5.25, Journal.wiederherstellen(datei, 1).getKontostand(giro));
+        try (Journal journal = Journal.oeffnen(datei, Journal.Dauerhaftigkeit.PERIODISCH, 1)) {
+            assertEquals(laenge, journal.getGroesse());
+            wieder.journalVerwenden(journal);
+            wieder.geldEinzahlen(spar, 1);
+            journal.sichern();
+        }
+        assertEquals(201, Journal.wiederherstellen(datei, 1).getKontostand(spar));
+    }
+
+    /**
+     * Testen eines Journals, das waehrend der Ueberweisungen geschlossen ist: die Ausnahme kommt beim Aufrufer an,
+     * aber es geht kein Geld verloren und die uebrigen Indizes bleiben richtig.
+     */
+    @Test
+    public void journalGeschlossenUeberweisungTest(@TempDir Path verzeichnis) throws Exception {
+        long von = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        long nach = b.kontoErstellen(new GirokontoFabrik(), new Kunde());
+        b.geldEinzahlen(von, 100);
+        Journal journal = Journal.oeffnen(verzeichnis.resolve("bank.journal"), Journal.Dauerhaftigkeit.JEDE_AENDERUNG);
+        b.journalVerwenden(journal);
+        journal.close();
+
+        assertThrows(IllegalStateException.class, () -> b.geldUeberweisen(von, nach, 30, "Miete"));
+        assertEquals(100, b.getKontostand(von));
+        assertEquals(0, b.getKontostand(nach));
+
+        assertThrows(IllegalStateException.class,
+                () -> b.geldUeberweisenBatch(List.of(new Ueberweisungsauftrag(von, nach, 30, "Miete"))));
+        assertEquals(100, b.getKontostand(von));
+        assertEquals(0, b.getKontostand(nach));
+        assertEquals(100, b.getSummeKontostaende(Waehrung.EUR));
+        assertEquals(0, b.getAnzahlUngesperrteImMinus());
+        assertEquals(List.of(von, nach), b.getKontenMitHoechstemKontostand(2));
+    }
+
+    /**
+     * Testen des Journals mit einem Sparbuch: der im Monat bereits abgehobene Betrag wird mit wiederhergestellt,
+     * auch nach einem Waehrungswechsel.
+     */
+    @Test
+    public void journalSparbuchTest(@TempDir Path verzeichnis) throws Exception {
+        Path datei = verzeichnis.resolve("bank.journal");
+        long spar;
+        try (Journal journal = Journal.oeffnen(datei, Journal.Dauerhaftigkeit.JEDE_AENDERUNG)) {
+            b.journalVerwenden(journal);
+            spar = b.kontoErstellen(new SparbuchFabrik(), kunde1);
+            b.geldEinzahlen(spar, 5000);
+            assertTrue(b.geldAbheben(spar, 1500));
+        }
+
+        Bank wieder = Journal.wiederherstellen(datei, b.getBankleitzahl());
+        assertEquals(3500, wieder.getKontostand(spar));
+        assertFalse(wieder.geldAbheben(spar, 600)); // 1500 + 600 ueber der monatlichen Abhebesumme
+        assertTrue(wieder.geldAbheben(spar, 400));
+
+        try (Journal journal = Journal.oeffnen(datei, Journal.Dauerhaftigkeit.JEDE_AENDERUNG)) {
+            wieder.journalVerwenden(journal);
+            wieder.konto(spar).waehrungswechsel(Waehrung.BGN);
+        }
+        Bank nochmal = Journal.wiederherstellen(datei, b.getBankleitzahl());
+        assertFalse(nochmal.geldAbheben(spar, 200)); // 100 Euro sind noch frei, etwa 195 BGN
+        assertTrue(nochmal.geldAbheben(spar, 190));
+    }
+
+    @Test
+    public void bankcodecTest(@TempDir Path verzeichnis) throws Exception {
+        Kunde anna = new Kunde("Änne", "Zander", "Straße 1", LocalDate.of(1980, 12, 30));
+        long giro = b.kontoErstellen(new GirokontoFabrik(), anna);
+        long spar = b.kontoErstellen(new SparbuchFabrik(), anna);
+        long geloescht = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        long pleite = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        b.kontoLoeschen(geloescht);
+        b.geldEinzahlen(spar, 200);
+        ((Girokonto) b.konto(giro)).setDispo(1000);
+        assertTrue(b.geldAbheben(giro, 123.45));
+        assertTrue(b.geldAbheben(pleite, 1));
+        b.pleitegeierSperren();
+        b.konto(spar).waehrungswechsel(Waehrung.BGN);
+        b.setNummernWiederverwenden(true);
+
+        Path datei = verzeichnis.resolve("bank.snapshot");
+        Bankcodec.speichern(b, datei);
+        for (Bank kopie : List.of(Bankcodec.laden(datei), Bankcodec.lesen(Bankcodec.schreiben(b)))) {
+            assertEquals(List.of(giro, spar, pleite), kopie.getAlleKontonummern());
+            assertEquals(List.of(geloescht), kopie.getKontonummernLuecken());
+            assertTrue(kopie.isNummernWiederverwenden());
+            assertEquals(-123.45, kopie.getKontostand(giro));
+            assertEquals(1000, ((Girokonto) kopie.konto(giro)).getDispo());
+            assertEquals(b.getKontostand(spar), kopie.getKontostand(spar));
+            assertEquals(Waehrung.BGN, kopie.konto(spar).getAktuelleWaehrung());
+            assertTrue(kopie.getKontozustand(pleite).isGesperrt());
+            assertSame(kopie.konto(giro).getInhaber(), kopie.konto(spar).getInhaber()); // Inhaber nur einmal
+            assertEquals("Änne", kopie.konto(giro).getInhaber().getVorname());
+            assertEquals(geloescht, kopie.kontoErstellen(new GirokontoFabrik(), kunde1));
+        }
+
+        Files.write(datei, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> Bankcodec.laden(datei));
+        Bank mitAttrappe = new Bank(blz);
+        mitAttrappe.kontoErstellen(mockFabrik, kunde1);
+        assertThrows(CloneNotSupportedException.class, mitAttrappe::clone);
+    }
+
+    @Test
+    public void cloneTeiltKontenTest() throws Exception {
+        List<Long> nummern = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            long nummer = b.kontoErstellen(new GirokontoFabrik(), i % 2 == 0 ? kunde1 : new Kunde());
+            b.geldEinzahlen(nummer, i);
+            nummern.add(nummer);
+        }
+        long erstes = nummern.get(0);
+        long letztes = nummern.get(999);
+        b.kontoLoeschen(nummern.get(500));
+
+        Bank kopie = b.clone();
+        Konto geteilt = kopie.konto(letztes);
+        assertNotSame(geteilt, b.konto(letztes)); // jede Bank hat ihr Konto nach dem ersten Zugriff fuer sich
+        assertSame(geteilt, kopie.konto(letztes));
+
+        assertTrue(kopie.geldAbheben(erstes, 15));
+        b.geldEinzahlen(letztes, 1);
+        assertEquals(0, b.getKontostand(erstes));
+        assertEquals(-15, kopie.getKontostand(erstes));
+        assertEquals(1000, b.getKontostand(letztes));
+        assertEquals(999, kopie.getKontostand(letztes));
+
+        // die Kopie hat eigene Kunden, je Kunde genau einen; Aenderungen erreichen das Original nicht
+        Kunde kundeKopie = kopie.konto(erstes).getInhaber();
+        assertNotSame(kunde1, kundeKopie);
+        assertSame(kundeKopie, kopie.konto(nummern.get(2)).getInhaber());
+        assertSame(kunde1, b.konto(erstes).getInhaber());
+        String nachname = kunde1.getNachname();
+        kundeKopie.setNachname("Kopie");
+        assertEquals(nachname, kunde1.getNachname());
+
+        // die Indizes beider Banken folgen den Kopien
+        assertEquals(List.of(letztes), b.getKontenMitHoechstemKontostand(1));
+        assertEquals(List.of(erstes), kopie.getKontenMitNiedrigstemKontostand(1));
+        assertEquals(1, kopie.getAnzahlUngesperrteImMinus());
+        assertEquals(0, b.getAnzahlUngesperrteImMinus());
+        kopie.pleitegeierSperren();
+        assertTrue(kopie.getKontozustand(erstes).isGesperrt());
+        assertFalse(b.getKontozustand(erstes).isGesperrt());
+
+        // Nummernvergabe und Loeschen unabhaengig voneinander
+        assertEquals(List.of(nummern.get(500)), kopie.getKontonummernLuecken());
+        assertTrue(kopie.kontoLoeschen(letztes));
+        assertEquals(1000, b.getKontostand(letztes));
+        long neu = kopie.kontoErstellen(new SparbuchFabrik(), kunde1);
+        assertFalse(b.getAlleKontonummern().contains(neu));
+
+        // Kopie der Kopie
+        Bank enkel = kopie.clone();
+        enkel.geldEinzahlen(erstes, 100);
+        assertEquals(-15, kopie.getKontostand(erstes));
+        assertEquals(85, enkel.getKontostand(erstes));
+        assertEquals(999, enkel.getAlleKontonummern().size());
+    }
+
+    @Test
+    public void cloneBehaeltBeobachterTest() throws Exception {
+        long giro = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        long spar = b.kontoErstellen(new SparbuchFabrik(), kunde1);
+        b.geldEinzahlen(giro, 10);
+        b.geldEinzahlen(spar, 100);
+        Konto original = b.konto(giro);
+        List<PropertyChangeEvent> ereignisse = new ArrayList<>();
+        original.anmelden(ereignisse::add);
+
+        Bank kopie = b.clone();
+        b.geldEinzahlen(giro, 5);
+        assertSame(original, b.konto(giro)); // das Original behaelt sein Konto samt Beobachter
+        assertEquals(1, ereignisse.stream().filter(e -> "Kontostand".equals(e.getPropertyName())).count());
+        assertEquals(15, b.getKontostand(giro));
+        assertEquals(10, kopie.getKontostand(giro));
+
+        // auch direkte Aenderungen am Konto des Originals erreichen die Kopie nicht
+        original.einzahlen(1);
+        assertTrue(b.konto(spar).abheben(30));
+        assertEquals(10, kopie.getKontostand(giro));
+        assertEquals(100, kopie.getKontostand(spar));
+        assertEquals(70, b.getKontostand(spar));
+
+        // und Buchungen der Kopie erreichen weder das Original noch seine Beobachter
+        int vorher = ereignisse.size();
+        kopie.geldEinzahlen(giro, 100);
+        assertEquals(110, kopie.getKontostand(giro));
+        assertEquals(16, b.getKontostand(giro));
+        assertEquals(vorher, ereignisse.size());
+        assertEquals(List.of(spar), b.getKontenMitHoechstemKontostand(1));
+        assertEquals(List.of(giro), kopie.getKontenMitHoechstemKontostand(1));
+    }
+
+    @Test
+    public void massenimportTest(@TempDir Path verzeichnis) throws Exception {
+        long vorher = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        Path datei = verzeichnis.resolve("konten.csv");
+        String john = kunde1.getVorname() + ";" + kunde1.getNachname() + ";" + kunde1.getAdresse() + ";"
+                + kunde1.getGeburtstag();
+        Files.writeString(datei, "# Kontoart;Vorname;Nachname;Adresse;Geburtstag;Kontostand;Waehrung;Dispo\n"
+                + "GIROKONTO;Änne;Zander;Straße 1;1980-12-30;-12,5;EUR;100\r\n"
+                + "SPARBUCH;Änne;Zander;Straße 1;1980-12-30;200.00;BGN\n"
+                + "\n"
+                + "GIROKONTO;" + john + ";7;EUR;\n"
+                + "SPARBUCH;Max;Muster;Weg 2;1975-01-02;0.5;EUR");
+
+        List<Massenimport.Importstand> meldungen = new ArrayList<>();
+        // winzige Stuecke, damit Zeilen ueber die Stueckgrenzen reichen
+        Massenimport.Importstand stand = Massenimport.importieren(b, datei, 3, 16, meldungen::add);
+        assertEquals(4, stand.getKonten());
+        assertEquals(2, stand.getNeueKunden());
+        assertEquals(Files.size(datei), stand.getGelesen());
+        assertTrue(stand.isFertig());
+        assertTrue(meldungen.get(meldungen.size() - 1).isFertig());
+
+        List<Long> nummern = b.getAlleKontonummern();
+        assertEquals(5, nummern.size());
+        long giro = nummern.get(1);
+        assertTrue(giro > vorher);
+        assertEquals(-12.5, b.getKontostand(giro));
+        assertEquals(100, ((Girokonto) b.konto(giro)).getDispo());
+        assertEquals(200, b.getKontostand(giro + 1));
+        assertEquals(Waehrung.BGN, b.konto(giro + 1).getAktuelleWaehrung());
+        assertSame(b.konto(giro).getInhaber(), b.konto(giro + 1).getInhaber());
+        assertSame(kunde1, b.konto(giro + 2).getInhaber()); // schon vorhandener Kunde
+        assertEquals(7, b.getGesamtkontostand(kunde1));
+        assertEquals(1, b.getAnzahlUngesperrteImMinus());
+        assertEquals(List.of(giro), b.getKontenMitNiedrigstemKontostand(1));
+
+        // eine fehlerhafte Zeile: nichts wird eingefuegt
+        Files.writeString(datei, "SPARBUCH;Max;Muster;Weg 2;1975-01-02;1;EUR\nGIROKONTO;Max;Muster;Weg 2;1975-13-02;1;EUR\n");
+        assertThrows(IllegalArgumentException.class, () -> Massenimport.importieren(b, datei));
+        assertEquals(5, b.getAlleKontonummern().size());
+    }
+
+    /**
+     * Testen eines Imports ueber mehrere Bloecke: die Indizes stimmen danach, und der Kundenindex entsteht dabei nicht.
+     */
+    @Test
+    public void massenimportBloeckeTest(@TempDir Path verzeichnis) throws Exception {
+        Field kundenindex = Bank.class.getDeclaredField("kundenindex");
+        kundenindex.setAccessible(true);
+        b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        Path datei = verzeichnis.resolve("konten.csv");
+        StringBuilder zeilen = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            zeilen.append(i % 2 == 0 ? "GIROKONTO" : "SPARBUCH").append(";Max;Muster;Weg ").append(i % 7)
+                    .append(";1975-01-02;").append(i == 5000 ? "-1" : "1").append(i % 2 == 0 ? ";EUR;10\n" : ";EUR\n");
+        }
+        Files.writeString(datei, zeilen);
+
+        Massenimport.Importstand stand = Massenimport.importieren(b, datei, 2, null);
+        assertEquals(10000, stand.getKonten());
+        assertEquals(7, stand.getNeueKunden());
+        assertNull(kundenindex.get(b));
+        assertEquals(9998, b.getSummeKontostaende(Waehrung.EUR));
+        assertEquals(5001, b.getAnzahlKonten(Kontoart.GIROKONTO));
+        assertEquals(5000, b.getAnzahlKonten(Kontoart.SPARBUCH));
+        assertEquals(1, b.getAnzahlUngesperrteImMinus());
+        long letztes = b.getAlleKontonummern().get(9999); // das letzte Girokonto
+        assertTrue(b.geldAbheben(letztes, 2));
+        assertEquals(2, b.getAnzahlUngesperrteImMinus());
+    }
+
+    /**
+     * Testen einer Transaktion mit mehreren Buchungen: sie wird ganz oder gar nicht ausgefuehrt.
+     */
+    @Test
+    public void transaktionAusfuehrenTest() throws KontoNichtExistiertException {
+        long firma = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        long a = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        long c = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        b.geldEinzahlen(firma, 100);
+
+        Transaktion gehalt = new Transaktion("Gehalt").belasten(firma, 110).gutschreiben(a, 60).gutschreiben(c, 50);
+        assertTrue(b.transaktionAusfuehren(gehalt));
+        assertEquals(-10, b.getKontostand(firma));
+        assertEquals(60, b.getKontostand(a));
+        assertEquals(50, b.getKontostand(c));
+
+        // firma ist gesperrt -> nichts wird gebucht
+        b.pleitegeierSperren();
+        Transaktion gesperrt = new Transaktion("Split").belasten(a, 20).gutschreiben(c, 10).gutschreiben(firma, 10);
+        assertFalse(b.transaktionAusfuehren(gesperrt));
+        assertEquals(60, b.getKontostand(a));
+        assertEquals(50, b.getKontostand(c));
+
+        // Belastung ueber den Dispo -> nichts wird gebucht
+        Transaktion ueberDispo = new Transaktion("Split").belasten(c, 71).gutschreiben(a, 71);
+        assertFalse(b.transaktionAusfuehren(ueberDispo));
+        assertEquals(50, b.getKontostand(c));
+
+        try {
+            b.transaktionAusfuehren(new Transaktion("Falsch").belasten(a, 10).gutschreiben(c, 5));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // nicht ausgeglichen
+        }
+    }
+
+    /**
+     * Testen einer Transaktion mit Bruchteilen eines Cents: in Cent umgerechnet ist sie nicht ausgeglichen und darf
+     * kein Geld erzeugen.
+     */
+    @Test
+    public void transaktionBruchteileTest() throws KontoNichtExistiertException {
+        long x = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        long y = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        long z = b.kontoErstellen(new GirokontoFabrik(), kunde1);
+        b.geldEinzahlen(x, 1);
+
+        Transaktion bruchteile = new Transaktion("Split").belasten(x, 0.01).gutschreiben(y, 0.005).gutschreiben(z, 0.005);
+        assertFalse(bruchteile.istAusgeglichen());
+        assertThrows(IllegalArgumentException.class, () -> b.transaktionAusfuehren(bruchteile));
+        assertEquals(1, b.getKontostand(x));
+        assertEquals(0, b.getKontostand(y));
+        assertEquals(0, b.getKontostand(z));
+        assertEquals(100, b.getSummeKontostaendeBetrag(Waehrung.EUR));
+
+        assertThrows(IllegalArgumentException.class, () -> new Transaktion("Split").belasten(x, 0.001));
+        assertTrue(b.transaktionAusfuehren(new Transaktion("Split").belasten(x, 0.3).gutschreiben(y, 0.1).gutschreiben(z, 0.2)));
+        assertEquals(100, b.getSummeKontostaendeBetrag(Waehrung.EUR));
+    }
 }
@@ -5,8 +5,27 @@ import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 
+import verarbeitung.beobachter.Ereignisbus;
+import verarbeitung.beobachter.Rueckstaustrategie;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -211,10 +230,76 @@ public class GirokontoTest {
         k.waehrungswechsel(w);
 
         assertEquals(k.getAktuelleWaehrung(), w);
-        assertEquals(k.getKontostand(), w.euroInWaehrungUmrechnen(10));
+        assertEquals(k.getKontostand(), 19.56); // 10 EUR in BGN, auf die kleinste Einheit gerundet
+        assertEquals(1956, k.getKontostandBetrag());
         Mockito.verify(propMock).firePropertyChange("Waehrung", Waehrung.EUR, w);
     }
 
+    /**
+     * Testen der Festkommabetraege: Buchungen summieren sich exakt, gerundet wird nur beim Umrechnen
+     */
+    @Test
+    public void festkommabetragTest() throws GesperrtException {
+        for (int i = 0; i < 10; i++) {
+            k.einzahlen(0.1);
+        }
+        assertEquals(1.0, k.getKontostand()); // mit double waere es 0.9999999999999999
+        assertEquals(100, k.getKontostandBetrag());
+
+        k.einzahlenBetrag(1000, Waehrung.BGN, RoundingMode.DOWN); // 10 BGN = 5,1129... EUR
+        assertEquals(611, k.getKontostandBetrag());
+        assertTrue(k.abhebenBetrag(11));
+        assertEquals(6.0, k.getKontostand());
+
+        assertEquals(2, Betrag.dividieren(5, 2, RoundingMode.HALF_EVEN));
+        assertEquals(4, Betrag.dividieren(7, 2, RoundingMode.HALF_EVEN));
+        assertEquals(3, Betrag.dividieren(5, 2, RoundingMode.HALF_UP));
+        assertEquals(-3, Betrag.dividieren(-5, 2, RoundingMode.HALF_UP));
+        assertEquals(-3, Betrag.dividieren(-5, 2, RoundingMode.FLOOR));
+        assertEquals(-2, Betrag.dividieren(-5, 2, RoundingMode.CEILING));
+        assertThrows(ArithmeticException.class, () -> Betrag.dividieren(5, 2, RoundingMode.UNNECESSARY));
+        assertThrows(ArithmeticException.class, () -> Betrag.addieren(Long.MAX_VALUE, 1));
+        assertThrows(IllegalArgumentException.class, () -> k.einzahlenBetrag(-1));
+    }
+
+    /**
+     * Testen geaenderter Wechselkurse: Umrechnungen verwenden die aktuelle Kurstabelle und merken sich ihre Version
+     */
+    @Test
+    public void wechselkurseTest() {
+        anfangsEinzahlung(k); // 10 Eur
+        assertEquals(0, k.getKursversion());
+        try {
+            Kurstabelle kurse = Wechselkurse.setKurs(Waehrung.BGN, 2);
+            assertEquals(2, Waehrung.BGN.euroInWaehrungUmrechnen(1));
+
+            k.waehrungswechsel(Waehrung.BGN);
+            assertEquals(20, k.getKontostand());
+            assertEquals(kurse.getVersion(), k.getKursversion());
+
+            // der alte Stand der Kurse bleibt fuer seine Leser unveraendert
+            Kurstabelle neu = Wechselkurse.setKurse(Map.of(Waehrung.BGN, 4.0, Waehrung.KM, 3.0));
+            assertTrue(neu.getVersion() > kurse.getVersion());
+            assertEquals(2, kurse.getKurs(Waehrung.BGN));
+            assertEquals(150, neu.umrechnen(200, Waehrung.BGN, Waehrung.KM, RoundingMode.UNNECESSARY));
+
+            k.einzahlen(4, Waehrung.EUR); // 4 Eur = 16 BGN
+            assertEquals(36, k.getKontostand());
+            assertEquals(neu.getVersion(), k.getKursversion());
+            assertThrows(IllegalArgumentException.class, () -> Wechselkurse.setKurs(Waehrung.EUR, 2));
+
+            // Kurse, die als Festkommawert 0 wuerden oder ueberlaufen, ersetzen die Tabelle nicht
+            assertThrows(IllegalArgumentException.class, () -> Wechselkurse.setKurs(Waehrung.BGN, 1e-7));
+            assertThrows(IllegalArgumentException.class, () -> Wechselkurse.setKurs(Waehrung.BGN, 1e12));
+            assertThrows(IllegalArgumentException.class, () -> Wechselkurse.setKurse(Map.of(Waehrung.KM, 5.0, Waehrung.LTL, 1e-9)));
+            assertSame(neu, Wechselkurse.getKurstabelle());
+            assertEquals(100, Wechselkurse.setKurs(Waehrung.BGN, 1e-6).umrechnen(100_000_000, Waehrung.EUR, Waehrung.BGN, RoundingMode.HALF_EVEN));
+        } finally {
+            Wechselkurse.zuruecksetzen();
+        }
+        assertEquals(1.95583, Wechselkurse.getKurstabelle().getKurs(Waehrung.BGN));
+    }
+
     /**
      * Testen die erfolgreiche Überweisungmethoden
      */
@@ -259,4 +344,293 @@ public class GirokontoTest {
 
         assertEquals(k.getKontostand(), 10);
     }
-}
\ No newline at end of file
+
+    /**
+     * Testen gleichzeitiger Einzahlungen und Abhebungen ohne Bank: es darf keine Buchung verloren gehen
+     * und der Dispo darf nie ueberschritten werden.
+     */
+    @Test
+    public void nebenlaeufigesEinzahlenUndAbhebenTest() throws InterruptedException {
+        setupPropChangeSupport(); // keine Ausgaben der Beobachter
+        int anzahlThreads = 8;
+        int buchungenProThread = 1000;
+        AtomicInteger erfolgreicheAbhebungen = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(anzahlThreads);
+        for (int t = 0; t < anzahlThreads; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < buchungenProThread; i++) {
+                    k.einzahlen(1);
+                    if (k.abheben(2)) {
+                        erfolgreicheAbhebungen.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        double erwartet = anzahlThreads * buchungenProThread - 2.0 * erfolgreicheAbhebungen.get();
+        assertEquals(erwartet, k.getKontostand());
+        assertTrue(k.getKontostand() >= -dispo);
+    }
+
+    /**
+     * Testen gleichzeitiger Abhebungen von einem Sparbuch: die monatliche Abhebesumme darf auch dann nicht
+     * ueberschritten werden, wenn mehrere Threads gleichzeitig pruefen. Ein langsamer Beobachter haelt die erste
+     * Abhebung auf, nachdem der Kontostand schon vermindert ist.
+     */
+    @Test
+    public void nebenlaeufigesAbhebenSparbuchTest() throws Exception {
+        Sparbuch s = new Sparbuch(ich, 1000);
+        s.alleAbmelden();
+        s.einzahlen(10000);
+        s.anmelden(evt -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        int anzahlThreads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(anzahlThreads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> ergebnisse = new ArrayList<>();
+        for (int t = 0; t < anzahlThreads; t++) {
+            ergebnisse.add(executor.submit(() -> {
+                start.await();
+                return s.abheben(1500);
+            }));
+        }
+        start.countDown();
+        int erfolgreich = 0;
+        for (Future<Boolean> f : ergebnisse) {
+            erfolgreich += f.get() ? 1 : 0;
+        }
+        executor.shutdown();
+
+        assertEquals(1, erfolgreich); // 2 * 1500 > ABHEBESUMME
+        assertEquals(8500, s.getKontostand());
+    }
+
+    /**
+     * Testen des Kontozustands: Waehrung und Kontostand passen immer zusammen, auch waehrend ein anderer Thread
+     * die Waehrung hin und her wechselt.
+     */
+    @Test
+    public void zustandWaehrendWaehrungswechselTest() throws InterruptedException {
+        setupPropChangeSupport();
+        anfangsEinzahlung(k); // 10 Eur
+        double inBgn = 19.56; // 10 EUR in BGN, auf die kleinste Einheit gerundet
+
+        Thread wechsler = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                k.waehrungswechsel(i % 2 == 0 ? Waehrung.BGN : Waehrung.EUR);
+            }
+        });
+        wechsler.start();
+
+        while (wechsler.isAlive()) {
+            Kontozustand zustand = k.getZustand();
+            double erwartet = zustand.getWaehrung() == Waehrung.EUR ? 10 : inBgn;
+            assertEquals(erwartet, zustand.getKontostand(), 0.001);
+            assertFalse(zustand.isGesperrt());
+        }
+        wechsler.join();
+
+        k.sperren();
+        assertTrue(k.getZustand().isGesperrt());
+    }
+
+    /**
+     * Testen des Versionsstempels: zwei Zustaende mit gleicher Version haben denselben Kontostand, auch waehrend
+     * mehrere Threads gleichzeitig einzahlen, und ein Zustand mit groesserer Version ist nie aelter.
+     */
+    @Test
+    public void versionsstempelTest() throws InterruptedException {
+        setupPropChangeSupport();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        for (int t = 0; t < 2; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    k.einzahlenBetrag(1);
+                }
+            });
+        }
+        executor.shutdown();
+
+        Kontozustand vorher = k.getZustand();
+        while (!executor.isTerminated()) {
+            Kontozustand zustand = k.getZustand();
+            if (zustand.getVersion() == vorher.getVersion()) {
+                assertEquals(vorher.getKontostandBetrag(), zustand.getKontostandBetrag());
+            } else {
+                assertTrue(zustand.getVersion() > vorher.getVersion());
+                assertTrue(zustand.getKontostandBetrag() > vorher.getKontostandBetrag());
+            }
+            vorher = zustand;
+        }
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(100_000, k.getZustand().getKontostandBetrag());
+    }
+
+    /**
+     * Testen der Standardbeobachter: ein neues Konto benachrichtigt sie ohne eigenen PropertyChangeSupport; erst ein
+     * weiterer Beobachter erzeugt ihn und uebernimmt die Standardbeobachter.
+     */
+    @Test
+    public void standardbeobachterOhneSupportTest() throws Exception {
+        Field prop = Konto.class.getDeclaredField("prop");
+        prop.setAccessible(true);
+        Girokonto neu = new Girokonto(ich, 4711, 0);
+        assertNull(prop.get(neu));
+
+        ByteArrayOutputStream ausgabe = new ByteArrayOutputStream();
+        PrintStream alt = System.out;
+        System.setOut(new PrintStream(ausgabe, true));
+        try {
+            neu.einzahlen(5);
+        } finally {
+            System.setOut(alt);
+        }
+        assertTrue(ausgabe.toString().contains("Kontostand"));
+        assertNull(prop.get(neu));
+
+        List<PropertyChangeEvent> empfangen = new ArrayList<>();
+        neu.anmelden(empfangen::add);
+        assertNotNull(prop.get(neu));
+        neu.einzahlen(1);
+        assertEquals(1, empfangen.size());
+        List<PropertyChangeListener> abgemeldet = neu.alleAbmelden();
+        assertEquals(5, abgemeldet.size());
+
+        Girokonto ohne = new Girokonto(ich, 4712, 0);
+        assertEquals(4, ohne.alleAbmelden().size());
+        assertTrue(ohne.alleAbmelden().isEmpty());
+        assertNull(prop.get(ohne));
+    }
+
+    /**
+     * Testen des Ereignisbusses: die Beobachter werden asynchron, aber in der richtigen Reihenfolge benachrichtigt.
+     * Mit einer sehr kleinen Warteschlange werden Ereignisse zusammengefasst, der letzte Kontostand kommt aber an.
+     */
+    @Test
+    public void ereignisbusTest() throws InterruptedException {
+        List<PropertyChangeEvent> empfangen = Collections.synchronizedList(new ArrayList<>());
+        k.alleAbmelden(); // keine Ausgaben der Standardbeobachter
+        k.anmelden(empfangen::add);
+
+        Ereignisbus bus = new Ereignisbus(2, 1, Rueckstaustrategie.ZUSAMMENFASSEN);
+        bus.beobachterUebernehmen(k);
+        for (int i = 0; i < 100; i++) {
+            k.einzahlen(1);
+        }
+        bus.schliessen();
+
+        assertFalse(empfangen.isEmpty());
+        double letzter = 0;
+        for (PropertyChangeEvent evt : empfangen) {
+            assertEquals(letzter, (double) evt.getOldValue()); // lueckenlos und in Reihenfolge
+            letzter = (double) evt.getNewValue();
+        }
+        assertEquals(100.0, letzter);
+        assertEquals(0, bus.getAnzahlVerworfen());
+    }
+
+    /**
+     * Testen des geschlossenen Ereignisbusses: Buchungen blockieren auch bei voller Warteschlange nicht, die
+     * Beobachter werden im buchenden Thread benachrichtigt.
+     */
+    @Test
+    public void ereignisbusNachSchliessenTest() throws InterruptedException {
+        List<PropertyChangeEvent> empfangen = Collections.synchronizedList(new ArrayList<>());
+        k.alleAbmelden();
+        k.anmelden(empfangen::add);
+
+        Ereignisbus bus = new Ereignisbus(1, 4, Rueckstaustrategie.BLOCKIEREN);
+        bus.beobachterUebernehmen(k);
+        bus.schliessen();
+        assertTimeoutPreemptively(java.time.Duration.ofSeconds(2), () -> {
+            for (int i = 0; i < 10; i++) {
+                k.einzahlen(1);
+            }
+        });
+        assertEquals(10, empfangen.size());
+
+        bus.beobachterZurueckgeben(k);
+        k.einzahlen(1);
+        assertEquals(11, empfangen.size());
+    }
+
+    /**
+     * Testen des Zusammenfassens unter Dauerlast: auch wenn die Warteschlange nie leer wird, weil staendig Ereignisse
+     * anderer Konten kommen, erreichen die zusammengefassten Ereignisse eines Kontos seine Beobachter.
+     */
+    @Test
+    public void ereignisbusUeberlaufUnterLastTest() throws InterruptedException {
+        List<PropertyChangeEvent> empfangen = Collections.synchronizedList(new ArrayList<>());
+        k.alleAbmelden();
+        k.anmelden(empfangen::add);
+
+        Ereignisbus bus = new Ereignisbus(1, 1, Rueckstaustrategie.ZUSAMMENFASSEN);
+        bus.beobachterUebernehmen(k);
+
+        // der Dispatcher haengt im Beobachter von k2, ein weiteres Ereignis fuellt die Warteschlange
+        CountDownLatch angekommen = new CountDownLatch(1);
+        CountDownLatch frei = new CountDownLatch(1);
+        k2.alleAbmelden();
+        k2.anmelden(evt -> {
+            angekommen.countDown();
+            try {
+                frei.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        bus.beobachterUebernehmen(k2);
+        k2.einzahlen(1);
+        angekommen.await();
+        k2.einzahlen(1);
+        for (int i = 0; i < 5; i++) {
+            k.einzahlen(1); // alle in den Ueberlauf
+        }
+
+        // jede Millisekunde ein Ereignis eines anderen Kontos: die Warteschlange ist nie 10 ms am Stueck leer
+        List<Girokonto> andereKonten = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Girokonto anderes = new Girokonto(andere, 1_000_000 + i, 0);
+            anderes.alleAbmelden();
+            anderes.anmelden(evt -> { });
+            bus.beobachterUebernehmen(anderes);
+            andereKonten.add(anderes);
+        }
+        AtomicInteger nummer = new AtomicInteger();
+        Thread last = new Thread(() -> {
+            try {
+                while (true) {
+                    andereKonten.get(nummer.incrementAndGet() % andereKonten.size()).einzahlen(1);
+                    Thread.sleep(1);
+                }
+            } catch (InterruptedException e) {
+                // Ende der Last
+            }
+        });
+        frei.countDown();
+        last.start();
+        try {
+            long bis = System.currentTimeMillis() + 5000;
+            while (System.currentTimeMillis() < bis && empfangen.isEmpty()) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, empfangen.size());
+            assertEquals(0.0, (double) empfangen.get(0).getOldValue());
+            assertEquals(5.0, (double) empfangen.get(0).getNewValue());
+        } finally {
+            last.interrupt();
+            last.join();
+            bus.schliessen();
+        }
+    }
+}
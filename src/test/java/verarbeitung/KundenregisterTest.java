@@ -0,0 +1,49 @@
+package verarbeitung;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testklasse zum Testen der Klasse Kundenregister.
+ */
+public class KundenregisterTest {
+
+    /**
+     * Testen das An- und Abmelden von Kunden, einzeln und auf einmal
+     */
+    @Test
+    public void anUndAbmeldenTest() {
+        Kunde k1 = new Kunde("Anna", "Alt", "hier", LocalDate.parse("1990-01-01"));
+        Kunde k2 = new Kunde("Bert", "Bunt", "dort", LocalDate.parse("1991-02-02"));
+        Kunde k3 = new Kunde("Carl", "Chic", "da", LocalDate.parse("1992-03-03"));
+        assertTrue(Kundenregister.istAngemeldet(k1));
+        assertTrue(Kundenregister.getAnzahl() >= 3);
+
+        Kundenregister.abmelden(k1);
+        assertFalse(Kundenregister.istAngemeldet(k1));
+        assertTrue(Kundenregister.istAngemeldet(k2));
+
+        Kundenregister.abmelden(List.of(k2, k3));
+        assertFalse(Kundenregister.istAngemeldet(k2));
+        assertFalse(Kundenregister.istAngemeldet(k3));
+    }
+
+    /**
+     * Testen das Ausschalten des Registers: neue Kunden werden nicht mehr angemeldet
+     */
+    @Test
+    public void ausschaltenTest() {
+        Kundenregister.setAktiv(false);
+        try {
+            Kunde k = new Kunde("Dora", "Dunkel", "woanders", LocalDate.parse("1993-04-04"));
+            assertFalse(Kundenregister.istAngemeldet(k));
+            assertFalse(Kundenregister.isAktiv());
+        } finally {
+            Kundenregister.setAktiv(true);
+        }
+    }
+}